@@ -0,0 +1,52 @@
+package io.aks.WebBrowser;
+/**
+ * What to do with what was typed in an address bar.
+ * 
+ * @author Akshay
+ *
+ */
+class AddressAction
+{
+    /**
+     * Go to the target, which is a URL.
+     */
+    public static final int NAVIGATE = 0;
+    /**
+     * Go to the target, which is a URL that searches for what was typed.
+     */
+    public static final int SEARCH = 1;
+    /**
+     * Run the target, which is JavaScript, in the page.
+     */
+    public static final int SCRIPT = 2;
+    private static final String[] NAMES = { "navigate", "search", "script" };
+    private final int kind;
+    private final String target;
+
+    AddressAction(int kind, String target)
+    {
+	this.kind = kind;
+	this.target = target;
+    }
+
+    /**
+     * @return NAVIGATE, SEARCH, or SCRIPT.
+     */
+    public int getKind()
+    {
+	return kind;
+    }
+
+    /**
+     * @return The URL to go to, or the script to run.
+     */
+    public String getTarget()
+    {
+	return target;
+    }
+
+    public String toString()
+    {
+	return NAMES[kind] + " " + target;
+    }
+}
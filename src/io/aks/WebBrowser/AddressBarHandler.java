@@ -11,19 +11,10 @@ import javafx.scene.control.TextField;
  */
 public class AddressBarHandler implements EventHandler<ActionEvent>
 {
-    private static final String HTTP = "http://";
-    private static final String HAS_PROTOCOL_REGEX = "^.*://.*";
-    private static final String JAVASCRIPT_SCHEME_2 = "js://";
-    private static final String JAVASCRIPT_SCHEME_1 = "javascript://";
     /**
-     * Matches most common top-level-domains.
+     * Shared by every tab, so the public suffix list is only read once.
      */
-    private static final String DOMAIN_REGEX = "(localhost|.*\\.(com|org|edu|gov|uk|net|ca|de|jp|fr|au|us|ru|ch|it|br|jp|pl|info|cn|in|biz|tv|me|io|cc|local|[0-9]*).*)";
-    /**
-     * The url to use for searching. Combined with the actual query using printf
-     * format (%s is replaced by the query).
-     */
-    private static final String SEARCH_URL = "http://google.com/search?q=%s";
+    private static AddressClassifier classifier;
     private final GUI gui;
 
     /**
@@ -35,6 +26,9 @@ public class AddressBarHandler implements EventHandler<ActionEvent>
     AddressBarHandler(GUI gui)
     {
 	this.gui = gui;
+	if (classifier == null)
+	    classifier = new AddressClassifier(PublicSuffixList.getDefault(),
+		    AddressClassifier.DEFAULT_SEARCH_URL);
     }
 
     @Override
@@ -43,26 +37,12 @@ public class AddressBarHandler implements EventHandler<ActionEvent>
      */
     public void handle(ActionEvent arg0)
     {
-	String url = ((TextField) arg0.getSource()).getText();
-	if (url.startsWith(JAVASCRIPT_SCHEME_1))
-	{
+	AddressAction action = classifier.classify(((TextField) arg0
+		.getSource()).getText());
+	if (action.getKind() == AddressAction.SCRIPT)
 	    this.gui.getWebViewController().getWebEngine()
-		    .executeScript(url.substring(13));
-	    return;
-	}
-	else if (url.startsWith(JAVASCRIPT_SCHEME_2))
-	{
-	    this.gui.getWebViewController().getWebEngine()
-		    .executeScript(url.substring(5));
-	    return;
-	}
-	final String domainNameRegex = DOMAIN_REGEX;
-	if (!url.matches(HAS_PROTOCOL_REGEX) && url.matches(domainNameRegex))
-	    url = HTTP + url;
-	else if (!url.matches(HAS_PROTOCOL_REGEX)
-		&& !url.matches(domainNameRegex))
-	    url = String.format(SEARCH_URL, url.replace(' ', '+'));
-	this.gui.loadURL(url);
-
+		    .executeScript(action.getTarget());
+	else
+	    this.gui.loadURL(action.getTarget());
     }
 }
\ No newline at end of file
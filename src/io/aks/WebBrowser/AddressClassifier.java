@@ -0,0 +1,356 @@
+package io.aks.WebBrowser;
+/**
+ * Decides what to do with what was typed in an address bar: go to it, search
+ * for it, or run it as a script. It looks at the text once, from the start,
+ * without regular expressions, so a long pasted text takes as long as it is
+ * long and no more.
+ * 
+ * Text that starts with a scheme is gone to as it is. Otherwise its host is
+ * found, without a user or port, and it is gone to over http if the host is
+ * localhost, an IP address, a name that ends in .local, a name with a port,
+ * or a name with a label before its public suffix, such as example.co.uk.
+ * A suffix that isn't on the list is one label, as the Public Suffix List
+ * says, so intranet names such as wiki.corp or build.lan are gone to too,
+ * rather than sent to the search engine. Anything else, including a public
+ * suffix on its own, a last label that is a number, and text with spaces
+ * before its path, is searched for.
+ * 
+ * @author Akshay
+ *
+ */
+public class AddressClassifier
+{
+    /**
+     * The url to use for searching. Combined with the actual query using printf
+     * format (%s is replaced by the query).
+     */
+    public static final String DEFAULT_SEARCH_URL = "http://google.com/search?q=%s";
+    private static final String HTTP = "http://";
+    private static final String JAVASCRIPT_SCHEME_1 = "javascript://";
+    private static final String JAVASCRIPT_SCHEME_2 = "js://";
+    /**
+     * Schemes that are gone to without "//" after them.
+     */
+    private static final String[] OPAQUE_SCHEMES = { "about", "data", "file",
+	    "mailto" };
+    private static final String LOCALHOST = "localhost";
+    private static final String LOCAL = ".local";
+    private static final int MAX_PORT = 65535;
+    private static final int MAX_HOST_LENGTH = 253;
+    private static final int MAX_LABEL_LENGTH = 63;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final PublicSuffixList suffixes;
+    /**
+     * The search url before and after the query.
+     */
+    private final String searchStart;
+    private final String searchEnd;
+
+    /**
+     * @param suffixes
+     *            The public suffixes names can be under.
+     * @param searchURL
+     *            The url to search with, where %s is the query.
+     */
+    public AddressClassifier(PublicSuffixList suffixes, String searchURL)
+    {
+	this.suffixes = suffixes;
+	int query = searchURL.indexOf("%s");
+	searchStart = searchURL.substring(0, query);
+	searchEnd = searchURL.substring(query + 2);
+    }
+
+    /**
+     * @param text
+     *            What was typed.
+     * @return What to do with it.
+     */
+    public AddressAction classify(String text)
+    {
+	String input = text.trim();
+	if (input.startsWith(JAVASCRIPT_SCHEME_1))
+	    return new AddressAction(AddressAction.SCRIPT,
+		    input.substring(JAVASCRIPT_SCHEME_1.length()));
+	if (input.startsWith(JAVASCRIPT_SCHEME_2))
+	    return new AddressAction(AddressAction.SCRIPT,
+		    input.substring(JAVASCRIPT_SCHEME_2.length()));
+	if (hasScheme(input))
+	    return new AddressAction(AddressAction.NAVIGATE, input);
+	if (isAddress(input))
+	    return new AddressAction(AddressAction.NAVIGATE, HTTP
+		    + input.replace(" ", "%20"));
+	return new AddressAction(AddressAction.SEARCH, search(input));
+    }
+
+    /**
+     * @return True if the text starts with a scheme followed by "//", or with
+     *         one of the OPAQUE_SCHEMES.
+     */
+    static boolean hasScheme(String input)
+    {
+	if (input.isEmpty() || !isAsciiLetter(input.charAt(0)))
+	    return false;
+	for (int i = 1; i < input.length(); i++)
+	{
+	    char c = input.charAt(i);
+	    if (c == ':')
+	    {
+		if (input.startsWith("//", i + 1))
+		    return true;
+		for (String scheme : OPAQUE_SCHEMES)
+		    if (scheme.length() == i
+			    && input.regionMatches(true, 0, scheme, 0, i))
+			return true;
+		return false;
+	    }
+	    if (!isAsciiLetter(c) && !isDigit(c) && c != '+' && c != '-'
+		    && c != '.')
+		return false;
+	}
+	return false;
+    }
+
+    /**
+     * @return True if the text, which has no scheme, starts with a host that
+     *         can be gone to.
+     */
+    boolean isAddress(String input)
+    {
+	int end = 0;
+	int start = 0;
+	int colon = -1;
+	for (; end < input.length(); end++)
+	{
+	    char c = input.charAt(end);
+	    if (c == '/' || c == '?' || c == '#')
+		break;
+	    if (c == '@')
+		start = end + 1;
+	    else if (c == ':')
+		colon = end;
+	    else if (Character.isWhitespace(c))
+		return false;
+	}
+	if (start >= end)
+	    return false;
+	if (input.charAt(start) == '[')
+	    return isIPv6(input, start, end);
+	boolean port = false;
+	if (colon >= start)
+	{
+	    if (!isPort(input, colon + 1, end))
+		return false;
+	    port = true;
+	    end = colon;
+	}
+	if (end > start && input.charAt(end - 1) == '.')
+	    end--;
+	if (end <= start || end - start > MAX_HOST_LENGTH)
+	    return false;
+	int labels = countLabels(input, start, end);
+	if (labels == 0)
+	    return false;
+	if (endsWith(input, start, end, LOCALHOST)
+		&& (end - start == LOCALHOST.length() || input.charAt(end
+			- LOCALHOST.length() - 1) == '.'))
+	    return true;
+	if (labels == 4 && isIPv4(input, start, end))
+	    return true;
+	if (labels > 1 && endsWith(input, start, end, LOCAL))
+	    return true;
+	if (port)
+	    return true;
+	if (isNumber(input, Math.max(start, input.lastIndexOf('.', end - 1) + 1),
+		end))
+	    return false;
+	int suffix = suffixes.suffixLabels(input, start, end);
+	return suffix > 0 && labels > suffix;
+    }
+
+    /**
+     * @return How many labels the host has, or 0 if one of them can't be in a
+     *         host name.
+     */
+    private static int countLabels(String input, int start, int end)
+    {
+	int labels = 1;
+	int labelStart = start;
+	for (int i = start; i <= end; i++)
+	{
+	    char c = i < end ? input.charAt(i) : '.';
+	    if (c == '.')
+	    {
+		int length = i - labelStart;
+		if (length == 0 || length > MAX_LABEL_LENGTH
+			|| input.charAt(labelStart) == '-'
+			|| input.charAt(i - 1) == '-')
+		    return 0;
+		if (i < end)
+		    labels++;
+		labelStart = i + 1;
+	    }
+	    else if (c != '-' && !isDigit(c) && !isAsciiLetter(c)
+		    && (c < 0x80 || !Character.isLetterOrDigit(c)))
+		return 0;
+	}
+	return labels;
+    }
+
+    /**
+     * @return True if the host is four numbers from 0 to 255 separated by
+     *         dots.
+     */
+    private static boolean isIPv4(String input, int start, int end)
+    {
+	int value = 0;
+	int digits = 0;
+	for (int i = start; i <= end; i++)
+	{
+	    char c = i < end ? input.charAt(i) : '.';
+	    if (c == '.')
+	    {
+		if (digits == 0)
+		    return false;
+		value = 0;
+		digits = 0;
+	    }
+	    else if (isDigit(c) && digits < 3)
+	    {
+		value = value * 10 + c - '0';
+		digits++;
+		if (value > 255)
+		    return false;
+	    }
+	    else
+		return false;
+	}
+	return true;
+    }
+
+    /**
+     * @return True if the host is an IPv6 address in brackets, with or without
+     *         a port.
+     */
+    private static boolean isIPv6(String input, int start, int end)
+    {
+	int close = input.indexOf(']', start);
+	if (close < 0 || close >= end || close == start + 1)
+	    return false;
+	boolean colon = false;
+	for (int i = start + 1; i < close; i++)
+	{
+	    char c = input.charAt(i);
+	    if (c == ':')
+		colon = true;
+	    else if (!isDigit(c) && c != '.' && (c < 'a' || c > 'f')
+		    && (c < 'A' || c > 'F'))
+		return false;
+	}
+	if (!colon)
+	    return false;
+	if (close + 1 == end)
+	    return true;
+	return input.charAt(close + 1) == ':'
+		&& isPort(input, close + 2, end);
+    }
+
+    /**
+     * @return True if the text from start to end is a port number.
+     */
+    private static boolean isPort(String input, int start, int end)
+    {
+	if (start >= end || end - start > 5)
+	    return false;
+	int port = 0;
+	for (int i = start; i < end; i++)
+	{
+	    char c = input.charAt(i);
+	    if (!isDigit(c))
+		return false;
+	    port = port * 10 + c - '0';
+	}
+	return port > 0 && port <= MAX_PORT;
+    }
+
+    /**
+     * @return True if the label from start to end is all digits, which no
+     *         top-level domain is.
+     */
+    private static boolean isNumber(String input, int start, int end)
+    {
+	for (int i = start; i < end; i++)
+	    if (!isDigit(input.charAt(i)))
+		return false;
+	return true;
+    }
+
+    private static boolean endsWith(String input, int start, int end,
+	    String suffix)
+    {
+	return end - start >= suffix.length()
+		&& input.regionMatches(true, end - suffix.length(), suffix, 0,
+			suffix.length());
+    }
+
+    private static boolean isAsciiLetter(char c)
+    {
+	return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c)
+    {
+	return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Make the url that searches for a query, with the query encoded the way
+     * a form would send it: spaces as "+", and everything but letters,
+     * digits, and "-_.*" as the percent-encoded bytes of its UTF-8.
+     */
+    String search(String query)
+    {
+	StringBuilder url = new StringBuilder(searchStart.length()
+		+ query.length() * 3 / 2 + searchEnd.length());
+	url.append(searchStart);
+	for (int i = 0; i < query.length(); i++)
+	{
+	    char c = query.charAt(i);
+	    if (isAsciiLetter(c) || isDigit(c) || c == '-' || c == '_'
+		    || c == '.' || c == '*')
+		url.append(c);
+	    else if (c == ' ')
+		url.append('+');
+	    else if (c < 0x80)
+		percent(url, c);
+	    else if (c < 0x800)
+	    {
+		percent(url, 0xC0 | c >> 6);
+		percent(url, 0x80 | c & 0x3F);
+	    }
+	    else if (Character.isHighSurrogate(c) && i + 1 < query.length()
+		    && Character.isLowSurrogate(query.charAt(i + 1)))
+	    {
+		int code = Character.toCodePoint(c, query.charAt(++i));
+		percent(url, 0xF0 | code >> 18);
+		percent(url, 0x80 | code >> 12 & 0x3F);
+		percent(url, 0x80 | code >> 6 & 0x3F);
+		percent(url, 0x80 | code & 0x3F);
+	    }
+	    else if (Character.isSurrogate(c))
+		percent(url, '?');
+	    else
+	    {
+		percent(url, 0xE0 | c >> 12);
+		percent(url, 0x80 | c >> 6 & 0x3F);
+		percent(url, 0x80 | c & 0x3F);
+	    }
+	}
+	return url.append(searchEnd).toString();
+    }
+
+    private static void percent(StringBuilder url, int b)
+    {
+	url.append('%').append(HEX[b >> 4]).append(HEX[b & 0xF]);
+    }
+}
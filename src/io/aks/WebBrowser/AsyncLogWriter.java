@@ -0,0 +1,514 @@
+package io.aks.WebBrowser;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes console output to a log file on its own thread, so the threads that
+ * print only copy their message into a buffer. The buffer is allocated once;
+ * when it is full, the backpressure policy decides whether the printing thread
+ * waits, the oldest waiting messages are dropped, or the new message is.
+ * 
+ * The log is rotated when it gets too big or when a day has passed since it
+ * was started, even if that was before the browser was: the current file
+ * becomes .1, .1 becomes .2, and so on, and the oldest is deleted.
+ * 
+ * @author Akshay
+ *
+ */
+public class AsyncLogWriter implements Runnable
+{
+    public static final int BLOCK = 0;
+    public static final int DROP_OLDEST = 1;
+    public static final int DROP_NEWEST = 2;
+    public static final int DEFAULT_BUFFER_BYTES = 1 << 20;
+    public static final long DEFAULT_MAX_FILE_BYTES = 5L << 20;
+    public static final long DEFAULT_ROTATE_MILLIS = 24L * 60 * 60 * 1000;
+    public static final int DEFAULT_FILES = 5;
+    private static final String[] POLICY_NAMES = { "block", "drop_oldest",
+	    "drop_newest" };
+    private static final String[] LEVELS = { ConsoleBridge.LOG,
+	    ConsoleBridge.INFO, ConsoleBridge.WARN, ConsoleBridge.ERROR };
+    /**
+     * The length, time, and level before each message's text.
+     */
+    private static final int RECORD_HEADER = 4 + 8 + 1;
+    private static final long CLOSE_TIMEOUT = 2000;
+
+    private final File file;
+    private final long maxFileBytes;
+    private final long rotateMillis;
+    private final int files;
+    private final int policy;
+    /**
+     * Where errors in the log itself go. This is the original System.err, so
+     * they don't come back to the log.
+     */
+    private final PrintStream errors;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final byte[] ring;
+    private int head = 0;
+    private int used = 0;
+    private int waitingMessages = 0;
+    private boolean closed = false;
+    private final Thread writer;
+
+    private OutputStream out;
+    private long fileBytes;
+    private long fileStarted;
+    private long bytesWritten = 0;
+    private long messagesWritten = 0;
+    private long messagesDropped = 0;
+    private long rotations = 0;
+
+    /**
+     * Opens the log and starts the writer thread.
+     * 
+     * @param file
+     *            The log file. Old logs are kept next to it.
+     * @param bufferBytes
+     *            How many bytes of messages can wait to be written.
+     * @param maxFileBytes
+     *            How big the log gets before it is rotated.
+     * @param rotateMillis
+     *            How long a log is written to before it is rotated.
+     * @param files
+     *            How many old logs to keep.
+     * @param policy
+     *            BLOCK, DROP_OLDEST, or DROP_NEWEST.
+     * @param errors
+     *            Where to report problems writing the log.
+     */
+    public AsyncLogWriter(File file, int bufferBytes, long maxFileBytes,
+	    long rotateMillis, int files, int policy, PrintStream errors)
+    {
+	this.file = file;
+	this.maxFileBytes = maxFileBytes;
+	this.rotateMillis = rotateMillis;
+	this.files = files;
+	this.policy = policy;
+	this.errors = errors;
+	ring = new byte[bufferBytes];
+	writer = new Thread(this, "Log Writer");
+	writer.setDaemon(true);
+	writer.start();
+    }
+
+    /**
+     * Add a message to the log, from any thread.
+     * 
+     * @param level
+     *            The ConsoleBridge level.
+     * @param text
+     *            The message.
+     * @return False if the message was dropped.
+     */
+    public boolean append(String level, String text)
+    {
+	byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+	int size = RECORD_HEADER + bytes.length;
+	if (size > ring.length)
+	{
+	    countDropped();
+	    return false;
+	}
+	long time = System.currentTimeMillis();
+	lock.lock();
+	try
+	{
+	    while (!closed && ring.length - used < size)
+	    {
+		if (policy == DROP_NEWEST)
+		{
+		    messagesDropped++;
+		    return false;
+		}
+		if (policy == DROP_OLDEST)
+		{
+		    dropOldest();
+		    continue;
+		}
+		notFull.awaitUninterruptibly();
+	    }
+	    if (closed)
+		return false;
+	    int tail = (head + used) % ring.length;
+	    tail = putLong(tail, bytes.length, 4);
+	    tail = putLong(tail, time, 8);
+	    ring[tail] = levelCode(level);
+	    tail = (tail + 1) % ring.length;
+	    put(tail, bytes, 0, bytes.length);
+	    used += size;
+	    waitingMessages++;
+	    notEmpty.signal();
+	    return true;
+	}
+	finally
+	{
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Write the waiting messages and stop the writer thread, waiting a little
+     * for it to finish.
+     */
+    public void close()
+    {
+	lock.lock();
+	try
+	{
+	    closed = true;
+	    notEmpty.signal();
+	    notFull.signalAll();
+	}
+	finally
+	{
+	    lock.unlock();
+	}
+	try
+	{
+	    writer.join(CLOSE_TIMEOUT);
+	}
+	catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    /**
+     * Takes everything waiting in the buffer at once and writes it, until the
+     * log is closed.
+     */
+    @Override
+    public void run()
+    {
+	byte[] batch = new byte[ring.length];
+	SimpleDateFormat format = new SimpleDateFormat(
+		"yyyy-MM-dd HH:mm:ss.SSS ");
+	Date date = new Date();
+	while (true)
+	{
+	    int length;
+	    boolean last;
+	    lock.lock();
+	    try
+	    {
+		while (used == 0 && !closed)
+		    notEmpty.awaitUninterruptibly();
+		length = used;
+		get(head, batch, 0, length);
+		head = (head + length) % ring.length;
+		used = 0;
+		messagesWritten += waitingMessages;
+		waitingMessages = 0;
+		last = closed;
+		notFull.signalAll();
+	    }
+	    finally
+	    {
+		lock.unlock();
+	    }
+	    try
+	    {
+		int i = 0;
+		while (i < length)
+		{
+		    int size = (int) getLong(batch, i, 4);
+		    date.setTime(getLong(batch, i + 4, 8));
+		    String level = LEVELS[batch[i + 12]];
+		    i += RECORD_HEADER;
+		    write((format.format(date) + level.toUpperCase() + " ")
+			    .getBytes(StandardCharsets.UTF_8));
+		    write(batch, i, size);
+		    write(new byte[] { '\n' });
+		    i += size;
+		}
+		if (out != null)
+		    out.flush();
+	    }
+	    catch (IOException e)
+	    {
+		errors.println("Couldn't write the log: " + e.getMessage());
+		closeFile();
+	    }
+	    if (last)
+	    {
+		closeFile();
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Write bytes to the log file, opening or rotating it first if needed.
+     */
+    private void write(byte[] bytes) throws IOException
+    {
+	write(bytes, 0, bytes.length);
+    }
+
+    private void write(byte[] bytes, int offset, int length)
+	    throws IOException
+    {
+	long now = System.currentTimeMillis();
+	if (out != null
+		&& (fileBytes >= maxFileBytes || now - fileStarted >= rotateMillis))
+	    rotate();
+	if (out == null)
+	{
+	    file.getParentFile().mkdirs();
+	    out = new BufferedOutputStream(new FileOutputStream(file, true));
+	    fileBytes = file.length();
+	    fileStarted = fileBytes > 0 ? created(now) : now;
+	}
+	out.write(bytes, offset, length);
+	fileBytes += length;
+	synchronized (this)
+	{
+	    bytesWritten += length;
+	}
+    }
+
+    /**
+     * @return When the log file was created, or now if that can't be read.
+     *         File systems that don't record it give the time it was last
+     *         modified.
+     */
+    private long created(long now)
+    {
+	try
+	{
+	    return Math.min(now,
+		    Files.readAttributes(file.toPath(), BasicFileAttributes.class)
+			    .creationTime().toMillis());
+	}
+	catch (IOException e)
+	{
+	    return now;
+	}
+    }
+
+    /**
+     * Close the log file and shift the old logs up by one.
+     */
+    private void rotate()
+    {
+	closeFile();
+	new File(file.getPath() + "." + files).delete();
+	for (int i = files - 1; i >= 1; i--)
+	    new File(file.getPath() + "." + i).renameTo(new File(file.getPath()
+		    + "." + (i + 1)));
+	if (files > 0)
+	    file.renameTo(new File(file.getPath() + ".1"));
+	else
+	    file.delete();
+	synchronized (this)
+	{
+	    rotations++;
+	}
+    }
+
+    private void closeFile()
+    {
+	if (out == null)
+	    return;
+	try
+	{
+	    out.close();
+	}
+	catch (IOException e)
+	{
+	    errors.println("Couldn't close the log: " + e.getMessage());
+	}
+	out = null;
+    }
+
+    /**
+     * Drop the oldest waiting message to make room. Called with the lock
+     * held.
+     */
+    private void dropOldest()
+    {
+	int size = RECORD_HEADER + (int) getLong(head, 4);
+	head = (head + size) % ring.length;
+	used -= size;
+	waitingMessages--;
+	messagesDropped++;
+    }
+
+    private void countDropped()
+    {
+	lock.lock();
+	try
+	{
+	    messagesDropped++;
+	}
+	finally
+	{
+	    lock.unlock();
+	}
+    }
+
+    private static byte levelCode(String level)
+    {
+	for (int i = 0; i < LEVELS.length; i++)
+	    if (LEVELS[i].equals(level))
+		return (byte) i;
+	return 0;
+    }
+
+    /**
+     * Copy bytes into the ring, wrapping around its end.
+     */
+    private void put(int position, byte[] bytes, int offset, int length)
+    {
+	int first = Math.min(length, ring.length - position);
+	System.arraycopy(bytes, offset, ring, position, first);
+	System.arraycopy(bytes, offset + first, ring, 0, length - first);
+    }
+
+    /**
+     * Copy bytes out of the ring, wrapping around its end.
+     */
+    private void get(int position, byte[] bytes, int offset, int length)
+    {
+	int first = Math.min(length, ring.length - position);
+	System.arraycopy(ring, position, bytes, offset, first);
+	System.arraycopy(ring, 0, bytes, offset + first, length - first);
+    }
+
+    /**
+     * Write a number into the ring, big-endian.
+     * 
+     * @return The position after it.
+     */
+    private int putLong(int position, long value, int bytes)
+    {
+	for (int i = bytes - 1; i >= 0; i--)
+	{
+	    ring[position] = (byte) (value >>> (8 * i));
+	    position = (position + 1) % ring.length;
+	}
+	return position;
+    }
+
+    private long getLong(int position, int bytes)
+    {
+	long value = 0;
+	for (int i = 0; i < bytes; i++)
+	    value = (value << 8)
+		    | (ring[(position + i) % ring.length] & 0xFF);
+	return value;
+    }
+
+    private static long getLong(byte[] array, int position, int bytes)
+    {
+	long value = 0;
+	for (int i = 0; i < bytes; i++)
+	    value = (value << 8) | (array[position + i] & 0xFF);
+	return value;
+    }
+
+    /**
+     * @param name
+     *            "block", "drop_oldest", or "drop_newest".
+     * @return The policy with that name, or DROP_NEWEST if there isn't one.
+     */
+    public static int policyForName(String name)
+    {
+	for (int i = 0; i < POLICY_NAMES.length; i++)
+	    if (POLICY_NAMES[i].equals(name))
+		return i;
+	return DROP_NEWEST;
+    }
+
+    /**
+     * @return The name of the backpressure policy.
+     */
+    public String getPolicyName()
+    {
+	return POLICY_NAMES[policy];
+    }
+
+    /**
+     * @return How many bytes were written to log files.
+     */
+    public synchronized long getBytesWritten()
+    {
+	return bytesWritten;
+    }
+
+    /**
+     * @return How many messages were taken by the writer thread.
+     */
+    public long getMessagesWritten()
+    {
+	lock.lock();
+	try
+	{
+	    return messagesWritten;
+	}
+	finally
+	{
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * @return How many messages were dropped because the buffer was full.
+     */
+    public long getMessagesDropped()
+    {
+	lock.lock();
+	try
+	{
+	    return messagesDropped;
+	}
+	finally
+	{
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * @return How many times the log was rotated.
+     */
+    public synchronized long getRotations()
+    {
+	return rotations;
+    }
+
+    public File getFile()
+    {
+	return file;
+    }
+
+    public long getMaxFileBytes()
+    {
+	return maxFileBytes;
+    }
+
+    public int getFiles()
+    {
+	return files;
+    }
+
+    public int getPolicy()
+    {
+	return policy;
+    }
+}
@@ -0,0 +1,205 @@
+package io.aks.WebBrowser;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Remembers the last few pages a tab showed, so going back, going forward, or
+ * jumping in the history pane can show them again without loading them from
+ * the network. Each page is kept as its serialized HTML and scroll position,
+ * keyed by its HistoryNode. The least recently used pages are dropped when
+ * there are too many or they take up too much memory, and a page that was
+ * saved too long ago isn't used. Hits, misses, and evictions of every tab
+ * are counted together in the BFCACHE_ metrics.
+ * 
+ * @author Akshay
+ *
+ */
+public class BackForwardCache
+{
+    public static final int DEFAULT_MAX_ENTRIES = 8;
+    public static final long DEFAULT_MAX_BYTES = 8L << 20;
+    public static final long DEFAULT_MAX_AGE = 10 * 60 * 1000;
+
+    private final LinkedHashMap<HistoryNode, CachedPage> pages = new LinkedHashMap<HistoryNode, CachedPage>(
+	    16, 0.75f, true);
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long maxAge;
+    private long bytes = 0;
+    private final MetricCounter hits;
+    private final MetricCounter misses;
+    private final MetricCounter staleMisses;
+    private final MetricCounter evictions;
+
+    /**
+     * Creates a cache for one tab with the default limits.
+     * 
+     * @param metrics
+     *            The registry, which has the BFCACHE_ counters.
+     * @param history
+     *            The tab's History.
+     */
+    public BackForwardCache(MetricsRegistry metrics, History history)
+    {
+	this(metrics, history, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES,
+		DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * Creates a cache for one tab.
+     * 
+     * @param metrics
+     *            The registry, which has the BFCACHE_ counters.
+     * @param history
+     *            The tab's History. Pages are forgotten when their nodes are
+     *            removed from it.
+     * @param maxEntries
+     *            How many pages to keep.
+     * @param maxBytes
+     *            How much memory the pages may use.
+     * @param maxAge
+     *            How long a page may be used for after it is saved, in
+     *            milliseconds.
+     */
+    public BackForwardCache(MetricsRegistry metrics, History history,
+	    int maxEntries, long maxBytes, long maxAge)
+    {
+	this.maxEntries = maxEntries;
+	this.maxBytes = maxBytes;
+	this.maxAge = maxAge;
+	hits = metrics.getCounter(MetricsRegistry.BFCACHE_HITS);
+	misses = metrics.getCounter(MetricsRegistry.BFCACHE_MISSES);
+	staleMisses = metrics.getCounter(MetricsRegistry.BFCACHE_STALE);
+	evictions = metrics.getCounter(MetricsRegistry.BFCACHE_EVICTIONS);
+	history.addHistoryListener(new HistoryListener()
+	{
+	    @Override
+	    public void nodeAdded(HistoryNode node)
+	    {
+	    }
+
+	    @Override
+	    public void nodeRemoved(HistoryNode parent, HistoryNode node)
+	    {
+		ArrayList<HistoryNode> branch = new ArrayList<HistoryNode>();
+		branch.add(node);
+		for (int i = 0; i < branch.size(); i++)
+		{
+		    remove(branch.get(i));
+		    branch.addAll(branch.get(i).getForward());
+		}
+	    }
+
+	    @Override
+	    public void titleChanged(HistoryNode node)
+	    {
+	    }
+
+	    @Override
+	    public void primaryChanged(HistoryNode parent)
+	    {
+	    }
+
+	    @Override
+	    public void currentChanged(HistoryNode oldCurrent,
+		    HistoryNode newCurrent)
+	    {
+	    }
+
+	    @Override
+	    public void visited(HistoryNode node)
+	    {
+	    }
+	});
+    }
+
+    /**
+     * Save the page a node showed, replacing what was saved for it before.
+     * Pages too big for the cache aren't saved.
+     * 
+     * @param node
+     *            The node.
+     * @param page
+     *            The page.
+     */
+    public void put(HistoryNode node, CachedPage page)
+    {
+	remove(node);
+	if (page.getBytes() > maxBytes)
+	    return;
+	pages.put(node, page);
+	bytes += page.getBytes();
+	Iterator<CachedPage> i = pages.values().iterator();
+	while (pages.size() > maxEntries || bytes > maxBytes)
+	{
+	    bytes -= i.next().getBytes();
+	    i.remove();
+	    evictions.increment();
+	}
+    }
+
+    /**
+     * Get the page a node showed, if it was saved recently enough.
+     * 
+     * @param node
+     *            The node.
+     * @return The page, or null.
+     */
+    public CachedPage get(HistoryNode node)
+    {
+	CachedPage page = pages.get(node);
+	if (page == null)
+	{
+	    misses.increment();
+	    return null;
+	}
+	if (page.getAge() > maxAge)
+	{
+	    remove(node);
+	    misses.increment();
+	    staleMisses.increment();
+	    return null;
+	}
+	hits.increment();
+	return page;
+    }
+
+    /**
+     * Forget the page a node showed.
+     * 
+     * @param node
+     *            The node.
+     */
+    public void remove(HistoryNode node)
+    {
+	CachedPage old = pages.remove(node);
+	if (old != null)
+	    bytes -= old.getBytes();
+    }
+
+    /**
+     * Forget every page.
+     */
+    public void clear()
+    {
+	pages.clear();
+	bytes = 0;
+    }
+
+    /**
+     * @return How many pages are saved.
+     */
+    public int size()
+    {
+	return pages.size();
+    }
+
+    /**
+     * @return Roughly how much memory the saved pages use.
+     */
+    public long getBytes()
+    {
+	return bytes;
+    }
+}
@@ -11,6 +11,7 @@ public class BookmarkItem
     private static final String TOSTRING_SEPARATOR = " – ";
     private String url;
     private String title;
+    private String key;
 
     /**
      * Initialize the Bookmark.
@@ -44,6 +45,19 @@ public class BookmarkItem
 	return url;
     }
 
+    /**
+     * Get the URL in canonical form, to tell if two bookmarks are for the
+     * same page.
+     * 
+     * @return The canonical URL.
+     */
+    public String getKey()
+    {
+	if (key == null)
+	    key = URLNormalizer.getDefault().canonicalize(url);
+	return key;
+    }
+
     /**
      * Get the title component.
      * 
@@ -0,0 +1,185 @@
+package io.aks.WebBrowser;
+/**
+ * Emits Java Flight Recorder events from the browser's key paths, so a
+ * recording of a sluggish session shows what the browser was doing: every
+ * navigation and load state change, history changes, history pane updates, new
+ * tabs, and console batches, each with its tab and URL.
+ * 
+ * The events stay in the code all the time. When the Flight Recorder isn't in
+ * this Java, every method returns right away without loading JfrEvents, and
+ * when nothing is recording, an event costs one check.
+ * 
+ * To record a running browser: jcmd &lt;pid&gt; JFR.start name=browser, then
+ * jcmd &lt;pid&gt; JFR.dump name=browser filename=browser.jfr.
+ * 
+ * @author Akshay
+ *
+ */
+public class BrowserEvents
+{
+    private static final boolean AVAILABLE = isAvailable();
+
+    private static boolean isAvailable()
+    {
+	try
+	{
+	    Class.forName("jdk.jfr.Event");
+	    return JfrEvents.isAvailable();
+	}
+	catch (ClassNotFoundException e)
+	{
+	    return false;
+	}
+	catch (LinkageError e)
+	{
+	    return false;
+	}
+    }
+
+    /**
+     * @return True if events can be recorded in this Java.
+     */
+    public static boolean isEnabled()
+    {
+	return AVAILABLE;
+    }
+
+    /**
+     * A tab was told to go to a URL.
+     * 
+     * @param gui
+     *            The tab.
+     * @param url
+     *            The URL.
+     * @param method
+     *            How: "goToURL", "loadURL", or "loadURL silent".
+     */
+    public static void navigation(GUI gui, String url, String method)
+    {
+	if (AVAILABLE)
+	    JfrEvents.navigation(tabOf(gui), url, method);
+    }
+
+    /**
+     * A tab's load worker changed state.
+     * 
+     * @param gui
+     *            The tab.
+     * @param url
+     *            The page being loaded.
+     * @param state
+     *            The new state.
+     */
+    public static void loadState(GUI gui, String url, Object state)
+    {
+	if (AVAILABLE)
+	    JfrEvents.loadState(tabOf(gui), url, String.valueOf(state));
+    }
+
+    /**
+     * A timed page load finished.
+     * 
+     * @param gui
+     *            The tab.
+     * @param timing
+     *            How long it took.
+     */
+    public static void pageLoad(GUI gui, PageLoadTiming timing)
+    {
+	if (AVAILABLE)
+	    JfrEvents.pageLoad(tabOf(gui), timing);
+    }
+
+    /**
+     * A tab's history changed.
+     * 
+     * @param gui
+     *            The tab, or null if its History was cleared.
+     * @param action
+     *            "addURL", "revisit", "back", or "forward".
+     * @param url
+     *            The new current URL.
+     * @param size
+     *            How many pages the history has.
+     */
+    public static void history(GUI gui, String action, String url, int size)
+    {
+	if (AVAILABLE)
+	    JfrEvents.history(tabOf(gui), action, url, size);
+    }
+
+    /**
+     * Start timing a history pane update.
+     * 
+     * @return What to pass to endHistoryPaneUpdate(), or null if the update
+     *         isn't recorded.
+     */
+    public static Object beginHistoryPaneUpdate()
+    {
+	return AVAILABLE ? JfrEvents.beginHistoryPaneUpdate() : null;
+    }
+
+    /**
+     * Finish timing a history pane update.
+     * 
+     * @param started
+     *            What beginHistoryPaneUpdate() returned.
+     * @param gui
+     *            The tab.
+     * @param nodes
+     *            How many nodes the pane shows.
+     */
+    public static void endHistoryPaneUpdate(Object started, GUI gui,
+	    int nodes)
+    {
+	if (started != null)
+	    JfrEvents.endHistoryPaneUpdate(started, tabOf(gui), nodes);
+    }
+
+    /**
+     * A tab was opened.
+     * 
+     * @param gui
+     *            The tab.
+     * @param url
+     *            The page it opened with.
+     */
+    public static void newTab(GUI gui, String url)
+    {
+	if (AVAILABLE)
+	    JfrEvents.newTab(tabOf(gui), url);
+    }
+
+    /**
+     * Start timing a console batch.
+     * 
+     * @return What to pass to endConsoleBatch(), or null if the batch isn't
+     *         recorded.
+     */
+    public static Object beginConsoleBatch()
+    {
+	return AVAILABLE ? JfrEvents.beginConsoleBatch() : null;
+    }
+
+    /**
+     * Finish timing a console batch.
+     * 
+     * @param started
+     *            What beginConsoleBatch() returned.
+     * @param messages
+     *            How many messages were delivered.
+     * @param dropped
+     *            How many messages the bridge has dropped so far.
+     */
+    public static void endConsoleBatch(Object started, int messages,
+	    long dropped)
+    {
+	if (started != null)
+	    JfrEvents.endConsoleBatch(started, messages, dropped);
+    }
+
+    private static int tabOf(GUI gui)
+    {
+	return gui == null ? -1 : gui.getTabId();
+    }
+}
@@ -0,0 +1,59 @@
+package io.aks.WebBrowser;
+/**
+ * One page saved in a BackForwardCache.
+ * 
+ * @author Akshay
+ *
+ */
+class CachedPage
+{
+    private final String url;
+    private final String html;
+    private final double scrollX;
+    private final double scrollY;
+    private final long savedAt = System.nanoTime();
+
+    public CachedPage(String url, String html, double scrollX, double scrollY)
+    {
+	this.url = url;
+	this.html = html;
+	this.scrollX = scrollX;
+	this.scrollY = scrollY;
+    }
+
+    public String getURL()
+    {
+	return url;
+    }
+
+    public String getHTML()
+    {
+	return html;
+    }
+
+    public double getScrollX()
+    {
+	return scrollX;
+    }
+
+    public double getScrollY()
+    {
+	return scrollY;
+    }
+
+    /**
+     * @return How long ago the page was saved, in milliseconds.
+     */
+    public long getAge()
+    {
+	return (System.nanoTime() - savedAt) / 1000000;
+    }
+
+    /**
+     * @return Roughly how much memory the page uses.
+     */
+    public long getBytes()
+    {
+	return 2L * html.length() + 64;
+    }
+}
@@ -0,0 +1,376 @@
+package io.aks.WebBrowser;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A snapshot of a History, stored as parallel int arrays instead of one
+ * object per page. A page is an index into the arrays. Each page knows its
+ * parent, its first forward, its next sibling, and its primary forward, and
+ * its URL and title are ids in a StringTable shared by every CompactHistory.
+ * 
+ * This is the encoding the history is copied into to be saved or dumped, not
+ * a replacement for History: tabs still use History, since the journal, the
+ * index, the budget, and the history pane listen to it. A snapshot only
+ * records which page was current; it can't be navigated.
+ * 
+ * Forwards are linked newest first, like History keeps them, and the primary
+ * forward is tracked separately, so adding a page, going forward, and
+ * changing the primary forward are all constant time.
+ * 
+ * For 100,000 pages over 300 URLs a History keeps roughly 200 bytes per page
+ * and a CompactHistory roughly 30, strings included. CompactHistoryTest
+ * compares their estimates.
+ * 
+ * @author Akshay
+ *
+ */
+public class CompactHistory
+{
+    public static final int NONE = -1;
+    private static final StringTable STRINGS = new StringTable();
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * Bytes per page: six ints in the arrays.
+     */
+    private static final int BYTES_PER_NODE = 6 * 4;
+
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] firstForwards = new int[INITIAL_CAPACITY];
+    private int[] nextSiblings = new int[INITIAL_CAPACITY];
+    private int[] primaries = new int[INITIAL_CAPACITY];
+    private int[] urls = new int[INITIAL_CAPACITY];
+    private int[] titles = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    private int current;
+
+    /**
+     * Initialize to a certain location for the root.
+     * 
+     * @param startURL
+     *            The URL to start at.
+     * @param title
+     *            The title to set for the root.
+     */
+    public CompactHistory(String startURL, String title)
+    {
+	current = add(NONE, startURL);
+	setTitle(current, title);
+    }
+
+    /**
+     * @return the current node
+     */
+    public int getCurrent()
+    {
+	return current;
+    }
+
+    /**
+     * Set a new current node.
+     * 
+     * @param newCurrent
+     *            the new current node
+     */
+    public void setCurrent(int newCurrent)
+    {
+	current = newCurrent;
+    }
+
+    /**
+     * @return the root node
+     */
+    public int getRoot()
+    {
+	return 0;
+    }
+
+    /**
+     * @return How many nodes are in the tree.
+     */
+    public int size()
+    {
+	return size;
+    }
+
+    /**
+     * @param node
+     *            A node.
+     * @return Its parent, or NONE for the root.
+     */
+    public int getBackward(int node)
+    {
+	return parents[node];
+    }
+
+    /**
+     * @param node
+     *            A node.
+     * @return Its primary forward, or NONE if it has no forwards.
+     */
+    public int getPrimary(int node)
+    {
+	return primaries[node];
+    }
+
+    /**
+     * @param node
+     *            A node.
+     * @return Its newest forward, or NONE. Use getNextSibling() for the rest.
+     */
+    public int getFirstForward(int node)
+    {
+	return firstForwards[node];
+    }
+
+    /**
+     * @param node
+     *            A node.
+     * @return The next older forward of the node's parent, or NONE.
+     */
+    public int getNextSibling(int node)
+    {
+	return nextSiblings[node];
+    }
+
+    /**
+     * Make a node the primary forward of its parent.
+     * 
+     * @param node
+     *            The node.
+     */
+    public void setPrimary(int node)
+    {
+	if (parents[node] != NONE)
+	    primaries[parents[node]] = node;
+    }
+
+    /**
+     * @param node
+     *            A node.
+     * @return Its URL.
+     */
+    public String getUrl(int node)
+    {
+	return STRINGS.get(urls[node]);
+    }
+
+    /**
+     * @param node
+     *            A node.
+     * @return Its title.
+     */
+    public String getTitle(int node)
+    {
+	return STRINGS.get(titles[node]);
+    }
+
+    /**
+     * Set the title of a node.
+     * 
+     * @param node
+     *            The node.
+     * @param name
+     *            The new title.
+     */
+    public void setTitle(int node, String name)
+    {
+	int old = titles[node];
+	titles[node] = STRINGS.intern(name);
+	STRINGS.release(old);
+    }
+
+    /**
+     * Drop every node and release their strings. The history can't be used
+     * afterwards.
+     */
+    public void clear()
+    {
+	for (int i = 0; i < size; i++)
+	{
+	    STRINGS.release(urls[i]);
+	    STRINGS.release(titles[i]);
+	}
+	size = 0;
+    }
+
+    /**
+     * Estimate how much memory this history uses, not counting the strings,
+     * which are shared.
+     * 
+     * @return The estimate in bytes.
+     */
+    public long estimateBytes()
+    {
+	return (long) parents.length * BYTES_PER_NODE;
+    }
+
+    /**
+     * Copy a History into a new CompactHistory, keeping its shape, titles,
+     * primary forwards, and current node.
+     * 
+     * @param history
+     *            The History to copy.
+     * @return The copy.
+     */
+    public static CompactHistory from(History history)
+    {
+	HistoryNode root = history.getRoot();
+	CompactHistory compact = new CompactHistory(root.getUrl(),
+		root.getTitle());
+	HashMap<HistoryNode, Integer> ids = new HashMap<HistoryNode, Integer>();
+	ids.put(root, 0);
+	HistoryNode[] queue = new HistoryNode[] { root };
+	int head = 0;
+	int tail = 1;
+	while (head < tail)
+	{
+	    HistoryNode node = queue[head++];
+	    int id = ids.get(node);
+	    HistoryNode[] forwards = node.getForwardAsArray();
+	    // Add oldest first, so the newest ends up first, like in History.
+	    for (int i = forwards.length - 1; i >= 0; i--)
+	    {
+		int child = compact.add(id, forwards[i].getUrl());
+		compact.setTitle(child, forwards[i].getTitle());
+		ids.put(forwards[i], child);
+		if (tail == queue.length)
+		    queue = Arrays.copyOf(queue, queue.length * 2);
+		queue[tail++] = forwards[i];
+	    }
+	    if (forwards.length > 0)
+		compact.primaries[id] = ids.get(forwards[0]);
+	}
+	compact.current = ids.get(history.getCurrent());
+	return compact;
+    }
+
+    /**
+     * Copy this into a new History, keeping its shape, titles, primary
+     * forwards, and current node.
+     * 
+     * @param gui
+     *            The GUI that will use the copy.
+     * @return The copy.
+     */
+    public History toHistory(GUI gui)
+    {
+	History history = new History(gui, getUrl(0), getTitle(0));
+	HistoryNode[] nodes = new HistoryNode[size];
+	nodes[0] = history.getRoot();
+	// Parents always have smaller indices than their forwards.
+	for (int i = 1; i < size; i++)
+	{
+	    nodes[i] = history.addRestored(nodes[parents[i]], getUrl(i));
+	    nodes[i].setTitle(getTitle(i));
+	}
+	for (int i = 0; i < size; i++)
+	    if (primaries[i] != NONE)
+		nodes[i].setPrimary(nodes[primaries[i]]);
+	history.setCurrent(nodes[current]);
+	return history;
+    }
+
+    /**
+     * Create a string version of the tree, in the same format as History,
+     * with the primary forward listed first.
+     * 
+     * @return the String version.
+     */
+    public String toString()
+    {
+	StringBuilder builder = new StringBuilder();
+	int[] stack = new int[INITIAL_CAPACITY];
+	int[] depths = new int[INITIAL_CAPACITY];
+	boolean[] closing = new boolean[INITIAL_CAPACITY];
+	stack[0] = 0;
+	depths[0] = 0;
+	closing[0] = false;
+	int top = 1;
+	while (top > 0)
+	{
+	    top--;
+	    int node = stack[top];
+	    int depth = depths[top];
+	    for (int i = 0; i < depth; i++)
+		builder.append(' ');
+	    if (closing[top])
+	    {
+		builder.append('}');
+		if (depth > 0)
+		    builder.append('\n');
+		continue;
+	    }
+	    builder.append(HistoryNode.abbreviate(getTitle(node))).append(
+		    ": {\n");
+
+	    // Push the closing brace, then the forwards in reverse order.
+	    int count = 0;
+	    for (int f = firstForwards[node]; f != NONE; f = nextSiblings[f])
+		count++;
+	    if (top + count + 1 >= stack.length)
+	    {
+		int length = Math.max(stack.length * 2, top + count + 2);
+		stack = Arrays.copyOf(stack, length);
+		depths = Arrays.copyOf(depths, length);
+		closing = Arrays.copyOf(closing, length);
+	    }
+	    stack[top] = node;
+	    depths[top] = depth;
+	    closing[top] = true;
+	    top++;
+	    int[] order = new int[count];
+	    int i = 0;
+	    if (primaries[node] != NONE)
+		order[i++] = primaries[node];
+	    for (int f = firstForwards[node]; f != NONE; f = nextSiblings[f])
+		if (f != primaries[node])
+		    order[i++] = f;
+	    for (int j = count - 1; j >= 0; j--)
+	    {
+		stack[top] = order[j];
+		depths[top] = depth + 1;
+		closing[top] = false;
+		top++;
+	    }
+	}
+	return builder.toString();
+    }
+
+    /**
+     * Adds a node as the newest, primary forward of a parent.
+     * 
+     * @param parent
+     *            The parent, or NONE for the root.
+     * @param url
+     *            The node's URL.
+     * @return The new node.
+     */
+    private int add(int parent, String url)
+    {
+	if (size == parents.length)
+	{
+	    int length = size * 2;
+	    parents = Arrays.copyOf(parents, length);
+	    firstForwards = Arrays.copyOf(firstForwards, length);
+	    nextSiblings = Arrays.copyOf(nextSiblings, length);
+	    primaries = Arrays.copyOf(primaries, length);
+	    urls = Arrays.copyOf(urls, length);
+	    titles = Arrays.copyOf(titles, length);
+	}
+	int node = size++;
+	parents[node] = parent;
+	firstForwards[node] = NONE;
+	primaries[node] = NONE;
+	urls[node] = STRINGS.intern(url);
+	titles[node] = STRINGS.intern(url);
+	if (parent != NONE)
+	{
+	    nextSiblings[node] = firstForwards[parent];
+	    firstForwards[parent] = node;
+	    primaries[parent] = node;
+	}
+	else
+	    nextSiblings[node] = NONE;
+	return node;
+    }
+}
@@ -0,0 +1,294 @@
+package io.aks.WebBrowser;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javafx.application.Platform;
+
+/**
+ * Carries console output from Java to the Javascript console of the selected
+ * tab. Any thread can add a message without locking: messages go in a
+ * fixed-size ring, and when it is full they are dropped and counted instead of
+ * piling up. The JavaFX thread takes everything in the ring at once and runs
+ * one script that logs it all, so a thread that prints a lot costs one
+ * runLater and one script per batch, not per line.
+ * 
+ * @author Akshay
+ *
+ */
+public class ConsoleBridge
+{
+    public static final String LOG = "log";
+    public static final String INFO = "info";
+    public static final String WARN = "warn";
+    public static final String ERROR = "error";
+    public static final int DEFAULT_CAPACITY = 1024;
+    /**
+     * The most messages delivered in one script. The rest wait for the next
+     * one.
+     */
+    private static final int MAX_BATCH = 256;
+
+    private final Main main;
+    private final int mask;
+    private final AtomicReferenceArray<ConsoleMessage> slots;
+    /**
+     * For each slot, the position it can be written at, or one more than the
+     * position it holds a message for.
+     */
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * The next position to read. Only the JavaFX thread reads.
+     */
+    private long head = 0;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable drainer = new Runnable()
+    {
+	@Override
+	public void run()
+	{
+	    drain();
+	}
+    };
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Creates a bridge with room for DEFAULT_CAPACITY messages.
+     * 
+     * @param main
+     *            The Main class, to find the selected tab.
+     */
+    public ConsoleBridge(Main main)
+    {
+	this(main, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a bridge.
+     * 
+     * @param main
+     *            The Main class, to find the selected tab.
+     * @param capacity
+     *            How many messages can wait. Rounded up to a power of 2.
+     */
+    public ConsoleBridge(Main main, int capacity)
+    {
+	this.main = main;
+	int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+	mask = size - 1;
+	slots = new AtomicReferenceArray<ConsoleMessage>(size);
+	sequences = new AtomicLongArray(size);
+	for (int i = 0; i < size; i++)
+	    sequences.set(i, i);
+    }
+
+    /**
+     * Add a message, from any thread. It is delivered on the JavaFX thread
+     * soon after.
+     * 
+     * @param level
+     *            LOG, INFO, WARN, or ERROR.
+     * @param text
+     *            The message.
+     * @return False if the ring was full and the message was dropped.
+     */
+    public boolean offer(String level, String text)
+    {
+	offered.incrementAndGet();
+	long position;
+	int index;
+	while (true)
+	{
+	    position = tail.get();
+	    index = (int) (position & mask);
+	    long difference = sequences.get(index) - position;
+	    if (difference == 0)
+	    {
+		if (tail.compareAndSet(position, position + 1))
+		    break;
+	    }
+	    else if (difference < 0)
+	    {
+		dropped.incrementAndGet();
+		return false;
+	    }
+	}
+	slots.set(index, new ConsoleMessage(level, text));
+	sequences.set(index, position + 1);
+	if (scheduled.compareAndSet(false, true))
+	    Platform.runLater(drainer);
+	return true;
+    }
+
+    /**
+     * Take the next message out of the ring. Only called on the JavaFX thread.
+     * 
+     * @return The message, or null if there isn't one ready.
+     */
+    ConsoleMessage poll()
+    {
+	int index = (int) (head & mask);
+	if (sequences.get(index) != head + 1)
+	    return null;
+	ConsoleMessage message = slots.get(index);
+	slots.set(index, null);
+	sequences.set(index, head + mask + 1);
+	head++;
+	return message;
+    }
+
+    /**
+     * Deliver the waiting messages to the selected tab as one script.
+     */
+    private void drain()
+    {
+	scheduled.set(false);
+	Object event = BrowserEvents.beginConsoleBatch();
+	StringBuilder script = new StringBuilder(
+		"(function(m){for(var i=0;i<m.length;i+=2)console[m[i]](m[i+1]);})([");
+	int count = 0;
+	ConsoleMessage message;
+	while (count < MAX_BATCH && (message = poll()) != null)
+	{
+	    if (count > 0)
+		script.append(',');
+	    script.append(quote(message.getLevel())).append(',')
+		    .append(quote(message.getText()));
+	    count++;
+	}
+	if (count == MAX_BATCH && scheduled.compareAndSet(false, true))
+	    Platform.runLater(drainer);
+	int sent = 0;
+	if (count > 0 && main.getTabs() != null
+		&& !main.getTabs().getSelectionModel().isEmpty())
+	{
+	    script.append("])");
+	    try
+	    {
+		((GUI) main.getTabs().getSelectionModel().getSelectedItem()
+			.getContent()).getWebViewController()
+			.runConsoleScript(script.toString());
+		sent = count;
+	    }
+	    catch (RuntimeException e)
+	    {
+		// A page without a console can't show the messages.
+	    }
+	}
+	if (sent > 0)
+	{
+	    batches.incrementAndGet();
+	    delivered.addAndGet(sent);
+	}
+	// Messages with nowhere to go are lost, like a full ring's.
+	dropped.addAndGet(count - sent);
+	BrowserEvents.endConsoleBatch(event, sent, dropped.get());
+    }
+
+    /**
+     * Make a Javascript string literal.
+     * 
+     * @param text
+     *            Any text.
+     * @return The text in single quotes, with everything that could end the
+     *         string or the script escaped.
+     */
+    public static String quote(String text)
+    {
+	if (text == null)
+	    return "null";
+	StringBuilder quoted = new StringBuilder(text.length() + 2);
+	quoted.append('\'');
+	for (int i = 0; i < text.length(); i++)
+	{
+	    char c = text.charAt(i);
+	    if (c == '\'' || c == '\\')
+		quoted.append('\\').append(c);
+	    else if (c == '\n')
+		quoted.append("\\n");
+	    else if (c == '\r')
+		quoted.append("\\r");
+	    else if (c == '\t')
+		quoted.append("\\t");
+	    else if (c < 0x20 || c == '\u2028' || c == '\u2029')
+		quoted.append(String.format("\\u%04x", (int) c));
+	    else
+		quoted.append(c);
+	}
+	return quoted.append('\'').toString();
+    }
+
+    /**
+     * @return How many messages were added or dropped.
+     */
+    public long getOffered()
+    {
+	return offered.get();
+    }
+
+    /**
+     * @return How many messages were dropped because the ring was full, or
+     *         because no tab could show them.
+     */
+    public long getDropped()
+    {
+	return dropped.get();
+    }
+
+    /**
+     * @return How many messages were delivered to a tab.
+     */
+    public long getDelivered()
+    {
+	return delivered.get();
+    }
+
+    /**
+     * @return How many scripts delivered messages.
+     */
+    public long getBatches()
+    {
+	return batches.get();
+    }
+
+    /**
+     * @return How many messages the ring holds.
+     */
+    public int getCapacity()
+    {
+	return mask + 1;
+    }
+}
+
+/**
+ * One message waiting in a ConsoleBridge.
+ * 
+ * @author Akshay
+ *
+ */
+class ConsoleMessage
+{
+    private final String level;
+    private final String text;
+
+    public ConsoleMessage(String level, String text)
+    {
+	this.level = level;
+	this.text = text;
+    }
+
+    public String getLevel()
+    {
+	return level;
+    }
+
+    public String getText()
+    {
+	return text;
+    }
+}
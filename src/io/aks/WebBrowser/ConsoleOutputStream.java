@@ -0,0 +1,99 @@
+package io.aks.WebBrowser;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Copies everything written to it to another stream, and sends each line to a
+ * ConsoleBridge and an AsyncLogWriter. Because it sits under the PrintStream,
+ * every print, println, write, and printf is captured.
+ * 
+ * @author Akshay
+ *
+ */
+class ConsoleOutputStream extends OutputStream
+{
+    /**
+     * The longest line that is kept waiting for its end.
+     */
+    private static final int MAX_LINE = 8192;
+    private final ConsoleBridge bridge;
+    private final AsyncLogWriter log;
+    private final String level;
+    private final OutputStream out;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    /**
+     * Creates the stream.
+     * 
+     * @param bridge
+     *            Where to send lines.
+     * @param log
+     *            Where to log lines, or null to not log them.
+     * @param level
+     *            The console level to send them at.
+     * @param out
+     *            Where to copy everything.
+     */
+    public ConsoleOutputStream(ConsoleBridge bridge, AsyncLogWriter log,
+	    String level, OutputStream out)
+    {
+	this.bridge = bridge;
+	this.log = log;
+	this.level = level;
+	this.out = out;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException
+    {
+	out.write(b);
+	if (b == '\n')
+	    sendLine();
+	else
+	{
+	    line.write(b);
+	    if (line.size() >= MAX_LINE)
+		sendLine();
+	}
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len)
+	    throws IOException
+    {
+	out.write(b, off, len);
+	int start = off;
+	for (int i = off; i < off + len; i++)
+	{
+	    if (b[i] != '\n')
+		continue;
+	    line.write(b, start, i - start);
+	    sendLine();
+	    start = i + 1;
+	}
+	line.write(b, start, off + len - start);
+	if (line.size() >= MAX_LINE)
+	    sendLine();
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+	out.flush();
+    }
+
+    private void sendLine()
+    {
+	int end = line.size();
+	byte[] bytes = line.toByteArray();
+	if (end > 0 && bytes[end - 1] == '\r')
+	    end--;
+	line.reset();
+	String text = new String(bytes, 0, end, Charset.defaultCharset());
+	if (log != null)
+	    log.append(level, text);
+	bridge.offer(level, text);
+    }
+}
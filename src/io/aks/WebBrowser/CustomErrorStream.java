@@ -2,22 +2,22 @@ package io.aks.WebBrowser;
 import java.io.OutputStream;
 import java.io.PrintStream;
 
-import javafx.application.Platform;
-
 /**
- * The class intercepts string error messages and redirects them into the
- * Javascript console as error messages. They will only be visible after Firebug
- * is turned on.
+ * The class intercepts error messages and redirects them into the Javascript
+ * console as error messages, through the Main class's ConsoleBridge.
+ * Everything printed is captured, not just println, and also written to the
+ * log file by the Main class's AsyncLogWriter. They will only be visible
+ * after Firebug is turned on.
  * 
  * @author Akshay
  *
  */
 public class CustomErrorStream extends PrintStream
 {
-    private Main main;
-
     /**
-     * Creates the custom error stream.
+     * Creates the custom error stream. Each line written to it is printed in
+     * Java, written to the log file, and sent to the selected tab's Javascript
+     * console.
      * 
      * @param main
      *            The Main class that created this stream.
@@ -27,30 +27,8 @@ public class CustomErrorStream extends PrintStream
      */
     public CustomErrorStream(Main main, OutputStream out)
     {
-	super(out);
-	this.main = main;
-    }
-
-    /**
-     * Sends the error into Javascript, then prints it in Java.
-     * 
-     * @param error
-     *            The error message.
-     */
-    @Override
-    public void println(String error)
-    {
-	Platform.runLater(new Runnable()
-	{
-	    @Override
-	    public void run()
-	    {
-		if (!main.getTabs().getSelectionModel().isEmpty())
-		    ((GUI) main.getTabs().getSelectionModel().getSelectedItem()
-			    .getContent()).getWebViewController().error(error);
-	    }
-	});
-	super.println(error);
+	super(new ConsoleOutputStream(main.getConsoleBridge(), main
+		.getLogWriter(), ConsoleBridge.ERROR, out), true);
     }
 
-}
\ No newline at end of file
+}
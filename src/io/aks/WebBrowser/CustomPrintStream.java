@@ -2,55 +2,33 @@ package io.aks.WebBrowser;
 import java.io.OutputStream;
 import java.io.PrintStream;
 
-import javafx.application.Platform;
-
 /**
- * The class intercepts string console messages and redirects them into the
- * Javascript console as warnings. They will only be visible after Firebug is
- * turned on.
+ * The class intercepts console messages and redirects them into the
+ * Javascript console as warnings, through the Main class's ConsoleBridge.
+ * Everything printed is captured, not just println, and also written to the
+ * log file by the Main class's AsyncLogWriter. They will only be visible
+ * after Firebug is turned on.
  * 
  * @author Akshay
  *
  */
 class CustomPrintStream extends PrintStream
 {
-    private Main main;
-
     /**
-     * Creates the custom print stream.
+     * Creates the custom print stream. Each line written to it is printed in
+     * Java, written to the log file, and sent to the selected tab's Javascript
+     * console.
      * 
      * @param main
      *            The Main class that created this stream.
      * @param out
      *            An output stream which is used to initialize the print stream.
-     *            This should be System.err.
+     *            This should be System.out.
      */
     public CustomPrintStream(Main main, OutputStream out)
     {
-	super(out);
-	this.main = main;
-    }
-
-    /**
-     * Sends the message into Javascript, then prints it in Java.
-     * 
-     * @param error
-     *            The error message.
-     */
-    @Override
-    public void println(String error)
-    {
-	Platform.runLater(new Runnable()
-	{
-	    @Override
-	    public void run()
-	    {
-		if (!main.getTabs().getSelectionModel().isEmpty())
-		    ((GUI) main.getTabs().getSelectionModel().getSelectedItem()
-			    .getContent()).getWebViewController().warn(error);
-	    }
-	});
-	super.println(error);
+	super(new ConsoleOutputStream(main.getConsoleBridge(), main
+		.getLogWriter(), ConsoleBridge.WARN, out), true);
     }
 
-}
\ No newline at end of file
+}
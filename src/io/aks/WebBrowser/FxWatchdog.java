@@ -0,0 +1,384 @@
+package io.aks.WebBrowser;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.application.Platform;
+
+/**
+ * Watches the JavaFX thread for stalls. Every so often a heartbeat is added
+ * behind whatever is waiting for the thread, and the time it waits to run is
+ * recorded; JavaFX doesn't say how many runnables are waiting, so this is how
+ * far behind the thread is. Only one heartbeat waits at a time, so a stuck
+ * thread doesn't fill its queue with them.
+ * 
+ * When a heartbeat waits longer than the stall threshold, the JavaFX thread's
+ * stack is sampled until it runs. The stall, with its duration and the stacks
+ * it was in, goes in a bounded FxStallLog that can be shown in a tab.
+ * 
+ * @author Akshay
+ *
+ */
+public class FxWatchdog implements Runnable
+{
+    public static final long DEFAULT_INTERVAL = 500;
+    public static final long DEFAULT_STALL_MILLIS = 500;
+    /**
+     * How often the watchdog checks on the heartbeat, and samples the stack
+     * during a stall, in milliseconds.
+     */
+    private static final long SAMPLE_INTERVAL = 50;
+
+    private final MetricHistogram delays;
+    private final MetricCounter stallCount;
+    private final MetricHistogram stallDurations;
+    private final FxStallLog stalls = new FxStallLog(FxStallLog.DEFAULT_CAPACITY);
+    private final long intervalNanos;
+    private final long stallMillis;
+    private final Runnable beat = new Runnable()
+    {
+	@Override
+	public void run()
+	{
+	    arrived(System.nanoTime());
+	}
+    };
+    private volatile Thread fxThread;
+    private volatile long postedAt;
+    private volatile long waitedNanos;
+    private volatile boolean waiting = false;
+    private long lastPosted;
+    /**
+     * The stall being sampled. Only used on the registry's thread.
+     */
+    private FxStall stall;
+
+    /**
+     * Creates the watchdog and starts it on the registry's thread. The
+     * registry gets FX_QUEUE_DELAY, FX_QUEUE_WAITING, FX_STALLS, and
+     * FX_STALL_DURATION metrics.
+     * 
+     * @param metrics
+     *            The registry.
+     * @param interval
+     *            How often to send a heartbeat, in milliseconds.
+     * @param stallMillis
+     *            How long a heartbeat can wait before the thread counts as
+     *            stalled.
+     */
+    public FxWatchdog(MetricsRegistry metrics, long interval, long stallMillis)
+    {
+	this.intervalNanos = interval * 1000000;
+	this.stallMillis = stallMillis;
+	if (Platform.isFxApplicationThread())
+	    fxThread = Thread.currentThread();
+	delays = metrics.histogram(MetricsRegistry.FX_QUEUE_DELAY,
+		"How long runnables wait for the JavaFX thread");
+	metrics.gauge(MetricsRegistry.FX_QUEUE_WAITING,
+		"How long the heartbeat that is waiting has waited", new Gauge()
+		{
+		    @Override
+		    public long value()
+		    {
+			return getWaitingMillis();
+		    }
+		});
+	stallCount = metrics.counter(MetricsRegistry.FX_STALLS,
+		"Times the JavaFX thread stalled");
+	stallDurations = metrics.histogram(MetricsRegistry.FX_STALL_DURATION,
+		"How long the JavaFX thread stalled");
+	lastPosted = System.nanoTime() - intervalNanos;
+	metrics.every(this, SAMPLE_INTERVAL);
+    }
+
+    /**
+     * Sample the stack if the heartbeat is late, record a stall that ended,
+     * and send a heartbeat when it is time.
+     */
+    @Override
+    public void run()
+    {
+	long now = System.nanoTime();
+	if (waiting)
+	{
+	    long waited = (now - postedAt) / 1000000;
+	    if (waited >= stallMillis && fxThread != null)
+		sample(waited);
+	    return;
+	}
+	if (stall != null)
+	{
+	    long duration = waitedNanos / 1000000;
+	    stall.finish(duration);
+	    stalls.add(stall);
+	    stallCount.increment();
+	    stallDurations.record(duration);
+	    System.err.println("The JavaFX thread stalled for " + duration
+		    + " ms in " + stall.getTopFrame());
+	    stall = null;
+	}
+	if (now - lastPosted < intervalNanos)
+	    return;
+	lastPosted = now;
+	postedAt = now;
+	waiting = true;
+	try
+	{
+	    Platform.runLater(beat);
+	}
+	catch (IllegalStateException e)
+	{
+	    // JavaFX has exited.
+	    waiting = false;
+	}
+    }
+
+    /**
+     * Record where the JavaFX thread is during a stall.
+     * 
+     * @param waited
+     *            How long the heartbeat has waited so far, in milliseconds.
+     */
+    private void sample(long waited)
+    {
+	if (stall == null)
+	    stall = new FxStall(System.currentTimeMillis() - waited);
+	stall.addSample(fxThread.getStackTrace());
+    }
+
+    /**
+     * Record how long a heartbeat waited. Called on the JavaFX thread.
+     * 
+     * @param now
+     *            When it ran, from System.nanoTime().
+     */
+    void arrived(long now)
+    {
+	fxThread = Thread.currentThread();
+	waitedNanos = now - postedAt;
+	delays.record(waitedNanos / 1000000);
+	waiting = false;
+    }
+
+    /**
+     * @return How long the heartbeat that is waiting has waited, in
+     *         milliseconds, or 0 if none is.
+     */
+    public long getWaitingMillis()
+    {
+	return waiting ? (System.nanoTime() - postedAt) / 1000000 : 0;
+    }
+
+    /**
+     * @return The stalls that were recorded.
+     */
+    public FxStallLog getStalls()
+    {
+	return stalls;
+    }
+
+    public long getStallMillis()
+    {
+	return stallMillis;
+    }
+}
+
+/**
+ * The most recent stalls of the JavaFX thread. The oldest are forgotten when
+ * there are too many.
+ * 
+ * @author Akshay
+ *
+ */
+class FxStallLog
+{
+    static final int DEFAULT_CAPACITY = 50;
+    private final ArrayDeque<FxStall> stalls = new ArrayDeque<FxStall>();
+    private final int capacity;
+    private long total = 0;
+
+    FxStallLog(int capacity)
+    {
+	this.capacity = capacity;
+    }
+
+    synchronized void add(FxStall stall)
+    {
+	if (stalls.size() == capacity)
+	    stalls.removeFirst();
+	stalls.addLast(stall);
+	total++;
+    }
+
+    /**
+     * @return The stalls that are kept, newest first.
+     */
+    synchronized ArrayList<FxStall> getStalls()
+    {
+	ArrayList<FxStall> list = new ArrayList<FxStall>(stalls);
+	Collections.reverse(list);
+	return list;
+    }
+
+    /**
+     * @return How many stalls there have been, including forgotten ones.
+     */
+    synchronized long getTotal()
+    {
+	return total;
+    }
+
+    /**
+     * Make a page that lists the stalls, newest first, with each stack that
+     * was sampled during them and how many samples were in it.
+     * 
+     * @param stallMillis
+     *            The stall threshold, to explain the page.
+     * @return The HTML.
+     */
+    String toHTML(long stallMillis)
+    {
+	ArrayList<FxStall> list = getStalls();
+	StringBuilder html = new StringBuilder(
+		"<html><head><title>JavaFX Thread Stalls</title></head><body>");
+	html.append("<h2>JavaFX Thread Stalls</h2><p>").append(getTotal())
+		.append(" stalls longer than ").append(stallMillis)
+		.append(" ms. The last ").append(list.size())
+		.append(" are shown, newest first. Stacks are root first, ")
+		.append("separated by semicolons, with their sample counts.</p>");
+	for (FxStall stall : list)
+	{
+	    html.append("<h3>").append(new Date(stall.getStartedAt()))
+		    .append(": ").append(stall.getDuration()).append(" ms, ")
+		    .append(stall.getSamples()).append(" samples</h3><pre>");
+	    for (Map.Entry<String, Integer> stack : stall.getStacks()
+		    .entrySet())
+		html.append(escape(stack.getKey())).append(' ')
+			.append(stack.getValue()).append('\n');
+	    html.append("</pre>");
+	}
+	return html.append("</body></html>").toString();
+    }
+
+    private static String escape(String text)
+    {
+	return text.replace("&", "&amp;").replace("<", "&lt;")
+		.replace(">", "&gt;");
+    }
+}
+
+/**
+ * One stall of the JavaFX thread: when it started, how long it lasted, and
+ * the stacks the thread was sampled in, collapsed into one line each, root
+ * first, the way flame graph tools read them.
+ * 
+ * @author Akshay
+ *
+ */
+class FxStall
+{
+    /**
+     * The most different stacks kept for one stall. Samples in other stacks
+     * are only counted.
+     */
+    private static final int MAX_STACKS = 16;
+    private static final int MAX_DEPTH = 128;
+    private static final String OTHER = "(other stacks)";
+    private final long startedAt;
+    private long duration;
+    private int samples = 0;
+    private final LinkedHashMap<String, Integer> stacks = new LinkedHashMap<String, Integer>();
+
+    /**
+     * @param startedAt
+     *            When the stall started, in milliseconds since the epoch.
+     */
+    FxStall(long startedAt)
+    {
+	this.startedAt = startedAt;
+    }
+
+    void addSample(StackTraceElement[] trace)
+    {
+	samples++;
+	String stack = collapse(trace);
+	if (!stacks.containsKey(stack) && stacks.size() >= MAX_STACKS)
+	    stack = OTHER;
+	Integer count = stacks.get(stack);
+	stacks.put(stack, count == null ? 1 : count + 1);
+    }
+
+    void finish(long duration)
+    {
+	this.duration = duration;
+    }
+
+    /**
+     * @param trace
+     *            A stack, innermost frame first.
+     * @return The stack on one line, outermost frame first, frames separated
+     *         by semicolons.
+     */
+    static String collapse(StackTraceElement[] trace)
+    {
+	StringBuilder line = new StringBuilder();
+	for (int i = Math.min(trace.length, MAX_DEPTH) - 1; i >= 0; i--)
+	{
+	    if (line.length() > 0)
+		line.append(';');
+	    line.append(trace[i].getClassName()).append('.')
+		    .append(trace[i].getMethodName());
+	}
+	return line.toString();
+    }
+
+    /**
+     * @return The innermost frame of the stack with the most samples, or "?"
+     *         if there weren't any.
+     */
+    String getTopFrame()
+    {
+	String top = null;
+	int most = 0;
+	for (Map.Entry<String, Integer> stack : stacks.entrySet())
+	{
+	    if (stack.getValue() > most)
+	    {
+		most = stack.getValue();
+		top = stack.getKey();
+	    }
+	}
+	if (top == null)
+	    return "?";
+	return top.substring(top.lastIndexOf(';') + 1);
+    }
+
+    long getStartedAt()
+    {
+	return startedAt;
+    }
+
+    /**
+     * @return How long the stall lasted, in milliseconds.
+     */
+    long getDuration()
+    {
+	return duration;
+    }
+
+    int getSamples()
+    {
+	return samples;
+    }
+
+    /**
+     * @return Each collapsed stack and how many samples were in it.
+     */
+    LinkedHashMap<String, Integer> getStacks()
+    {
+	return stacks;
+    }
+}
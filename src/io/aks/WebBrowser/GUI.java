@@ -1,16 +1,14 @@
 package io.aks.WebBrowser;
 import java.awt.BorderLayout;
-import java.util.ArrayList;
 
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
-import javafx.geometry.Pos;
 import javafx.print.PrinterJob;
+import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.control.Button;
-import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Tab;
-import javafx.scene.control.TabPane;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -18,6 +16,8 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.transform.Scale;
+import javafx.scene.web.WebView;
 
 import javax.swing.JPanel;
 
@@ -32,14 +32,24 @@ import javax.swing.JPanel;
 public class GUI extends BorderPane
 {
     private static final String DEFAULT_TITLE = "New Tab";
+    private static final double SNAPSHOT_SCALE = 0.25;
     private TextField addressBar;
-    private BorderPane historyPane;
+    private Omnibox omnibox;
+    private HistoryPane historyPane;
     private ScrollPane historyScrollPane;
+    private HistoryTreeView historyTree;
+    private BorderPane browserPane;
     private Button backButton;
     private Button forwardButton;
     private WebViewController webViewController;
     private History history;
     private Main main;
+    private RefreshScheduler refreshScheduler = new RefreshScheduler(this);
+    private String pendingURL;
+    private Image snapshot;
+    private boolean disposed = false;
+    private static int tabCount = 0;
+    private final int tabId = ++tabCount;
 
     /**
      * Creates a GUI, with history, navigation buttons, and a Web View.
@@ -52,6 +62,25 @@ public class GUI extends BorderPane
      *            The containing tab.
      */
     public GUI(Main main, String start, Tab tab)
+    {
+	this(main, start, tab, true);
+    }
+
+    /**
+     * Creates a GUI, with history, navigation buttons, and a Web View, which
+     * only loads the start url if asked to.
+     * 
+     * @param main
+     *            The containing Main class.
+     * @param start
+     *            The url to start on.
+     * @param tab
+     *            The containing tab.
+     * @param load
+     *            Whether to load the start url, false if the caller will load
+     *            a page itself.
+     */
+    public GUI(Main main, String start, Tab tab, boolean load)
     {
 	history = new History(this, start, DEFAULT_TITLE);
 	this.main = main;
@@ -60,10 +89,12 @@ public class GUI extends BorderPane
 	tools.setLayout(new BorderLayout());
 
 	BorderPane bp = new BorderPane();
+	browserPane = bp;
 	BorderPane navPane = new BorderPane();
 
-	webViewController = new WebViewController(main, bp, this, start, tab);
-	
+	webViewController = new WebViewController(main, bp, this,
+		load ? start : null, tab);
+
 	bp.setTop(navPane);
 	navPane.setLeft(createNavTools());
 
@@ -74,7 +105,7 @@ public class GUI extends BorderPane
     }
 
     /**
-     * Creates the address bar and history box.
+     * Creates the address bar, with its suggestions, and history box.
      * 
      * @param bp
      *            The BorderPane that contains the history scroll pane.
@@ -85,10 +116,10 @@ public class GUI extends BorderPane
     {
 	addressBar = new TextField();
 	addressBar.setOnAction(new AddressBarHandler(this));
+	omnibox = new Omnibox(this, addressBar);
 	navPane.setCenter(addressBar);
 
-	historyPane = new BorderPane();
-	historyPane.setMaxWidth(200);
+	historyPane = new HistoryPane(this, history);
 	historyScrollPane = new ScrollPane(historyPane);
 	historyScrollPane.setVisible(true);
 	historyScrollPane.setManaged(true);
@@ -163,8 +194,10 @@ public class GUI extends BorderPane
      */
     public void setURL(String url)
     {
-	addressBar.setText(url);
-	updateHistoryPane();
+	pendingURL = url;
+	refreshScheduler.request(RefreshScheduler.ADDRESS_BAR
+		| RefreshScheduler.HISTORY
+		| RefreshScheduler.NAVIGATION_BUTTONS);
     }
 
     /**
@@ -192,95 +225,94 @@ public class GUI extends BorderPane
     }
 
     /**
-     * The first method called in the updateHistoryPane recursive sequence. This
-     * sets up the pane for the root, then calls the recursive method.
+     * Mark the history pane and the back and forward buttons as out of date.
+     * They are brought up to date on the next pulse, so calling this many
+     * times in a row only costs one update.
      */
     public void updateHistoryPane()
     {
-	if (getHistory().getRoot() == null)
-	    return;
-	backButton.setDisable(!getHistory().canGoBack());
-	forwardButton.setDisable(!getHistory().canGoForward());
-	historyPane.getChildren().removeAll(historyPane.getChildren());
-
-	Label home = new Label();
-	home.setText(getHistory().getRoot().getTitle());
-	home.setAlignment(Pos.CENTER);
-	historyPane.setTop(home);
-
-	BorderPane newPane = new BorderPane();
-	historyPane.setCenter(newPane);
-	updateHistoryPane(newPane, getHistory().getRoot(), getHistory());
+	refreshScheduler.request(RefreshScheduler.HISTORY
+		| RefreshScheduler.NAVIGATION_BUTTONS);
     }
 
     /**
-     * The recursive updateHistoryPane method. This creates a tabview for all of
-     * the node's children.
+     * Bring the stale parts of the GUI up to date. Only the parts of the
+     * history pane that changed since the last update are touched. Called by
+     * the RefreshScheduler.
      * 
-     * @param panel
-     *            The panel to add to.
-     * @param currentNode
-     *            The current node in the sequence.
-     * @param history
-     *            The history to use.
+     * @param parts
+     *            The stale parts, as RefreshScheduler flags.
      */
-    public void updateHistoryPane(BorderPane panel, HistoryNode currentNode,
-	    History history)
+    void refresh(int parts)
     {
-	panel.setMaxWidth(200);
-	BorderPane topPane = new BorderPane();
-	Button jump = new Button("->");
-	jump.setOnAction(new HistoryButtonHandler(this, currentNode.getUrl(),
-		currentNode, history));
-	topPane.setTop(jump);
-	panel.setTop(topPane);
-
-	if (history.getCurrent() == currentNode)
+	if ((parts & RefreshScheduler.ADDRESS_BAR) != 0 && pendingURL != null)
 	{
-	    jump.setDisable(true);
-	    jump.setText("You are here.");
-
+	    omnibox.setText(pendingURL);
+	    pendingURL = null;
 	}
-
-	ArrayList<HistoryNode> historyItems = currentNode.getForward();
-	if (historyItems.size() == 0)
-	{
+	if (getHistory().getRoot() == null)
 	    return;
+	if ((parts & RefreshScheduler.NAVIGATION_BUTTONS) != 0)
+	{
+	    backButton.setDisable(!getHistory().canGoBack());
+	    forwardButton.setDisable(!getHistory().canGoForward());
 	}
-
-	TabPane tabs = new TabPane();
-	topPane.setBottom(tabs);
-	for (HistoryNode i : historyItems)
+	if ((parts & RefreshScheduler.HISTORY) != 0)
 	{
-	    String abbrTitle = i.getTitle();
-	    if (abbrTitle.length() > 30)
-		abbrTitle = abbrTitle.substring(0, 30) + "...";
-	    Tab tab = new Tab(abbrTitle);
-	    tab.setClosable(false);
-	    BorderPane currentPane = new BorderPane();
-
-	    updateHistoryPane(currentPane, i, history);
-	    tab.setContent(currentPane);
-	    tabs.getTabs().add(tab);
-
+	    long start = System.nanoTime();
+	    Object event = BrowserEvents.beginHistoryPaneUpdate();
+	    historyPane.update();
+	    BrowserEvents.endHistoryPaneUpdate(event, this,
+		    historyPane.getNodeCount());
+	    main.getMetrics().getHistogram(MetricsRegistry.HISTORY_PANE_UPDATE)
+		    .record((System.nanoTime() - start) / 1000);
+	    main.getMetrics().getGauge(MetricsRegistry.HISTORY_NODES)
+		    .set(main.getHistoryBudget().getNodeCount());
+	    if (historyTree != null && historyTree.isVisible())
+		historyTree.update();
 	}
-
     }
 
     public void toggleHistory()
     {
-	if (historyScrollPane.isVisible())
+	Node view = browserPane.getRight();
+	if (view.isVisible())
 	{
-	    historyScrollPane.setVisible(false);
-	    historyScrollPane.setManaged(false);
+	    view.setVisible(false);
+	    view.setManaged(false);
 	}
 	else
 	{
-	    historyScrollPane.setVisible(true);
-	    historyScrollPane.setManaged(true);
+	    view.setVisible(true);
+	    view.setManaged(true);
+	    updateHistoryPane();
 	}
     }
 
+    /**
+     * Switch between the branching history pane and the HistoryTreeView,
+     * which stays fast for very large histories. The tree view is only made
+     * the first time it is shown.
+     */
+    public void toggleHistoryView()
+    {
+	Node oldView = browserPane.getRight();
+	Node newView;
+	if (oldView == historyScrollPane)
+	{
+	    if (historyTree == null)
+		historyTree = new HistoryTreeView(this, history);
+	    else
+		historyTree.update();
+	    newView = historyTree;
+	}
+	else
+	    newView = historyScrollPane;
+	newView.setVisible(oldView.isVisible());
+	newView.setManaged(oldView.isManaged());
+	browserPane.setRight(newView);
+    }
+
     public void print()
     {
 	if (Main.javaVersion < Main.MIN_JAVA_VERSION)
@@ -302,6 +334,95 @@ public class GUI extends BorderPane
 	return webViewController;
     }
 
+    /**
+     * Take a small picture of the page, to show if this tab is hibernated.
+     * Called when the tab stops being the selected one, while the page is
+     * still laid out.
+     */
+    public void takeSnapshot()
+    {
+	WebView view = webViewController.getWebView();
+	if (view == null || view.getWidth() <= 0 || view.getHeight() <= 0)
+	    return;
+	SnapshotParameters parameters = new SnapshotParameters();
+	parameters.setTransform(new Scale(SNAPSHOT_SCALE, SNAPSHOT_SCALE));
+	snapshot = view.snapshot(parameters, null);
+    }
+
+    /**
+     * Drop the WebView to save memory. The History, address bar, and tab title
+     * are kept, and the snapshot is shown in place of the page.
+     */
+    public void hibernate()
+    {
+	if (isHibernated())
+	    return;
+	if (snapshot == null)
+	    takeSnapshot();
+	webViewController.unload();
+	if (snapshot != null)
+	{
+	    ImageView view = new ImageView(snapshot);
+	    view.setPreserveRatio(true);
+	    view.setFitWidth(snapshot.getWidth() / SNAPSHOT_SCALE);
+	    browserPane.setCenter(view);
+	}
+    }
+
+    /**
+     * Make a new WebView for a hibernated tab and load the current page.
+     */
+    public void wake()
+    {
+	if (!isHibernated())
+	    return;
+	webViewController.reload(history.getCurrent().getUrl());
+	snapshot = null;
+    }
+
+    /**
+     * @return True if this tab's WebView was dropped by hibernate().
+     */
+    public boolean isHibernated()
+    {
+	return webViewController.isUnloaded();
+    }
+
+    /**
+     * Let go of everything this tab holds, because it was closed: stop
+     * refreshing it and suggesting for its address bar, unload its WebView,
+     * and clear its History. Nothing outside the tab should be able to reach
+     * it afterwards.
+     */
+    public void dispose()
+    {
+	if (disposed)
+	    return;
+	disposed = true;
+	refreshScheduler.stop();
+	omnibox.hide();
+	webViewController.unload();
+	history.clear();
+	browserPane.setCenter(null);
+	snapshot = null;
+    }
+
+    /**
+     * @return True if dispose() was called.
+     */
+    public boolean isDisposed()
+    {
+	return disposed;
+    }
+
+    /**
+     * @return The picture of the page taken by takeSnapshot(), or null.
+     */
+    public Image getSnapshot()
+    {
+	return snapshot;
+    }
+
     /**
      * @return This GUI's History
      */
@@ -310,6 +431,23 @@ public class GUI extends BorderPane
 	return history;
     }
 
+    /**
+     * @return This GUI's RefreshScheduler
+     */
+    public RefreshScheduler getRefreshScheduler()
+    {
+	return refreshScheduler;
+    }
+
+    /**
+     * @return A number that is different for every tab, to tell tabs apart in
+     *         Flight Recorder events.
+     */
+    public int getTabId()
+    {
+	return tabId;
+    }
+
     /**
      * @return This GUI's Main class
      */
@@ -332,7 +470,11 @@ class KeyEventHandler implements EventHandler<KeyEvent>
     @Override
     public void handle(KeyEvent e)
     {
-	if (e.isMetaDown() && e.getCode() == KeyCode.Y)
+	if (e.isMetaDown() && e.isShiftDown() && e.getCode() == KeyCode.Y)
+	{
+	    gui.toggleHistoryView();
+	}
+	else if (e.isMetaDown() && e.getCode() == KeyCode.Y)
 	{
 	    gui.toggleHistory();
 	}
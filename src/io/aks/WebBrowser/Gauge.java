@@ -0,0 +1,11 @@
+package io.aks.WebBrowser;
+/**
+ * Something a gauge can read its value from.
+ * 
+ * @author Akshay
+ *
+ */
+interface Gauge
+{
+    long value();
+}
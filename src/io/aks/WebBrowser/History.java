@@ -18,9 +18,20 @@ import java.util.ArrayList;
  */
 public class History
 {
+    /**
+     * Two URLs are the same page if they are the same in this form. It keeps
+     * fragments, because a node's URL is where going back to it goes.
+     */
+    private static final URLNormalizer PAGES = new URLNormalizer(0,
+	    URLNormalizer.DEFAULT_INTERNED);
     private HistoryNode current;
     private HistoryNode root;
     private GUI gui;
+    private ArrayList<HistoryListener> listeners = new ArrayList<HistoryListener>();
+    private HistoryBudget budget;
+    private int size = 1;
+    private long estimatedBytes;
+    private int evictedCount = 0;
 
     /**
      * Initialize to a certain location for the root.
@@ -36,20 +47,272 @@ public class History
     {
 	this.gui = gui;
 	current = new HistoryNode(startURL, title);
+	current.setHistory(this);
+	current.visit();
 	root = getCurrent();
+	estimatedBytes = root.estimateBytes();
+    }
+
+    /**
+     * Register a listener to be told about changes to this tree.
+     * 
+     * @param listener
+     *            The listener to add.
+     */
+    public void addHistoryListener(HistoryListener listener)
+    {
+	listeners.add(listener);
     }
 
     /**
-     * Add a URL as a child of the current node. Uses the URL as the default
-     * title.
+     * Stop telling a listener about changes to this tree.
+     * 
+     * @param listener
+     *            The listener to remove.
+     */
+    public void removeHistoryListener(HistoryListener listener)
+    {
+	listeners.remove(listener);
+    }
+
+    /**
+     * Add a URL as a child of the current node, because it was navigated to,
+     * and count it as visited. Uses the URL as the default title. If the
+     * current node, or one of its forwards, is already for the same page,
+     * that node is visited again instead, so reloading a page doesn't grow
+     * the tree.
      * 
      * @param url
      *            The new URL.
      */
     public void addURL(String url)
     {
+	HistoryNode visited = findVisited(url);
+	if (visited != null)
+	{
+	    if (visited != getCurrent())
+		getCurrent().setPrimary(visited);
+	    setCurrent(visited);
+	    fireVisited(visited);
+	    BrowserEvents.history(gui, "revisit", url, size);
+	    return;
+	}
 	getCurrent().addForward(new HistoryNode(url, url));
-	current = getCurrent().timeTravelForward();
+	setCurrent(getCurrent().timeTravelForward());
+	fireVisited(getCurrent());
+	if (budget != null)
+	    budget.enforce(this);
+	BrowserEvents.history(gui, "addURL", url, size);
+    }
+
+    /**
+     * Add a URL as a new forward of a node while rebuilding a saved tree. The
+     * node is added even if one of the same page is there, since the saved
+     * tree may have had both, and it isn't visited or made current.
+     * 
+     * @param parent
+     *            A node in this tree.
+     * @param url
+     *            The new node's URL, which is also its title.
+     * @return The new node, which is the parent's primary forward.
+     */
+    HistoryNode addRestored(HistoryNode parent, String url)
+    {
+	HistoryNode node = new HistoryNode(url, url);
+	parent.addForward(node);
+	return node;
+    }
+
+    /**
+     * @return The current node or one of its forwards, if it is for the same
+     *         page as the URL, or null.
+     */
+    private HistoryNode findVisited(String url)
+    {
+	String page = PAGES.canonicalize(url);
+	if (page.equals(PAGES.canonicalize(current.getUrl())))
+	    return current;
+	if (current.getForwardCount() == 0)
+	    return null;
+	for (HistoryNode n = current.timeTravelForward(); n != null; n = n
+		.getNextSibling())
+	    if (page.equals(PAGES.canonicalize(n.getUrl())))
+		return n;
+	return null;
+    }
+
+    /**
+     * Remove a node and all of its forwards from the tree. Nodes on the path
+     * from the root to the current node can't be removed.
+     * 
+     * @param node
+     *            The node to remove.
+     * @return How many nodes were removed.
+     */
+    public int remove(HistoryNode node)
+    {
+	for (HistoryNode n = current; n != null; n = n.getBackward())
+	    if (n == node)
+		return 0;
+	if (node.getHistory() != this)
+	    return 0;
+	return removeBranch(node);
+    }
+
+    /**
+     * Remove every forward of a node, leaving the node as a summary of its
+     * branch. Nodes on the path from the root to the current node can't be
+     * collapsed.
+     * 
+     * @param node
+     *            The node to collapse.
+     * @return How many nodes were removed.
+     */
+    public int collapse(HistoryNode node)
+    {
+	for (HistoryNode n = current; n != null; n = n.getBackward())
+	    if (n == node)
+		return 0;
+	if (node.getHistory() != this)
+	    return 0;
+	return collapseBranch(node);
+    }
+
+    /**
+     * Remove a node and its forwards without checking that it is off the
+     * current path.
+     * 
+     * @param node
+     *            A node that isn't the current node or one of its backwards.
+     * @return How many nodes were removed.
+     */
+    int removeBranch(HistoryNode node)
+    {
+	HistoryNode parent = node.getBackward();
+	if (parent == null)
+	    return 0;
+	int count = 0;
+	long bytes = 0;
+	// Walk the branch in order, detaching each node from this History.
+	HistoryNode n = node;
+	while (n != null)
+	{
+	    count++;
+	    bytes += n.estimateBytes();
+	    n.setHistory(null);
+	    if (n.getForwardCount() > 0)
+	    {
+		n = n.timeTravelForward();
+		continue;
+	    }
+	    while (n != node && n.getNextSibling() == null)
+		n = n.getBackward();
+	    n = n == node ? null : n.getNextSibling();
+	}
+	parent.removeForward(node);
+	size -= count;
+	estimatedBytes -= bytes;
+	for (HistoryListener l : listeners)
+	    l.nodeRemoved(parent, node);
+	return count;
+    }
+
+    /**
+     * Remove every forward of a node without checking that it is off the
+     * current path.
+     * 
+     * @param node
+     *            A node that isn't the current node or one of its backwards.
+     * @return How many nodes were removed.
+     */
+    int collapseBranch(HistoryNode node)
+    {
+	int count = 0;
+	while (node.getForwardCount() > 0)
+	    count += removeBranch(node.timeTravelForward());
+	if (count > 0)
+	{
+	    node.addCollapsed(count);
+	    fireTitleChanged(node, node.estimateBytes());
+	}
+	return count;
+    }
+
+    /**
+     * Forget the whole tree and every listener, because the tab was closed.
+     * Every node is detached from this History, and this History from its
+     * GUI, so a node that something still holds doesn't keep the tab alive.
+     * The History can't be used afterwards.
+     */
+    public void clear()
+    {
+	listeners.clear();
+	budget = null;
+	gui = null;
+	HistoryNode n = root;
+	while (n != null)
+	{
+	    n.setHistory(null);
+	    if (n.getForwardCount() > 0)
+	    {
+		n = n.timeTravelForward();
+		continue;
+	    }
+	    while (n != root && n.getNextSibling() == null)
+		n = n.getBackward();
+	    n = n == root ? null : n.getNextSibling();
+	}
+	root = null;
+	current = null;
+	size = 0;
+	estimatedBytes = 0;
+    }
+
+    /**
+     * Start keeping this tree within a budget, or stop if it is null.
+     * 
+     * @param budget
+     *            The budget.
+     */
+    void setBudget(HistoryBudget budget)
+    {
+	this.budget = budget;
+    }
+
+    /**
+     * @return How many nodes are in the tree.
+     */
+    public int size()
+    {
+	return size;
+    }
+
+    /**
+     * @return A rough estimate of how much memory the tree uses, in bytes.
+     */
+    public long getEstimatedBytes()
+    {
+	return estimatedBytes;
+    }
+
+    /**
+     * @return How many nodes have been evicted from this tree to keep it
+     *         within its budget.
+     */
+    public int getEvictedCount()
+    {
+	return evictedCount;
+    }
+
+    /**
+     * Count nodes that a budget evicted.
+     * 
+     * @param count
+     *            How many nodes were evicted.
+     */
+    void addEvicted(int count)
+    {
+	evictedCount += count;
     }
 
     /**
@@ -65,7 +328,8 @@ public class History
      */
     public void back()
     {
-	current = getCurrent().timeTravelBackward();
+	setCurrent(getCurrent().timeTravelBackward());
+	BrowserEvents.history(gui, "back", getCurrent().getUrl(), size);
 	gui.loadURL(getCurrent().getUrl());
     }
 
@@ -74,7 +338,7 @@ public class History
      */
     public boolean canGoForward()
     {
-	return getCurrent().getForward().size() != 0;
+	return getCurrent().getForwardCount() != 0;
     }
 
     /**
@@ -82,44 +346,57 @@ public class History
      */
     public void forward()
     {
-	current = getCurrent().timeTravelForward();
+	setCurrent(getCurrent().timeTravelForward());
+	BrowserEvents.history(gui, "forward", getCurrent().getUrl(), size);
 	gui.loadURL(getCurrent().getUrl());
     }
 
     /**
-     * Create a string version of the tree.
+     * Create a string version of the tree in human-readable format, similar to
+     * JSON. The tree is walked without recursion, so deep histories are fine.
+     * Use HistoryWriter to write a tree somewhere without building a String.
      * 
      * @return the String version.
      */
     public String toString()
     {
-	return stringValue(root, 0);
+	StringBuilder retval = new StringBuilder();
+	HistoryNode node = root;
+	int depth = 0;
+	while (node != null)
+	{
+	    indent(retval, depth);
+	    retval.append(node.toString()).append(": {\n");
+	    if (node.getForwardCount() > 0)
+	    {
+		node = node.timeTravelForward();
+		depth++;
+		continue;
+	    }
+	    // Close every node that has no more forwards to print.
+	    while (true)
+	    {
+		indent(retval, depth);
+		retval.append("}");
+		if (node == root)
+		    return retval.toString();
+		retval.append("\n");
+		if (node.getNextSibling() != null)
+		{
+		    node = node.getNextSibling();
+		    break;
+		}
+		node = node.getBackward();
+		depth--;
+	    }
+	}
+	return retval.toString();
     }
 
-    /**
-     * Make a String version of the tree in human-readable format, similar to
-     * JSON.
-     * 
-     * @param node
-     *            The node to start with.
-     * @param depth
-     *            The depth the recursion is currently at.
-     * @return A String version of the current node and children
-     */
-    private String stringValue(HistoryNode node, int depth)
+    private static void indent(StringBuilder builder, int depth)
     {
-	String retval = "";
 	for (int i = 0; i < depth; i++)
-	    retval += " ";
-	retval += node.toString() + ": {\n";
-	for (HistoryNode n : node.getForward())
-	{
-	    retval += stringValue(n, depth + 1) + "\n";
-	}
-	for (int i = 0; i < depth; i++)
-	    retval += " ";
-	retval += "}";
-	return retval;
+	    builder.append(' ');
     }
 
     /**
@@ -138,7 +415,65 @@ public class History
      */
     public void setCurrent(HistoryNode newCurrent)
     {
+	HistoryNode oldCurrent = current;
 	current = newCurrent;
+	if (oldCurrent != newCurrent)
+	    for (HistoryListener l : listeners)
+		l.currentChanged(oldCurrent, newCurrent);
+    }
+
+    /**
+     * Count a visit to a node and tell the listeners.
+     * 
+     * @param node
+     *            The visited node.
+     */
+    private void fireVisited(HistoryNode node)
+    {
+	node.visit();
+	for (HistoryListener l : listeners)
+	    l.visited(node);
+    }
+
+    /**
+     * Tell the listeners that a node was added to the tree.
+     * 
+     * @param node
+     *            The new node.
+     */
+    void fireNodeAdded(HistoryNode node)
+    {
+	size++;
+	estimatedBytes += node.estimateBytes();
+	for (HistoryListener l : listeners)
+	    l.nodeAdded(node);
+    }
+
+    /**
+     * Tell the listeners that a node's title changed.
+     * 
+     * @param node
+     *            The retitled node.
+     * @param oldBytes
+     *            What node.estimateBytes() was before the change.
+     */
+    void fireTitleChanged(HistoryNode node, long oldBytes)
+    {
+	estimatedBytes += node.estimateBytes() - oldBytes;
+	for (HistoryListener l : listeners)
+	    l.titleChanged(node);
+    }
+
+    /**
+     * Tell the listeners that a node's primary forward node changed.
+     * 
+     * @param parent
+     *            The node whose forwards were reordered.
+     */
+    void firePrimaryChanged(HistoryNode parent)
+    {
+	for (HistoryListener l : listeners)
+	    l.primaryChanged(parent);
     }
 
     /**
@@ -151,7 +486,11 @@ public class History
 }
 
 /**
- * Represents one item in a History tree.
+ * Represents one item in a History tree. The forwards are kept in a linked
+ * list through the nodes themselves, with the primary forward first and the
+ * rest in the order they were last primary, so adding a forward, going
+ * forward, and changing the primary forward don't depend on how many forwards
+ * there are.
  * 
  * @author Akshay
  *
@@ -159,15 +498,32 @@ public class History
 class HistoryNode
 {
     private HistoryNode backward = null;
-    private ArrayList<HistoryNode> forward = new ArrayList<HistoryNode>();
+    private HistoryNode firstForward = null;
+    private HistoryNode previousSibling = null;
+    private HistoryNode nextSibling = null;
+    private int forwardCount = 0;
     private final String url;
     private String title;
+    private History history;
+    private final long created;
+    private long lastVisited;
+    private int visitCount = 0;
+    private int collapsedCount = 0;
+    private PageLoadTiming loadTiming;
     public final static int MAXIMUM_TITLE_LENGTH = 30;
+    /**
+     * Rough sizes used by estimateBytes(): a node with its header and fields,
+     * and a String with its header, fields, and char array header.
+     */
+    private final static int NODE_BYTES = 72;
+    final static int STRING_BYTES = 40;
 
     public HistoryNode(String location, String name)
     {
 	url = location;
 	title = name;
+	created = System.currentTimeMillis();
+	lastVisited = created;
     }
 
     /**
@@ -177,9 +533,9 @@ class HistoryNode
      */
     public HistoryNode timeTravelForward()
     {
-	if (forward.size() > 0)
+	if (firstForward != null)
 	{
-	    return forward.get(0);
+	    return firstForward;
 	}
 	return this;
     }
@@ -205,8 +561,10 @@ class HistoryNode
      */
     public HistoryNode addForward(HistoryNode newForward)
     {
-	forward.add(0, newForward);
-	newForward.backward = this;
+	link(newForward);
+	newForward.history = history;
+	if (history != null)
+	    history.fireNodeAdded(newForward);
 	return timeTravelForward();
     }
 
@@ -231,7 +589,11 @@ class HistoryNode
      */
     public HistoryNode[] getForwardAsArray()
     {
-	return forward.toArray(new HistoryNode[] {});
+	HistoryNode[] forwards = new HistoryNode[forwardCount];
+	int i = 0;
+	for (HistoryNode n = firstForward; n != null; n = n.nextSibling)
+	    forwards[i++] = n;
+	return forwards;
     }
 
     /**
@@ -243,8 +605,62 @@ class HistoryNode
      */
     public void setPrimary(HistoryNode primary)
     {
-	forward.remove(primary);
-	forward.add(0, primary);
+	if (firstForward == primary)
+	    return;
+	if (primary.backward != null)
+	    primary.backward.unlink(primary);
+	link(primary);
+	if (history != null)
+	    history.firePrimaryChanged(this);
+    }
+
+    /**
+     * Put a node at the front of the forwards.
+     * 
+     * @param node
+     *            The node, which must not be in any forwards.
+     */
+    private void link(HistoryNode node)
+    {
+	node.backward = this;
+	node.previousSibling = null;
+	node.nextSibling = firstForward;
+	if (firstForward != null)
+	    firstForward.previousSibling = node;
+	firstForward = node;
+	forwardCount++;
+    }
+
+    /**
+     * Remove one of the forwards, and with it that forward's branch.
+     * 
+     * @param node
+     *            One of the forwards.
+     */
+    void removeForward(HistoryNode node)
+    {
+	if (node.backward == this)
+	    unlink(node);
+    }
+
+    /**
+     * Take a node out of the forwards.
+     * 
+     * @param node
+     *            One of the forwards.
+     */
+    private void unlink(HistoryNode node)
+    {
+	if (node.previousSibling != null)
+	    node.previousSibling.nextSibling = node.nextSibling;
+	else
+	    firstForward = node.nextSibling;
+	if (node.nextSibling != null)
+	    node.nextSibling.previousSibling = node.previousSibling;
+	node.previousSibling = null;
+	node.nextSibling = null;
+	node.backward = null;
+	forwardCount--;
     }
 
     /**
@@ -255,7 +671,122 @@ class HistoryNode
      */
     public void setTitle(String name)
     {
+	if (title == null ? name == null : title.equals(name))
+	    return;
+	long oldBytes = estimateBytes();
 	title = name;
+	if (history != null)
+	    history.fireTitleChanged(this, oldBytes);
+    }
+
+    /**
+     * Mark this node as visited now.
+     */
+    void visit()
+    {
+	visitCount++;
+	lastVisited = System.currentTimeMillis();
+    }
+
+    /**
+     * Put back the visits a saved node had.
+     * 
+     * @param count
+     *            How many times it was visited.
+     * @param last
+     *            When it was last visited.
+     */
+    void restoreVisits(int count, long last)
+    {
+	visitCount = count;
+	lastVisited = last;
+    }
+
+    /**
+     * @return When this node was created, in milliseconds since the epoch.
+     */
+    public long getCreated()
+    {
+	return created;
+    }
+
+    /**
+     * @return When this node was last navigated to or reloaded, in
+     *         milliseconds since the epoch.
+     */
+    public long getLastVisited()
+    {
+	return lastVisited;
+    }
+
+    /**
+     * @return How many times this node was navigated to or reloaded. Going
+     *         back or forward to it doesn't count.
+     */
+    public int getVisitCount()
+    {
+	return visitCount;
+    }
+
+    /**
+     * @return How many nodes were evicted from this node's forwards, leaving
+     *         it as a summary of its branch.
+     */
+    public int getCollapsedCount()
+    {
+	return collapsedCount;
+    }
+
+    void addCollapsed(int count)
+    {
+	collapsedCount += count;
+    }
+
+    /**
+     * @return How long this page took to load the last time it was loaded,
+     *         or null if that wasn't timed.
+     */
+    public PageLoadTiming getLoadTiming()
+    {
+	return loadTiming;
+    }
+
+    void setLoadTiming(PageLoadTiming timing)
+    {
+	loadTiming = timing;
+    }
+
+    /**
+     * Estimate how much memory this node uses, counting its title only if it
+     * isn't the same String as its URL.
+     * 
+     * @return The estimate in bytes.
+     */
+    long estimateBytes()
+    {
+	long bytes = NODE_BYTES + STRING_BYTES + 2L * url.length();
+	if (title != null && title != url)
+	    bytes += STRING_BYTES + 2L * title.length();
+	return bytes;
+    }
+
+    /**
+     * Attach this node to the History tree that owns it.
+     * 
+     * @param owner
+     *            The owning History.
+     */
+    void setHistory(History owner)
+    {
+	history = owner;
+    }
+
+    /**
+     * @return The History that owns this node, or null if it was removed.
+     */
+    History getHistory()
+    {
+	return history;
     }
 
     /**
@@ -263,16 +794,24 @@ class HistoryNode
      */
     public String toString()
     {
+	return abbreviate(title);
+    }
+
+    /**
+     * Shorten a title to at most MAXIMUM_TITLE_LENGTH characters.
+     * 
+     * @param title
+     *            The title, or null.
+     * @return The shortened title, or an empty string if there is none.
+     */
+    static String abbreviate(String title)
+    {
+	if (title == null)
+	    return "";
 	String abbrTitle = title;
 	if (abbrTitle.length() > MAXIMUM_TITLE_LENGTH)
 	    abbrTitle = abbrTitle.substring(0, MAXIMUM_TITLE_LENGTH - 3)
 		    + "...";
-
-	// If you want the URL in the history pane.
-	String abbrURL = url;
-	if (abbrURL.length() > MAXIMUM_TITLE_LENGTH)
-	    abbrURL = abbrURL.substring(0, MAXIMUM_TITLE_LENGTH - 3) + "...";
-
 	return abbrTitle;
     }
 
@@ -285,11 +824,36 @@ class HistoryNode
     }
 
     /**
-     * @return the forward arraylist
+     * Get all the forwards as a list, primary first. The list is a copy, so
+     * use getForwardCount(), timeTravelForward(), and getNextSibling() to look
+     * at the forwards without making one.
+     * 
+     * @return the forwards
      */
     public ArrayList<HistoryNode> getForward()
     {
-	return forward;
+	ArrayList<HistoryNode> forwards = new ArrayList<HistoryNode>(
+		forwardCount);
+	for (HistoryNode n = firstForward; n != null; n = n.nextSibling)
+	    forwards.add(n);
+	return forwards;
+    }
+
+    /**
+     * @return How many forwards this node has.
+     */
+    public int getForwardCount()
+    {
+	return forwardCount;
+    }
+
+    /**
+     * @return The forward of this node's backward that comes after this one,
+     *         or null.
+     */
+    public HistoryNode getNextSibling()
+    {
+	return nextSibling;
     }
 
     /**
@@ -0,0 +1,112 @@
+package io.aks.WebBrowser;
+/**
+ * A branch that a HistoryBudget could evict: a node off the current path and
+ * all of its forwards.
+ * 
+ * @author Akshay
+ *
+ */
+class HistoryBranch
+{
+    private final History history;
+    private final HistoryNode root;
+    private final int depth;
+    private int size = 0;
+    private long bytes = 0;
+    private long lastVisited = 0;
+    private long visits = 0;
+    private long score;
+
+    /**
+     * Measures a branch.
+     * 
+     * @param history
+     *            The History it is in.
+     * @param root
+     *            The first node of the branch.
+     * @param depth
+     *            How many backwards the root has.
+     */
+    public HistoryBranch(History history, HistoryNode root, int depth)
+    {
+	this.history = history;
+	this.root = root;
+	this.depth = depth;
+	HistoryNode n = root;
+	while (n != null)
+	{
+	    size++;
+	    bytes += n.estimateBytes();
+	    lastVisited = Math.max(lastVisited, n.getLastVisited());
+	    visits += n.getVisitCount();
+	    if (n.getForwardCount() > 0)
+	    {
+		n = n.timeTravelForward();
+		continue;
+	    }
+	    while (n != root && n.getNextSibling() == null)
+		n = n.getBackward();
+	    n = n == root ? null : n.getNextSibling();
+	}
+    }
+
+    public History getHistory()
+    {
+	return history;
+    }
+
+    public HistoryNode getRoot()
+    {
+	return root;
+    }
+
+    /**
+     * @return How many backwards the first node of the branch has.
+     */
+    public int getDepth()
+    {
+	return depth;
+    }
+
+    /**
+     * @return How many nodes are in the branch.
+     */
+    public int getSize()
+    {
+	return size;
+    }
+
+    /**
+     * @return The estimated memory the branch uses.
+     */
+    public long getBytes()
+    {
+	return bytes;
+    }
+
+    /**
+     * @return When any node in the branch was last visited.
+     */
+    public long getLastVisited()
+    {
+	return lastVisited;
+    }
+
+    /**
+     * @return How many times the nodes in the branch were visited, in all.
+     */
+    public long getVisits()
+    {
+	return visits;
+    }
+
+    long getScore()
+    {
+	return score;
+    }
+
+    void setScore(long score)
+    {
+	this.score = score;
+    }
+}
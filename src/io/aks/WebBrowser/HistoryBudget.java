@@ -0,0 +1,335 @@
+package io.aks.WebBrowser;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Keeps the Histories of every tab within a budget, so a browser that is left
+ * running for weeks doesn't fill up with old branches. Each tab has a limit on
+ * its number of pages and their estimated size, and so do all the tabs
+ * together.
+ * 
+ * When a limit is passed, branches that are off the path from the root to the
+ * current page are evicted, in the order the HistoryEvictionPolicy picks. A
+ * branch with more than one page is first collapsed into its first page,
+ * which is kept as a summary of the branch; a single page is removed. Eviction
+ * goes a little below the limit, so a full History isn't walked on every new
+ * page. If the limit can't be reached, because most pages are on the current
+ * path, eviction isn't tried again until that many more pages were added.
+ * 
+ * @author Akshay
+ *
+ */
+public class HistoryBudget
+{
+    public static final int DEFAULT_MAX_TAB_NODES = 5000;
+    public static final long DEFAULT_MAX_TAB_BYTES = 4L << 20;
+    public static final int DEFAULT_MAX_NODES = 50000;
+    public static final long DEFAULT_MAX_BYTES = 32L << 20;
+    /**
+     * What fraction of a limit eviction brings a History down to.
+     */
+    private static final double LOW_WATER = 0.9;
+
+    private final ArrayList<History> histories = new ArrayList<History>();
+    private final HashMap<History, Integer> stuckTabs = new HashMap<History, Integer>();
+    private int stuckNodes = -1;
+    private final int maxTabNodes;
+    private final long maxTabBytes;
+    private final int maxNodes;
+    private final long maxBytes;
+    private HistoryEvictionPolicy policy;
+    private final MetricCounter evictedNodes;
+    private final MetricCounter collapsedBranches;
+    private final MetricCounter removedBranches;
+    private final MetricCounter evictions;
+
+    /**
+     * Creates a budget. The registry gets HISTORY_EVICTED,
+     * HISTORY_COLLAPSED, HISTORY_REMOVED, and HISTORY_EVICTIONS counters.
+     * 
+     * @param metrics
+     *            The registry.
+     * @param maxTabNodes
+     *            The most pages one tab may keep.
+     * @param maxTabBytes
+     *            The most memory one tab's pages may use, estimated.
+     * @param maxNodes
+     *            The most pages all the tabs together may keep.
+     * @param maxBytes
+     *            The most memory all the tabs' pages may use, estimated.
+     * @param policy
+     *            Which branches to evict first.
+     */
+    public HistoryBudget(MetricsRegistry metrics, int maxTabNodes,
+	    long maxTabBytes, int maxNodes, long maxBytes,
+	    HistoryEvictionPolicy policy)
+    {
+	this.maxTabNodes = maxTabNodes;
+	this.maxTabBytes = maxTabBytes;
+	this.maxNodes = maxNodes;
+	this.maxBytes = maxBytes;
+	this.policy = policy;
+	evictedNodes = metrics.counter(MetricsRegistry.HISTORY_EVICTED,
+		"Pages evicted from the histories");
+	collapsedBranches = metrics.counter(MetricsRegistry.HISTORY_COLLAPSED,
+		"History branches collapsed into a summary page");
+	removedBranches = metrics.counter(MetricsRegistry.HISTORY_REMOVED,
+		"History branches removed completely");
+	evictions = metrics.counter(MetricsRegistry.HISTORY_EVICTIONS,
+		"Times a history or the whole budget was trimmed");
+    }
+
+    /**
+     * Start keeping a History within this budget. It is trimmed right away if
+     * it is already over.
+     * 
+     * @param history
+     *            The History of a tab.
+     */
+    public void register(History history)
+    {
+	histories.add(history);
+	history.setBudget(this);
+	enforce(history);
+    }
+
+    /**
+     * Stop keeping a History within this budget, because its tab was closed.
+     * 
+     * @param history
+     *            The History.
+     */
+    public void unregister(History history)
+    {
+	if (histories.remove(history))
+	    history.setBudget(null);
+	stuckTabs.remove(history);
+    }
+
+    /**
+     * Evict branches if a History, or all of them together, are over budget.
+     * Called by History after every new page.
+     * 
+     * @param history
+     *            The History that grew.
+     */
+    public void enforce(History history)
+    {
+	int tabLow = (int) (maxTabNodes * LOW_WATER);
+	Integer stuckAt = stuckTabs.get(history);
+	if ((history.size() > maxTabNodes
+		|| history.getEstimatedBytes() > maxTabBytes)
+		&& (stuckAt == null || history.size() - stuckAt > maxTabNodes
+			- tabLow))
+	{
+	    ArrayList<History> one = new ArrayList<History>(1);
+	    one.add(history);
+	    if (trim(one, tabLow, (long) (maxTabBytes * LOW_WATER)))
+		stuckTabs.remove(history);
+	    else
+		stuckTabs.put(history, history.size());
+	}
+
+	int low = (int) (maxNodes * LOW_WATER);
+	int nodes = getNodeCount();
+	if ((nodes > maxNodes || getEstimatedBytes() > maxBytes)
+		&& (stuckNodes < 0 || nodes - stuckNodes > maxNodes - low))
+	{
+	    if (trim(histories, low, (long) (maxBytes * LOW_WATER)))
+		stuckNodes = -1;
+	    else
+		stuckNodes = getNodeCount();
+	}
+    }
+
+    /**
+     * Evict the branches the policy picks from some Histories until together
+     * they are within a limit, or nothing is left to evict.
+     * 
+     * @return True if they are within the limit.
+     */
+    private boolean trim(ArrayList<History> trees, int nodeLimit,
+	    long byteLimit)
+    {
+	evictions.increment();
+	int nodes = 0;
+	long bytes = 0;
+	for (History h : trees)
+	{
+	    nodes += h.size();
+	    bytes += h.getEstimatedBytes();
+	}
+	// Collapsed branches are only removed on a later pass.
+	boolean evicted = true;
+	while (evicted && (nodes > nodeLimit || bytes > byteLimit))
+	{
+	    evicted = false;
+	    ArrayList<HistoryBranch> branches = new ArrayList<HistoryBranch>();
+	    for (History h : trees)
+		findBranches(h, branches);
+	    for (HistoryBranch b : branches)
+		b.setScore(policy.score(b));
+	    branches.sort(new Comparator<HistoryBranch>()
+	    {
+		@Override
+		public int compare(HistoryBranch a, HistoryBranch b)
+		{
+		    int c = Long.compare(a.getScore(), b.getScore());
+		    if (c == 0)
+			c = Long.compare(a.getLastVisited(), b.getLastVisited());
+		    return c;
+		}
+	    });
+	    for (HistoryBranch b : branches)
+	    {
+		if (nodes <= nodeLimit && bytes <= byteLimit)
+		    break;
+		History h = b.getHistory();
+		int oldSize = h.size();
+		long oldBytes = h.getEstimatedBytes();
+		if (b.getSize() > 1)
+		{
+		    h.collapseBranch(b.getRoot());
+		    collapsedBranches.increment();
+		}
+		else
+		{
+		    h.removeBranch(b.getRoot());
+		    removedBranches.increment();
+		}
+		int count = oldSize - h.size();
+		h.addEvicted(count);
+		evictedNodes.add(count);
+		nodes -= count;
+		bytes -= oldBytes - h.getEstimatedBytes();
+		evicted = true;
+	    }
+	}
+	return nodes <= nodeLimit && bytes <= byteLimit;
+    }
+
+    /**
+     * Add every branch that starts next to the path from the root to the
+     * current node, with its size and when it was last visited.
+     */
+    private static void findBranches(History history,
+	    ArrayList<HistoryBranch> branches)
+    {
+	ArrayList<HistoryNode> path = new ArrayList<HistoryNode>();
+	for (HistoryNode n = history.getCurrent(); n != null; n = n
+		.getBackward())
+	    path.add(n);
+	for (int i = path.size() - 1; i >= 0; i--)
+	{
+	    HistoryNode node = path.get(i);
+	    HistoryNode onPath = i > 0 ? path.get(i - 1) : null;
+	    if (node.getForwardCount() == 0)
+		continue;
+	    for (HistoryNode f = node.timeTravelForward(); f != null; f = f
+		    .getNextSibling())
+		if (f != onPath)
+		    branches.add(new HistoryBranch(history, f, path.size() - i));
+	}
+    }
+
+    /**
+     * @param name
+     *            "lru", "age", "depth", or "visits".
+     * @return The policy with that name, or LRU if there isn't one.
+     */
+    public static HistoryEvictionPolicy policyForName(String name)
+    {
+	if (HistoryEvictionPolicy.AGE.toString().equals(name))
+	    return HistoryEvictionPolicy.AGE;
+	if (HistoryEvictionPolicy.DEPTH.toString().equals(name))
+	    return HistoryEvictionPolicy.DEPTH;
+	if (HistoryEvictionPolicy.VISITS.toString().equals(name))
+	    return HistoryEvictionPolicy.VISITS;
+	return HistoryEvictionPolicy.LRU;
+    }
+
+    /**
+     * @return How many pages all the Histories have together.
+     */
+    public int getNodeCount()
+    {
+	int nodes = 0;
+	for (History h : histories)
+	    nodes += h.size();
+	return nodes;
+    }
+
+    /**
+     * @return How much memory all the Histories use together, estimated.
+     */
+    public long getEstimatedBytes()
+    {
+	long bytes = 0;
+	for (History h : histories)
+	    bytes += h.getEstimatedBytes();
+	return bytes;
+    }
+
+    /**
+     * @return How many pages have been evicted.
+     */
+    public long getEvictedNodes()
+    {
+	return evictedNodes.getCount();
+    }
+
+    /**
+     * @return How many branches were collapsed into a summary page.
+     */
+    public long getCollapsedBranches()
+    {
+	return collapsedBranches.getCount();
+    }
+
+    /**
+     * @return How many branches were removed completely.
+     */
+    public long getRemovedBranches()
+    {
+	return removedBranches.getCount();
+    }
+
+    /**
+     * @return How many times a History or the whole budget was trimmed.
+     */
+    public long getEvictions()
+    {
+	return evictions.getCount();
+    }
+
+    public int getMaxTabNodes()
+    {
+	return maxTabNodes;
+    }
+
+    public long getMaxTabBytes()
+    {
+	return maxTabBytes;
+    }
+
+    public int getMaxNodes()
+    {
+	return maxNodes;
+    }
+
+    public long getMaxBytes()
+    {
+	return maxBytes;
+    }
+
+    public HistoryEvictionPolicy getPolicy()
+    {
+	return policy;
+    }
+
+    public void setPolicy(HistoryEvictionPolicy policy)
+    {
+	this.policy = policy;
+    }
+}
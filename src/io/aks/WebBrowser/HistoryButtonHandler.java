@@ -33,11 +33,16 @@ class HistoryButtonHandler implements EventHandler<ActionEvent>
     @Override
     public void handle(ActionEvent e)
     {
-	history.setCurrent(node);
-	if (node.getBackward() != null)
-	    node.getBackward().setPrimary(node);
-	gui.loadURL(url, true);
+	jump();
+    }
 
+    /**
+     * Make the node current and primary, then show it without adding it to
+     * the history, from the back/forward cache if it is there.
+     */
+    public void jump()
+    {
+	gui.getWebViewController().jump(node);
     }
 
 }
\ No newline at end of file
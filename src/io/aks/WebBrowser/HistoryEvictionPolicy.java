@@ -0,0 +1,89 @@
+package io.aks.WebBrowser;
+/**
+ * Decides which branches of a History a HistoryBudget evicts first. Branches
+ * with the lowest score go first, and ties go to the least recently visited.
+ * 
+ * @author Akshay
+ *
+ */
+interface HistoryEvictionPolicy
+{
+    /**
+     * Evicts the branch that was least recently visited.
+     */
+    public static final HistoryEvictionPolicy LRU = new HistoryEvictionPolicy()
+    {
+	@Override
+	public long score(HistoryBranch branch)
+	{
+	    return branch.getLastVisited();
+	}
+
+	@Override
+	public String toString()
+	{
+	    return "lru";
+	}
+    };
+
+    /**
+     * Evicts the branch that was started longest ago.
+     */
+    public static final HistoryEvictionPolicy AGE = new HistoryEvictionPolicy()
+    {
+	@Override
+	public long score(HistoryBranch branch)
+	{
+	    return branch.getRoot().getCreated();
+	}
+
+	@Override
+	public String toString()
+	{
+	    return "age";
+	}
+    };
+
+    /**
+     * Evicts the branch that starts deepest in the tree.
+     */
+    public static final HistoryEvictionPolicy DEPTH = new HistoryEvictionPolicy()
+    {
+	@Override
+	public long score(HistoryBranch branch)
+	{
+	    return -branch.getDepth();
+	}
+
+	@Override
+	public String toString()
+	{
+	    return "depth";
+	}
+    };
+
+    /**
+     * Evicts the branch whose pages were visited the fewest times.
+     */
+    public static final HistoryEvictionPolicy VISITS = new HistoryEvictionPolicy()
+    {
+	@Override
+	public long score(HistoryBranch branch)
+	{
+	    return branch.getVisits();
+	}
+
+	@Override
+	public String toString()
+	{
+	    return "visits";
+	}
+    };
+
+    /**
+     * @param branch
+     *            A branch off the path from the root to the current node.
+     * @return Its score. Lower scores are evicted first.
+     */
+    long score(HistoryBranch branch);
+}
@@ -0,0 +1,1341 @@
+package io.aks.WebBrowser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * An index of every page visited in any tab, which can be searched by the
+ * words in the pages' titles and URLs. Each tab's History is attached to it
+ * and it follows their changes, so it is kept up to date a page at a time
+ * instead of being rebuilt.
+ * 
+ * Words are kept in a trie, each with the ids of the pages it is in, in order.
+ * A search finds every word that starts with each word typed, so results show
+ * up while the user is still typing, then goes through the pages of the typed
+ * word with the fewest. Pages are ranked by frecency, how often they were
+ * visited weighted by how recently, and rank higher when their host starts
+ * with the first word typed or a word typed matches a whole word.
+ * 
+ * A single letter can match thousands of pages, so everything a search needs
+ * for each page is kept in arrays by page id, and a page's words and title
+ * are only looked at when it is in the results. The pages whose host matches
+ * are ranked first, and each word knows the highest frecency of its pages, so
+ * once the results can't be beaten the rest of the words are skipped. With
+ * one word typed, as for each key in an address bar, each node of the trie
+ * also knows the highest frecency under it, so the words are gone through best
+ * first without finding all of them.
+ * 
+ * Pages stay in the index after their tab is closed or evicts them. When
+ * there are too many, the lowest ranked page is forgotten to make room for
+ * each new one, and its id is given to the next. The lowest ranked tenth are
+ * picked out together, so every page isn't ranked for each one, and a picked
+ * page that is visited again before it is forgotten is kept. The index may be
+ * searched from any thread.
+ * 
+ * @author Akshay
+ *
+ */
+public class HistoryIndex
+{
+    public static final int DEFAULT_MAX_PAGES = 100000;
+    public static final int DEFAULT_RESULTS = 10;
+    /**
+     * The longest word kept. Longer words, typed or not, are cut to this
+     * length.
+     */
+    static final int MAX_WORD_LENGTH = 32;
+    /**
+     * The most words kept for one page.
+     */
+    static final int MAX_WORDS = 64;
+    private static final double HOST_BOOST = 4;
+    private static final double WORD_BOOST = 2;
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    /**
+     * How often every page's frecency is worked out again, because it depends
+     * on how long ago the page was visited.
+     */
+    private static final long RESCORE_INTERVAL = 60L * 60 * 1000;
+
+    private final int maxPages;
+    private final HashMap<String, IndexedPage> pages = new HashMap<String, IndexedPage>();
+    private final HashMap<History, IndexListener> attached = new HashMap<History, IndexListener>();
+    private final WordTrie words = new WordTrie();
+    private int nextId = 0;
+    /**
+     * The ids of forgotten pages, to be given to new ones.
+     */
+    private int[] freeIds = new int[16];
+    private int freeCount = 0;
+    /**
+     * The pages picked to be forgotten next, the lowest ranked last.
+     */
+    private final ArrayList<IndexedPage> victims = new ArrayList<IndexedPage>();
+    /**
+     * The highest frecency of the picked pages when they were picked. One
+     * that has risen above it was visited since, and is kept.
+     */
+    private double victimCeiling;
+    private IndexedPage[] byId;
+    private double[] frecencies;
+    private long[] lastVisits;
+    /**
+     * How many of a search's other terms each page has a word for, if
+     * hitSearch says the count is from that search.
+     */
+    private int[] hits;
+    private int[] hitSearch;
+    /**
+     * Which search last found that each page's host starts with its first
+     * term.
+     */
+    private int[] hostSearch;
+    /**
+     * Which search last found that each page has one of its terms as a whole
+     * word.
+     */
+    private int[] wholeSearch;
+    private int searches = 0;
+    private long scoredAt = 0;
+
+    /**
+     * @param maxPages
+     *            How many pages to keep before the lowest ranked are
+     *            forgotten.
+     */
+    public HistoryIndex(int maxPages)
+    {
+	this.maxPages = Math.max(maxPages, 10);
+	allocate(1024);
+    }
+
+    /**
+     * Start following a tab's History. Pages are indexed as they are added
+     * and retitled, and counted as visited when they become current.
+     * 
+     * @param history
+     *            The History of a tab.
+     */
+    public void attach(History history)
+    {
+	IndexListener listener = new IndexListener(this);
+	attached.put(history, listener);
+	history.addHistoryListener(listener);
+    }
+
+    /**
+     * Stop following a History because its tab was closed. Its pages stay in
+     * the index.
+     * 
+     * @param history
+     *            The closed tab's History.
+     */
+    public void detach(History history)
+    {
+	IndexListener listener = attached.remove(history);
+	if (listener != null)
+	    history.removeHistoryListener(listener);
+    }
+
+    /**
+     * Index every page already in a History, such as one that was restored
+     * from the last session, with the visits saved with it.
+     * 
+     * @param history
+     *            The History.
+     */
+    public void addAll(History history)
+    {
+	HistoryNode root = history.getRoot();
+	HistoryNode n = root;
+	while (n != null)
+	{
+	    record(n.getUrl(), n.getTitle(), n.getLastVisited(),
+		    n.getVisitCount());
+	    if (n.getForwardCount() > 0)
+	    {
+		n = n.timeTravelForward();
+		continue;
+	    }
+	    while (n != root && n.getNextSibling() == null)
+		n = n.getBackward();
+	    n = n == root ? null : n.getNextSibling();
+	}
+    }
+
+    /**
+     * Add a page to the index if it isn't there, and update its title and
+     * when it was last visited.
+     * 
+     * @param url
+     *            The page's URL, which is kept in canonical form, so the same
+     *            page written two ways is one page. Pages that aren't http:,
+     *            https:, or file: aren't indexed.
+     * @param title
+     *            Its title. A title that is just the URL doesn't replace a
+     *            real one.
+     * @param time
+     *            When it was visited, in milliseconds since the epoch.
+     * @param visited
+     *            True to count this as a visit.
+     */
+    public void record(String url, String title, long time,
+	    boolean visited)
+    {
+	record(url, title, time, visited ? 1 : 0);
+    }
+
+    /**
+     * Add a page to the index if it isn't there, and update its title, how
+     * many times it was visited, and when it was last visited.
+     * 
+     * @param url
+     *            The page's URL.
+     * @param title
+     *            Its title.
+     * @param time
+     *            When it was last visited, in milliseconds since the epoch.
+     * @param visits
+     *            How many more visits to count.
+     */
+    public synchronized void record(String url, String title, long time,
+	    int visits)
+    {
+	if (!isIndexed(url))
+	    return;
+	if (url.equals(title))
+	    title = null;
+	url = URLNormalizer.getDefault().canonicalize(url);
+	IndexedPage page = pages.get(url);
+	if (page == null)
+	{
+	    while (pages.size() >= maxPages)
+		evictOne();
+	    int id;
+	    if (freeCount > 0)
+		id = freeIds[--freeCount];
+	    else
+	    {
+		if (nextId == byId.length)
+		    grow(byId.length * 2);
+		id = nextId++;
+	    }
+	    page = new IndexedPage(id, url);
+	    byId[page.id] = page;
+	    lastVisits[page.id] = 0;
+	    pages.put(url, page);
+	    retitle(page, title);
+	}
+	else if (title != null && !title.equals(url))
+	    retitle(page, title);
+	page.visits += visits;
+	lastVisits[page.id] = Math.max(lastVisits[page.id], time);
+	frecencies[page.id] = frecency(page.visits, lastVisits[page.id],
+		System.currentTimeMillis());
+	for (IndexedWord word : page.words)
+	    word.raise(frecencies[page.id]);
+    }
+
+    /**
+     * Change the title of a page that is in the index.
+     * 
+     * @param url
+     *            The page's URL.
+     * @param title
+     *            Its new title. A title that is just the URL is ignored.
+     */
+    public synchronized void setTitle(String url, String title)
+    {
+	IndexedPage page = pages.get(URLNormalizer.getDefault().canonicalize(
+		url));
+	if (page != null && title != null && !title.equals(url))
+	    retitle(page, title);
+    }
+
+    /**
+     * Find the pages that have a word starting with every word in a query.
+     * 
+     * @param query
+     *            What was typed.
+     * @param limit
+     *            The most pages to return.
+     * @return The best matches, best first.
+     */
+    public synchronized ArrayList<HistoryMatch> search(String query, int limit)
+    {
+	ArrayList<HistoryMatch> results = new ArrayList<HistoryMatch>();
+	ArrayList<String> terms = new ArrayList<String>();
+	tokenize(query, terms);
+	if (terms.isEmpty() || limit <= 0)
+	    return results;
+	long now = System.currentTimeMillis();
+	if (now - scoredAt > RESCORE_INTERVAL)
+	    rescore(now);
+	if (terms.size() == 1)
+	    return matches(searchPrefix(terms.get(0), limit));
+	// Only the pages of the term with the fewest need to be looked at.
+	ArrayList<ArrayList<IndexedWord>> found = new ArrayList<ArrayList<IndexedWord>>();
+	int scan = 0;
+	long fewest = Long.MAX_VALUE;
+	for (int t = 0; t < terms.size(); t++)
+	{
+	    found.add(words.startingWith(terms.get(t)));
+	    long count = 0;
+	    for (IndexedWord word : found.get(t))
+		count += word.pages.size;
+	    if (count == 0)
+		return results;
+	    if (count < fewest)
+	    {
+		fewest = count;
+		scan = t;
+	    }
+	}
+	nextSearch();
+	// Count how many of the other terms each page has a word for, and
+	// mark the pages that have a term as a whole word.
+	int others = 0;
+	for (int t = 0; t < terms.size(); t++)
+	{
+	    ArrayList<IndexedWord> termWords = found.get(t);
+	    if (termWords.get(0).text.equals(terms.get(t)))
+		mark(termWords.get(0).pages, wholeSearch);
+	    if (t == scan)
+		continue;
+	    for (IndexedWord word : termWords)
+	    {
+		for (int i = 0; i < word.pages.size; i++)
+		{
+		    int id = word.pages.ids[i];
+		    if (others == 0 && hitSearch[id] != searches)
+		    {
+			hitSearch[id] = searches;
+			hits[id] = 1;
+		    }
+		    else if (hitSearch[id] == searches && hits[id] == others)
+			hits[id] = others + 1;
+		}
+	    }
+	    others++;
+	}
+	for (IndexedWord word : found.get(0))
+	    mark(word.hosts, hostSearch);
+
+	TopPages top = new TopPages(limit, lastVisits);
+	if (scan == 0)
+	{
+	    // Pages whose host starts with the first term rank the highest,
+	    // so ranking them first leaves fewer of the others that could
+	    // beat the results.
+	    for (IndexedWord word : found.get(0))
+		for (int i = 0; i < word.hosts.size; i++)
+		    offer(top, word.hosts.ids[i], others);
+	}
+	ArrayList<IndexedWord> scanWords = found.get(scan);
+	Collections.sort(scanWords, new Comparator<IndexedWord>()
+	{
+	    @Override
+	    public int compare(IndexedWord a, IndexedWord b)
+	    {
+		return Double.compare(b.maxFrecency, a.maxFrecency);
+	    }
+	});
+	double maxBoost = scan == 0 ? WORD_BOOST : WORD_BOOST * HOST_BOOST;
+	for (IndexedWord word : scanWords)
+	{
+	    if (top.isFull() && word.maxFrecency * maxBoost < top.getFloor())
+		break;
+	    for (int i = 0; i < word.pages.size; i++)
+	    {
+		int id = word.pages.ids[i];
+		if (scan == 0 && hostSearch[id] == searches)
+		    continue;
+		offer(top, id, others);
+	    }
+	}
+	return matches(top);
+    }
+
+    /**
+     * Find the pages that have a word starting with one term. The words are
+     * looked at best first, going down the trie from the term by the best
+     * frecency under each node, until none could make the results; this
+     * keeps a first letter, which starts thousands of words, from looking at
+     * all of them. Hosts are looked at first, the same way, and a page whose
+     * host wasn't looked at could not have made the results with it.
+     * 
+     * Scores are in steps, so many pages tie; one that could only tie the
+     * last result isn't looked for.
+     * 
+     * @param term
+     *            The term.
+     * @param limit
+     *            The most pages to find.
+     * @return The best pages.
+     */
+    private TopPages searchPrefix(String term, int limit)
+    {
+	TopPages top = new TopPages(limit, lastVisits);
+	WordTrieNode start = words.find(term);
+	if (start == null)
+	    return top;
+	nextSearch();
+	if (start.word != null)
+	    mark(start.word.pages, wholeSearch);
+	PriorityQueue<WordTrieNode> queue = new PriorityQueue<WordTrieNode>(
+		16, WordTrieNode.BY_BEST);
+	boolean pruned = false;
+	for (int pass = 0; pass < 2; pass++)
+	{
+	    boolean hosts = pass == 0;
+	    // Only hosts can have the host boost, and only the term itself
+	    // can have the whole word boost.
+	    double boost = hosts ? HOST_BOOST : 1;
+	    if (start.word != null && hosts)
+		offerWord(top, start.word, true);
+	    else if (start.word != null)
+		offerWhole(top, start.word, pruned);
+	    queue.clear();
+	    for (int i = 0; i < start.count; i++)
+		queue.add(start.children[i]);
+	    while (!queue.isEmpty())
+	    {
+		WordTrieNode node = queue.poll();
+		if (top.isFull() && node.best * boost <= top.getFloor())
+		{
+		    pruned = true;
+		    break;
+		}
+		if (node.word != null)
+		    offerWord(top, node.word, hosts);
+		for (int i = 0; i < node.count; i++)
+		    queue.add(node.children[i]);
+	    }
+	}
+	return top;
+    }
+
+    /**
+     * Rank the pages that have the term of a one term search as a whole
+     * word, other than the hosts that were ranked already. If some hosts
+     * weren't looked at, a page that could make the results with both
+     * boosts has its host checked.
+     * 
+     * @param word
+     *            The term's word.
+     * @param pruned
+     *            True if some hosts weren't looked at.
+     */
+    private void offerWhole(TopPages top, IndexedWord word, boolean pruned)
+    {
+	for (int i = 0; i < word.pages.size; i++)
+	{
+	    int id = word.pages.ids[i];
+	    if (hostSearch[id] == searches)
+		continue;
+	    if (pruned
+		    && frecencies[id] * HOST_BOOST * WORD_BOOST > top.getFloor())
+	    {
+		IndexedWord host = byId[id].hostWord;
+		if (host != null && host.text.startsWith(word.text))
+		    hostSearch[id] = searches;
+	    }
+	    offer(top, id, 0);
+	}
+    }
+
+    /**
+     * Rank the pages of a word for a one term search.
+     * 
+     * @param hosts
+     *            True to rank the pages it is the host of, and mark them,
+     *            false to rank the rest.
+     */
+    private void offerWord(TopPages top, IndexedWord word, boolean hosts)
+    {
+	if (hosts)
+	{
+	    mark(word.hosts, hostSearch);
+	    for (int i = 0; i < word.hosts.size; i++)
+		offer(top, word.hosts.ids[i], 0);
+	    return;
+	}
+	for (int i = 0; i < word.pages.size; i++)
+	    if (hostSearch[word.pages.ids[i]] != searches)
+		offer(top, word.pages.ids[i], 0);
+    }
+
+    /**
+     * Start a new search, so the marks of the last one don't count.
+     */
+    private void nextSearch()
+    {
+	if (++searches == Integer.MAX_VALUE)
+	{
+	    Arrays.fill(hitSearch, 0);
+	    Arrays.fill(hostSearch, 0);
+	    Arrays.fill(wholeSearch, 0);
+	    searches = 1;
+	}
+    }
+
+    /**
+     * @return The pages that were found, best first.
+     */
+    private ArrayList<HistoryMatch> matches(TopPages top)
+    {
+	ArrayList<HistoryMatch> results = new ArrayList<HistoryMatch>();
+	for (int i = 0; i < top.getCount(); i++)
+	{
+	    IndexedPage page = byId[top.getId(i)];
+	    results.add(new HistoryMatch(page.url, page.title, page.visits,
+		    lastVisits[top.getId(i)], top.getScore(i)));
+	}
+	return results;
+    }
+
+    /**
+     * Rank a page for the search going on, if it has a word for every term.
+     * 
+     * @param top
+     *            The best pages so far.
+     * @param id
+     *            The page.
+     * @param others
+     *            How many terms there are besides the one being scanned.
+     */
+    private void offer(TopPages top, int id, int others)
+    {
+	if (others > 0 && (hitSearch[id] != searches || hits[id] != others))
+	    return;
+	double score = frecencies[id];
+	if (hostSearch[id] == searches)
+	    score *= HOST_BOOST;
+	if (wholeSearch[id] == searches)
+	    score *= WORD_BOOST;
+	top.offer(id, score);
+    }
+
+    /**
+     * Mark every page in a list as found by the search going on.
+     */
+    private void mark(PostingList list, int[] marks)
+    {
+	for (int i = 0; i < list.size; i++)
+	    marks[list.ids[i]] = searches;
+    }
+
+    /**
+     * @param url
+     *            A URL.
+     * @return The frecency of the page with the URL, or of a page that was
+     *         never visited if it isn't in the index.
+     */
+    public synchronized double getFrecency(String url)
+    {
+	IndexedPage page = pages.get(URLNormalizer.getDefault().canonicalize(
+		url));
+	if (page == null)
+	    return frecency(0, 0, System.currentTimeMillis());
+	return frecency(page.visits, lastVisits[page.id],
+		System.currentTimeMillis());
+    }
+
+    /**
+     * @return How many pages are in the index.
+     */
+    public synchronized int size()
+    {
+	return pages.size();
+    }
+
+    /**
+     * @param text
+     *            A word.
+     * @return The ids of the pages with the word, in order, or null if it
+     *         isn't in the index.
+     */
+    synchronized int[] getPageIds(String text)
+    {
+	WordTrieNode node = words.find(text);
+	if (node == null || node.word == null)
+	    return null;
+	return Arrays.copyOf(node.word.pages.ids, node.word.pages.size);
+    }
+
+    /**
+     * @return How many pages are kept before the lowest ranked are forgotten.
+     */
+    public int getMaxPages()
+    {
+	return maxPages;
+    }
+
+    /**
+     * @return How many different words are in the index.
+     */
+    public synchronized int getWordCount()
+    {
+	return words.size();
+    }
+
+    /**
+     * Rank a page by how often it was visited, weighted by how long ago it
+     * was last visited.
+     * 
+     * @param visits
+     *            How many times it was visited.
+     * @param lastVisited
+     *            When it was last visited, in milliseconds since the epoch.
+     * @param now
+     *            The time now.
+     * @return Its frecency. A page that was never visited still has some.
+     */
+    public static double frecency(int visits, long lastVisited, long now)
+    {
+	long age = now - lastVisited;
+	int weight;
+	if (age < 4 * DAY)
+	    weight = 100;
+	else if (age < 14 * DAY)
+	    weight = 70;
+	else if (age < 31 * DAY)
+	    weight = 50;
+	else if (age < 90 * DAY)
+	    weight = 30;
+	else
+	    weight = 10;
+	return (visits + 1) * (double) weight;
+    }
+
+    /**
+     * @param url
+     *            A URL.
+     * @return True if pages with the URL are indexed.
+     */
+    static boolean isIndexed(String url)
+    {
+	return url != null
+		&& (url.startsWith("http:") || url.startsWith("https:") || url
+			.startsWith("file:"));
+    }
+
+    /**
+     * Split text into lower case words of letters and digits, leaving out
+     * the scheme of a URL and "www", and add the ones that aren't in a list
+     * already.
+     * 
+     * @param text
+     *            The text, which may be null.
+     * @param into
+     *            The list of words.
+     */
+    static void tokenize(String text, ArrayList<String> into)
+    {
+	if (text == null)
+	    return;
+	int start = text.indexOf("://");
+	start = start < 0 ? 0 : start + 3;
+	StringBuilder word = new StringBuilder();
+	for (int i = start; i <= text.length() && into.size() < MAX_WORDS; i++)
+	{
+	    char c = i < text.length() ? text.charAt(i) : ' ';
+	    if (Character.isLetterOrDigit(c))
+	    {
+		if (word.length() < MAX_WORD_LENGTH)
+		    word.append(Character.toLowerCase(c));
+		continue;
+	    }
+	    if (word.length() == 0)
+		continue;
+	    String w = word.toString();
+	    word.setLength(0);
+	    if (!w.equals("www") && !into.contains(w))
+		into.add(w);
+	}
+    }
+
+    /**
+     * Match a page that isn't in the index, such as a bookmark, against the
+     * words of a query the same way a search does.
+     * 
+     * @param url
+     *            The page's URL.
+     * @param title
+     *            Its title, which may be null.
+     * @param terms
+     *            The query's words, from tokenize().
+     * @return What the page's frecency should be multiplied by, or -1 if a
+     *         term isn't the start of one of its words.
+     */
+    static double matchBoost(String url, String title,
+	    ArrayList<String> terms)
+    {
+	ArrayList<String> texts = new ArrayList<String>();
+	tokenize(url, texts);
+	boolean hasHost = !texts.isEmpty() && hasHost(url);
+	if (title != null && !title.equals(url))
+	    tokenize(title, texts);
+	boolean whole = false;
+	for (String term : terms)
+	{
+	    boolean found = false;
+	    for (String text : texts)
+	    {
+		if (text.startsWith(term))
+		{
+		    found = true;
+		    whole |= text.length() == term.length();
+		}
+	    }
+	    if (!found)
+		return -1;
+	}
+	double boost = whole ? WORD_BOOST : 1;
+	if (hasHost && texts.get(0).startsWith(terms.get(0)))
+	    boost *= HOST_BOOST;
+	return boost;
+    }
+
+    /**
+     * @return True if the URL has a host, so its first word is the start of
+     *         the host.
+     */
+    private static boolean hasHost(String url)
+    {
+	int host = url.indexOf("://") + 3;
+	return host > 2 && host < url.length() && url.charAt(host) != '/';
+    }
+
+    /**
+     * Give a page a new title, moving it to the words that are in the new one.
+     * The first time, the first word of its URL is also made its host word,
+     * if the URL has a host.
+     */
+    private void retitle(IndexedPage page, String title)
+    {
+	if (page.words != null && title != null && title.equals(page.title))
+	    return;
+	page.title = title;
+	ArrayList<String> texts = new ArrayList<String>();
+	tokenize(page.url, texts);
+	int urlWords = texts.size();
+	if (title != null && !title.equals(page.url))
+	    tokenize(title, texts);
+	IndexedWord[] newWords = new IndexedWord[texts.size()];
+	for (int i = 0; i < newWords.length; i++)
+	    newWords[i] = words.get(texts.get(i));
+	if (page.words == null)
+	{
+	    if (urlWords > 0 && hasHost(page.url))
+	    {
+		page.hostWord = newWords[0];
+		page.hostWord.hosts.add(page.id);
+	    }
+	}
+	else
+	{
+	    for (IndexedWord old : page.words)
+		if (!contains(newWords, old))
+		    old.pages.remove(page.id);
+	}
+	for (IndexedWord word : newWords)
+	{
+	    if (page.words == null || !contains(page.words, word))
+		word.pages.add(page.id);
+	    word.raise(frecencies[page.id]);
+	}
+	page.words = newWords;
+    }
+
+    private static boolean contains(IndexedWord[] words, IndexedWord word)
+    {
+	for (IndexedWord w : words)
+	    if (w == word)
+		return true;
+	return false;
+    }
+
+    /**
+     * Work out every page's frecency again, and the highest of each word.
+     */
+    private void rescore(long now)
+    {
+	words.clearFrecencies();
+	for (int i = 0; i < nextId; i++)
+	{
+	    if (byId[i] == null)
+		continue;
+	    frecencies[i] = frecency(byId[i].visits, lastVisits[i], now);
+	    for (IndexedWord word : byId[i].words)
+		word.raise(frecencies[i]);
+	}
+	scoredAt = now;
+    }
+
+    /**
+     * Make new, empty arrays of everything that is kept by page id.
+     */
+    private void allocate(int length)
+    {
+	byId = new IndexedPage[length];
+	frecencies = new double[length];
+	lastVisits = new long[length];
+	hits = new int[length];
+	hitSearch = new int[length];
+	hostSearch = new int[length];
+	wholeSearch = new int[length];
+	searches = 0;
+    }
+
+    /**
+     * Make room for more page ids in everything that is kept by page id.
+     */
+    private void grow(int length)
+    {
+	byId = Arrays.copyOf(byId, length);
+	frecencies = Arrays.copyOf(frecencies, length);
+	lastVisits = Arrays.copyOf(lastVisits, length);
+	hits = Arrays.copyOf(hits, length);
+	hitSearch = Arrays.copyOf(hitSearch, length);
+	hostSearch = Arrays.copyOf(hostSearch, length);
+	wholeSearch = Arrays.copyOf(wholeSearch, length);
+    }
+
+    /**
+     * Forget the lowest ranked page that was picked, picking the lowest
+     * ranked tenth of the pages again when none are left.
+     */
+    private void evictOne()
+    {
+	while (true)
+	{
+	    if (victims.isEmpty())
+		pickVictims();
+	    IndexedPage page = victims.remove(victims.size() - 1);
+	    if (pages.get(page.url) == page
+		    && frecencies[page.id] <= victimCeiling)
+	    {
+		forget(page);
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Pick the lowest ranked tenth of the pages, the least recently visited
+     * among equals. Only the frecencies are sorted, to find the frecency the
+     * tenth ends at, and then the visit times of the pages at it; the pages
+     * themselves aren't.
+     */
+    private void pickVictims()
+    {
+	long now = System.currentTimeMillis();
+	if (now - scoredAt > RESCORE_INTERVAL)
+	    rescore(now);
+	int count = Math.max(pages.size() / 10, 1);
+	double[] ranks = new double[pages.size()];
+	int n = 0;
+	for (int id = 0; id < nextId; id++)
+	    if (byId[id] != null)
+		ranks[n++] = frecencies[id];
+	Arrays.sort(ranks);
+	double floor = ranks[count - 1];
+	int below = 0;
+	int at = 0;
+	for (int i = 0; i < n; i++)
+	{
+	    if (ranks[i] < floor)
+		below++;
+	    else if (ranks[i] == floor)
+		at++;
+	}
+	long[] times = new long[at];
+	at = 0;
+	for (int id = 0; id < nextId; id++)
+	    if (byId[id] != null && frecencies[id] == floor)
+		times[at++] = lastVisits[id];
+	Arrays.sort(times);
+	int need = count - below;
+	long newest = times[need - 1];
+	// How many of the pages at the floor visited at that time are picked.
+	int atNewest = 0;
+	for (int i = 0; i < need; i++)
+	    if (times[i] == newest)
+		atNewest++;
+	for (int id = 0; id < nextId; id++)
+	{
+	    if (byId[id] == null || frecencies[id] > floor)
+		continue;
+	    if (frecencies[id] == floor && lastVisits[id] > newest)
+		continue;
+	    if (frecencies[id] == floor && lastVisits[id] == newest)
+	    {
+		if (atNewest == 0)
+		    continue;
+		atNewest--;
+	    }
+	    victims.add(byId[id]);
+	}
+	victimCeiling = floor;
+	// The lowest ranked last, to be forgotten first.
+	final double[] f = frecencies;
+	final long[] visited = lastVisits;
+	Collections.sort(victims, new Comparator<IndexedPage>()
+	{
+	    @Override
+	    public int compare(IndexedPage a, IndexedPage b)
+	    {
+		if (f[a.id] != f[b.id])
+		    return Double.compare(f[b.id], f[a.id]);
+		return Long.compare(visited[b.id], visited[a.id]);
+	    }
+	});
+    }
+
+    /**
+     * Take a page out of the index and its words, dropping the words no
+     * other page has, and free its id. Each word's page ids stay sorted.
+     */
+    private void forget(IndexedPage page)
+    {
+	pages.remove(page.url);
+	if (page.hostWord != null)
+	    page.hostWord.hosts.remove(page.id);
+	for (IndexedWord word : page.words)
+	{
+	    word.pages.remove(page.id);
+	    if (word.pages.size == 0)
+		words.remove(word);
+	}
+	byId[page.id] = null;
+	if (freeCount == freeIds.length)
+	    freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+	freeIds[freeCount++] = page.id;
+    }
+}
+
+/**
+ * What the index knows about one page, other than what a search needs for
+ * every page, which the index keeps in arrays by id.
+ * 
+ * @author Akshay
+ *
+ */
+class IndexedPage
+{
+    final int id;
+    final String url;
+    String title;
+    IndexedWord[] words;
+    /**
+     * The first word of the page's host, or null if it has none.
+     */
+    IndexedWord hostWord;
+    int visits = 0;
+
+    IndexedPage(int id, String url)
+    {
+	this.id = id;
+	this.url = url;
+    }
+}
+
+/**
+ * The best pages of a search so far, best first, with newer pages first among
+ * equals. A page that is offered again is only kept once.
+ * 
+ * @author Akshay
+ *
+ */
+class TopPages
+{
+    private final int[] ids;
+    private final double[] scores;
+    private final long[] lastVisits;
+    private int count = 0;
+
+    /**
+     * @param limit
+     *            How many pages to keep.
+     * @param lastVisits
+     *            When each page was last visited, by id.
+     */
+    TopPages(int limit, long[] lastVisits)
+    {
+	ids = new int[limit];
+	scores = new double[limit];
+	this.lastVisits = lastVisits;
+    }
+
+    void offer(int id, double score)
+    {
+	if (isFull() && !ranksAbove(score, id, count - 1))
+	    return;
+	for (int i = 0; i < count; i++)
+	    if (ids[i] == id)
+		return;
+	int at = isFull() ? count - 1 : count++;
+	while (at > 0 && ranksAbove(score, id, at - 1))
+	{
+	    ids[at] = ids[at - 1];
+	    scores[at] = scores[at - 1];
+	    at--;
+	}
+	ids[at] = id;
+	scores[at] = score;
+    }
+
+    private boolean ranksAbove(double score, int id, int at)
+    {
+	if (score != scores[at])
+	    return score > scores[at];
+	return lastVisits[id] > lastVisits[ids[at]];
+    }
+
+    boolean isFull()
+    {
+	return count == ids.length;
+    }
+
+    /**
+     * @return The lowest score kept.
+     */
+    double getFloor()
+    {
+	return scores[count - 1];
+    }
+
+    int getCount()
+    {
+	return count;
+    }
+
+    int getId(int i)
+    {
+	return ids[i];
+    }
+
+    double getScore(int i)
+    {
+	return scores[i];
+    }
+}
+
+/**
+ * One word in the index, with the pages it is in and the pages whose host
+ * starts with it.
+ * 
+ * @author Akshay
+ *
+ */
+class IndexedWord
+{
+    final String text;
+    final PostingList pages = new PostingList();
+    final PostingList hosts = new PostingList();
+    /**
+     * At least the highest frecency of the pages it is in. It only goes down
+     * when the index works out every frecency again.
+     */
+    double maxFrecency = 0;
+    private final WordTrieNode node;
+
+    /**
+     * @param text
+     *            The word.
+     * @param node
+     *            Its node in the trie.
+     */
+    IndexedWord(String text, WordTrieNode node)
+    {
+	this.text = text;
+	this.node = node;
+    }
+
+    WordTrieNode getNode()
+    {
+	return node;
+    }
+
+    /**
+     * Make sure maxFrecency, and the best frecency of every node above the
+     * word in the trie, is at least a page's frecency.
+     */
+    void raise(double frecency)
+    {
+	if (frecency <= maxFrecency)
+	    return;
+	maxFrecency = frecency;
+	for (WordTrieNode n = node; n != null && n.best < frecency; n = n.parent)
+	    n.best = frecency;
+    }
+}
+
+/**
+ * A sorted list of page ids.
+ * 
+ * @author Akshay
+ *
+ */
+class PostingList
+{
+    int[] ids = new int[2];
+    int size = 0;
+
+    void add(int id)
+    {
+	int at = Arrays.binarySearch(ids, 0, size, id);
+	if (at >= 0)
+	    return;
+	at = -at - 1;
+	if (size == ids.length)
+	    ids = Arrays.copyOf(ids, size * 2);
+	System.arraycopy(ids, at, ids, at + 1, size - at);
+	ids[at] = id;
+	size++;
+    }
+
+    void remove(int id)
+    {
+	int at = Arrays.binarySearch(ids, 0, size, id);
+	if (at < 0)
+	    return;
+	System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+	size--;
+    }
+}
+
+/**
+ * The words of the index by their letters, so every word that starts with
+ * something typed can be found without looking at the others.
+ * 
+ * @author Akshay
+ *
+ */
+class WordTrie
+{
+    private final WordTrieNode root = new WordTrieNode(null);
+    private int size = 0;
+
+    /**
+     * @return The word, which is added if it isn't in the trie.
+     */
+    IndexedWord get(String text)
+    {
+	WordTrieNode node = root;
+	for (int i = 0; i < text.length(); i++)
+	    node = node.child(text.charAt(i), true);
+	if (node.word == null)
+	{
+	    node.word = new IndexedWord(text, node);
+	    size++;
+	}
+	return node.word;
+    }
+
+    /**
+     * @return The node for the prefix, or null if no word starts with it.
+     */
+    WordTrieNode find(String prefix)
+    {
+	WordTrieNode node = root;
+	for (int i = 0; i < prefix.length() && node != null; i++)
+	    node = node.child(prefix.charAt(i), false);
+	return node;
+    }
+
+    /**
+     * Take a word out of the trie, with the nodes that lead only to it.
+     */
+    void remove(IndexedWord word)
+    {
+	WordTrieNode node = word.getNode();
+	if (node.word != word)
+	    return;
+	node.word = null;
+	size--;
+	while (node.parent != null && node.word == null && node.count == 0)
+	{
+	    node.parent.removeChild(node);
+	    node = node.parent;
+	}
+    }
+
+    /**
+     * Forget the best frecency of every word and node, so they can be
+     * raised again from the pages' new frecencies.
+     */
+    void clearFrecencies()
+    {
+	ArrayList<WordTrieNode> stack = new ArrayList<WordTrieNode>();
+	stack.add(root);
+	while (!stack.isEmpty())
+	{
+	    WordTrieNode n = stack.remove(stack.size() - 1);
+	    n.best = 0;
+	    if (n.word != null)
+		n.word.maxFrecency = 0;
+	    for (int i = 0; i < n.count; i++)
+		stack.add(n.children[i]);
+	}
+    }
+
+    /**
+     * @return Every word that starts with the prefix and is in a page, with
+     *         the prefix itself first if it is one.
+     */
+    ArrayList<IndexedWord> startingWith(String prefix)
+    {
+	ArrayList<IndexedWord> found = new ArrayList<IndexedWord>();
+	WordTrieNode node = find(prefix);
+	if (node == null)
+	    return found;
+	ArrayList<WordTrieNode> stack = new ArrayList<WordTrieNode>();
+	stack.add(node);
+	while (!stack.isEmpty())
+	{
+	    WordTrieNode n = stack.remove(stack.size() - 1);
+	    if (n.word != null && n.word.pages.size > 0)
+		found.add(n.word);
+	    for (int i = 0; i < n.count; i++)
+		stack.add(n.children[i]);
+	}
+	return found;
+    }
+
+    /**
+     * @return How many words are in the trie, including ones a page was
+     *         retitled out of.
+     */
+    int size()
+    {
+	return size;
+    }
+}
+
+/**
+ * A node of a WordTrie, with its children sorted by letter, and the best
+ * frecency of the words under it, so a search can go to the best words first.
+ * 
+ * @author Akshay
+ *
+ */
+class WordTrieNode
+{
+    private static final char[] NO_KEYS = new char[0];
+    private static final WordTrieNode[] NO_CHILDREN = new WordTrieNode[0];
+    static final Comparator<WordTrieNode> BY_BEST = new Comparator<WordTrieNode>()
+    {
+	@Override
+	public int compare(WordTrieNode a, WordTrieNode b)
+	{
+	    return Double.compare(b.best, a.best);
+	}
+    };
+    final WordTrieNode parent;
+    char[] keys = NO_KEYS;
+    WordTrieNode[] children = NO_CHILDREN;
+    int count = 0;
+    IndexedWord word;
+    /**
+     * At least the highest frecency of the pages of the words at and under
+     * the node.
+     */
+    double best = 0;
+
+    WordTrieNode(WordTrieNode parent)
+    {
+	this.parent = parent;
+    }
+
+    WordTrieNode child(char c, boolean create)
+    {
+	int at = Arrays.binarySearch(keys, 0, count, c);
+	if (at >= 0)
+	    return children[at];
+	if (!create)
+	    return null;
+	at = -at - 1;
+	if (count == keys.length)
+	{
+	    keys = Arrays.copyOf(keys, Math.max(count * 2, 2));
+	    children = Arrays.copyOf(children, keys.length);
+	}
+	System.arraycopy(keys, at, keys, at + 1, count - at);
+	System.arraycopy(children, at, children, at + 1, count - at);
+	keys[at] = c;
+	children[at] = new WordTrieNode(this);
+	count++;
+	return children[at];
+    }
+
+    void removeChild(WordTrieNode child)
+    {
+	for (int at = 0; at < count; at++)
+	{
+	    if (children[at] != child)
+		continue;
+	    System.arraycopy(keys, at + 1, keys, at, count - at - 1);
+	    System.arraycopy(children, at + 1, children, at, count - at - 1);
+	    children[--count] = null;
+	    return;
+	}
+    }
+}
+
+/**
+ * Keeps a HistoryIndex up to date with one tab's History.
+ * 
+ * @author Akshay
+ *
+ */
+class IndexListener implements HistoryListener
+{
+    private final HistoryIndex index;
+
+    IndexListener(HistoryIndex index)
+    {
+	this.index = index;
+    }
+
+    @Override
+    public void nodeAdded(HistoryNode node)
+    {
+	index.record(node.getUrl(), node.getTitle(), node.getLastVisited(),
+		false);
+    }
+
+    @Override
+    public void nodeRemoved(HistoryNode parent, HistoryNode node)
+    {
+	// Pages stay in the index after a tab forgets them.
+    }
+
+    @Override
+    public void titleChanged(HistoryNode node)
+    {
+	index.setTitle(node.getUrl(), node.getTitle());
+    }
+
+    @Override
+    public void primaryChanged(HistoryNode parent)
+    {
+    }
+
+    @Override
+    public void currentChanged(HistoryNode oldCurrent, HistoryNode newCurrent)
+    {
+	// Going back or forward isn't a visit.
+    }
+
+    @Override
+    public void visited(HistoryNode node)
+    {
+	index.record(node.getUrl(), node.getTitle(), node.getLastVisited(),
+		true);
+    }
+}
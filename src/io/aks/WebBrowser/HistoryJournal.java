@@ -0,0 +1,808 @@
+package io.aks.WebBrowser;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Saves every tab's History to disk so it survives closing the browser. Each
+ * change to a History (a page added, visited, or removed, a title changed, a
+ * primary forward changed, or the current node moved) is appended to a memory-mapped journal
+ * file. Appending happens on a separate writer thread, so the JavaFX thread
+ * only ever puts a small record in a queue.
+ * 
+ * When the browser starts, the journal is scanned once, and only the tabs
+ * that were still open are decoded and replayed. The writer thread also keeps
+ * a compact copy of every open tab's tree, and every so often rewrites the
+ * journal as a snapshot of just those trees, so closed tabs and old events
+ * don't pile up.
+ * 
+ * @author Akshay
+ *
+ */
+public class HistoryJournal implements Runnable
+{
+    private static final String JOURNAL_ERROR = "Warning:\nThere was a problem saving your history. History from this session will not be restored.";
+    private static final int MAGIC = 0x48495354;
+    /**
+     * A journal of another version, such as one from before records had a
+     * time, is started over.
+     */
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 16;
+    private static final int END_OFFSET = 8;
+    private static final int RECORD_FIELDS_SIZE = 21;
+    private static final int INITIAL_MAP_SIZE = 1 << 20;
+    /**
+     * How many records may be appended before the journal is rewritten as a
+     * snapshot.
+     */
+    private static final int COMPACT_THRESHOLD = 50000;
+
+    private final File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long end = HEADER_SIZE;
+    private int appended = 0;
+    private boolean garbage = false;
+    private int nextTabId = 0;
+    private final ArrayList<SavedTab> savedTabs = new ArrayList<SavedTab>();
+    private final LinkedHashMap<Integer, JournalTab> shadow = new LinkedHashMap<Integer, JournalTab>();
+    private final LinkedBlockingQueue<JournalRecord> queue = new LinkedBlockingQueue<JournalRecord>();
+    private final HashMap<History, JournalTabListener> attached = new HashMap<History, JournalTabListener>();
+    private Thread writer;
+    private volatile boolean failed = false;
+
+    /**
+     * Opens a journal, reads which tabs were open last time, and starts the
+     * writer thread.
+     * 
+     * @param file
+     *            The journal file. It is created if it doesn't exist.
+     */
+    public HistoryJournal(File file)
+    {
+	this.file = file;
+	try
+	{
+	    File parent = file.getParentFile();
+	    if (parent != null && !parent.exists())
+		parent.mkdirs();
+	    open();
+	    load();
+	}
+	catch (IOException e)
+	{
+	    fail(e);
+	    return;
+	}
+	writer = new Thread(this, "History Journal Writer");
+	writer.setDaemon(true);
+	writer.start();
+    }
+
+    /**
+     * @return The tabs that were open when the journal was last closed, in the
+     *         order they were opened.
+     */
+    public ArrayList<SavedTab> getSavedTabs()
+    {
+	return savedTabs;
+    }
+
+    /**
+     * Start journaling a new History. Its root is recorded right away.
+     * 
+     * @param history
+     *            The History of a new tab.
+     */
+    public void attach(History history)
+    {
+	if (failed)
+	    return;
+	int id = nextTabId++;
+	HistoryNode root = history.getRoot();
+	submit(new JournalRecord(JournalRecord.OPEN, id, 0, 0, root.getUrl()));
+	submit(new JournalRecord(JournalRecord.TITLE, id, 0, 0, root
+		.getTitle()));
+	if (root.getVisitCount() > 0)
+	    submit(new JournalRecord(JournalRecord.VISIT, id, 0, root
+		    .getVisitCount(), null, root.getLastVisited()));
+	HashMap<Integer, HistoryNode> nodes = new HashMap<Integer, HistoryNode>();
+	nodes.put(0, root);
+	attach(history, id, nodes);
+	if (history.getCurrent() != root)
+	    submit(new JournalRecord(JournalRecord.CURRENT, id, 0, 0, null));
+    }
+
+    /**
+     * Start journaling a History that was restored from a SavedTab, so new
+     * changes are added to the same tab in the journal.
+     * 
+     * @param history
+     *            The restored History.
+     * @param saved
+     *            The tab it was restored from.
+     * @param nodes
+     *            The restored nodes by id, as returned by replay().
+     */
+    public void attach(History history, SavedTab saved,
+	    HashMap<Integer, HistoryNode> nodes)
+    {
+	if (failed)
+	    return;
+	attach(history, saved.getId(), nodes);
+    }
+
+    private void attach(History history, int id,
+	    HashMap<Integer, HistoryNode> nodes)
+    {
+	JournalTabListener listener = new JournalTabListener(this, id, nodes);
+	attached.put(history, listener);
+	history.addHistoryListener(listener);
+    }
+
+    /**
+     * Stop journaling a History because its tab was closed. The tab won't be
+     * restored.
+     * 
+     * @param history
+     *            The closed tab's History.
+     */
+    public void detach(History history)
+    {
+	JournalTabListener listener = attached.remove(history);
+	if (listener == null)
+	    return;
+	history.removeHistoryListener(listener);
+	submit(new JournalRecord(JournalRecord.CLOSE, listener.getId(), 0, 0,
+		null));
+    }
+
+    /**
+     * Rebuild a saved tab's tree in a History whose root is the saved root.
+     * The History should not be attached yet, so the replayed changes aren't
+     * journaled a second time.
+     * 
+     * @param saved
+     *            The saved tab.
+     * @param history
+     *            A new History, made with saved.getRootURL() as its start.
+     * @return The replayed nodes that are still in the tree, by id.
+     */
+    public static HashMap<Integer, HistoryNode> replay(SavedTab saved,
+	    History history)
+    {
+	HashMap<Integer, HistoryNode> nodes = new HashMap<Integer, HistoryNode>();
+	nodes.put(0, history.getRoot());
+	for (JournalRecord r : saved.getRecords())
+	{
+	    HistoryNode node = nodes.get(r.getNode());
+	    if (node == null)
+		continue;
+	    if (r.getType() == JournalRecord.ADD)
+		nodes.put(r.getOther(), history.addRestored(node, r.getText()));
+	    else if (r.getType() == JournalRecord.VISIT)
+		node.restoreVisits(r.getOther(), r.getTime());
+	    else if (r.getType() == JournalRecord.TITLE)
+		node.setTitle(r.getText());
+	    else if (r.getType() == JournalRecord.PRIMARY)
+	    {
+		HistoryNode primary = nodes.get(r.getOther());
+		if (primary != null)
+		    node.setPrimary(primary);
+	    }
+	    else if (r.getType() == JournalRecord.CURRENT)
+		history.setCurrent(node);
+	    else if (r.getType() == JournalRecord.REMOVE)
+		history.remove(node);
+	}
+	// Forget the nodes that were removed.
+	Iterator<HistoryNode> i = nodes.values().iterator();
+	while (i.hasNext())
+	    if (i.next().getHistory() != history)
+		i.remove();
+	return nodes;
+    }
+
+    /**
+     * Writes everything that is still queued and stops the writer thread.
+     */
+    public void close()
+    {
+	if (writer == null)
+	    return;
+	queue.offer(JournalRecord.STOP);
+	try
+	{
+	    writer.join(2000);
+	}
+	catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    /**
+     * Queue a record for the writer thread. Never blocks.
+     * 
+     * @param record
+     *            The record.
+     */
+    void submit(JournalRecord record)
+    {
+	if (!failed)
+	    queue.offer(record);
+    }
+
+    /**
+     * The writer thread. Builds the copy of the restored trees, then appends
+     * records as they arrive.
+     */
+    @Override
+    public void run()
+    {
+	try
+	{
+	    for (SavedTab saved : savedTabs)
+		for (JournalRecord r : saved.getRecords())
+		    apply(r);
+	    if (garbage)
+		compact();
+	    while (true)
+	    {
+		JournalRecord record = queue.take();
+		if (record == JournalRecord.STOP)
+		    break;
+		append(record);
+		apply(record);
+		if (appended > COMPACT_THRESHOLD)
+		    compact();
+	    }
+	    release();
+	}
+	catch (IOException e)
+	{
+	    fail(e);
+	}
+	catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    /**
+     * Opens the file and maps it, writing a header if it is new or unreadable.
+     */
+    private void open() throws IOException
+    {
+	raf = new RandomAccessFile(file, "rw");
+	channel = raf.getChannel();
+	long size = channel.size();
+	map(Math.max(size, INITIAL_MAP_SIZE));
+	if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC
+		|| buffer.getInt(4) != VERSION)
+	{
+	    buffer.putInt(0, MAGIC);
+	    buffer.putInt(4, VERSION);
+	    setEnd(HEADER_SIZE);
+	}
+	else
+	    end = Math.min(buffer.getLong(END_OFFSET), size);
+    }
+
+    /**
+     * Scans the journal once to find the open tabs, then decodes only the
+     * records that belong to them.
+     */
+    private void load()
+    {
+	HashMap<Integer, ArrayList<Integer>> offsets = new HashMap<Integer, ArrayList<Integer>>();
+	ArrayList<Integer> order = new ArrayList<Integer>();
+	HashSet<Integer> closed = new HashSet<Integer>();
+	int position = HEADER_SIZE;
+	while (position + 4 + RECORD_FIELDS_SIZE <= end)
+	{
+	    int length = buffer.getInt(position);
+	    if (length < RECORD_FIELDS_SIZE || position + 4 + length > end)
+		break;
+	    byte type = buffer.get(position + 4);
+	    int tab = buffer.getInt(position + 5);
+	    nextTabId = Math.max(nextTabId, tab + 1);
+	    if (type == JournalRecord.CLOSE)
+		closed.add(tab);
+	    else
+	    {
+		ArrayList<Integer> list = offsets.get(tab);
+		if (list == null)
+		{
+		    list = new ArrayList<Integer>();
+		    offsets.put(tab, list);
+		    order.add(tab);
+		}
+		list.add(position);
+	    }
+	    position += 4 + length;
+	}
+	// Anything after a torn record is lost.
+	setEnd(position);
+
+	for (Integer tab : order)
+	{
+	    if (closed.contains(tab))
+	    {
+		garbage = true;
+		continue;
+	    }
+	    ArrayList<Integer> list = offsets.get(tab);
+	    ArrayList<JournalRecord> records = new ArrayList<JournalRecord>(
+		    list.size());
+	    for (Integer offset : list)
+		records.add(read(offset));
+	    if (records.get(0).getType() == JournalRecord.OPEN)
+		savedTabs.add(new SavedTab(tab, records));
+	    else
+		garbage = true;
+	}
+    }
+
+    /**
+     * Decodes the record at an offset.
+     */
+    private JournalRecord read(int offset)
+    {
+	int length = buffer.getInt(offset);
+	byte type = buffer.get(offset + 4);
+	int tab = buffer.getInt(offset + 5);
+	int node = buffer.getInt(offset + 9);
+	int other = buffer.getInt(offset + 13);
+	long time = buffer.getLong(offset + 17);
+	String text = null;
+	int textLength = length - RECORD_FIELDS_SIZE;
+	if (textLength > 0)
+	{
+	    byte[] bytes = new byte[textLength];
+	    ByteBuffer view = buffer.duplicate();
+	    view.position(offset + 4 + RECORD_FIELDS_SIZE);
+	    view.get(bytes);
+	    text = new String(bytes, StandardCharsets.UTF_8);
+	}
+	return new JournalRecord(type, tab, node, other, text, time);
+    }
+
+    /**
+     * Appends a record to the end of the journal, growing the mapping if
+     * needed.
+     */
+    private void append(JournalRecord record) throws IOException
+    {
+	byte[] text = record.getText() == null ? new byte[0] : record
+		.getText().getBytes(StandardCharsets.UTF_8);
+	int length = RECORD_FIELDS_SIZE + text.length;
+	if (end + 4 + length > buffer.capacity())
+	    map(Math.max(buffer.capacity() * 2L, end + 4 + length));
+	int position = (int) end;
+	buffer.putInt(position, length);
+	buffer.put(position + 4, record.getType());
+	buffer.putInt(position + 5, record.getTab());
+	buffer.putInt(position + 9, record.getNode());
+	buffer.putInt(position + 13, record.getOther());
+	buffer.putLong(position + 17, record.getTime());
+	ByteBuffer view = buffer.duplicate();
+	view.position(position + 4 + RECORD_FIELDS_SIZE);
+	view.put(text);
+	// The header is only moved after the record is complete.
+	setEnd(end + 4 + length);
+	appended++;
+    }
+
+    /**
+     * Keeps the writer thread's copy of the trees up to date.
+     */
+    private void apply(JournalRecord record)
+    {
+	if (record.getType() == JournalRecord.OPEN)
+	    shadow.put(record.getTab(), new JournalTab(record.getText()));
+	else if (record.getType() == JournalRecord.CLOSE)
+	{
+	    if (shadow.remove(record.getTab()) != null)
+		garbage = true;
+	}
+	else
+	{
+	    JournalTab tab = shadow.get(record.getTab());
+	    if (tab != null)
+		tab.apply(record);
+	}
+    }
+
+    /**
+     * Rewrites the journal as the shortest list of records that rebuilds
+     * every open tab. The snapshot is written to a new file which then
+     * replaces the journal. Both files are unmapped first, since Windows
+     * won't replace a file that is still mapped. If the file system can't
+     * move it atomically it is copied over the journal instead.
+     */
+    private void compact() throws IOException
+    {
+	File temp = new File(file.getPath() + ".tmp");
+	new HistoryJournal(temp, shadow).release();
+
+	release();
+	try
+	{
+	    Files.move(temp.toPath(), file.toPath(),
+		    StandardCopyOption.REPLACE_EXISTING,
+		    StandardCopyOption.ATOMIC_MOVE);
+	}
+	catch (IOException e)
+	{
+	    Files.copy(temp.toPath(), file.toPath(),
+		    StandardCopyOption.REPLACE_EXISTING);
+	    Files.delete(temp.toPath());
+	}
+	open();
+	appended = 0;
+	garbage = false;
+    }
+
+    /**
+     * Writes a snapshot of the tabs into a new journal.
+     * 
+     * @param file
+     *            The file to write it to, which is replaced if it exists.
+     * @param tabs
+     *            The writer thread's copies of the open tabs, by id.
+     */
+    private HistoryJournal(File file, Map<Integer, JournalTab> tabs)
+	    throws IOException
+    {
+	this.file = file;
+	if (file.exists())
+	    file.delete();
+	open();
+	for (Integer id : tabs.keySet())
+	    tabs.get(id).writeTo(id, this);
+    }
+
+    /**
+     * Writes the mapped buffer out, unmaps it, and closes the file.
+     */
+    private void release() throws IOException
+    {
+	buffer.force();
+	unmap(buffer);
+	buffer = null;
+	channel.close();
+	raf.close();
+    }
+
+    /**
+     * Appends a record while writing a snapshot.
+     */
+    void write(JournalRecord record) throws IOException
+    {
+	append(record);
+    }
+
+    private void map(long size) throws IOException
+    {
+	MappedByteBuffer old = buffer;
+	buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	if (old != null)
+	    unmap(old);
+    }
+
+    /**
+     * Releases a mapping now instead of whenever the buffer is garbage
+     * collected. There is no public way to do this, so the JDK's cleaner is
+     * found by reflection, through Unsafe on Java 9 and later and the
+     * buffer's own cleaner on Java 8. If neither is there the mapping is left
+     * to the garbage collector. The buffer must not be used afterwards.
+     * 
+     * @param mapped
+     *            The buffer to unmap.
+     */
+    private static void unmap(MappedByteBuffer mapped)
+    {
+	try
+	{
+	    Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+	    try
+	    {
+		Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+			ByteBuffer.class);
+		Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+		theUnsafe.setAccessible(true);
+		invokeCleaner.invoke(theUnsafe.get(null), mapped);
+		return;
+	    }
+	    catch (NoSuchMethodException e)
+	    {
+		// Java 8, which has no invokeCleaner.
+	    }
+	    Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+	    cleanerMethod.setAccessible(true);
+	    Object cleaner = cleanerMethod.invoke(mapped);
+	    if (cleaner != null)
+		cleaner.getClass().getMethod("clean").invoke(cleaner);
+	}
+	catch (Exception e)
+	{
+	    // Left for the garbage collector to unmap.
+	}
+    }
+
+    private void setEnd(long newEnd)
+    {
+	end = newEnd;
+	buffer.putLong(END_OFFSET, end);
+    }
+
+    private void fail(IOException e)
+    {
+	if (failed)
+	    return;
+	failed = true;
+	queue.clear();
+	System.err.println(JOURNAL_ERROR + "\n" + e.getMessage());
+    }
+}
+
+/**
+ * Turns the changes to one History into journal records. Runs on the JavaFX
+ * thread, so it only numbers the nodes and queues records.
+ * 
+ * @author Akshay
+ *
+ */
+class JournalTabListener implements HistoryListener
+{
+    private final HistoryJournal journal;
+    private final int id;
+    private final HashMap<HistoryNode, Integer> ids = new HashMap<HistoryNode, Integer>();
+    private int nextId = 0;
+
+    public JournalTabListener(HistoryJournal journal, int id,
+	    HashMap<Integer, HistoryNode> nodes)
+    {
+	this.journal = journal;
+	this.id = id;
+	for (Map.Entry<Integer, HistoryNode> e : nodes.entrySet())
+	{
+	    ids.put(e.getValue(), e.getKey());
+	    nextId = Math.max(nextId, e.getKey() + 1);
+	}
+    }
+
+    public int getId()
+    {
+	return id;
+    }
+
+    @Override
+    public void nodeAdded(HistoryNode node)
+    {
+	Integer parent = ids.get(node.getBackward());
+	if (parent == null)
+	    return;
+	int n = nextId++;
+	ids.put(node, n);
+	journal.submit(new JournalRecord(JournalRecord.ADD, id, parent, n,
+		node.getUrl()));
+	if (!node.getUrl().equals(node.getTitle()))
+	    titleChanged(node);
+    }
+
+    @Override
+    public void nodeRemoved(HistoryNode parent, HistoryNode node)
+    {
+	Integer n = ids.get(node);
+	if (n == null)
+	    return;
+	journal.submit(new JournalRecord(JournalRecord.REMOVE, id, n, 0, null));
+	ArrayList<HistoryNode> branch = new ArrayList<HistoryNode>();
+	branch.add(node);
+	for (int i = 0; i < branch.size(); i++)
+	{
+	    ids.remove(branch.get(i));
+	    branch.addAll(branch.get(i).getForward());
+	}
+    }
+
+    @Override
+    public void titleChanged(HistoryNode node)
+    {
+	Integer n = ids.get(node);
+	if (n != null)
+	    journal.submit(new JournalRecord(JournalRecord.TITLE, id, n, 0,
+		    node.getTitle()));
+    }
+
+    @Override
+    public void primaryChanged(HistoryNode parent)
+    {
+	Integer p = ids.get(parent);
+	Integer child = ids.get(parent.timeTravelForward());
+	if (p != null && child != null)
+	    journal.submit(new JournalRecord(JournalRecord.PRIMARY, id, p,
+		    child, null));
+    }
+
+    @Override
+    public void currentChanged(HistoryNode oldCurrent, HistoryNode newCurrent)
+    {
+	Integer n = ids.get(newCurrent);
+	if (n != null)
+	    journal.submit(new JournalRecord(JournalRecord.CURRENT, id, n, 0,
+		    null));
+    }
+
+    @Override
+    public void visited(HistoryNode node)
+    {
+	Integer n = ids.get(node);
+	if (n != null)
+	    journal.submit(new JournalRecord(JournalRecord.VISIT, id, n, node
+		    .getVisitCount(), null, node.getLastVisited()));
+    }
+}
+
+/**
+ * The writer thread's compact copy of one tab's tree, used to write
+ * snapshots. Each node has a stamp that is bumped whenever it is added or
+ * made primary, so a parent's forwards are in descending stamp order.
+ * Removed nodes are only marked, and are dropped when a snapshot is written.
+ * 
+ * @author Akshay
+ *
+ */
+class JournalTab
+{
+    private final LinkedHashMap<Integer, JournalNode> nodes = new LinkedHashMap<Integer, JournalNode>();
+    private int current = 0;
+    private long clock = 0;
+
+    public JournalTab(String rootURL)
+    {
+	nodes.put(0, new JournalNode(-1, rootURL, ++clock));
+    }
+
+    public void apply(JournalRecord record)
+    {
+	JournalNode node = nodes.get(record.getNode());
+	if (node == null)
+	    return;
+	if (record.getType() == JournalRecord.ADD)
+	{
+	    nodes.put(record.getOther(), new JournalNode(record.getNode(),
+		    record.getText(), ++clock));
+	    current = record.getOther();
+	}
+	else if (record.getType() == JournalRecord.TITLE)
+	    node.title = record.getText();
+	else if (record.getType() == JournalRecord.PRIMARY)
+	{
+	    JournalNode primary = nodes.get(record.getOther());
+	    if (primary != null)
+		primary.stamp = ++clock;
+	}
+	else if (record.getType() == JournalRecord.CURRENT)
+	    current = record.getNode();
+	else if (record.getType() == JournalRecord.REMOVE)
+	    node.removed = true;
+	else if (record.getType() == JournalRecord.VISIT)
+	{
+	    node.visits = record.getOther();
+	    node.lastVisited = record.getTime();
+	}
+    }
+
+    /**
+     * Writes the records that rebuild this tree.
+     */
+    public void writeTo(int id, HistoryJournal snapshot) throws IOException
+    {
+	// Nodes come after their parents, so one pass drops whole branches.
+	Iterator<JournalNode> i = nodes.values().iterator();
+	while (i.hasNext())
+	{
+	    JournalNode node = i.next();
+	    if (node.removed
+		    || (node.parent >= 0 && !nodes.containsKey(node.parent)))
+		i.remove();
+	}
+
+	HashMap<Integer, Integer> forwards = new HashMap<Integer, Integer>();
+	for (Map.Entry<Integer, JournalNode> e : nodes.entrySet())
+	{
+	    int n = e.getKey();
+	    JournalNode node = e.getValue();
+	    if (node.parent < 0)
+	    {
+		snapshot.write(new JournalRecord(JournalRecord.OPEN, id, 0, 0,
+			node.url));
+		snapshot.write(new JournalRecord(JournalRecord.TITLE, id, 0, 0,
+			node.title));
+		writeVisits(id, 0, node, snapshot);
+		continue;
+	    }
+	    Integer count = forwards.get(node.parent);
+	    forwards.put(node.parent, count == null ? 1 : count + 1);
+	    snapshot.write(new JournalRecord(JournalRecord.ADD, id,
+		    node.parent, n, node.url));
+	    if (node.title != null && !node.title.equals(node.url))
+		snapshot.write(new JournalRecord(JournalRecord.TITLE, id, n, 0,
+			node.title));
+	    writeVisits(id, n, node, snapshot);
+	}
+
+	// Replaying PRIMARY oldest first leaves the newest in front.
+	ArrayList<Integer> branched = new ArrayList<Integer>();
+	for (Map.Entry<Integer, JournalNode> e : nodes.entrySet())
+	    if (e.getValue().parent >= 0 && forwards.get(e.getValue().parent) > 1)
+		branched.add(e.getKey());
+	branched.sort(new Comparator<Integer>()
+	{
+	    @Override
+	    public int compare(Integer a, Integer b)
+	    {
+		return Long.compare(nodes.get(a).stamp, nodes.get(b).stamp);
+	    }
+	});
+	for (Integer n : branched)
+	    snapshot.write(new JournalRecord(JournalRecord.PRIMARY, id,
+		    nodes.get(n).parent, n, null));
+	snapshot.write(new JournalRecord(JournalRecord.CURRENT, id, current, 0,
+		null));
+    }
+
+    private static void writeVisits(int id, int n, JournalNode node,
+	    HistoryJournal snapshot) throws IOException
+    {
+	if (node.visits > 0)
+	    snapshot.write(new JournalRecord(JournalRecord.VISIT, id, n,
+		    node.visits, null, node.lastVisited));
+    }
+}
+
+/**
+ * One node in a JournalTab.
+ * 
+ * @author Akshay
+ *
+ */
+class JournalNode
+{
+    final int parent;
+    final String url;
+    String title;
+    long stamp;
+    int visits = 0;
+    long lastVisited = 0;
+    boolean removed = false;
+
+    public JournalNode(int parent, String url, long stamp)
+    {
+	this.parent = parent;
+	this.url = url;
+	this.title = url;
+	this.stamp = stamp;
+    }
+}
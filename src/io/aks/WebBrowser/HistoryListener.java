@@ -0,0 +1,66 @@
+package io.aks.WebBrowser;
+/**
+ * Receives notifications when a History tree changes, so views of the tree
+ * only have to update the parts that actually changed.
+ * 
+ * @author Akshay
+ *
+ */
+interface HistoryListener
+{
+    /**
+     * Called after a node is added as a forward of another node.
+     * 
+     * @param node
+     *            The new node.
+     */
+    void nodeAdded(HistoryNode node);
+
+    /**
+     * Called after a node, and with it all of its forwards, is removed from
+     * the tree. The removed nodes are still linked to each other, so the
+     * branch can be walked from the node.
+     * 
+     * @param parent
+     *            The node it was a forward of.
+     * @param node
+     *            The removed node.
+     */
+    void nodeRemoved(HistoryNode parent, HistoryNode node);
+
+    /**
+     * Called after a node's title changes.
+     * 
+     * @param node
+     *            The retitled node.
+     */
+    void titleChanged(HistoryNode node);
+
+    /**
+     * Called after a node's primary forward node changes, which reorders its
+     * forwards.
+     * 
+     * @param parent
+     *            The node whose forwards were reordered.
+     */
+    void primaryChanged(HistoryNode parent);
+
+    /**
+     * Called after the current node moves.
+     * 
+     * @param oldCurrent
+     *            The previous current node.
+     * @param newCurrent
+     *            The new current node.
+     */
+    void currentChanged(HistoryNode oldCurrent, HistoryNode newCurrent);
+
+    /**
+     * Called after a node is visited: navigated to or reloaded, not gone back
+     * or forward to. Its visit count and last visit time are already updated.
+     * 
+     * @param node
+     *            The visited node.
+     */
+    void visited(HistoryNode node);
+}
@@ -0,0 +1,78 @@
+package io.aks.WebBrowser;
+/**
+ * A page found by a history search, as it was when it was found.
+ * 
+ * @author Akshay
+ *
+ */
+class HistoryMatch
+{
+    private final String url;
+    private final String title;
+    private final int visits;
+    private final long lastVisited;
+    private final double score;
+
+    /**
+     * @param url
+     *            The page's URL.
+     * @param title
+     *            Its title, or null to show the URL instead.
+     * @param visits
+     *            How many times it was visited this session.
+     * @param lastVisited
+     *            When it was last visited.
+     * @param score
+     *            How well it matched.
+     */
+    HistoryMatch(String url, String title, int visits, long lastVisited,
+	    double score)
+    {
+	this.url = url;
+	this.title = title == null ? url : title;
+	this.visits = visits;
+	this.lastVisited = lastVisited;
+	this.score = score;
+    }
+
+    public String getURL()
+    {
+	return url;
+    }
+
+    public String getTitle()
+    {
+	return title;
+    }
+
+    /**
+     * @return How many times the page was visited this session.
+     */
+    public int getVisits()
+    {
+	return visits;
+    }
+
+    /**
+     * @return When the page was last visited, in milliseconds since the
+     *         epoch.
+     */
+    public long getLastVisited()
+    {
+	return lastVisited;
+    }
+
+    /**
+     * @return How well the page matched, for comparing matches of the same
+     *         search.
+     */
+    public double getScore()
+    {
+	return score;
+    }
+
+    public String toString()
+    {
+	return HistoryNode.abbreviate(title);
+    }
+}
@@ -0,0 +1,406 @@
+package io.aks.WebBrowser;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.BorderPane;
+
+/**
+ * The branching history pane. Each HistoryNode gets a "jump" button and, if it
+ * has any forwards, a TabPane with one tab per forward. The pane remembers
+ * which UI belongs to which node and listens to the History, so an update only
+ * touches the nodes that were added, removed, retitled, reordered, or that
+ * gained or lost the "You are here." marker. The current node's button shows
+ * how long its page took to load.
+ * 
+ * @author Akshay
+ *
+ */
+public class HistoryPane extends BorderPane
+{
+    private static final String YOU_ARE_HERE = "You are here.";
+    private static final String JUMP = "->";
+    private static final int PANE_WIDTH = 200;
+    private final GUI gui;
+    private final History history;
+    private final Label rootLabel = new Label();
+    private final HashMap<HistoryNode, HistoryPaneEntry> entries = new HashMap<HistoryNode, HistoryPaneEntry>();
+    private final LinkedHashSet<HistoryNode> added = new LinkedHashSet<HistoryNode>();
+    private final LinkedHashMap<HistoryNode, HistoryNode> removed = new LinkedHashMap<HistoryNode, HistoryNode>();
+    private final LinkedHashSet<HistoryNode> retitled = new LinkedHashSet<HistoryNode>();
+    private final LinkedHashSet<HistoryNode> reordered = new LinkedHashSet<HistoryNode>();
+    private HistoryNode markedNode;
+
+    /**
+     * Creates the pane and builds the UI for the whole tree once.
+     * 
+     * @param gui
+     *            The GUI that contains this pane.
+     * @param history
+     *            The History to display.
+     */
+    public HistoryPane(GUI gui, History history)
+    {
+	this.gui = gui;
+	this.history = history;
+	setMaxWidth(PANE_WIDTH);
+
+	rootLabel.setText(history.getRoot().getTitle());
+	rootLabel.setAlignment(Pos.CENTER);
+	setTop(rootLabel);
+
+	BorderPane rootPane = new BorderPane();
+	setCenter(rootPane);
+	build(rootPane, history.getRoot(), null);
+	markedNode = history.getCurrent();
+	mark(markedNode, true);
+
+	history.addHistoryListener(new HistoryListener()
+	{
+	    @Override
+	    public void nodeAdded(HistoryNode node)
+	    {
+		added.add(node);
+	    }
+
+	    @Override
+	    public void nodeRemoved(HistoryNode parent, HistoryNode node)
+	    {
+		removed.put(node, parent);
+	    }
+
+	    @Override
+	    public void titleChanged(HistoryNode node)
+	    {
+		retitled.add(node);
+	    }
+
+	    @Override
+	    public void primaryChanged(HistoryNode parent)
+	    {
+		reordered.add(parent);
+	    }
+
+	    @Override
+	    public void currentChanged(HistoryNode oldCurrent,
+		    HistoryNode newCurrent)
+	    {
+		// Only the latest current node matters when the pane updates.
+	    }
+
+	    @Override
+	    public void visited(HistoryNode node)
+	    {
+	    }
+	});
+    }
+
+    /**
+     * Applies every change made to the History since the last update.
+     */
+    public void update()
+    {
+	for (HistoryNode node : added)
+	{
+	    HistoryPaneEntry parent = entries.get(node.getBackward());
+	    if (parent != null && !entries.containsKey(node))
+		insertTab(parent, node);
+	}
+	for (HistoryNode node : removed.keySet())
+	    removeTab(removed.get(node), node);
+	for (HistoryNode node : reordered)
+	{
+	    HistoryPaneEntry entry = entries.get(node);
+	    if (entry != null && entry.tabs != null)
+		reorderTabs(node, entry);
+	}
+	for (HistoryNode node : retitled)
+	{
+	    if (node == history.getRoot())
+		rootLabel.setText(node.getTitle());
+	    HistoryPaneEntry entry = entries.get(node);
+	    if (entry != null && entry.tab != null)
+		entry.tab.setText(label(node));
+	}
+	added.clear();
+	removed.clear();
+	reordered.clear();
+	retitled.clear();
+
+	if (markedNode != history.getCurrent())
+	{
+	    mark(markedNode, false);
+	    markedNode = history.getCurrent();
+	    mark(markedNode, true);
+	}
+	showLoadTiming(markedNode);
+    }
+
+    /**
+     * @return The number of nodes that currently have UI in this pane.
+     */
+    public int getNodeCount()
+    {
+	return entries.size();
+    }
+
+    /**
+     * Creates the UI for a node and all of its forwards.
+     * 
+     * @param panel
+     *            The panel to add to.
+     * @param node
+     *            The node to build.
+     * @param tab
+     *            The tab the panel lives in, or null for the root.
+     */
+    private void build(BorderPane panel, HistoryNode node, Tab tab)
+    {
+	buildForwards(createEntry(panel, node, tab), node);
+    }
+
+    /**
+     * Adds a tab for a new forward node, and the UI for all of its forwards.
+     * A new node is always its parent's primary forward, so its tab goes
+     * first; nodes added to one parent since the last update are inserted
+     * in the order they were added, which leaves the newest first.
+     * 
+     * @param parent
+     *            The parent's entry.
+     * @param node
+     *            The new node.
+     */
+    private void insertTab(HistoryPaneEntry parent, HistoryNode node)
+    {
+	buildForwards(addTab(parent, node, 0), node);
+    }
+
+    /**
+     * Adds tabs for everything forward of a node that already has UI. Deep
+     * branches are walked with a stack instead of by recursion, so they can't
+     * overflow the JavaFX thread's stack. Forwards are pushed last first, so
+     * each node's tabs are added in the order it keeps them.
+     * 
+     * @param entry
+     *            The node's entry.
+     * @param node
+     *            The node.
+     */
+    private void buildForwards(HistoryPaneEntry entry, HistoryNode node)
+    {
+	ArrayList<HistoryPaneEntry> parents = new ArrayList<HistoryPaneEntry>();
+	ArrayList<HistoryNode> nodes = new ArrayList<HistoryNode>();
+	parents.add(entry);
+	nodes.add(node);
+	while (!nodes.isEmpty())
+	{
+	    int last = nodes.size() - 1;
+	    HistoryPaneEntry parent = parents.remove(last);
+	    HistoryNode child = nodes.remove(last);
+	    if (child != node)
+		parent = addTab(parent, child, parent.tabs == null ? 0
+			: parent.tabs.getTabs().size());
+	    HistoryNode[] forwards = child.getForwardAsArray();
+	    for (int i = forwards.length - 1; i >= 0; i--)
+	    {
+		parents.add(parent);
+		nodes.add(forwards[i]);
+	    }
+	}
+    }
+
+    /**
+     * Creates the jump button for a node.
+     * 
+     * @param panel
+     *            The panel to add to.
+     * @param node
+     *            The node.
+     * @param tab
+     *            The tab the panel lives in, or null for the root.
+     * @return The node's entry.
+     */
+    private HistoryPaneEntry createEntry(BorderPane panel, HistoryNode node,
+	    Tab tab)
+    {
+	panel.setMaxWidth(PANE_WIDTH);
+	BorderPane topPane = new BorderPane();
+	Button jump = new Button(JUMP);
+	jump.setOnAction(new HistoryButtonHandler(gui, node.getUrl(), node,
+		history));
+	topPane.setTop(jump);
+	panel.setTop(topPane);
+
+	HistoryPaneEntry entry = new HistoryPaneEntry(topPane, jump, tab);
+	entries.put(node, entry);
+	showLoadTiming(node);
+	return entry;
+    }
+
+    /**
+     * Adds a tab for a forward node, and shows the parent's first tab.
+     * 
+     * @param parent
+     *            The parent's entry.
+     * @param node
+     *            The forward node.
+     * @param index
+     *            Where it goes among the parent's tabs.
+     * @return The node's entry.
+     */
+    private HistoryPaneEntry addTab(HistoryPaneEntry parent, HistoryNode node,
+	    int index)
+    {
+	if (parent.tabs == null)
+	{
+	    parent.tabs = new TabPane();
+	    parent.topPane.setBottom(parent.tabs);
+	}
+	Tab tab = new Tab(label(node));
+	tab.setClosable(false);
+	BorderPane childPane = new BorderPane();
+	HistoryPaneEntry entry = createEntry(childPane, node, tab);
+	tab.setContent(childPane);
+
+	parent.tabs.getTabs().add(index, tab);
+	parent.tabs.getSelectionModel().select(0);
+	return entry;
+    }
+
+    /**
+     * Removes the tab of a removed node, and forgets the UI of its branch.
+     * 
+     * @param parentNode
+     *            The node it was a forward of.
+     * @param node
+     *            The removed node.
+     */
+    private void removeTab(HistoryNode parentNode, HistoryNode node)
+    {
+	HistoryPaneEntry entry = entries.get(node);
+	HistoryPaneEntry parent = entries.get(parentNode);
+	if (entry == null)
+	    return;
+	if (parent != null && parent.tabs != null)
+	{
+	    parent.tabs.getTabs().remove(entry.tab);
+	    if (parent.tabs.getTabs().isEmpty())
+	    {
+		parent.topPane.setBottom(null);
+		parent.tabs = null;
+	    }
+	}
+	ArrayList<HistoryNode> branch = new ArrayList<HistoryNode>();
+	branch.add(node);
+	for (int i = 0; i < branch.size(); i++)
+	{
+	    entries.remove(branch.get(i));
+	    branch.addAll(branch.get(i).getForward());
+	}
+    }
+
+    /**
+     * Puts a node's tabs back in the order of its forwards, so that the
+     * primary forward is first and visible.
+     * 
+     * @param node
+     *            The node whose forwards were reordered.
+     * @param entry
+     *            The node's entry.
+     */
+    private void reorderTabs(HistoryNode node, HistoryPaneEntry entry)
+    {
+	List<Tab> tabs = entry.tabs.getTabs();
+	int i = 0;
+	for (HistoryNode child : node.getForward())
+	{
+	    HistoryPaneEntry childEntry = entries.get(child);
+	    if (childEntry == null)
+		continue;
+	    if (tabs.get(i) != childEntry.tab)
+	    {
+		tabs.remove(childEntry.tab);
+		tabs.add(i, childEntry.tab);
+	    }
+	    i++;
+	}
+	entry.tabs.getSelectionModel().select(0);
+    }
+
+    /**
+     * Shows or hides the "You are here." marker on a node.
+     * 
+     * @param node
+     *            The node.
+     * @param here
+     *            Whether the node is the current one.
+     */
+    private void mark(HistoryNode node, boolean here)
+    {
+	HistoryPaneEntry entry = entries.get(node);
+	if (entry == null)
+	    return;
+	entry.jump.setDisable(here);
+	entry.jump.setText(here ? YOU_ARE_HERE : JUMP);
+    }
+
+    /**
+     * Puts how long a node's page took to load in its button's tooltip.
+     * 
+     * @param node
+     *            The node.
+     */
+    private void showLoadTiming(HistoryNode node)
+    {
+	HistoryPaneEntry entry = entries.get(node);
+	PageLoadTiming timing = node.getLoadTiming();
+	if (entry == null || timing == null)
+	    return;
+	if (entry.jump.getTooltip() == null)
+	    entry.jump.setTooltip(new Tooltip());
+	entry.jump.getTooltip().setText(timing.toString());
+    }
+
+    /**
+     * @param node
+     *            A node.
+     * @return The text for its tab: its abbreviated title, and how many pages
+     *         were evicted from its branch, if any.
+     */
+    private static String label(HistoryNode node)
+    {
+	if (node.getCollapsedCount() == 0)
+	    return HistoryNode.abbreviate(node.getTitle());
+	return HistoryNode.abbreviate(node.getTitle()) + " (+"
+		+ node.getCollapsedCount() + ")";
+    }
+}
+
+/**
+ * The UI that the history pane keeps for one HistoryNode.
+ * 
+ * @author Akshay
+ *
+ */
+class HistoryPaneEntry
+{
+    final BorderPane topPane;
+    final Button jump;
+    final Tab tab;
+    TabPane tabs;
+
+    public HistoryPaneEntry(BorderPane topPane, Button jump, Tab tab)
+    {
+	this.topPane = topPane;
+	this.jump = jump;
+	this.tab = tab;
+    }
+}
@@ -0,0 +1,438 @@
+package io.aks.WebBrowser;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Reads history trees written by HistoryWriter, a character at a time and
+ * without recursion, and rebuilds them as Histories.
+ * 
+ * @author Akshay
+ *
+ */
+public class HistoryReader
+{
+    private static final String FORMAT_ERROR = "Not a valid history: ";
+    private static final int OTHER = 0;
+    private static final int PAGE = 1;
+    private static final int PAGE_ARRAY = 2;
+
+    /**
+     * Read one History in the text format.
+     * 
+     * @param in
+     *            Where to read it from.
+     * @param gui
+     *            The GUI that will use the History.
+     * @return The History.
+     */
+    public static History readText(Reader in, GUI gui) throws IOException
+    {
+	BufferedReader reader = new BufferedReader(in);
+	HistoryBuilder builder = new HistoryBuilder(gui);
+	String line;
+	while ((line = reader.readLine()) != null)
+	{
+	    if (line.isEmpty())
+		continue;
+	    int space = line.indexOf(' ');
+	    if (space < 0)
+		throw new IOException(FORMAT_ERROR + line);
+	    int depth;
+	    try
+	    {
+		depth = Integer.parseInt(line.substring(0, space));
+	    }
+	    catch (NumberFormatException e)
+	    {
+		throw new IOException(FORMAT_ERROR + line);
+	    }
+	    int i = space + 1;
+	    while (i < line.length() && line.charAt(i) == ' ')
+		i++;
+	    if (i + 2 > line.length())
+		throw new IOException(FORMAT_ERROR + line);
+	    boolean current = line.charAt(i) == '*';
+	    int tab = line.indexOf('\t', i + 2);
+	    if (tab < 0)
+		throw new IOException(FORMAT_ERROR + line);
+
+	    while (builder.getDepth() > depth)
+		builder.end();
+	    if (builder.getDepth() != depth)
+		throw new IOException(FORMAT_ERROR + line);
+	    builder.begin(unescape(line.substring(tab + 1)),
+		    unescape(line.substring(i + 2, tab)), current);
+	}
+	while (builder.getDepth() > 0)
+	    builder.end();
+	if (builder.getHistories().isEmpty())
+	    throw new IOException(FORMAT_ERROR + "empty");
+	return builder.getHistories().get(0);
+    }
+
+    /**
+     * Read one History in the JSON format.
+     * 
+     * @param in
+     *            Where to read it from.
+     * @param gui
+     *            The GUI that will use the History.
+     * @return The History.
+     */
+    public static History readJSON(Reader in, GUI gui) throws IOException
+    {
+	ArrayList<History> histories = readAllJSON(in, gui);
+	if (histories.isEmpty())
+	    throw new IOException(FORMAT_ERROR + "empty");
+	return histories.get(0);
+    }
+
+    /**
+     * Read one History in the JSON format from UTF-8.
+     * 
+     * @param in
+     *            Where to read it from.
+     * @param gui
+     *            The GUI that will use the History.
+     * @return The History.
+     */
+    public static History readJSON(InputStream in, GUI gui)
+	    throws IOException
+    {
+	return readJSON(new InputStreamReader(in, StandardCharsets.UTF_8), gui);
+    }
+
+    /**
+     * Read every History in JSON, which is either one tree or an array of
+     * trees.
+     * 
+     * @param in
+     *            Where to read it from.
+     * @param gui
+     *            The GUI that will use the Histories.
+     * @return The Histories.
+     */
+    public static ArrayList<History> readAllJSON(Reader in, GUI gui)
+	    throws IOException
+    {
+	JSONTokenizer tokens = new JSONTokenizer(new BufferedReader(in));
+	HistoryBuilder builder = new HistoryBuilder(gui);
+	// What each open object or array is.
+	ArrayList<Integer> open = new ArrayList<Integer>();
+	String key = null;
+	String url = null;
+	String title = null;
+	boolean current = false;
+	boolean begun = true;
+
+	int token;
+	while ((token = tokens.next()) != JSONTokenizer.END)
+	{
+	    int top = open.isEmpty() ? OTHER : open.get(open.size() - 1);
+	    if (token == '{')
+	    {
+		if (open.isEmpty() || top == PAGE_ARRAY)
+		{
+		    if (!begun)
+			throw new IOException(FORMAT_ERROR + "page inside a page");
+		    open.add(PAGE);
+		    url = null;
+		    title = null;
+		    current = false;
+		    begun = false;
+		}
+		else
+		    open.add(OTHER);
+		key = null;
+	    }
+	    else if (token == '[')
+	    {
+		if (open.isEmpty() || (top == PAGE && "forward".equals(key)))
+		{
+		    if (top == PAGE && !begun)
+		    {
+			builder.begin(url, title, current);
+			begun = true;
+		    }
+		    open.add(PAGE_ARRAY);
+		}
+		else
+		    open.add(OTHER);
+		key = null;
+	    }
+	    else if (token == '}' || token == ']')
+	    {
+		if (open.isEmpty())
+		    throw new IOException(FORMAT_ERROR + "unexpected "
+			    + (char) token);
+		if (open.remove(open.size() - 1) == PAGE)
+		{
+		    if (!begun)
+			builder.begin(url, title, current);
+		    builder.end();
+		    begun = true;
+		}
+		key = null;
+	    }
+	    else if (token == JSONTokenizer.STRING)
+	    {
+		if (top == PAGE && key == null)
+		    key = tokens.getString();
+		else
+		{
+		    if (top == PAGE && "url".equals(key))
+			url = tokens.getString();
+		    else if (top == PAGE && "title".equals(key))
+			title = tokens.getString();
+		    key = null;
+		}
+	    }
+	    else if (token == JSONTokenizer.LITERAL)
+	    {
+		if (top == PAGE && "current".equals(key))
+		    current = "true".equals(tokens.getString());
+		key = null;
+	    }
+	}
+	return builder.getHistories();
+    }
+
+    /**
+     * Undo the escaping of the text format.
+     */
+    private static String unescape(String string)
+    {
+	if (string.indexOf('\\') < 0)
+	    return string;
+	StringBuilder builder = new StringBuilder(string.length());
+	for (int i = 0; i < string.length(); i++)
+	{
+	    char c = string.charAt(i);
+	    if (c == '\\' && i + 1 < string.length())
+	    {
+		char e = string.charAt(++i);
+		if (e == 't')
+		    c = '\t';
+		else if (e == 'n')
+		    c = '\n';
+		else if (e == 'r')
+		    c = '\r';
+		else
+		    c = e;
+	    }
+	    builder.append(c);
+	}
+	return builder.toString();
+    }
+}
+
+/**
+ * Builds Histories one page at a time, in the order HistoryWriter writes them:
+ * a page, then its forwards, primary first.
+ * 
+ * @author Akshay
+ *
+ */
+class HistoryBuilder
+{
+    private final GUI gui;
+    private final ArrayList<History> histories = new ArrayList<History>();
+    private final ArrayList<HistoryNode> open = new ArrayList<HistoryNode>();
+    private final ArrayList<ArrayList<HistoryNode>> forwards = new ArrayList<ArrayList<HistoryNode>>();
+    private History history;
+    private HistoryNode current;
+
+    public HistoryBuilder(GUI gui)
+    {
+	this.gui = gui;
+    }
+
+    /**
+     * @return How many pages are open: 0 between trees, 1 inside a root.
+     */
+    public int getDepth()
+    {
+	return open.size();
+    }
+
+    /**
+     * Start a page. At depth 0 this starts a new History.
+     * 
+     * @param url
+     *            The page's URL.
+     * @param title
+     *            The page's title.
+     * @param isCurrent
+     *            Whether it is the current page.
+     */
+    public void begin(String url, String title, boolean isCurrent)
+    {
+	if (url == null)
+	    url = "about://null";
+	HistoryNode node;
+	if (open.isEmpty())
+	{
+	    history = new History(gui, url, title);
+	    histories.add(history);
+	    current = null;
+	    node = history.getRoot();
+	}
+	else
+	{
+	    HistoryNode parent = open.get(open.size() - 1);
+	    node = history.addRestored(parent, url);
+	    if (title != null)
+		node.setTitle(title);
+	    forwards.get(forwards.size() - 1).add(node);
+	}
+	if (isCurrent)
+	    current = node;
+	open.add(node);
+	forwards.add(new ArrayList<HistoryNode>());
+    }
+
+    /**
+     * Finish the newest open page. Its forwards were added newest first, so
+     * they are put back in the order they were read.
+     */
+    public void end()
+    {
+	open.remove(open.size() - 1);
+	ArrayList<HistoryNode> children = forwards.remove(forwards.size() - 1);
+	if (children.size() > 1)
+	{
+	    HistoryNode parent = children.get(0).getBackward();
+	    for (int i = children.size() - 1; i >= 0; i--)
+		parent.setPrimary(children.get(i));
+	}
+	if (open.isEmpty())
+	    history.setCurrent(current == null ? history.getRoot() : current);
+    }
+
+    public ArrayList<History> getHistories()
+    {
+	return histories;
+    }
+}
+
+/**
+ * Splits JSON into tokens: the characters { } [ ], strings, and literals
+ * (numbers, true, false, null). Commas and colons are skipped.
+ * 
+ * @author Akshay
+ *
+ */
+class JSONTokenizer
+{
+    public static final int END = -1;
+    public static final int STRING = -2;
+    public static final int LITERAL = -3;
+    private final Reader in;
+    private final StringBuilder value = new StringBuilder();
+    private int pushedBack = -2;
+
+    public JSONTokenizer(Reader in)
+    {
+	this.in = in;
+    }
+
+    /**
+     * @return The next token, or END.
+     */
+    public int next() throws IOException
+    {
+	while (true)
+	{
+	    int c = read();
+	    if (c == -1)
+		return END;
+	    if (c == '{' || c == '}' || c == '[' || c == ']')
+		return c;
+	    if (c == '"')
+	    {
+		readString();
+		return STRING;
+	    }
+	    if (c == ',' || c == ':' || Character.isWhitespace(c))
+		continue;
+	    value.setLength(0);
+	    while (c != -1 && c != ',' && c != '}' && c != ']'
+		    && !Character.isWhitespace(c))
+	    {
+		value.append((char) c);
+		c = read();
+	    }
+	    pushedBack = c;
+	    return LITERAL;
+	}
+    }
+
+    /**
+     * @return The text of the last STRING or LITERAL token.
+     */
+    public String getString()
+    {
+	return value.toString();
+    }
+
+    private int read() throws IOException
+    {
+	if (pushedBack != -2)
+	{
+	    int c = pushedBack;
+	    pushedBack = -2;
+	    return c;
+	}
+	return in.read();
+    }
+
+    private void readString() throws IOException
+    {
+	value.setLength(0);
+	while (true)
+	{
+	    int c = read();
+	    if (c == -1)
+		throw new IOException("Unterminated string");
+	    if (c == '"')
+		return;
+	    if (c == '\\')
+	    {
+		c = read();
+		if (c == 'n')
+		    c = '\n';
+		else if (c == 'r')
+		    c = '\r';
+		else if (c == 't')
+		    c = '\t';
+		else if (c == 'b')
+		    c = '\b';
+		else if (c == 'f')
+		    c = '\f';
+		else if (c == 'u')
+		{
+		    char[] hex = new char[4];
+		    for (int i = 0; i < 4; i++)
+			hex[i] = (char) read();
+		    try
+		    {
+			c = Integer.parseInt(new String(hex), 16);
+		    }
+		    catch (NumberFormatException e)
+		    {
+			throw new IOException("Bad escape: \\u"
+				+ new String(hex));
+		    }
+		}
+		else if (c == -1)
+		    throw new IOException("Unterminated string");
+	    }
+	    value.append((char) c);
+	}
+    }
+}
@@ -0,0 +1,545 @@
+package io.aks.WebBrowser;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ObservableList;
+import javafx.event.EventHandler;
+import javafx.scene.control.TreeCell;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.util.Callback;
+
+/**
+ * A history view that scales to very large trees. It is a TreeView, so only
+ * the visible rows get cells, and its TreeItems are only made when their
+ * parent is expanded. Every stretch of history without branches is shown as
+ * one row (a "run"), which can be expanded to show each page in it, so a long
+ * linear history is two rows deep instead of thousands.
+ * 
+ * The rows are changed in place as the history changes, so selection, scrolling
+ * and expansion are kept. A page added at the end of a run only lengthens its
+ * row; a new branch, or a removed one, only remakes the rows of the run it
+ * is on.
+ * 
+ * Double-clicking a row, or pressing enter on it, jumps to it the same way the
+ * history pane does. A run jumps to its last page.
+ * 
+ * @author Akshay
+ *
+ */
+public class HistoryTreeView extends TreeView<HistoryRun>
+{
+    private static final String YOU_ARE_HERE = "▶ ";
+    private final GUI gui;
+    private final History history;
+    private final HashSet<HistoryNode> expanded = new HashSet<HistoryNode>();
+    private final HashSet<HistoryNode> currentPath = new HashSet<HistoryNode>();
+    /**
+     * The rows that were made for runs, by their first and last nodes.
+     */
+    private final HashMap<HistoryNode, HistoryTreeItem> byFirst = new HashMap<HistoryNode, HistoryTreeItem>();
+    private final HashMap<HistoryNode, HistoryTreeItem> byLast = new HashMap<HistoryNode, HistoryTreeItem>();
+    private boolean rowsChanged = true;
+
+    /**
+     * Creates the view. Only the root row is made until it is expanded.
+     * 
+     * @param gui
+     *            The GUI that contains this view.
+     * @param history
+     *            The History to display.
+     */
+    public HistoryTreeView(GUI gui, History history)
+    {
+	this.gui = gui;
+	this.history = history;
+	setMaxWidth(200);
+	setCellFactory(new Callback<TreeView<HistoryRun>, TreeCell<HistoryRun>>()
+	{
+	    @Override
+	    public TreeCell<HistoryRun> call(TreeView<HistoryRun> view)
+	    {
+		return new HistoryTreeCell();
+	    }
+	});
+	setRoot(createItem(HistoryRun.startingAt(history.getRoot())));
+
+	history.addHistoryListener(new HistoryListener()
+	{
+	    @Override
+	    public void nodeAdded(HistoryNode node)
+	    {
+		added(node);
+	    }
+
+	    @Override
+	    public void nodeRemoved(HistoryNode parent, HistoryNode node)
+	    {
+		expanded.remove(node);
+		remake(parent);
+	    }
+
+	    @Override
+	    public void titleChanged(HistoryNode node)
+	    {
+		rowsChanged = true;
+	    }
+
+	    @Override
+	    public void primaryChanged(HistoryNode parent)
+	    {
+		// Only the order of the branches after the run changed.
+		HistoryTreeItem item = byLast.get(parent);
+		if (item != null)
+		    item.reload();
+	    }
+
+	    @Override
+	    public void currentChanged(HistoryNode oldCurrent,
+		    HistoryNode newCurrent)
+	    {
+		rowsChanged = true;
+	    }
+
+	    @Override
+	    public void visited(HistoryNode node)
+	    {
+	    }
+	});
+
+	setOnKeyReleased(new EventHandler<KeyEvent>()
+	{
+	    @Override
+	    public void handle(KeyEvent e)
+	    {
+		TreeItem<HistoryRun> item = getSelectionModel()
+			.getSelectedItem();
+		if (e.getCode() == KeyCode.ENTER && item != null)
+		    jump(item.getValue());
+	    }
+	});
+	update();
+    }
+
+    /**
+     * Brings the text of the visible rows up to date after titles changed or
+     * the current page moved. The rows themselves are kept up to date as the
+     * history changes.
+     */
+    public void update()
+    {
+	if (rowsChanged)
+	{
+	    rowsChanged = false;
+	    currentPath.clear();
+	    for (HistoryNode n = history.getCurrent(); n != null; n = n
+		    .getBackward())
+		currentPath.add(n);
+	    refresh();
+	}
+    }
+
+    /**
+     * Shows a new node. A page added after the last page of a run lengthens
+     * its row. One added to a page that had one forward splits the run it
+     * was in, and one added to a page that already had branches is a new
+     * branch row.
+     */
+    private void added(HistoryNode node)
+    {
+	HistoryNode parent = node.getBackward();
+	int forwards = parent.getForwardCount();
+	if (forwards == 2)
+	{
+	    remake(parent);
+	    return;
+	}
+	HistoryTreeItem item = byLast.get(parent);
+	if (item == null)
+	    return;
+	if (forwards == 1)
+	{
+	    byLast.remove(parent);
+	    item.append(node);
+	    byLast.put(node, item);
+	}
+	else
+	    item.addBranch(node);
+    }
+
+    /**
+     * Makes the row of the run a node is in again, after the branches at the
+     * node changed, which can split the run or join it with the next.
+     */
+    private void remake(HistoryNode node)
+    {
+	HistoryNode first = node;
+	while (first.getBackward() != null
+		&& first.getBackward().getForwardCount() == 1)
+	    first = first.getBackward();
+	HistoryTreeItem item = byFirst.get(first);
+	if (item == null)
+	    return;
+	byLast.remove(item.getValue().getLast());
+	item.setValue(HistoryRun.startingAt(first));
+	byLast.put(item.getValue().getLast(), item);
+	item.reload();
+    }
+
+    /**
+     * Jumps to the page a row stands for.
+     * 
+     * @param run
+     *            The row's run.
+     */
+    void jump(HistoryRun run)
+    {
+	HistoryNode node = run.getLast();
+	if (node == history.getCurrent())
+	    return;
+	new HistoryButtonHandler(gui, node.getUrl(), node, history).jump();
+    }
+
+    /**
+     * @param run
+     *            A run.
+     * @return True if the current node is part of the run.
+     */
+    boolean containsCurrent(HistoryRun run)
+    {
+	if (!currentPath.contains(run.getFirst()))
+	    return false;
+	return !currentPath.contains(run.getLast())
+		|| run.getLast() == history.getCurrent();
+    }
+
+    /**
+     * Makes a lazy TreeItem for a run, which remembers whether it was
+     * expanded and is kept up to date as the run changes.
+     * 
+     * @param run
+     *            The run.
+     * @return The TreeItem.
+     */
+    HistoryTreeItem createItem(final HistoryRun run)
+    {
+	HistoryTreeItem item = new HistoryTreeItem(this, run);
+	byFirst.put(run.getFirst(), item);
+	byLast.put(run.getLast(), item);
+	if (!run.isLeaf() && expanded.contains(run.getFirst()))
+	    item.setExpanded(true);
+	item.expandedProperty().addListener(new ChangeListener<Boolean>()
+	{
+	    @Override
+	    public void changed(ObservableValue<? extends Boolean> observable,
+		    Boolean oldValue, Boolean newValue)
+	    {
+		if (newValue)
+		    expanded.add(run.getFirst());
+		else
+		    expanded.remove(run.getFirst());
+	    }
+	});
+	return item;
+    }
+
+    /**
+     * Stop keeping a run's row, and the rows made under it, up to date,
+     * because it was taken out of the tree.
+     */
+    void forget(HistoryTreeItem item)
+    {
+	HistoryRun run = item.getValue();
+	if (byFirst.get(run.getFirst()) == item)
+	    byFirst.remove(run.getFirst());
+	if (byLast.get(run.getLast()) == item)
+	    byLast.remove(run.getLast());
+	for (TreeItem<HistoryRun> child : item.getLoadedChildren())
+	    if (child instanceof HistoryTreeItem)
+		forget((HistoryTreeItem) child);
+    }
+
+    /**
+     * Draws one row.
+     * 
+     * @author Akshay
+     *
+     */
+    private class HistoryTreeCell extends TreeCell<HistoryRun>
+    {
+	public HistoryTreeCell()
+	{
+	    setOnMouseClicked(new EventHandler<MouseEvent>()
+	    {
+		@Override
+		public void handle(MouseEvent e)
+		{
+		    if (e.getClickCount() == 2 && !isEmpty())
+			jump(getItem());
+		}
+	    });
+	}
+
+	@Override
+	protected void updateItem(HistoryRun run, boolean empty)
+	{
+	    super.updateItem(run, empty);
+	    if (empty || run == null)
+	    {
+		setText(null);
+		return;
+	    }
+	    String text = run.toString();
+	    if (containsCurrent(run))
+		text = YOU_ARE_HERE + text;
+	    setText(text);
+	}
+    }
+}
+
+/**
+ * A TreeItem that only makes its children the first time they are asked for.
+ * A run's children are a row for each of its pages (if it has more than one)
+ * followed by a run for each branch after its last page.
+ * 
+ * @author Akshay
+ *
+ */
+class HistoryTreeItem extends TreeItem<HistoryRun>
+{
+    private static final ArrayList<TreeItem<HistoryRun>> NONE = new ArrayList<TreeItem<HistoryRun>>();
+    private final HistoryTreeView view;
+    private boolean loaded = false;
+
+    public HistoryTreeItem(HistoryTreeView view, HistoryRun run)
+    {
+	super(run);
+	this.view = view;
+    }
+
+    @Override
+    public boolean isLeaf()
+    {
+	HistoryRun run = getValue();
+	return run.isLeaf()
+		|| (run.getLength() == 1 && run.getLast().getForwardCount() == 0);
+    }
+
+    @Override
+    public ObservableList<TreeItem<HistoryRun>> getChildren()
+    {
+	if (!loaded)
+	{
+	    loaded = true;
+	    super.getChildren().setAll(
+		    makeChildren(new HashMap<HistoryNode, TreeItem<HistoryRun>>()));
+	}
+	return super.getChildren();
+    }
+
+    /**
+     * @return The children, or none if they weren't made yet.
+     */
+    List<TreeItem<HistoryRun>> getLoadedChildren()
+    {
+	return loaded ? super.getChildren() : NONE;
+    }
+
+    /**
+     * Lengthen the run by a page added after its last one.
+     */
+    void append(HistoryNode node)
+    {
+	HistoryRun run = getValue();
+	setValue(run.append(node));
+	if (!loaded)
+	    return;
+	if (run.getLength() == 1)
+	    super.getChildren().add(
+		    new TreeItem<HistoryRun>(HistoryRun.page(run.getFirst())));
+	super.getChildren().add(new TreeItem<HistoryRun>(HistoryRun.page(node)));
+    }
+
+    /**
+     * Add a row for a new branch after the run's last page, in the order of
+     * its forwards.
+     */
+    void addBranch(HistoryNode branch)
+    {
+	if (!loaded)
+	    return;
+	int at = getValue().getLength() > 1 ? getValue().getLength() : 0;
+	for (HistoryNode n = getValue().getLast().timeTravelForward(); n != branch; n = n
+		.getNextSibling())
+	    at++;
+	super.getChildren().add(at,
+		view.createItem(HistoryRun.startingAt(branch)));
+    }
+
+    /**
+     * Make the children again for a run that changed, keeping the rows of
+     * the pages and branches that are still there.
+     */
+    void reload()
+    {
+	if (!loaded)
+	    return;
+	HashMap<HistoryNode, TreeItem<HistoryRun>> old = new HashMap<HistoryNode, TreeItem<HistoryRun>>();
+	for (TreeItem<HistoryRun> child : super.getChildren())
+	    old.put(child.getValue().getFirst(), child);
+	ArrayList<TreeItem<HistoryRun>> children = makeChildren(old);
+	for (TreeItem<HistoryRun> child : old.values())
+	    if (child instanceof HistoryTreeItem)
+		view.forget((HistoryTreeItem) child);
+	if (!children.equals(super.getChildren()))
+	    super.getChildren().setAll(children);
+    }
+
+    /**
+     * @param old
+     *            The rows there were, by their first page. The ones that
+     *            are used again are taken out.
+     * @return A row for each page of the run, if it has more than one, and
+     *         one for each branch after it.
+     */
+    private ArrayList<TreeItem<HistoryRun>> makeChildren(
+	    HashMap<HistoryNode, TreeItem<HistoryRun>> old)
+    {
+	HistoryRun run = getValue();
+	ArrayList<TreeItem<HistoryRun>> children = new ArrayList<TreeItem<HistoryRun>>();
+	if (run.isLeaf())
+	    return children;
+	if (run.getLength() > 1)
+	{
+	    HistoryNode n = run.getFirst();
+	    while (true)
+	    {
+		TreeItem<HistoryRun> page = old.get(n);
+		if (page == null || !page.getValue().isLeaf())
+		    page = new TreeItem<HistoryRun>(HistoryRun.page(n));
+		else
+		    old.remove(n);
+		children.add(page);
+		if (n == run.getLast())
+		    break;
+		n = n.timeTravelForward();
+	    }
+	}
+	for (HistoryNode branch : run.getLast().getForward())
+	{
+	    TreeItem<HistoryRun> item = old.get(branch);
+	    if (item instanceof HistoryTreeItem)
+		old.remove(branch);
+	    else
+		item = view.createItem(HistoryRun.startingAt(branch));
+	    children.add(item);
+	}
+	return children;
+    }
+}
+
+/**
+ * One row of the HistoryTreeView: either a single page, or a stretch of pages
+ * where each page has exactly one forward.
+ * 
+ * @author Akshay
+ *
+ */
+class HistoryRun
+{
+    private final HistoryNode first;
+    private final HistoryNode last;
+    private final int length;
+    private final boolean leaf;
+
+    private HistoryRun(HistoryNode first, HistoryNode last, int length,
+	    boolean leaf)
+    {
+	this.first = first;
+	this.last = last;
+	this.length = length;
+	this.leaf = leaf;
+    }
+
+    /**
+     * Makes the run that starts at a node and follows single forwards until
+     * it reaches a node with no forwards or more than one.
+     * 
+     * @param first
+     *            The first node.
+     * @return The run.
+     */
+    public static HistoryRun startingAt(HistoryNode first)
+    {
+	HistoryNode last = first;
+	int length = 1;
+	while (last.getForwardCount() == 1)
+	{
+	    last = last.timeTravelForward();
+	    length++;
+	}
+	return new HistoryRun(first, last, length, false);
+    }
+
+    /**
+     * @param node
+     *            A page added after the last page of this run.
+     * @return The run with the page at its end.
+     */
+    public HistoryRun append(HistoryNode node)
+    {
+	return new HistoryRun(first, node, length + 1, false);
+    }
+
+    /**
+     * Makes a row for a single page inside an expanded run.
+     * 
+     * @param node
+     *            The page.
+     * @return The run.
+     */
+    public static HistoryRun page(HistoryNode node)
+    {
+	return new HistoryRun(node, node, 1, true);
+    }
+
+    public HistoryNode getFirst()
+    {
+	return first;
+    }
+
+    public HistoryNode getLast()
+    {
+	return last;
+    }
+
+    public int getLength()
+    {
+	return length;
+    }
+
+    /**
+     * @return True if this is a single page inside an expanded run.
+     */
+    public boolean isLeaf()
+    {
+	return leaf;
+    }
+
+    @Override
+    public String toString()
+    {
+	if (length == 1)
+	    return HistoryNode.abbreviate(first.getTitle());
+	return HistoryNode.abbreviate(first.getTitle()) + " → "
+		+ HistoryNode.abbreviate(last.getTitle()) + " (" + length
+		+ " pages)";
+    }
+}
@@ -0,0 +1,259 @@
+package io.aks.WebBrowser;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes history trees to a Writer or OutputStream as they are walked, without
+ * building the output in memory and without recursion, so even very deep
+ * histories can be exported. HistoryReader reads both formats back.
+ * 
+ * The text format has one line per page: its depth, some indentation (capped
+ * so deep histories don't produce huge lines), "* " for the current page or
+ * "- " for any other, the title, a tab, and the URL. Forwards follow their
+ * page, primary first.
+ * 
+ * The JSON format is one object per page, with "url", "title", "current" (only
+ * on the current page) and "forward", an array of the page's forwards.
+ * 
+ * @author Akshay
+ *
+ */
+public class HistoryWriter
+{
+    private static final int MAXIMUM_INDENT = 40;
+    private static final String INDENT = "                                        ";
+
+    /**
+     * Write a History in the text format.
+     * 
+     * @param history
+     *            The History.
+     * @param out
+     *            Where to write it.
+     */
+    public static void writeText(History history, Writer out)
+	    throws IOException
+    {
+	CompactHistory snapshot = CompactHistory.from(history);
+	try
+	{
+	    writeText(snapshot, out);
+	}
+	finally
+	{
+	    snapshot.clear();
+	}
+    }
+
+    /**
+     * Write a History in the JSON format.
+     * 
+     * @param history
+     *            The History.
+     * @param out
+     *            Where to write it.
+     */
+    public static void writeJSON(History history, Writer out)
+	    throws IOException
+    {
+	CompactHistory snapshot = CompactHistory.from(history);
+	try
+	{
+	    writeJSON(snapshot, out);
+	}
+	finally
+	{
+	    snapshot.clear();
+	}
+    }
+
+    /**
+     * Write a History in the JSON format as UTF-8.
+     * 
+     * @param history
+     *            The History.
+     * @param out
+     *            Where to write it.
+     */
+    public static void writeJSON(History history, OutputStream out)
+	    throws IOException
+    {
+	Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+		StandardCharsets.UTF_8));
+	writeJSON(history, writer);
+	writer.flush();
+    }
+
+    /**
+     * Write a History in the text format as UTF-8.
+     * 
+     * @param history
+     *            The History.
+     * @param out
+     *            Where to write it.
+     */
+    public static void writeText(History history, OutputStream out)
+	    throws IOException
+    {
+	Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+		StandardCharsets.UTF_8));
+	writeText(history, writer);
+	writer.flush();
+    }
+
+    /**
+     * Write a CompactHistory in the text format. A CompactHistory is a cheap
+     * snapshot of a History, so this can run off the JavaFX thread.
+     * 
+     * @param history
+     *            The history.
+     * @param out
+     *            Where to write it.
+     */
+    public static void writeText(CompactHistory history, Writer out)
+	    throws IOException
+    {
+	int node = history.getRoot();
+	int depth = 0;
+	while (node != CompactHistory.NONE)
+	{
+	    out.write(Integer.toString(depth));
+	    out.write(' ');
+	    out.write(INDENT, 0, Math.min(depth, MAXIMUM_INDENT));
+	    out.write(node == history.getCurrent() ? "* " : "- ");
+	    writeEscaped(history.getTitle(node), out);
+	    out.write('\t');
+	    writeEscaped(history.getUrl(node), out);
+	    out.write('\n');
+
+	    // Walk the tree in order: first forward, else the next sibling of
+	    // the nearest page that has one.
+	    int next = history.getFirstForward(node);
+	    if (next != CompactHistory.NONE)
+	    {
+		node = next;
+		depth++;
+		continue;
+	    }
+	    while (node != CompactHistory.NONE
+		    && history.getNextSibling(node) == CompactHistory.NONE)
+	    {
+		node = history.getBackward(node);
+		depth--;
+	    }
+	    if (node != CompactHistory.NONE)
+		node = history.getNextSibling(node);
+	}
+    }
+
+    /**
+     * Write a CompactHistory in the JSON format. A CompactHistory is a cheap
+     * snapshot of a History, so this can run off the JavaFX thread.
+     * 
+     * @param history
+     *            The history.
+     * @param out
+     *            Where to write it.
+     */
+    public static void writeJSON(CompactHistory history, Writer out)
+	    throws IOException
+    {
+	int node = history.getRoot();
+	while (node != CompactHistory.NONE)
+	{
+	    if (history.getBackward(node) != CompactHistory.NONE
+		    && history.getFirstForward(history.getBackward(node)) != node)
+		out.write(',');
+	    out.write("{\"url\":");
+	    writeJSONString(history.getUrl(node), out);
+	    out.write(",\"title\":");
+	    writeJSONString(history.getTitle(node), out);
+	    if (node == history.getCurrent())
+		out.write(",\"current\":true");
+	    out.write(",\"forward\":[");
+
+	    int next = history.getFirstForward(node);
+	    if (next != CompactHistory.NONE)
+	    {
+		out.write('\n');
+		node = next;
+		continue;
+	    }
+	    out.write("]}");
+	    while (node != CompactHistory.NONE
+		    && history.getNextSibling(node) == CompactHistory.NONE)
+	    {
+		node = history.getBackward(node);
+		if (node != CompactHistory.NONE)
+		    out.write("]}");
+	    }
+	    if (node != CompactHistory.NONE)
+	    {
+		out.write('\n');
+		node = history.getNextSibling(node);
+	    }
+	}
+    }
+
+    /**
+     * Write a string for the text format, escaping tabs, newlines, and
+     * backslashes.
+     */
+    private static void writeEscaped(String string, Writer out)
+	    throws IOException
+    {
+	if (string == null)
+	    return;
+	for (int i = 0; i < string.length(); i++)
+	{
+	    char c = string.charAt(i);
+	    if (c == '\\')
+		out.write("\\\\");
+	    else if (c == '\t')
+		out.write("\\t");
+	    else if (c == '\n')
+		out.write("\\n");
+	    else if (c == '\r')
+		out.write("\\r");
+	    else
+		out.write(c);
+	}
+    }
+
+    /**
+     * Write a JSON string, or null.
+     */
+    static void writeJSONString(String string, Writer out) throws IOException
+    {
+	if (string == null)
+	{
+	    out.write("null");
+	    return;
+	}
+	out.write('"');
+	for (int i = 0; i < string.length(); i++)
+	{
+	    char c = string.charAt(i);
+	    if (c == '"' || c == '\\')
+	    {
+		out.write('\\');
+		out.write(c);
+	    }
+	    else if (c == '\n')
+		out.write("\\n");
+	    else if (c == '\r')
+		out.write("\\r");
+	    else if (c == '\t')
+		out.write("\\t");
+	    else if (c < 0x20)
+		out.write(String.format("\\u%04x", (int) c));
+	    else
+		out.write(c);
+	}
+	out.write('"');
+    }
+}
@@ -0,0 +1,956 @@
+package io.aks.WebBrowser;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.CacheRequest;
+import java.net.CacheResponse;
+import java.net.HttpURLConnection;
+import java.net.ResponseCache;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Caches HTTP responses for every page load, so pages and their images,
+ * scripts, and stylesheets don't have to come from the network again. It is
+ * installed as the default ResponseCache, which the WebEngine's connections
+ * use.
+ * 
+ * Responses are kept in memory, and on disk so they survive closing the
+ * browser. Both tiers drop the least recently used responses when they are
+ * over their size. A response is used as long as it is fresh, by its
+ * Cache-Control max-age, its Expires date, or for a tenth of its age since it
+ * was last modified. After that it is revalidated with If-None-Match or
+ * If-Modified-Since, and only downloaded again if it changed.
+ * 
+ * @author Akshay
+ *
+ */
+public class HttpResponseCache extends ResponseCache
+{
+    public static final long DEFAULT_MEMORY_BYTES = 16L << 20;
+    public static final long DEFAULT_DISK_BYTES = 128L << 20;
+    private static final String CACHE_ERROR = "Warning:\nThere was a problem with the page cache: ";
+    private static final String SUFFIX = ".cache";
+    /**
+     * The most of a tier one response may take up.
+     */
+    private static final int ENTRY_FRACTION = 8;
+
+    private final File directory;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, StoredResponse> memory = new LinkedHashMap<String, StoredResponse>(
+	    16, 0.75f, true);
+    /**
+     * The size of every response on disk, by key.
+     */
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<String, Long>(
+	    16, 0.75f, true);
+    private long memoryBytes = 0;
+    private long diskBytes = 0;
+    private long hits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+    private long revalidations = 0;
+    private long notModified = 0;
+    private long bytesServed = 0;
+    private long bytesStored = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates a cache, and finds the responses already on disk.
+     * 
+     * @param directory
+     *            Where to keep responses on disk.
+     * @param maxMemoryBytes
+     *            How much memory the responses may use.
+     * @param maxDiskBytes
+     *            How much disk space the responses may use.
+     */
+    public HttpResponseCache(File directory, long maxMemoryBytes,
+	    long maxDiskBytes)
+    {
+	this.directory = directory;
+	this.maxMemoryBytes = maxMemoryBytes;
+	this.maxDiskBytes = maxDiskBytes;
+	directory.mkdirs();
+	File[] files = directory.listFiles();
+	if (files == null)
+	    return;
+	// The least recently used responses go in first.
+	Arrays.sort(files, new Comparator<File>()
+	{
+	    @Override
+	    public int compare(File a, File b)
+	    {
+		return Long.compare(a.lastModified(), b.lastModified());
+	    }
+	});
+	for (File f : files)
+	{
+	    String name = f.getName();
+	    if (!name.endsWith(SUFFIX))
+		continue;
+	    disk.put(name.substring(0, name.length() - SUFFIX.length()),
+		    f.length());
+	    diskBytes += f.length();
+	}
+	trimDisk();
+    }
+
+    /**
+     * Find a response for a request. A fresh response is used as it is, and
+     * a stale one is revalidated with the server first.
+     * 
+     * @param uri
+     *            The URI being requested.
+     * @param method
+     *            The request method. Only GET is cached.
+     * @param requestHeaders
+     *            The request's headers.
+     * @return The response, or null to load it from the network.
+     */
+    @Override
+    public CacheResponse get(URI uri, String method,
+	    Map<String, List<String>> requestHeaders) throws IOException
+    {
+	if (!"GET".equals(method) || !isHTTP(uri))
+	    return null;
+	String key = keyFor(uri);
+	StoredResponse stored = lookup(key);
+	if (stored == null)
+	{
+	    count(false, 0);
+	    return null;
+	}
+	if (stored.isFresh(System.currentTimeMillis())
+		&& !wantsReload(requestHeaders))
+	{
+	    count(true, stored.getBody().length);
+	    return stored.toCacheResponse();
+	}
+	if (!stored.hasValidators())
+	{
+	    count(false, 0);
+	    return null;
+	}
+	return revalidate(uri, key, stored, requestHeaders);
+    }
+
+    /**
+     * Offer to save a response as it is downloaded.
+     * 
+     * @param uri
+     *            The URI that was requested.
+     * @param connection
+     *            The connection the response came from.
+     * @return Where to write the body, or null if it shouldn't be cached.
+     */
+    @Override
+    public CacheRequest put(URI uri, URLConnection connection)
+	    throws IOException
+    {
+	if (!(connection instanceof HttpURLConnection) || !isHTTP(uri))
+	    return null;
+	HttpURLConnection http = (HttpURLConnection) connection;
+	if (!"GET".equals(http.getRequestMethod())
+		|| http.getResponseCode() != HttpURLConnection.HTTP_OK)
+	    return null;
+	final StoredResponse response = new StoredResponse(keyFor(uri),
+		http.getHeaderFields(), System.currentTimeMillis());
+	final long maxBytes = maxDiskBytes / ENTRY_FRACTION;
+	if (!response.isCacheable() || http.getContentLengthLong() > maxBytes)
+	    return null;
+	final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	return new CacheRequest()
+	{
+	    private boolean aborted = false;
+
+	    @Override
+	    public OutputStream getBody()
+	    {
+		return new FilterOutputStream(buffer)
+		{
+		    @Override
+		    public void write(byte[] b, int off, int len)
+		    {
+			if (aborted)
+			    return;
+			buffer.write(b, off, len);
+			if (buffer.size() > maxBytes)
+			    abort();
+		    }
+
+		    @Override
+		    public void write(int b)
+		    {
+			write(new byte[] { (byte) b }, 0, 1);
+		    }
+
+		    @Override
+		    public void close()
+		    {
+			if (aborted)
+			    return;
+			aborted = true;
+			response.setBody(buffer.toByteArray());
+			store(response);
+		    }
+		};
+	    }
+
+	    @Override
+	    public void abort()
+	    {
+		aborted = true;
+		buffer.reset();
+	    }
+	};
+    }
+
+    /**
+     * Ask the server whether a stale response changed, and use it again if it
+     * didn't. The request bypasses this cache.
+     */
+    private CacheResponse revalidate(URI uri, String key,
+	    StoredResponse stored, Map<String, List<String>> requestHeaders)
+	    throws IOException
+    {
+	synchronized (this)
+	{
+	    revalidations++;
+	}
+	HttpURLConnection connection = (HttpURLConnection) uri.toURL()
+		.openConnection();
+	connection.setUseCaches(false);
+	connection.setInstanceFollowRedirects(false);
+	for (Map.Entry<String, List<String>> header : requestHeaders.entrySet())
+	{
+	    String name = header.getKey();
+	    if (name == null || name.equalsIgnoreCase("If-None-Match")
+		    || name.equalsIgnoreCase("If-Modified-Since"))
+		continue;
+	    for (String value : header.getValue())
+		connection.addRequestProperty(name, value);
+	}
+	if (stored.getHeader("ETag") != null)
+	    connection.setRequestProperty("If-None-Match",
+		    stored.getHeader("ETag"));
+	if (stored.getHeader("Last-Modified") != null)
+	    connection.setRequestProperty("If-Modified-Since",
+		    stored.getHeader("Last-Modified"));
+
+	int code = connection.getResponseCode();
+	long now = System.currentTimeMillis();
+	if (code == HttpURLConnection.HTTP_NOT_MODIFIED)
+	{
+	    drain(connection);
+	    StoredResponse updated = stored.revalidated(
+		    connection.getHeaderFields(), now);
+	    store(updated);
+	    synchronized (this)
+	    {
+		notModified++;
+	    }
+	    count(true, updated.getBody().length);
+	    return updated.toCacheResponse();
+	}
+	if (code == HttpURLConnection.HTTP_OK)
+	{
+	    StoredResponse fresh = new StoredResponse(key,
+		    connection.getHeaderFields(), now);
+	    fresh.setBody(readAll(connection.getInputStream()));
+	    if (fresh.isCacheable())
+		store(fresh);
+	    else
+		remove(key);
+	    count(false, 0);
+	    return fresh.toCacheResponse();
+	}
+	drain(connection);
+	count(false, 0);
+	return null;
+    }
+
+    /**
+     * Find a response in memory, or on disk. Responses read from disk are
+     * kept in memory too.
+     */
+    private StoredResponse lookup(String key)
+    {
+	synchronized (this)
+	{
+	    StoredResponse stored = memory.get(key);
+	    if (stored != null)
+		return stored;
+	    if (disk.get(key) == null)
+		return null;
+	}
+	File file = fileFor(key);
+	StoredResponse stored;
+	try
+	{
+	    stored = StoredResponse.read(file);
+	}
+	catch (IOException e)
+	{
+	    remove(key);
+	    return null;
+	}
+	if (!stored.getKey().equals(key))
+	    return null;
+	file.setLastModified(System.currentTimeMillis());
+	synchronized (this)
+	{
+	    diskHits++;
+	    putInMemory(stored);
+	}
+	return stored;
+    }
+
+    /**
+     * Save a response in memory and on disk, replacing the one saved for the
+     * same key.
+     */
+    private void store(StoredResponse response)
+    {
+	String key = response.getKey();
+	long size = response.getBody().length;
+	synchronized (this)
+	{
+	    bytesStored += size;
+	    putInMemory(response);
+	}
+	if (size > maxDiskBytes / ENTRY_FRACTION)
+	    return;
+	File file = fileFor(key);
+	File temp = new File(directory, key + ".tmp");
+	try
+	{
+	    response.write(temp);
+	    if (!temp.renameTo(file))
+	    {
+		file.delete();
+		if (!temp.renameTo(file))
+		    throw new IOException("Can't write " + file);
+	    }
+	}
+	catch (IOException e)
+	{
+	    temp.delete();
+	    System.err.println(CACHE_ERROR + e.getMessage());
+	    return;
+	}
+	synchronized (this)
+	{
+	    Long old = disk.put(key, file.length());
+	    if (old != null)
+		diskBytes -= old;
+	    diskBytes += file.length();
+	    trimDisk();
+	}
+    }
+
+    /**
+     * Forget a response, in memory and on disk.
+     */
+    private synchronized void remove(String key)
+    {
+	StoredResponse old = memory.remove(key);
+	if (old != null)
+	    memoryBytes -= old.getBody().length;
+	Long size = disk.remove(key);
+	if (size != null)
+	{
+	    diskBytes -= size;
+	    fileFor(key).delete();
+	}
+    }
+
+    private void putInMemory(StoredResponse response)
+    {
+	StoredResponse old = memory.remove(response.getKey());
+	if (old != null)
+	    memoryBytes -= old.getBody().length;
+	if (response.getBody().length > maxMemoryBytes / ENTRY_FRACTION)
+	    return;
+	memory.put(response.getKey(), response);
+	memoryBytes += response.getBody().length;
+	Iterator<StoredResponse> i = memory.values().iterator();
+	while (memoryBytes > maxMemoryBytes && i.hasNext())
+	{
+	    memoryBytes -= i.next().getBody().length;
+	    i.remove();
+	}
+    }
+
+    /**
+     * Delete the least recently used responses on disk until the rest fit.
+     */
+    private void trimDisk()
+    {
+	Iterator<Map.Entry<String, Long>> i = disk.entrySet().iterator();
+	while (diskBytes > maxDiskBytes && i.hasNext())
+	{
+	    Map.Entry<String, Long> eldest = i.next();
+	    diskBytes -= eldest.getValue();
+	    fileFor(eldest.getKey()).delete();
+	    i.remove();
+	    evictions++;
+	}
+    }
+
+    private synchronized void count(boolean hit, long bytes)
+    {
+	if (hit)
+	{
+	    hits++;
+	    bytesServed += bytes;
+	}
+	else
+	    misses++;
+    }
+
+    /**
+     * Forget every response.
+     */
+    public synchronized void clear()
+    {
+	for (String key : new ArrayList<String>(disk.keySet()))
+	    fileFor(key).delete();
+	disk.clear();
+	memory.clear();
+	diskBytes = 0;
+	memoryBytes = 0;
+    }
+
+    private File fileFor(String key)
+    {
+	return new File(directory, key + SUFFIX);
+    }
+
+    /**
+     * @param url
+     *            A URL.
+     * @return True if a response for it is saved, in memory or on disk,
+     *         whether or not it is still fresh.
+     */
+    public synchronized boolean contains(String url)
+    {
+	String key = keyFor(url);
+	return memory.containsKey(key) || disk.containsKey(key);
+    }
+
+    private static String keyFor(URI uri)
+    {
+	return keyFor(uri.toString());
+    }
+
+    /**
+     * @return A file name for a URL: the SHA-1 of its canonical form, which
+     *         has no fragment, in hex.
+     */
+    private static String keyFor(String url)
+    {
+	url = URLNormalizer.getDefault().canonicalize(url);
+	try
+	{
+	    byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+		    url.getBytes(StandardCharsets.UTF_8));
+	    StringBuilder key = new StringBuilder(digest.length * 2);
+	    for (byte b : digest)
+		key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(
+			Character.forDigit(b & 0xF, 16));
+	    return key.toString();
+	}
+	catch (NoSuchAlgorithmException e)
+	{
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    private static boolean isHTTP(URI uri)
+    {
+	return "http".equalsIgnoreCase(uri.getScheme())
+		|| "https".equalsIgnoreCase(uri.getScheme());
+    }
+
+    /**
+     * @return True if the request asks for the response to be revalidated,
+     *         as a reload does.
+     */
+    private static boolean wantsReload(Map<String, List<String>> headers)
+    {
+	for (Map.Entry<String, List<String>> header : headers.entrySet())
+	{
+	    String name = header.getKey();
+	    if (name == null)
+		continue;
+	    for (String value : header.getValue())
+	    {
+		String v = value.toLowerCase(Locale.US);
+		if (name.equalsIgnoreCase("Cache-Control")
+			&& (v.contains("no-cache") || v.contains("max-age=0")))
+		    return true;
+		if (name.equalsIgnoreCase("Pragma") && v.contains("no-cache"))
+		    return true;
+	    }
+	}
+	return false;
+    }
+
+    private static void drain(HttpURLConnection connection)
+    {
+	try
+	{
+	    InputStream in = connection.getInputStream();
+	    while (in.read() >= 0)
+		;
+	    in.close();
+	}
+	catch (IOException e)
+	{
+	    connection.disconnect();
+	}
+    }
+
+    static byte[] readAll(InputStream in) throws IOException
+    {
+	try
+	{
+	    ByteArrayOutputStream out = new ByteArrayOutputStream();
+	    byte[] buffer = new byte[8192];
+	    int n;
+	    while ((n = in.read(buffer)) >= 0)
+		out.write(buffer, 0, n);
+	    return out.toByteArray();
+	}
+	finally
+	{
+	    in.close();
+	}
+    }
+
+    /**
+     * @return How many requests were answered from the cache, including
+     *         revalidated ones.
+     */
+    public synchronized long getHits()
+    {
+	return hits;
+    }
+
+    /**
+     * @return How many hits were read from disk.
+     */
+    public synchronized long getDiskHits()
+    {
+	return diskHits;
+    }
+
+    /**
+     * @return How many requests went to the network.
+     */
+    public synchronized long getMisses()
+    {
+	return misses;
+    }
+
+    /**
+     * @return How many stale responses were revalidated with the server.
+     */
+    public synchronized long getRevalidations()
+    {
+	return revalidations;
+    }
+
+    /**
+     * @return How many revalidated responses hadn't changed.
+     */
+    public synchronized long getNotModified()
+    {
+	return notModified;
+    }
+
+    /**
+     * @return How many bytes of response bodies were answered from the cache.
+     */
+    public synchronized long getBytesServed()
+    {
+	return bytesServed;
+    }
+
+    /**
+     * @return How many bytes of response bodies were saved.
+     */
+    public synchronized long getBytesStored()
+    {
+	return bytesStored;
+    }
+
+    /**
+     * @return How many responses were deleted from disk to stay within its
+     *         size.
+     */
+    public synchronized long getEvictions()
+    {
+	return evictions;
+    }
+
+    public synchronized long getMemoryBytes()
+    {
+	return memoryBytes;
+    }
+
+    public synchronized long getDiskBytes()
+    {
+	return diskBytes;
+    }
+
+    public long getMaxMemoryBytes()
+    {
+	return maxMemoryBytes;
+    }
+
+    public long getMaxDiskBytes()
+    {
+	return maxDiskBytes;
+    }
+}
+
+/**
+ * One HTTP response saved by HttpResponseCache: its status line, headers, and
+ * body, and when it was received.
+ * 
+ * @author Akshay
+ *
+ */
+class StoredResponse
+{
+    private static final int MAGIC = 0x48545450;
+    /**
+     * Headers that only describe one connection, or shouldn't be replayed.
+     */
+    private static final List<String> DROPPED_HEADERS = Arrays.asList(
+	    "connection", "keep-alive", "transfer-encoding", "set-cookie",
+	    "set-cookie2", "content-length");
+    /**
+     * The longest a response is heuristically fresh for, when the server only
+     * says when it was last modified.
+     */
+    private static final long MAX_HEURISTIC = 24 * 60 * 60 * 1000;
+    private final String key;
+    private final LinkedHashMap<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+    private final long received;
+    private byte[] body = new byte[0];
+
+    /**
+     * Saves a response's headers.
+     * 
+     * @param key
+     *            The key of its URI.
+     * @param fields
+     *            Its headers, with the status line under the null key.
+     * @param received
+     *            When it was received.
+     */
+    public StoredResponse(String key, Map<String, List<String>> fields,
+	    long received)
+    {
+	this.key = key;
+	this.received = received;
+	for (Map.Entry<String, List<String>> field : fields.entrySet())
+	    if (field.getKey() == null
+		    || !DROPPED_HEADERS.contains(field.getKey().toLowerCase(
+			    Locale.US)))
+		headers.put(field.getKey(), field.getValue());
+    }
+
+    /**
+     * @return A copy of this response with the headers of a 304 Not Modified
+     *         response for it, received at a new time.
+     */
+    public StoredResponse revalidated(Map<String, List<String>> fields,
+	    long now)
+    {
+	StoredResponse updated = new StoredResponse(key, headers, now);
+	for (Map.Entry<String, List<String>> field : fields.entrySet())
+	{
+	    String name = field.getKey();
+	    if (name == null
+		    || DROPPED_HEADERS.contains(name.toLowerCase(Locale.US)))
+		continue;
+	    updated.removeHeader(name);
+	    updated.headers.put(name, field.getValue());
+	}
+	updated.body = body;
+	return updated;
+    }
+
+    /**
+     * @return True if the response may be saved: it doesn't forbid it, it
+     *         doesn't vary by anything but encoding, and it can either be
+     *         fresh or be revalidated.
+     */
+    public boolean isCacheable()
+    {
+	String cacheControl = getDirectives();
+	if (cacheControl.contains("no-store"))
+	    return false;
+	String vary = getHeader("Vary");
+	if (vary != null
+		&& !vary.trim().equalsIgnoreCase("Accept-Encoding"))
+	    return false;
+	return getLifetime() > 0 || hasValidators();
+    }
+
+    /**
+     * @return True if the response can be revalidated with the server.
+     */
+    public boolean hasValidators()
+    {
+	return getHeader("ETag") != null || getHeader("Last-Modified") != null;
+    }
+
+    /**
+     * @param now
+     *            The current time.
+     * @return True if the response can still be used without asking the
+     *         server.
+     */
+    public boolean isFresh(long now)
+    {
+	long age = Math.max(0, now - received);
+	String ageHeader = getHeader("Age");
+	if (ageHeader != null)
+	{
+	    try
+	    {
+		age += Long.parseLong(ageHeader.trim()) * 1000;
+	    }
+	    catch (NumberFormatException e)
+	    {
+		// Ignore a bad Age.
+	    }
+	}
+	return age < getLifetime();
+    }
+
+    /**
+     * @return How long the response is fresh for after it was sent, in
+     *         milliseconds.
+     */
+    private long getLifetime()
+    {
+	String cacheControl = getDirectives();
+	if (cacheControl.contains("no-cache"))
+	    return 0;
+	int maxAge = cacheControl.indexOf("max-age=");
+	if (maxAge >= 0)
+	{
+	    int start = maxAge + "max-age=".length();
+	    int end = start;
+	    while (end < cacheControl.length()
+		    && Character.isDigit(cacheControl.charAt(end)))
+		end++;
+	    try
+	    {
+		return Long.parseLong(cacheControl.substring(start, end)) * 1000;
+	    }
+	    catch (NumberFormatException e)
+	    {
+		return 0;
+	    }
+	}
+	long date = getDate("Date");
+	if (date < 0)
+	    date = received;
+	long expires = getDate("Expires");
+	if (getHeader("Expires") != null)
+	    return Math.max(0, expires - date);
+	long lastModified = getDate("Last-Modified");
+	if (lastModified >= 0 && lastModified < date)
+	    return Math.min((date - lastModified) / 10, MAX_HEURISTIC);
+	return 0;
+    }
+
+    private String getDirectives()
+    {
+	String cacheControl = getHeader("Cache-Control");
+	return cacheControl == null ? "" : cacheControl.toLowerCase(Locale.US);
+    }
+
+    /**
+     * @return A header's value, or -1 if it isn't there or isn't a date.
+     */
+    private long getDate(String name)
+    {
+	String value = getHeader(name);
+	if (value == null)
+	    return -1;
+	SimpleDateFormat format = new SimpleDateFormat(
+		"EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+	format.setTimeZone(TimeZone.getTimeZone("GMT"));
+	try
+	{
+	    return format.parse(value.trim()).getTime();
+	}
+	catch (ParseException e)
+	{
+	    return -1;
+	}
+    }
+
+    /**
+     * @return The last value of a header, ignoring case, or null.
+     */
+    public String getHeader(String name)
+    {
+	for (Map.Entry<String, List<String>> header : headers.entrySet())
+	    if (name.equalsIgnoreCase(header.getKey())
+		    && !header.getValue().isEmpty())
+		return header.getValue().get(header.getValue().size() - 1);
+	return null;
+    }
+
+    private void removeHeader(String name)
+    {
+	Iterator<String> i = headers.keySet().iterator();
+	while (i.hasNext())
+	    if (name.equalsIgnoreCase(i.next()))
+		i.remove();
+    }
+
+    /**
+     * @return The response as a CacheResponse, with its body's length.
+     */
+    public CacheResponse toCacheResponse()
+    {
+	final LinkedHashMap<String, List<String>> fields = new LinkedHashMap<String, List<String>>(
+		headers);
+	fields.put("Content-Length",
+		Collections.singletonList(Integer.toString(body.length)));
+	final byte[] bytes = body;
+	return new CacheResponse()
+	{
+	    @Override
+	    public Map<String, List<String>> getHeaders()
+	    {
+		return fields;
+	    }
+
+	    @Override
+	    public InputStream getBody()
+	    {
+		return new ByteArrayInputStream(bytes);
+	    }
+	};
+    }
+
+    public String getKey()
+    {
+	return key;
+    }
+
+    public byte[] getBody()
+    {
+	return body;
+    }
+
+    public void setBody(byte[] body)
+    {
+	this.body = body;
+    }
+
+    /**
+     * Write the response to a file.
+     */
+    public void write(File file) throws IOException
+    {
+	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+		new FileOutputStream(file)));
+	try
+	{
+	    out.writeInt(MAGIC);
+	    out.writeUTF(key);
+	    out.writeLong(received);
+	    out.writeInt(headers.size());
+	    for (Map.Entry<String, List<String>> header : headers.entrySet())
+	    {
+		out.writeBoolean(header.getKey() != null);
+		out.writeUTF(header.getKey() == null ? "" : header.getKey());
+		out.writeInt(header.getValue().size());
+		for (String value : header.getValue())
+		    out.writeUTF(value);
+	    }
+	    out.writeInt(body.length);
+	    out.write(body);
+	}
+	finally
+	{
+	    out.close();
+	}
+    }
+
+    /**
+     * Read a response written by write().
+     */
+    public static StoredResponse read(File file) throws IOException
+    {
+	DataInputStream in = new DataInputStream(new BufferedInputStream(
+		new FileInputStream(file)));
+	try
+	{
+	    if (in.readInt() != MAGIC)
+		throw new IOException("Not a cached response: " + file);
+	    String key = in.readUTF();
+	    long received = in.readLong();
+	    LinkedHashMap<String, List<String>> fields = new LinkedHashMap<String, List<String>>();
+	    int count = in.readInt();
+	    for (int i = 0; i < count; i++)
+	    {
+		boolean named = in.readBoolean();
+		String name = in.readUTF();
+		int values = in.readInt();
+		ArrayList<String> list = new ArrayList<String>(values);
+		for (int j = 0; j < values; j++)
+		    list.add(in.readUTF());
+		fields.put(named ? name : null, list);
+	    }
+	    byte[] body = new byte[in.readInt()];
+	    in.readFully(body);
+	    StoredResponse response = new StoredResponse(key, fields, received);
+	    response.body = body;
+	    return response;
+	}
+	finally
+	{
+	    in.close();
+	}
+    }
+}
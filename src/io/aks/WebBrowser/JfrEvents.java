@@ -0,0 +1,293 @@
+package io.aks.WebBrowser;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events of the browser. This is the only class that
+ * uses jdk.jfr, which older Java 8 runtimes don't have, so it is only loaded by
+ * BrowserEvents once it knows the Flight Recorder is there.
+ * 
+ * Each method checks whether its event is being recorded before making it, so
+ * when nothing is recording an event costs one field read.
+ * 
+ * @author Akshay
+ *
+ */
+class JfrEvents
+{
+    private static final EventType NAVIGATION = EventType
+	    .getEventType(NavigationEvent.class);
+    private static final EventType LOAD_STATE = EventType
+	    .getEventType(LoadStateEvent.class);
+    private static final EventType PAGE_LOAD = EventType
+	    .getEventType(PageLoadEvent.class);
+    private static final EventType HISTORY = EventType
+	    .getEventType(HistoryEvent.class);
+    private static final EventType HISTORY_PANE = EventType
+	    .getEventType(HistoryPaneUpdateEvent.class);
+    private static final EventType NEW_TAB = EventType
+	    .getEventType(NewTabEvent.class);
+    private static final EventType CONSOLE = EventType
+	    .getEventType(ConsoleBatchEvent.class);
+
+    /**
+     * @return True if the Flight Recorder can record in this Java.
+     */
+    static boolean isAvailable()
+    {
+	return FlightRecorder.isAvailable();
+    }
+
+    static void navigation(int tab, String url, String method)
+    {
+	if (!NAVIGATION.isEnabled())
+	    return;
+	NavigationEvent event = new NavigationEvent();
+	event.tab = tab;
+	event.url = url;
+	event.method = method;
+	event.commit();
+    }
+
+    static void loadState(int tab, String url, String state)
+    {
+	if (!LOAD_STATE.isEnabled())
+	    return;
+	LoadStateEvent event = new LoadStateEvent();
+	event.tab = tab;
+	event.url = url;
+	event.state = state;
+	event.commit();
+    }
+
+    static void pageLoad(int tab, PageLoadTiming timing)
+    {
+	if (!PAGE_LOAD.isEnabled())
+	    return;
+	PageLoadEvent event = new PageLoadEvent();
+	event.tab = tab;
+	event.url = timing.getURL();
+	event.load = timing.getLoadMillis() * 1000000;
+	// Without a state change, the load finishing was the first change.
+	long firstChange = timing.getFirstChangeMillis();
+	event.firstChange = firstChange < 0 ? event.load
+		: firstChange * 1000000;
+	event.failure = timing.getFailure();
+	event.commit();
+    }
+
+    static void history(int tab, String action, String url, int size)
+    {
+	if (!HISTORY.isEnabled())
+	    return;
+	HistoryEvent event = new HistoryEvent();
+	event.tab = tab;
+	event.action = action;
+	event.url = url;
+	event.size = size;
+	event.commit();
+    }
+
+    static Object beginHistoryPaneUpdate()
+    {
+	if (!HISTORY_PANE.isEnabled())
+	    return null;
+	HistoryPaneUpdateEvent event = new HistoryPaneUpdateEvent();
+	event.begin();
+	return event;
+    }
+
+    static void endHistoryPaneUpdate(Object started, int tab, int nodes)
+    {
+	HistoryPaneUpdateEvent event = (HistoryPaneUpdateEvent) started;
+	event.end();
+	if (!event.shouldCommit())
+	    return;
+	event.tab = tab;
+	event.nodes = nodes;
+	event.commit();
+    }
+
+    static void newTab(int tab, String url)
+    {
+	if (!NEW_TAB.isEnabled())
+	    return;
+	NewTabEvent event = new NewTabEvent();
+	event.tab = tab;
+	event.url = url;
+	event.commit();
+    }
+
+    static Object beginConsoleBatch()
+    {
+	if (!CONSOLE.isEnabled())
+	    return null;
+	ConsoleBatchEvent event = new ConsoleBatchEvent();
+	event.begin();
+	return event;
+    }
+
+    static void endConsoleBatch(Object started, int messages, long dropped)
+    {
+	ConsoleBatchEvent event = (ConsoleBatchEvent) started;
+	event.end();
+	if (!event.shouldCommit())
+	    return;
+	event.messages = messages;
+	event.dropped = dropped;
+	event.commit();
+    }
+}
+
+/**
+ * Recorded when a tab was told to go to a URL.
+ * 
+ * @author Akshay
+ *
+ */
+@Name("io.aks.WebBrowser.Navigation")
+@Label("Navigation")
+@Category({ "Web Browser", "Navigation" })
+@Description("A tab was told to go to a URL")
+class NavigationEvent extends Event
+{
+    @Label("Tab")
+    int tab;
+    @Label("URL")
+    String url;
+    @Label("Method")
+    String method;
+}
+
+/**
+ * Recorded when a tab's page load changed state.
+ * 
+ * @author Akshay
+ *
+ */
+@Name("io.aks.WebBrowser.LoadState")
+@Label("Load State")
+@Category({ "Web Browser", "Navigation" })
+@Description("A tab's page load changed state")
+@StackTrace(false)
+class LoadStateEvent extends Event
+{
+    @Label("Tab")
+    int tab;
+    @Label("URL")
+    String url;
+    @Label("State")
+    String state;
+}
+
+/**
+ * Recorded when a page finished loading, or failed to.
+ * 
+ * @author Akshay
+ *
+ */
+@Name("io.aks.WebBrowser.PageLoad")
+@Label("Page Load")
+@Category({ "Web Browser", "Navigation" })
+@Description("A page finished loading, or failed to")
+@StackTrace(false)
+class PageLoadEvent extends Event
+{
+    @Label("Tab")
+    int tab;
+    @Label("URL")
+    String url;
+    @Label("First State Change")
+    @Timespan(Timespan.NANOSECONDS)
+    long firstChange;
+    @Label("Load Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long load;
+    @Label("Failure")
+    String failure;
+}
+
+/**
+ * Recorded when a page was added to a tab's history, or the tab went back or forward.
+ * 
+ * @author Akshay
+ *
+ */
+@Name("io.aks.WebBrowser.History")
+@Label("History Change")
+@Category({ "Web Browser", "History" })
+@Description("A page was added to a tab's history, or the tab went back or forward")
+class HistoryEvent extends Event
+{
+    @Label("Tab")
+    int tab;
+    @Label("Action")
+    String action;
+    @Label("URL")
+    String url;
+    @Label("History Size")
+    int size;
+}
+
+/**
+ * Recorded when a tab's history pane was brought up to date.
+ * 
+ * @author Akshay
+ *
+ */
+@Name("io.aks.WebBrowser.HistoryPaneUpdate")
+@Label("History Pane Update")
+@Category({ "Web Browser", "History" })
+@Description("A tab's history pane was brought up to date")
+@StackTrace(false)
+class HistoryPaneUpdateEvent extends Event
+{
+    @Label("Tab")
+    int tab;
+    @Label("Nodes Shown")
+    int nodes;
+}
+
+/**
+ * Recorded when a tab was opened.
+ * 
+ * @author Akshay
+ *
+ */
+@Name("io.aks.WebBrowser.NewTab")
+@Label("New Tab")
+@Category({ "Web Browser", "Tabs" })
+@Description("A tab was opened")
+class NewTabEvent extends Event
+{
+    @Label("Tab")
+    int tab;
+    @Label("URL")
+    String url;
+}
+
+/**
+ * Recorded when console messages were delivered to the selected tab in one script.
+ * 
+ * @author Akshay
+ *
+ */
+@Name("io.aks.WebBrowser.ConsoleBatch")
+@Label("Console Batch")
+@Category({ "Web Browser", "Console" })
+@Description("Console messages were delivered to the selected tab in one script")
+@StackTrace(false)
+class ConsoleBatchEvent extends Event
+{
+    @Label("Messages")
+    int messages;
+    @Label("Dropped So Far")
+    long dropped;
+}
@@ -0,0 +1,94 @@
+package io.aks.WebBrowser;
+/**
+ * One change to a History, as stored in the journal. Nodes are numbered in
+ * the order they were created in their tab, starting with 0 for the root.
+ * Numbers aren't reused when nodes are removed.
+ * 
+ * @author Akshay
+ *
+ */
+class JournalRecord
+{
+    /** A tab was opened. The text is the root's URL. */
+    public static final byte OPEN = 1;
+    /**
+     * A page was added. The node is its parent, the other is its number, and
+     * the text is its URL.
+     */
+    public static final byte ADD = 2;
+    /** A node was retitled. */
+    public static final byte TITLE = 3;
+    /** The other node became the primary forward of the node. */
+    public static final byte PRIMARY = 4;
+    /** The node became current. */
+    public static final byte CURRENT = 5;
+    /** A tab was closed. */
+    public static final byte CLOSE = 6;
+    /** The node and all of its forwards were removed. */
+    public static final byte REMOVE = 7;
+    /**
+     * The node was visited. The other is how many times it has been, and the
+     * time is when it last was.
+     */
+    public static final byte VISIT = 8;
+    /** Tells the writer thread to stop. Never written. */
+    static final JournalRecord STOP = new JournalRecord((byte) 0, -1, 0, 0,
+	    null);
+
+    private final byte type;
+    private final int tab;
+    private final int node;
+    private final int other;
+    private final String text;
+    private final long time;
+
+    public JournalRecord(byte type, int tab, int node, int other, String text)
+    {
+	this(type, tab, node, other, text, 0);
+    }
+
+    public JournalRecord(byte type, int tab, int node, int other,
+	    String text, long time)
+    {
+	this.type = type;
+	this.tab = tab;
+	this.node = node;
+	this.other = other;
+	this.text = text;
+	this.time = time;
+    }
+
+    public byte getType()
+    {
+	return type;
+    }
+
+    public int getTab()
+    {
+	return tab;
+    }
+
+    public int getNode()
+    {
+	return node;
+    }
+
+    public int getOther()
+    {
+	return other;
+    }
+
+    public String getText()
+    {
+	return text;
+    }
+
+    /**
+     * @return The time of a VISIT record, in milliseconds since the epoch, or
+     *         0.
+     */
+    public long getTime()
+    {
+	return time;
+    }
+}
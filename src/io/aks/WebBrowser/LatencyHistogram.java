@@ -0,0 +1,109 @@
+package io.aks.WebBrowser;
+/**
+ * Counts load times in buckets of up to 1, 2, 4, ... 65536 milliseconds, and
+ * longer.
+ * 
+ * @author Akshay
+ *
+ */
+class LatencyHistogram
+{
+    static final int BUCKETS = 18;
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long failures = 0;
+    private long totalMillis = 0;
+    private long maxMillis = 0;
+
+    void record(long millis, boolean failed)
+    {
+	counts[bucket(millis)]++;
+	count++;
+	if (failed)
+	    failures++;
+	totalMillis += millis;
+	maxMillis = Math.max(maxMillis, millis);
+    }
+
+    /**
+     * @return The bucket a time goes in: the smallest i with millis <= 2^i.
+     */
+    static int bucket(long millis)
+    {
+	if (millis <= 1)
+	    return 0;
+	return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis - 1));
+    }
+
+    /**
+     * @return The longest time that goes in a bucket, or Long.MAX_VALUE for
+     *         the last one.
+     */
+    static long upperBound(int bucket)
+    {
+	return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * @param fraction
+     *            Between 0 and 1, like 0.95.
+     * @return The upper bound of the bucket that the given fraction of loads
+     *         are in or below, capped at the slowest load.
+     */
+    long percentile(double fraction)
+    {
+	long needed = (long) Math.ceil(fraction * count);
+	long seen = 0;
+	for (int i = 0; i < BUCKETS; i++)
+	{
+	    seen += counts[i];
+	    if (seen >= needed && seen > 0)
+		return Math.min(upperBound(i), maxMillis);
+	}
+	return maxMillis;
+    }
+
+    LatencyHistogram copy()
+    {
+	LatencyHistogram copy = new LatencyHistogram();
+	System.arraycopy(counts, 0, copy.counts, 0, BUCKETS);
+	copy.count = count;
+	copy.failures = failures;
+	copy.totalMillis = totalMillis;
+	copy.maxMillis = maxMillis;
+	return copy;
+    }
+
+    long getCount(int bucket)
+    {
+	return counts[bucket];
+    }
+
+    long getCount()
+    {
+	return count;
+    }
+
+    long getFailures()
+    {
+	return failures;
+    }
+
+    long getMeanMillis()
+    {
+	return count == 0 ? 0 : totalMillis / count;
+    }
+
+    long getMaxMillis()
+    {
+	return maxMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+	return count + " loads, " + failures + " failed, median "
+		+ percentile(0.5) + " ms, 95% " + percentile(0.95)
+		+ " ms, max " + maxMillis + " ms";
+    }
+}
@@ -0,0 +1,472 @@
+package io.aks.WebBrowser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ResponseCache;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads the pages behind links before they are clicked, so they are
+ * already in the HttpResponseCache when the user follows them. A link is
+ * prefetched when the pointer rests on it. Hovered links that the pointer
+ * leaves before they finish are cancelled. The first links that are visible
+ * after a page loads can be prefetched too.
+ * 
+ * Prefetching is off unless the preferences turn it on, and visible links
+ * are off unless a number of them is set: a link can be anything, such as
+ * "Sign out" or "delete?id=3", and fetching it with the user's cookies could
+ * change something on the server. Even when it is on, only links to the same
+ * origin as the page, without a query string, are prefetched.
+ * 
+ * A prefetch only counts as usable if the cache saved what it downloaded;
+ * responses the cache refuses, such as no-store ones, are counted as wasted.
+ * The counts, the hit rate, and the wasted bytes are kept in the
+ * MetricsRegistry.
+ * 
+ * Prefetching happens on a few background threads, with only a couple of
+ * downloads from the same host at a time and a limited number waiting, so it
+ * never competes much with the page itself.
+ * 
+ * @author Akshay
+ *
+ */
+public class LinkPrefetcher
+{
+    public static final boolean DEFAULT_ENABLED = false;
+    /**
+     * Visible links aren't prefetched unless this is set.
+     */
+    public static final int DEFAULT_VIEWPORT_LINKS = 0;
+    private static final int THREADS = 2;
+    private static final int MAX_PER_HOST = 2;
+    private static final int MAX_WAITING = 32;
+    /**
+     * How long the pointer has to stay on a link before it is prefetched, in
+     * milliseconds.
+     */
+    private static final long HOVER_DELAY = 80;
+    /**
+     * How long to wait before trying again when a host is busy.
+     */
+    private static final long BUSY_DELAY = 100;
+    static final long MAX_BYTES = 2L << 20;
+    /**
+     * How many prefetched pages are remembered to see if they are used.
+     */
+    private static final int REMEMBERED = 256;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final HashMap<String, PrefetchTask> pending = new HashMap<String, PrefetchTask>();
+    private final HashMap<String, Integer> active = new HashMap<String, Integer>();
+    /**
+     * How many bytes each prefetched page took, until it is used.
+     */
+    private final LinkedHashMap<String, Long> unused = new LinkedHashMap<String, Long>();
+    private final boolean enabled;
+    private final int viewportLinks;
+    private final MetricCounter requested;
+    private final MetricCounter completed;
+    private final MetricCounter cancelled;
+    private final MetricCounter dropped;
+    private final MetricCounter uncached;
+    private final MetricCounter hits;
+    private final MetricCounter bytes;
+    private final MetricCounter wastedBytes;
+
+    /**
+     * Creates a prefetcher. The registry gets a counter for each PREFETCH_
+     * metric, and a PREFETCH_HIT_PERCENT gauge.
+     * 
+     * @param metrics
+     *            The registry.
+     * @param enabled
+     *            Whether to prefetch at all.
+     * @param viewportLinks
+     *            How many visible links to prefetch after a page loads.
+     */
+    public LinkPrefetcher(MetricsRegistry metrics, boolean enabled,
+	    int viewportLinks)
+    {
+	this.enabled = enabled;
+	this.viewportLinks = viewportLinks;
+	requested = metrics.counter(MetricsRegistry.PREFETCH_REQUESTED,
+		"Links queued to be prefetched");
+	completed = metrics.counter(MetricsRegistry.PREFETCH_COMPLETED,
+		"Prefetched pages the response cache saved");
+	cancelled = metrics.counter(MetricsRegistry.PREFETCH_CANCELLED,
+		"Hovered prefetches cancelled because the pointer left");
+	dropped = metrics.counter(MetricsRegistry.PREFETCH_DROPPED,
+		"Links not prefetched because too many were waiting");
+	uncached = metrics.counter(MetricsRegistry.PREFETCH_UNCACHED,
+		"Prefetched pages the response cache didn't save");
+	hits = metrics.counter(MetricsRegistry.PREFETCH_HITS,
+		"Prefetched pages that were navigated to");
+	bytes = metrics.counter(MetricsRegistry.PREFETCH_BYTES,
+		"Bytes downloaded by prefetching");
+	wastedBytes = metrics.counter(MetricsRegistry.PREFETCH_WASTED_BYTES,
+		"Prefetched bytes that were never used");
+	metrics.gauge(MetricsRegistry.PREFETCH_HIT_PERCENT,
+		"Percent of saved prefetches that were navigated to",
+		new Gauge()
+		{
+		    @Override
+		    public long value()
+		    {
+			long saved = completed.getCount();
+			return saved == 0 ? 0 : hits.getCount() * 100 / saved;
+		    }
+		});
+	executor = new ScheduledThreadPoolExecutor(THREADS, new ThreadFactory()
+	{
+	    @Override
+	    public Thread newThread(Runnable r)
+	    {
+		Thread thread = new Thread(r, "Link Prefetcher");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	    }
+	});
+	executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Prefetch a link the pointer is on, after a short delay, if it is to the
+     * same origin as the page and has no query string.
+     * 
+     * @param page
+     *            The page's URL.
+     * @param url
+     *            The link's absolute URL.
+     * @param userAgent
+     *            The user agent of the page it is on.
+     */
+    public void hover(String page, String url, String userAgent)
+    {
+	String origin = originOf(URLNormalizer.getDefault().canonicalize(page));
+	url = URLNormalizer.getDefault().canonicalize(url);
+	if (isSafe(origin, url))
+	    schedule(url, userAgent, true);
+    }
+
+    /**
+     * Cancel prefetching a link the pointer left, if it hasn't finished.
+     * 
+     * @param url
+     *            The link's absolute URL.
+     */
+    public synchronized void leave(String url)
+    {
+	url = URLNormalizer.getDefault().canonicalize(url);
+	PrefetchTask task = pending.get(url);
+	if (task == null || !task.isHovered())
+	    return;
+	pending.remove(url);
+	if (task.getFuture().cancel(true))
+	    cancelled.increment();
+    }
+
+    /**
+     * Prefetch the first visible links of a page that just loaded, if they
+     * are to the same origin as the page and have no query string.
+     * 
+     * @param page
+     *            The page's URL.
+     * @param urls
+     *            The links' absolute URLs, in page order.
+     * @param userAgent
+     *            The user agent of the page.
+     */
+    public void prefetchVisible(String page, List<String> urls,
+	    String userAgent)
+    {
+	String origin = originOf(URLNormalizer.getDefault().canonicalize(page));
+	for (int i = 0; i < urls.size() && i < viewportLinks; i++)
+	{
+	    String url = URLNormalizer.getDefault().canonicalize(urls.get(i));
+	    if (isSafe(origin, url))
+		schedule(url, userAgent, false);
+	}
+    }
+
+    /**
+     * @return True if a canonical URL is to the origin and has no query
+     *         string, so fetching it is unlikely to change anything.
+     */
+    private static boolean isSafe(String origin, String url)
+    {
+	return origin != null && origin.equals(originOf(url))
+		&& url.indexOf('?') < 0;
+    }
+
+    /**
+     * @return The scheme, host, and port of a canonical URL, or null if it
+     *         has no host.
+     */
+    private static String originOf(String url)
+    {
+	int authority = url == null ? -1 : url.indexOf("://");
+	if (authority < 0)
+	    return null;
+	int path = url.indexOf('/', authority + 3);
+	return path < 0 ? url : url.substring(0, path);
+    }
+
+    /**
+     * Note that a page was navigated to, to count it as a hit if it was
+     * prefetched.
+     * 
+     * @param url
+     *            The page's URL.
+     */
+    public synchronized void navigated(String url)
+    {
+	url = URLNormalizer.getDefault().canonicalize(url);
+	Long size = unused.remove(url);
+	if (size != null)
+	    hits.increment();
+    }
+
+    /**
+     * Stop prefetching, and cancel everything that is waiting.
+     */
+    public void shutdown()
+    {
+	executor.shutdownNow();
+    }
+
+    private synchronized void schedule(String url, String userAgent,
+	    boolean hovered)
+    {
+	url = URLNormalizer.getDefault().canonicalize(url);
+	if (!enabled || executor.isShutdown()
+		|| ResponseCache.getDefault() == null
+		|| !(url.startsWith("http://") || url.startsWith("https://"))
+		|| pending.containsKey(url) || unused.containsKey(url))
+	    return;
+	if (pending.size() >= MAX_WAITING)
+	{
+	    dropped.increment();
+	    return;
+	}
+	String host = URLNormalizer.hostOf(url);
+	if (host == null)
+	    return;
+	requested.increment();
+	PrefetchTask task = new PrefetchTask(this, url, host, userAgent,
+		hovered);
+	pending.put(url, task);
+	task.setFuture(executor.schedule(task, hovered ? HOVER_DELAY : 0,
+		TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Start a download from a host, if it doesn't have too many already.
+     * 
+     * @return False if the host is busy.
+     */
+    synchronized boolean acquire(String host)
+    {
+	Integer count = active.get(host);
+	if (count == null)
+	    count = 0;
+	if (count >= MAX_PER_HOST)
+	    return false;
+	active.put(host, count + 1);
+	return true;
+    }
+
+    synchronized void release(String host)
+    {
+	int count = active.get(host) - 1;
+	if (count == 0)
+	    active.remove(host);
+	else
+	    active.put(host, count);
+    }
+
+    /**
+     * Try a task again later because its host was busy.
+     */
+    synchronized void retry(PrefetchTask task)
+    {
+	if (pending.get(task.getURL()) != task || executor.isShutdown())
+	    return;
+	task.setFuture(executor.schedule(task, BUSY_DELAY,
+		TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Record a finished download. Pages the cache didn't save, and pages
+     * that are forgotten before they are used, count as wasted.
+     */
+    void finished(PrefetchTask task, long size, boolean complete)
+    {
+	// The cache is asked before taking this lock, since it has its own.
+	record(task, size, complete, complete && isCached(task.getURL()));
+    }
+
+    private synchronized void record(PrefetchTask task, long size,
+	    boolean complete, boolean saved)
+    {
+	String url = task.getURL();
+	if (pending.get(url) == task)
+	    pending.remove(url);
+	bytes.add(size);
+	if (complete && !saved)
+	    uncached.increment();
+	if (!saved)
+	{
+	    wastedBytes.add(size);
+	    return;
+	}
+	completed.increment();
+	unused.put(url, size);
+	Iterator<Map.Entry<String, Long>> i = unused.entrySet().iterator();
+	while (unused.size() > REMEMBERED)
+	{
+	    wastedBytes.add(i.next().getValue());
+	    i.remove();
+	}
+    }
+
+    /**
+     * @return True if the response cache has a response saved for the URL.
+     */
+    private static boolean isCached(String url)
+    {
+	ResponseCache cache = ResponseCache.getDefault();
+	return cache instanceof HttpResponseCache
+		&& ((HttpResponseCache) cache).contains(url);
+    }
+
+    public boolean isEnabled()
+    {
+	return enabled;
+    }
+
+    public int getViewportLinks()
+    {
+	return viewportLinks;
+    }
+}
+
+/**
+ * Prefetches one link, when its host isn't busy.
+ * 
+ * @author Akshay
+ *
+ */
+class PrefetchTask implements Runnable
+{
+    private final LinkPrefetcher prefetcher;
+    private final String url;
+    private final String host;
+    private final String userAgent;
+    private final boolean hovered;
+    private volatile Future<?> future;
+    private long size = 0;
+    private boolean complete = false;
+
+    public PrefetchTask(LinkPrefetcher prefetcher, String url, String host,
+	    String userAgent, boolean hovered)
+    {
+	this.prefetcher = prefetcher;
+	this.url = url;
+	this.host = host;
+	this.userAgent = userAgent;
+	this.hovered = hovered;
+    }
+
+    @Override
+    public void run()
+    {
+	if (!prefetcher.acquire(host))
+	{
+	    prefetcher.retry(this);
+	    return;
+	}
+	try
+	{
+	    fetch();
+	}
+	catch (IOException e)
+	{
+	    // A failed prefetch just means the page loads normally.
+	}
+	finally
+	{
+	    prefetcher.release(host);
+	    prefetcher.finished(this, size, complete);
+	}
+    }
+
+    /**
+     * Download the page through the response cache, which saves it. The
+     * download stops early if the task is cancelled or the page is too big.
+     */
+    private void fetch() throws IOException
+    {
+	URLConnection connection = new URL(url).openConnection();
+	if (!(connection instanceof HttpURLConnection))
+	    return;
+	HttpURLConnection http = (HttpURLConnection) connection;
+	if (userAgent != null)
+	    http.setRequestProperty("User-Agent", userAgent);
+	InputStream in = http.getInputStream();
+	try
+	{
+	    byte[] buffer = new byte[8192];
+	    int n;
+	    while ((n = in.read(buffer)) >= 0)
+	    {
+		size += n;
+		if (Thread.currentThread().isInterrupted()
+			|| size > LinkPrefetcher.MAX_BYTES)
+		{
+		    // Closing early keeps a partial page out of the cache.
+		    http.disconnect();
+		    return;
+		}
+	    }
+	    complete = true;
+	}
+	finally
+	{
+	    in.close();
+	}
+    }
+
+    public String getURL()
+    {
+	return url;
+    }
+
+    /**
+     * @return True if the link was prefetched because the pointer is on it.
+     */
+    public boolean isHovered()
+    {
+	return hovered;
+    }
+
+    public Future<?> getFuture()
+    {
+	return future;
+    }
+
+    public void setFuture(Future<?> future)
+    {
+	this.future = future;
+    }
+}
@@ -1,12 +1,21 @@
 package io.aks.WebBrowser;
 import java.awt.EventQueue;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ResponseCache;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
 import javafx.application.Application;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
-import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.scene.Scene;
 import javafx.scene.control.Tab;
@@ -32,6 +41,14 @@ public class Main extends Application implements Runnable
     private static final String TITLE = "Akshay Srivatsan's Web Browser";
     private static final String PREFERENCES_ERROR = "Warning:\nThere was a problem accessing your preferences. Any changes made during this session will not be saved.";
     public static final String DEFAULT_HOME_PAGE = "http://en.wikipedia.org/wiki/Main_Page";
+    private static final String DATA_DIRECTORY = ".at-cs-browser";
+    private static final String JOURNAL_FILE = "history.journal";
+    private static final String DUMP_FILE = "history-dump.json";
+    private static final String CACHE_DIRECTORY = "cache";
+    private static final String CACHE_MEMORY_KEY = "cache_memory_bytes";
+    private static final String CACHE_DISK_KEY = "cache_disk_bytes";
+    private static final String LOG_DIRECTORY = "logs";
+    private static final String LOG_FILE = "browser.log";
 
     public static String homePage;
     public static String[] launchArgs;
@@ -43,12 +60,49 @@ public class Main extends Application implements Runnable
     private TabPane tabs;
     private ToolPane tools;
     private Stage stage;
+    private HistoryJournal historyJournal;
+    private HistoryBudget historyBudget;
+    private HistoryIndex historyIndex;
+    private SuggestionEngine suggestions;
+    private TabHibernator hibernator;
+    private final TabLeakTracker leakTracker = new TabLeakTracker();
+    private LinkPrefetcher prefetcher;
+    private final ConsoleBridge consoleBridge = new ConsoleBridge(this);
+    private AsyncLogWriter logWriter;
+    private final PageLoadStats loadStats = new PageLoadStats();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private String metricsFile;
+    private int metricsPort;
+    private FxWatchdog watchdog;
+    private int liveTabs;
+    private int idleSeconds;
+    private int heapPercent;
     private static Preferences prefs;
+    private static HttpResponseCache responseCache;
     private final String BOOKMARK_PREFIX = "_bookmark_";
     private final String HOME_PAGE_KEY = "home_page";
+    private final String HISTORY_TAB_PAGES_KEY = "history_tab_pages";
+    private final String HISTORY_TAB_BYTES_KEY = "history_tab_bytes";
+    private final String HISTORY_PAGES_KEY = "history_pages";
+    private final String HISTORY_BYTES_KEY = "history_bytes";
+    private final String HISTORY_POLICY_KEY = "history_eviction_policy";
+    private final String HISTORY_INDEX_KEY = "history_index_pages";
+    private final String LIVE_TABS_KEY = "hibernate_live_tabs";
+    private final String IDLE_SECONDS_KEY = "hibernate_idle_seconds";
+    private final String HEAP_PERCENT_KEY = "hibernate_heap_percent";
+    private final String PREFETCH_KEY = "prefetch_enabled";
+    private final String PREFETCH_LINKS_KEY = "prefetch_viewport_links";
+    private final String LOG_BYTES_KEY = "log_max_bytes";
+    private final String LOG_FILES_KEY = "log_files";
+    private final String LOG_POLICY_KEY = "log_backpressure";
+    private final String METRICS_FILE_KEY = "metrics_file";
+    private final String METRICS_PORT_KEY = "metrics_port";
+    private final String STALL_MILLIS_KEY = "watchdog_stall_millis";
 
     /**
-     * Initalizes the bookmarks and home page. Other actions are done in the
+     * Initalizes the bookmarks, home page, history budget and index, address
+     * bar suggestions, hibernation settings, link prefetcher, log file,
+     * metrics, and JavaFX thread watchdog. Other actions are done in the
      * JavaFX start() method.
      */
     public Main()
@@ -62,15 +116,54 @@ public class Main extends Application implements Runnable
 	    i++;
 	    current = prefs.get(BOOKMARK_PREFIX + i, null);
 	}
+	historyBudget = new HistoryBudget(metrics, prefs.getInt(
+		HISTORY_TAB_PAGES_KEY, HistoryBudget.DEFAULT_MAX_TAB_NODES),
+		prefs.getLong(HISTORY_TAB_BYTES_KEY,
+			HistoryBudget.DEFAULT_MAX_TAB_BYTES),
+		prefs.getInt(HISTORY_PAGES_KEY, HistoryBudget.DEFAULT_MAX_NODES),
+		prefs.getLong(HISTORY_BYTES_KEY, HistoryBudget.DEFAULT_MAX_BYTES),
+		HistoryBudget.policyForName(prefs.get(HISTORY_POLICY_KEY, null)));
+	historyIndex = new HistoryIndex(prefs.getInt(HISTORY_INDEX_KEY,
+		HistoryIndex.DEFAULT_MAX_PAGES));
+	suggestions = new SuggestionEngine(historyIndex, bookmarks);
+	liveTabs = prefs.getInt(LIVE_TABS_KEY, TabHibernator.DEFAULT_LIVE_TABS);
+	idleSeconds = prefs.getInt(IDLE_SECONDS_KEY,
+		TabHibernator.DEFAULT_IDLE_SECONDS);
+	heapPercent = prefs.getInt(HEAP_PERCENT_KEY,
+		TabHibernator.DEFAULT_HEAP_PERCENT);
+	prefetcher = new LinkPrefetcher(metrics, prefs.getBoolean(PREFETCH_KEY,
+		LinkPrefetcher.DEFAULT_ENABLED),
+		prefs.getInt(PREFETCH_LINKS_KEY,
+			LinkPrefetcher.DEFAULT_VIEWPORT_LINKS));
+	historyJournal = new HistoryJournal(new File(new File(
+		System.getProperty("user.home"), DATA_DIRECTORY), JOURNAL_FILE));
+	logWriter = new AsyncLogWriter(new File(new File(new File(
+		System.getProperty("user.home"), DATA_DIRECTORY), LOG_DIRECTORY),
+		LOG_FILE), AsyncLogWriter.DEFAULT_BUFFER_BYTES, prefs.getLong(
+		LOG_BYTES_KEY, AsyncLogWriter.DEFAULT_MAX_FILE_BYTES),
+		AsyncLogWriter.DEFAULT_ROTATE_MILLIS, prefs.getInt(LOG_FILES_KEY,
+			AsyncLogWriter.DEFAULT_FILES),
+		AsyncLogWriter.policyForName(prefs.get(LOG_POLICY_KEY, null)),
+		System.err);
+	metricsFile = prefs.get(METRICS_FILE_KEY, "");
+	metricsPort = prefs.getInt(METRICS_PORT_KEY, 0);
+	createMetrics();
 	Runtime.getRuntime().addShutdownHook(new Thread(this));
 
     }
 
     /**
-     * Saves the current bookmarks and homepage into the preferences file.
+     * Saves the current bookmarks, homepage, history budget and index size,
+     * hibernation settings, cache sizes, prefetch settings, log settings,
+     * metrics settings, and the stall threshold into the preferences file,
+     * finishes writing the history journal, the metrics, and the log, and
+     * stops prefetching and suggesting.
      */
     public void run()
     {
+	prefetcher.shutdown();
+	suggestions.shutdown();
+	historyJournal.close();
 	try
 	{
 	    prefs.clear();
@@ -80,6 +173,25 @@ public class Main extends Application implements Runnable
 	    System.err.println(PREFERENCES_ERROR);
 	}
 	prefs.put(HOME_PAGE_KEY, homePage);
+	prefs.putInt(HISTORY_TAB_PAGES_KEY, historyBudget.getMaxTabNodes());
+	prefs.putLong(HISTORY_TAB_BYTES_KEY, historyBudget.getMaxTabBytes());
+	prefs.putInt(HISTORY_PAGES_KEY, historyBudget.getMaxNodes());
+	prefs.putLong(HISTORY_BYTES_KEY, historyBudget.getMaxBytes());
+	prefs.put(HISTORY_POLICY_KEY, historyBudget.getPolicy().toString());
+	prefs.putInt(HISTORY_INDEX_KEY, historyIndex.getMaxPages());
+	prefs.putInt(LIVE_TABS_KEY, liveTabs);
+	prefs.putInt(IDLE_SECONDS_KEY, idleSeconds);
+	prefs.putInt(HEAP_PERCENT_KEY, heapPercent);
+	prefs.putLong(CACHE_MEMORY_KEY, responseCache.getMaxMemoryBytes());
+	prefs.putLong(CACHE_DISK_KEY, responseCache.getMaxDiskBytes());
+	prefs.putBoolean(PREFETCH_KEY, prefetcher.isEnabled());
+	prefs.putInt(PREFETCH_LINKS_KEY, prefetcher.getViewportLinks());
+	prefs.putLong(LOG_BYTES_KEY, logWriter.getMaxFileBytes());
+	prefs.putInt(LOG_FILES_KEY, logWriter.getFiles());
+	prefs.put(LOG_POLICY_KEY, logWriter.getPolicyName());
+	prefs.put(METRICS_FILE_KEY, metricsFile);
+	prefs.putInt(METRICS_PORT_KEY, metricsPort);
+	prefs.putLong(STALL_MILLIS_KEY, watchdog.getStallMillis());
 	for (int i = 0; i < bookmarks.size(); i++)
 	{
 	    prefs.put(BOOKMARK_PREFIX + i,
@@ -93,6 +205,136 @@ public class Main extends Application implements Runnable
 	{
 	    Main.showMessageDialog(PREFERENCES_ERROR);
 	}
+	metrics.close();
+	logWriter.close();
+    }
+
+    /**
+     * Creates the metrics, registers them with JMX, and starts writing or
+     * serving them if the preferences say to.
+     */
+    private void createMetrics()
+    {
+	metrics.gauge(MetricsRegistry.TABS_OPEN, "Open tabs");
+	metrics.counter(MetricsRegistry.TABS_HIBERNATIONS,
+		"Tabs whose page was dropped to save memory");
+	metrics.counter(MetricsRegistry.TABS_WAKES,
+		"Hibernated tabs that were selected and loaded again");
+	metrics.counter(MetricsRegistry.TABS_HEAP_TRIGGERS,
+		"Times the heap was nearly full and background tabs"
+			+ " were hibernated");
+	metrics.gauge(MetricsRegistry.WEBVIEWS_LIVE,
+		"Tabs with a WebView, which aren't hibernated");
+	metrics.gauge(MetricsRegistry.HISTORY_NODES,
+		"Pages in the histories of every tab");
+	final MetricGauge bookmarkCount = metrics.gauge(
+		MetricsRegistry.BOOKMARKS, "Bookmarks");
+	bookmarkCount.set(bookmarks.size());
+	bookmarks.addListener(new ListChangeListener<BookmarkItem>()
+	{
+	    @Override
+	    public void onChanged(Change<? extends BookmarkItem> change)
+	    {
+		bookmarkCount.set(bookmarks.size());
+	    }
+	});
+	metrics.histogram(MetricsRegistry.PAGE_LOAD, "Page load times");
+	metrics.counter(MetricsRegistry.PAGE_LOAD_FAILURES, "Failed page loads");
+	metrics.histogram(MetricsRegistry.HISTORY_PANE_UPDATE,
+		"History pane update times");
+	metrics.counter(MetricsRegistry.BRIDGE_CROSSINGS,
+		"Calls between Java and the JavaScript of pages");
+	metrics.counter(MetricsRegistry.BFCACHE_HITS,
+		"Pages shown from a back/forward cache");
+	metrics.counter(MetricsRegistry.BFCACHE_MISSES,
+		"Back, forward, and history jumps that had to load the page");
+	metrics.counter(MetricsRegistry.BFCACHE_STALE,
+		"Back/forward cache misses for pages saved too long ago");
+	metrics.counter(MetricsRegistry.BFCACHE_EVICTIONS,
+		"Pages dropped from a back/forward cache to stay within limits");
+	metrics.gauge(MetricsRegistry.CONSOLE_OFFERED,
+		"Console messages sent to the console bridge", new Gauge()
+		{
+		    @Override
+		    public long value()
+		    {
+			return consoleBridge.getOffered();
+		    }
+		});
+	metrics.gauge(MetricsRegistry.CONSOLE_DELIVERED,
+		"Console messages delivered to a tab", new Gauge()
+		{
+		    @Override
+		    public long value()
+		    {
+			return consoleBridge.getDelivered();
+		    }
+		});
+	metrics.gauge(MetricsRegistry.CONSOLE_DROPPED,
+		"Console messages dropped because the bridge was full"
+			+ " or no tab could show them",
+		new Gauge()
+		{
+		    @Override
+		    public long value()
+		    {
+			return consoleBridge.getDropped();
+		    }
+		});
+	metrics.gauge(MetricsRegistry.LOG_BYTES, "Bytes written to log files",
+		new Gauge()
+		{
+		    @Override
+		    public long value()
+		    {
+			return logWriter.getBytesWritten();
+		    }
+		});
+	metrics.gauge(MetricsRegistry.LOG_WRITTEN,
+		"Console messages written to the log", new Gauge()
+		{
+		    @Override
+		    public long value()
+		    {
+			return logWriter.getMessagesWritten();
+		    }
+		});
+	metrics.gauge(MetricsRegistry.LOG_DROPPED,
+		"Console messages dropped because the log buffer was full",
+		new Gauge()
+		{
+		    @Override
+		    public long value()
+		    {
+			return logWriter.getMessagesDropped();
+		    }
+		});
+	metrics.gauge(MetricsRegistry.LOG_ROTATIONS,
+		"Times the log file was rotated", new Gauge()
+		{
+		    @Override
+		    public long value()
+		    {
+			return logWriter.getRotations();
+		    }
+		});
+	watchdog = new FxWatchdog(metrics, FxWatchdog.DEFAULT_INTERVAL,
+		prefs.getLong(STALL_MILLIS_KEY, FxWatchdog.DEFAULT_STALL_MILLIS));
+	metrics.registerMBeans();
+	if (!metricsFile.isEmpty())
+	    metrics.dumpTo(new File(metricsFile));
+	if (metricsPort > 0)
+	{
+	    try
+	    {
+		metrics.serve(metricsPort);
+	    }
+	    catch (IOException e)
+	    {
+		System.err.println("Couldn't serve metrics on port "
+			+ metricsPort + ": " + e.getMessage());
+	    }
+	}
     }
 
     /**
@@ -108,11 +350,147 @@ public class Main extends Application implements Runnable
 	GUI gui = new GUI(this, url, tab);
 	tab.setContent(gui);
 	getTabs().getTabs().add(tab);
+	historyJournal.attach(gui.getHistory());
+	historyBudget.register(gui.getHistory());
+	historyIndex.attach(gui.getHistory());
+	leakTracker.track(gui);
+	BrowserEvents.newTab(gui, url);
+	return gui;
+    }
+
+    /**
+     * Creates a tab for a tab that was open last session, with its history,
+     * and loads the page it was on.
+     * 
+     * @param saved
+     *            The saved tab from the history journal.
+     * @return The GUI that is in the new tab.
+     */
+    public GUI restoreTab(SavedTab saved)
+    {
+	Tab tab = new Tab(saved.getRootURL());
+	GUI gui = new GUI(this, saved.getRootURL(), tab, false);
+	tab.setContent(gui);
+	getTabs().getTabs().add(tab);
+	HashMap<Integer, HistoryNode> nodes = HistoryJournal.replay(saved,
+		gui.getHistory());
+	historyJournal.attach(gui.getHistory(), saved, nodes);
+	historyBudget.register(gui.getHistory());
+	historyIndex.addAll(gui.getHistory());
+	historyIndex.attach(gui.getHistory());
+	leakTracker.track(gui);
+	BrowserEvents.newTab(gui, saved.getRootURL());
+	HistoryNode current = gui.getHistory().getCurrent();
+	tab.setText(HistoryNode.abbreviate(current.getTitle()));
+	gui.loadURL(current.getUrl(), true);
 	return gui;
     }
 
     /**
-     * Sets up basic values before JavaFX takes over.
+     * Releases everything a tab that was removed from the TabPane holds, by
+     * whichever way it was closed. Its History stops being journaled,
+     * budgeted, and indexed, though its pages stay in the index, its GUI is
+     * disposed, and the leak tracker waits for it to be garbage collected.
+     * 
+     * @param tab
+     *            The removed tab.
+     */
+    private void disposeTab(Tab tab)
+    {
+	GUI gui = (GUI) tab.getContent();
+	if (gui == null || gui.isDisposed())
+	    return;
+	History history = gui.getHistory();
+	String url = history.getCurrent().getUrl();
+	historyJournal.detach(history);
+	historyBudget.unregister(history);
+	historyIndex.detach(history);
+	gui.dispose();
+	leakTracker.disposed(gui, url);
+    }
+
+    /**
+     * Opens a tab with a table of the load times of every host pages were
+     * loaded from.
+     */
+    public void showLoadTimes()
+    {
+	GUI gui = newTab("about:blank");
+	gui.getWebViewController().loadHTML(loadStats.toHTML());
+	getTabs().getSelectionModel().selectLast();
+    }
+
+    /**
+     * Opens a tab that lists the recent stalls of the JavaFX thread, with the
+     * stacks it was stuck in.
+     */
+    public void showStalls()
+    {
+	GUI gui = newTab("about:blank");
+	gui.getWebViewController().loadHTML(
+		watchdog.getStalls().toHTML(watchdog.getStallMillis()));
+	getTabs().getSelectionModel().selectLast();
+    }
+
+    /**
+     * Writes the history of every open tab to a JSON file, as an array with
+     * one tree per tab. The trees are copied on the JavaFX thread, which is
+     * quick, and written on a background thread.
+     */
+    public void dumpHistories()
+    {
+	final ArrayList<CompactHistory> snapshots = new ArrayList<CompactHistory>();
+	for (Tab tab : getTabs().getTabs())
+	    snapshots.add(CompactHistory.from(((GUI) tab.getContent())
+		    .getHistory()));
+	final File file = new File(new File(System.getProperty("user.home"),
+		DATA_DIRECTORY), DUMP_FILE);
+	Thread writer = new Thread(new Runnable()
+	{
+	    @Override
+	    public void run()
+	    {
+		try
+		{
+		    file.getParentFile().mkdirs();
+		    Writer out = new OutputStreamWriter(new FileOutputStream(
+			    file), StandardCharsets.UTF_8);
+		    try
+		    {
+			out.write('[');
+			for (int i = 0; i < snapshots.size(); i++)
+			{
+			    if (i > 0)
+				out.write(",\n");
+			    HistoryWriter.writeJSON(snapshots.get(i), out);
+			}
+			out.write("]\n");
+		    }
+		    finally
+		    {
+			out.close();
+		    }
+		    Main.showMessageDialog("History saved to\n" + file);
+		}
+		catch (IOException e)
+		{
+		    Main.showMessageDialog("Couldn't save history:\n"
+			    + e.getMessage());
+		}
+		finally
+		{
+		    for (CompactHistory snapshot : snapshots)
+			snapshot.clear();
+		}
+	    }
+	}, "History Dump");
+	writer.setDaemon(true);
+	writer.start();
+    }
+
+    /**
+     * Sets up basic values before JavaFX takes over, and installs the cache
+     * that every page load goes through.
      * 
      * @param args
      *            The command line parameters.
@@ -121,9 +499,28 @@ public class Main extends Application implements Runnable
     {
 	prefs = Preferences.userNodeForPackage(Main.class);
 	launchArgs = args;
+	responseCache = new HttpResponseCache(new File(new File(
+		System.getProperty("user.home"), DATA_DIRECTORY),
+		CACHE_DIRECTORY), prefs.getLong(CACHE_MEMORY_KEY,
+		HttpResponseCache.DEFAULT_MEMORY_BYTES), prefs.getLong(
+		CACHE_DISK_KEY, HttpResponseCache.DEFAULT_DISK_BYTES));
+	ResponseCache.setDefault(responseCache);
 	launch(args);
     }
 
+    /**
+     * Use other preferences than the user's. They are read when a Main is
+     * created, so this has to be called before that. Tests use it to leave
+     * the user's settings alone.
+     * 
+     * @param preferences
+     *            The preferences.
+     */
+    static void setPreferences(Preferences preferences)
+    {
+	prefs = preferences;
+    }
+
     /**
      * Shows a message dialog using JOptionPane. Because JOptionPane is from
      * Swing, it won't run normally in the JavaFX Thread.
@@ -160,29 +557,35 @@ public class Main extends Application implements Runnable
 	BorderPane content = new BorderPane();
 
 	setTabs(new TabPane());
+	getTabs().getTabs().addListener(new ListChangeListener<Tab>()
+	{
+	    @Override
+	    public void onChanged(Change<? extends Tab> change)
+	    {
+		while (change.next())
+		    for (Tab closed : change.getRemoved())
+			disposeTab(closed);
+		metrics.getGauge(MetricsRegistry.TABS_OPEN).set(
+			getTabs().getTabs().size());
+		metrics.getGauge(MetricsRegistry.HISTORY_NODES).set(
+			historyBudget.getNodeCount());
+	    }
+	});
 
+	hibernator = new TabHibernator(metrics, getTabs(), liveTabs,
+		idleSeconds, heapPercent);
+	leakTracker.start();
 	content.setCenter(getTabs());
 
 	tools = new ToolPane(this, bookmarks);
 	content.setRight(tools);
 
-	Tab tab = new Tab(homePage);
-	tab.setOnClosed(new EventHandler<Event>()
-	{
-
-	    @Override
-	    public void handle(Event arg0)
-	    {
-		((GUI) ((Tab) arg0.getTarget()).getContent())
-			.getWebViewController().getWebView().setVisible(false);
-	    }
-
-	});
-	getTabs().getTabs().add(tab);
-	if (launchArgs.length == 0)
-	    tab.setContent(new GUI(this, homePage, tab));
-	else
-	    tab.setContent(new GUI(this, launchArgs[0], tab));
+	for (SavedTab saved : historyJournal.getSavedTabs())
+	    restoreTab(saved);
+	if (launchArgs.length > 0)
+	    newTab(launchArgs[0]);
+	else if (getTabs().getTabs().isEmpty())
+	    newTab(homePage);
 	getTabs().getSelectionModel().select(1);
 
 	if (javaVersion >= MIN_JAVA_VERSION)
@@ -195,6 +598,128 @@ public class Main extends Application implements Runnable
 	stage.show();
     }
 
+    /**
+     * Called when JavaFX is closing. Stops checking for leaked and idle tabs.
+     */
+    @Override
+    public void stop()
+    {
+	hibernator.stop();
+	leakTracker.stop();
+    }
+
+    /**
+     * @return The manager that hibernates background tabs.
+     */
+    public TabHibernator getHibernator()
+    {
+	return hibernator;
+    }
+
+    /**
+     * @return The bridge that carries console output to the selected tab.
+     */
+    public ConsoleBridge getConsoleBridge()
+    {
+	return consoleBridge;
+    }
+
+    /**
+     * @return The log file writer behind System.out and System.err.
+     */
+    public AsyncLogWriter getLogWriter()
+    {
+	return logWriter;
+    }
+
+    /**
+     * @return The watchdog that records stalls of the JavaFX thread.
+     */
+    public FxWatchdog getWatchdog()
+    {
+	return watchdog;
+    }
+
+    /**
+     * @return The browser's metrics.
+     */
+    public MetricsRegistry getMetrics()
+    {
+	return metrics;
+    }
+
+    /**
+     * @return The load times of every tab, by host.
+     */
+    public PageLoadStats getLoadStats()
+    {
+	return loadStats;
+    }
+
+    /**
+     * @return The prefetcher that downloads links before they are clicked.
+     */
+    public LinkPrefetcher getPrefetcher()
+    {
+	return prefetcher;
+    }
+
+    /**
+     * @return The cache of HTTP responses.
+     */
+    public static HttpResponseCache getResponseCache()
+    {
+	return responseCache;
+    }
+
+    /**
+     * @return The tracker that reports closed tabs that weren't garbage
+     *         collected.
+     */
+    public TabLeakTracker getLeakTracker()
+    {
+	return leakTracker;
+    }
+
+    /**
+     * @return The budget that every tab's History is kept within.
+     */
+    public HistoryBudget getHistoryBudget()
+    {
+	return historyBudget;
+    }
+
+    /**
+     * @return The index of the pages visited in every tab, for searching.
+     */
+    public HistoryIndex getHistoryIndex()
+    {
+	return historyIndex;
+    }
+
+    /**
+     * @return The engine that suggests pages as an address bar is typed in.
+     */
+    public SuggestionEngine getSuggestionEngine()
+    {
+	return suggestions;
+    }
+
+    /**
+     * @param url
+     *            A page's URL.
+     * @return The bookmark for the page, however its URL is written, or null
+     *         if it isn't bookmarked.
+     */
+    public BookmarkItem findBookmark(String url)
+    {
+	String key = URLNormalizer.getDefault().canonicalize(url);
+	for (BookmarkItem bookmark : bookmarks)
+	    if (bookmark.getKey().equals(key))
+		return bookmark;
+	return null;
+    }
+
     public ObservableList<BookmarkItem> getBookmarks()
     {
 	return bookmarks;
@@ -249,7 +774,10 @@ class MainKeyEventHandler implements EventHandler<KeyEvent>
 
     /**
      * Handles the key event. Takes care of Meta-N (new tab), Meta-T (new tab),
-     * and Meta-W (close tab). Meta is Control on Windows and Command on Mac.
+     * Meta-W (close tab), Meta-Shift-D (save every tab's history to a file),
+     * Meta-Shift-J (show the JavaFX thread's stalls), and Meta-Shift-L (show
+     * the page load times by host). Meta is Control on Windows and Command on
+     * Mac.
      * 
      * @param e
      *            The KeyEvent
@@ -263,6 +791,18 @@ class MainKeyEventHandler implements EventHandler<KeyEvent>
 	    main.newTab(Main.homePage);
 	    main.getTabs().getSelectionModel().selectLast();
 	}
+	else if (e.isMetaDown() && e.isShiftDown() && e.getCode() == KeyCode.D)
+	{
+	    main.dumpHistories();
+	}
+	else if (e.isMetaDown() && e.isShiftDown() && e.getCode() == KeyCode.J)
+	{
+	    main.showStalls();
+	}
+	else if (e.isMetaDown() && e.isShiftDown() && e.getCode() == KeyCode.L)
+	{
+	    main.showLoadTimes();
+	}
 	else if (e.isMetaDown() && e.getCode() == KeyCode.W)
 	{
 	    if (main.getTabs().getSelectionModel().getSelectedIndex() > -1)
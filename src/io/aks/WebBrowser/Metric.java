@@ -0,0 +1,48 @@
+package io.aks.WebBrowser;
+import java.io.IOException;
+
+/**
+ * A named metric.
+ * 
+ * @author Akshay
+ *
+ */
+abstract class Metric
+{
+    private final String name;
+    private final String help;
+
+    Metric(String name, String help)
+    {
+	this.name = name;
+	this.help = help;
+    }
+
+    public String getName()
+    {
+	return name;
+    }
+
+    public String getHelp()
+    {
+	return help;
+    }
+
+    /**
+     * @return The Prometheus type: counter, gauge, or histogram.
+     */
+    abstract String getType();
+
+    /**
+     * @return The names of the MBean attributes.
+     */
+    abstract String[] getAttributeNames();
+
+    abstract long getAttribute(String attribute);
+
+    /**
+     * Write the metric's samples, without its HELP and TYPE lines.
+     */
+    abstract void writePrometheus(String name, Appendable out)
+	    throws IOException;
+}
@@ -0,0 +1,60 @@
+package io.aks.WebBrowser;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A count that only goes up.
+ * 
+ * @author Akshay
+ *
+ */
+class MetricCounter extends Metric
+{
+    private static final String[] ATTRIBUTES = { "Count" };
+    private final AtomicLong count = new AtomicLong();
+
+    MetricCounter(String name, String help)
+    {
+	super(name, help);
+    }
+
+    public void increment()
+    {
+	count.incrementAndGet();
+    }
+
+    public void add(long amount)
+    {
+	count.addAndGet(amount);
+    }
+
+    public long getCount()
+    {
+	return count.get();
+    }
+
+    @Override
+    String getType()
+    {
+	return "counter";
+    }
+
+    @Override
+    String[] getAttributeNames()
+    {
+	return ATTRIBUTES;
+    }
+
+    @Override
+    long getAttribute(String attribute)
+    {
+	return getCount();
+    }
+
+    @Override
+    void writePrometheus(String name, Appendable out) throws IOException
+    {
+	out.append(name).append(' ').append(Long.toString(getCount()))
+		.append('\n');
+    }
+}
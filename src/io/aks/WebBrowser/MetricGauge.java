@@ -0,0 +1,63 @@
+package io.aks.WebBrowser;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A value that goes up and down. It is either set by the code that changes
+ * it, or read from a Gauge.
+ * 
+ * @author Akshay
+ *
+ */
+class MetricGauge extends Metric
+{
+    private static final String[] ATTRIBUTES = { "Value" };
+    private final AtomicLong value = new AtomicLong();
+    private final Gauge source;
+
+    MetricGauge(String name, String help, Gauge source)
+    {
+	super(name, help);
+	this.source = source;
+    }
+
+    public void set(long newValue)
+    {
+	value.set(newValue);
+    }
+
+    public void add(long amount)
+    {
+	value.addAndGet(amount);
+    }
+
+    public long getValue()
+    {
+	return source == null ? value.get() : source.value();
+    }
+
+    @Override
+    String getType()
+    {
+	return "gauge";
+    }
+
+    @Override
+    String[] getAttributeNames()
+    {
+	return ATTRIBUTES;
+    }
+
+    @Override
+    long getAttribute(String attribute)
+    {
+	return getValue();
+    }
+
+    @Override
+    void writePrometheus(String name, Appendable out) throws IOException
+    {
+	out.append(name).append(' ').append(Long.toString(getValue()))
+		.append('\n');
+    }
+}
@@ -0,0 +1,131 @@
+package io.aks.WebBrowser;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts values in a fixed set of buckets, each twice as wide as the last,
+ * like LatencyHistogram, but safe to update from any thread.
+ * 
+ * @author Akshay
+ *
+ */
+class MetricHistogram extends Metric
+{
+    private static final String[] ATTRIBUTES = { "Count", "Sum", "Max",
+	    "Mean", "50thPercentile", "95thPercentile", "99thPercentile" };
+    private final AtomicLongArray buckets = new AtomicLongArray(
+	    LatencyHistogram.BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    MetricHistogram(String name, String help)
+    {
+	super(name, help);
+    }
+
+    /**
+     * Count a value.
+     * 
+     * @param value
+     *            The value, which should not be negative.
+     */
+    public void record(long value)
+    {
+	if (value < 0)
+	    value = 0;
+	buckets.incrementAndGet(LatencyHistogram.bucket(value));
+	count.incrementAndGet();
+	sum.addAndGet(value);
+	long highest;
+	while (value > (highest = max.get())
+		&& !max.compareAndSet(highest, value))
+	    ;
+    }
+
+    public long getCount()
+    {
+	return count.get();
+    }
+
+    public long getSum()
+    {
+	return sum.get();
+    }
+
+    public long getMax()
+    {
+	return max.get();
+    }
+
+    /**
+     * @param fraction
+     *            Between 0 and 1, like 0.95.
+     * @return The upper bound of the bucket that the given fraction of values
+     *         are in or below, capped at the largest value.
+     */
+    public long percentile(double fraction)
+    {
+	long needed = (long) Math.ceil(fraction * count.get());
+	long seen = 0;
+	for (int i = 0; i < LatencyHistogram.BUCKETS; i++)
+	{
+	    seen += buckets.get(i);
+	    if (seen >= needed && seen > 0)
+		return Math.min(LatencyHistogram.upperBound(i), max.get());
+	}
+	return max.get();
+    }
+
+    @Override
+    String getType()
+    {
+	return "histogram";
+    }
+
+    @Override
+    String[] getAttributeNames()
+    {
+	return ATTRIBUTES;
+    }
+
+    @Override
+    long getAttribute(String attribute)
+    {
+	if (attribute.equals("Count"))
+	    return getCount();
+	if (attribute.equals("Sum"))
+	    return getSum();
+	if (attribute.equals("Max"))
+	    return getMax();
+	if (attribute.equals("Mean"))
+	    return getCount() == 0 ? 0 : getSum() / getCount();
+	if (attribute.equals("50thPercentile"))
+	    return percentile(0.5);
+	if (attribute.equals("95thPercentile"))
+	    return percentile(0.95);
+	return percentile(0.99);
+    }
+
+    @Override
+    void writePrometheus(String name, Appendable out) throws IOException
+    {
+	long cumulative = 0;
+	for (int i = 0; i < LatencyHistogram.BUCKETS - 1; i++)
+	{
+	    cumulative += buckets.get(i);
+	    out.append(name).append("_bucket{le=\"")
+		    .append(Long.toString(LatencyHistogram.upperBound(i)))
+		    .append("\"} ").append(Long.toString(cumulative))
+		    .append('\n');
+	}
+	cumulative += buckets.get(LatencyHistogram.BUCKETS - 1);
+	out.append(name).append("_bucket{le=\"+Inf\"} ")
+		.append(Long.toString(cumulative)).append('\n');
+	out.append(name).append("_sum ").append(Long.toString(getSum()))
+		.append('\n');
+	out.append(name).append("_count ").append(Long.toString(cumulative))
+		.append('\n');
+    }
+}
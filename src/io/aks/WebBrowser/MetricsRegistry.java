@@ -0,0 +1,496 @@
+package io.aks.WebBrowser;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * The browser's counters, gauges, and latency histograms. Every metric is
+ * registered as an MBean named io.aks.WebBrowser:type=Metrics,group=...,name=...
+ * so it can be watched with JConsole or any other JMX client, and all of them
+ * can be written in the Prometheus text format to a file or served on a
+ * loopback port.
+ * 
+ * Metrics are created up front and then only updated with atomic operations,
+ * so updating one never allocates or locks.
+ * 
+ * @author Akshay
+ *
+ */
+public class MetricsRegistry
+{
+    public static final String TABS_OPEN = "tabs_open";
+    public static final String TABS_HIBERNATIONS = "tabs_hibernations";
+    public static final String TABS_WAKES = "tabs_wakes";
+    public static final String TABS_HEAP_TRIGGERS = "tabs_heap_triggers";
+    public static final String WEBVIEWS_LIVE = "webviews_live";
+    public static final String HISTORY_NODES = "history_nodes";
+    public static final String BOOKMARKS = "bookmarks";
+    public static final String PAGE_LOAD = "page_load_millis";
+    public static final String PAGE_LOAD_FAILURES = "page_load_failures";
+    public static final String HISTORY_PANE_UPDATE = "history_pane_update_micros";
+    public static final String CONSOLE_OFFERED = "console_messages_offered";
+    public static final String CONSOLE_DELIVERED = "console_messages_delivered";
+    public static final String CONSOLE_DROPPED = "console_messages_dropped";
+    public static final String FX_QUEUE_DELAY = "fx_queue_delay_millis";
+    public static final String FX_QUEUE_WAITING = "fx_queue_waiting_millis";
+    public static final String FX_STALLS = "fx_stalls";
+    public static final String FX_STALL_DURATION = "fx_stall_millis";
+    public static final String BRIDGE_CROSSINGS = "bridge_crossings";
+    public static final String LOG_BYTES = "log_bytes_written";
+    public static final String LOG_WRITTEN = "log_messages_written";
+    public static final String LOG_DROPPED = "log_messages_dropped";
+    public static final String LOG_ROTATIONS = "log_rotations";
+    public static final String HISTORY_EVICTED = "history_evicted_pages";
+    public static final String HISTORY_COLLAPSED = "history_collapsed_branches";
+    public static final String HISTORY_REMOVED = "history_removed_branches";
+    public static final String HISTORY_EVICTIONS = "history_evictions";
+    public static final String BFCACHE_HITS = "bfcache_hits";
+    public static final String BFCACHE_MISSES = "bfcache_misses";
+    public static final String BFCACHE_STALE = "bfcache_stale_misses";
+    public static final String BFCACHE_EVICTIONS = "bfcache_evictions";
+    public static final String PREFETCH_REQUESTED = "prefetch_requested";
+    public static final String PREFETCH_COMPLETED = "prefetch_completed";
+    public static final String PREFETCH_CANCELLED = "prefetch_cancelled";
+    public static final String PREFETCH_DROPPED = "prefetch_dropped";
+    public static final String PREFETCH_UNCACHED = "prefetch_uncached";
+    public static final String PREFETCH_HITS = "prefetch_hits";
+    public static final String PREFETCH_HIT_PERCENT = "prefetch_hit_percent";
+    public static final String PREFETCH_BYTES = "prefetch_bytes";
+    public static final String PREFETCH_WASTED_BYTES = "prefetch_wasted_bytes";
+    private static final String DOMAIN = "io.aks.WebBrowser";
+    private static final String PROMETHEUS_PREFIX = "browser_";
+    /**
+     * How often the Prometheus file is rewritten, in seconds.
+     */
+    private static final long DUMP_INTERVAL = 15;
+
+    private final ConcurrentHashMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+    private final CopyOnWriteArrayList<Metric> ordered = new CopyOnWriteArrayList<Metric>();
+    private final ArrayList<ObjectName> registered = new ArrayList<ObjectName>();
+    private final ScheduledThreadPoolExecutor executor;
+    private File dumpFile;
+    private ServerSocket server;
+
+    /**
+     * Creates an empty registry.
+     */
+    public MetricsRegistry()
+    {
+	executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+	{
+	    @Override
+	    public Thread newThread(Runnable r)
+	    {
+		Thread thread = new Thread(r, "Metrics");
+		thread.setDaemon(true);
+		return thread;
+	    }
+	});
+    }
+
+    /**
+     * Create a counter, which only goes up.
+     * 
+     * @param name
+     *            The metric's name.
+     * @param help
+     *            What it counts.
+     * @return The counter.
+     */
+    public MetricCounter counter(String name, String help)
+    {
+	return (MetricCounter) add(new MetricCounter(name, help));
+    }
+
+    /**
+     * Create a gauge that is set when its value changes.
+     * 
+     * @param name
+     *            The metric's name.
+     * @param help
+     *            What it measures.
+     * @return The gauge.
+     */
+    public MetricGauge gauge(String name, String help)
+    {
+	return (MetricGauge) add(new MetricGauge(name, help, null));
+    }
+
+    /**
+     * Create a gauge that asks for its value when it is read, which may be on
+     * any thread.
+     * 
+     * @param name
+     *            The metric's name.
+     * @param help
+     *            What it measures.
+     * @param source
+     *            Where to get the value.
+     * @return The gauge.
+     */
+    public MetricGauge gauge(String name, String help, Gauge source)
+    {
+	return (MetricGauge) add(new MetricGauge(name, help, source));
+    }
+
+    /**
+     * Create a histogram with a bucket per power of 2, in whatever unit its
+     * values are in.
+     * 
+     * @param name
+     *            The metric's name, ending with its unit.
+     * @param help
+     *            What it measures.
+     * @return The histogram.
+     */
+    public MetricHistogram histogram(String name, String help)
+    {
+	return (MetricHistogram) add(new MetricHistogram(name, help));
+    }
+
+    private Metric add(Metric metric)
+    {
+	if (metrics.putIfAbsent(metric.getName(), metric) != null)
+	    throw new IllegalArgumentException("Metric already exists: "
+		    + metric.getName());
+	ordered.add(metric);
+	return metric;
+    }
+
+    public MetricCounter getCounter(String name)
+    {
+	return (MetricCounter) metrics.get(name);
+    }
+
+    public MetricGauge getGauge(String name)
+    {
+	return (MetricGauge) metrics.get(name);
+    }
+
+    public MetricHistogram getHistogram(String name)
+    {
+	return (MetricHistogram) metrics.get(name);
+    }
+
+    /**
+     * Register every metric as an MBean in the platform MBean server. The
+     * group of a metric is the part of its name before the first underscore.
+     */
+    public synchronized void registerMBeans()
+    {
+	MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+	for (Metric metric : ordered)
+	{
+	    String name = metric.getName();
+	    int underscore = name.indexOf('_');
+	    String group = underscore < 0 ? name : name.substring(0, underscore);
+	    try
+	    {
+		ObjectName objectName = new ObjectName(DOMAIN
+			+ ":type=Metrics,group=" + group + ",name=" + name);
+		if (mbeans.isRegistered(objectName))
+		    continue;
+		mbeans.registerMBean(new MetricBean(metric), objectName);
+		registered.add(objectName);
+	    }
+	    catch (JMException e)
+	    {
+		System.err.println("Couldn't register metric " + name + ": "
+			+ e.getMessage());
+	    }
+	}
+    }
+
+    /**
+     * Rewrite a file with every metric in the Prometheus text format every
+     * DUMP_INTERVAL seconds, and when the registry is closed.
+     * 
+     * @param file
+     *            The file.
+     */
+    public synchronized void dumpTo(File file)
+    {
+	dumpFile = file;
+	executor.scheduleWithFixedDelay(new Runnable()
+	{
+	    @Override
+	    public void run()
+	    {
+		dump();
+	    }
+	}, DUMP_INTERVAL, DUMP_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Serve every metric in the Prometheus text format over HTTP on a
+     * loopback port, so only this computer can read them.
+     * 
+     * @param port
+     *            The port.
+     * @throws IOException
+     *             If the port couldn't be opened.
+     */
+    public synchronized void serve(int port) throws IOException
+    {
+	server = new ServerSocket(port, 8, InetAddress.getLoopbackAddress());
+	final ServerSocket socket = server;
+	Thread thread = new Thread(new Runnable()
+	{
+	    @Override
+	    public void run()
+	    {
+		while (!socket.isClosed())
+		{
+		    try
+		    {
+			respond(socket.accept());
+		    }
+		    catch (IOException e)
+		    {
+			// Closing the socket ends the loop.
+		    }
+		}
+	    }
+	}, "Metrics Server");
+	thread.setDaemon(true);
+	thread.start();
+    }
+
+    /**
+     * Answer one HTTP request with the metrics, whatever it asked for.
+     */
+    private void respond(Socket client) throws IOException
+    {
+	try
+	{
+	    client.setSoTimeout(2000);
+	    BufferedReader in = new BufferedReader(new InputStreamReader(
+		    client.getInputStream(), StandardCharsets.ISO_8859_1));
+	    String line;
+	    while ((line = in.readLine()) != null && !line.isEmpty())
+		;
+	    StringBuilder body = new StringBuilder();
+	    writePrometheus(body);
+	    byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+	    OutputStream out = client.getOutputStream();
+	    out.write(("HTTP/1.0 200 OK\r\n"
+		    + "Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n"
+		    + "Content-Length: " + bytes.length + "\r\n\r\n")
+		    .getBytes(StandardCharsets.ISO_8859_1));
+	    out.write(bytes);
+	    out.flush();
+	}
+	finally
+	{
+	    client.close();
+	}
+    }
+
+    /**
+     * Write the metrics file, through a temporary file so a reader never
+     * sees half of it.
+     */
+    private synchronized void dump()
+    {
+	if (dumpFile == null)
+	    return;
+	File temp = new File(dumpFile.getPath() + ".tmp");
+	try
+	{
+	    if (dumpFile.getParentFile() != null)
+		dumpFile.getParentFile().mkdirs();
+	    Writer out = new OutputStreamWriter(new FileOutputStream(temp),
+		    StandardCharsets.UTF_8);
+	    try
+	    {
+		writePrometheus(out);
+	    }
+	    finally
+	    {
+		out.close();
+	    }
+	    dumpFile.delete();
+	    temp.renameTo(dumpFile);
+	}
+	catch (IOException e)
+	{
+	    System.err.println("Couldn't write metrics: " + e.getMessage());
+	}
+    }
+
+    /**
+     * Write every metric in the Prometheus text format.
+     * 
+     * @param out
+     *            Where to write.
+     * @throws IOException
+     *             If writing fails.
+     */
+    public void writePrometheus(Appendable out) throws IOException
+    {
+	for (Metric metric : ordered)
+	{
+	    String name = PROMETHEUS_PREFIX + metric.getName();
+	    out.append("# HELP ").append(name).append(' ')
+		    .append(metric.getHelp()).append('\n');
+	    out.append("# TYPE ").append(name).append(' ')
+		    .append(metric.getType()).append('\n');
+	    metric.writePrometheus(name, out);
+	}
+    }
+
+    /**
+     * Run a task every so often on the registry's thread, until it is
+     * closed.
+     * 
+     * @param task
+     *            The task.
+     * @param millis
+     *            How often, in milliseconds.
+     */
+    void every(Runnable task, long millis)
+    {
+	executor.scheduleWithFixedDelay(task, millis, millis,
+		TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write the metrics file one last time, stop serving the metrics, and
+     * unregister the MBeans.
+     */
+    public synchronized void close()
+    {
+	executor.shutdownNow();
+	dump();
+	if (server != null)
+	{
+	    try
+	    {
+		server.close();
+	    }
+	    catch (IOException e)
+	    {
+		// It is closed either way.
+	    }
+	}
+	MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+	for (ObjectName name : registered)
+	{
+	    try
+	    {
+		mbeans.unregisterMBean(name);
+	    }
+	    catch (JMException e)
+	    {
+		// Already gone.
+	    }
+	}
+	registered.clear();
+    }
+}
+
+/**
+ * Shows one metric to JMX, with an attribute for each of its values.
+ * 
+ * @author Akshay
+ *
+ */
+class MetricBean implements DynamicMBean
+{
+    private final Metric metric;
+    private final MBeanInfo info;
+
+    MetricBean(Metric metric)
+    {
+	this.metric = metric;
+	String[] names = metric.getAttributeNames();
+	MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[names.length];
+	for (int i = 0; i < names.length; i++)
+	    attributes[i] = new MBeanAttributeInfo(names[i], "long",
+		    metric.getHelp(), true, false, false);
+	info = new MBeanInfo(Metric.class.getName(), metric.getHelp(),
+		attributes, null, null, null);
+    }
+
+    @Override
+    public Object getAttribute(String attribute)
+	    throws AttributeNotFoundException
+    {
+	for (String name : metric.getAttributeNames())
+	    if (name.equals(attribute))
+		return metric.getAttribute(attribute);
+	throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes)
+    {
+	AttributeList list = new AttributeList();
+	for (String name : attributes)
+	{
+	    try
+	    {
+		list.add(new Attribute(name, getAttribute(name)));
+	    }
+	    catch (AttributeNotFoundException e)
+	    {
+		// Missing attributes are left out of the list.
+	    }
+	}
+	return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute)
+	    throws AttributeNotFoundException
+    {
+	throw new AttributeNotFoundException(attribute.getName()
+		+ " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes)
+    {
+	return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params,
+	    String[] signature) throws ReflectionException
+    {
+	throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo()
+    {
+	return info;
+    }
+}
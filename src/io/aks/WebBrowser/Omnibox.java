@@ -0,0 +1,243 @@
+package io.aks.WebBrowser;
+import java.util.ArrayList;
+import java.util.concurrent.ScheduledFuture;
+
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.event.EventHandler;
+import javafx.geometry.Bounds;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.stage.Popup;
+
+/**
+ * Shows suggestions from the SuggestionEngine in a popup under a tab's
+ * address bar as the user types. Each key cancels the lookup for the key
+ * before it, and a lookup only updates the popup if no key came after it, so
+ * the popup changes at most once per key.
+ * 
+ * Up and down pick a suggestion, enter goes to it (or switches to the tab it
+ * is open in), and escape hides the popup. Enter with nothing picked is left
+ * to the AddressBarHandler.
+ * 
+ * @author Akshay
+ *
+ */
+public class Omnibox
+{
+    private final GUI gui;
+    private final TextField addressBar;
+    private final Popup popup = new Popup();
+    private final ListView<Suggestion> list = new ListView<Suggestion>();
+    private ScheduledFuture<?> pending;
+    /**
+     * Counts what has been typed, so a lookup can tell if it is stale.
+     */
+    private volatile int query = 0;
+    private boolean ignoring = false;
+
+    /**
+     * Attaches suggestions to an address bar.
+     * 
+     * @param gui
+     *            The tab.
+     * @param addressBar
+     *            Its address bar.
+     */
+    public Omnibox(GUI gui, final TextField addressBar)
+    {
+	this.gui = gui;
+	this.addressBar = addressBar;
+	list.setPrefHeight(SuggestionEngine.DEFAULT_SUGGESTIONS * 24 + 2);
+	list.setFocusTraversable(false);
+	popup.getContent().add(list);
+	popup.setAutoHide(true);
+	addressBar.textProperty().addListener(new ChangeListener<String>()
+	{
+	    @Override
+	    public void changed(ObservableValue<? extends String> observable,
+		    String oldValue, String newValue)
+	    {
+		if (!ignoring && addressBar.isFocused())
+		    typed(newValue);
+	    }
+	});
+	addressBar.focusedProperty().addListener(new ChangeListener<Boolean>()
+	{
+	    @Override
+	    public void changed(ObservableValue<? extends Boolean> observable,
+		    Boolean oldValue, Boolean newValue)
+	    {
+		if (!newValue)
+		    hide();
+	    }
+	});
+	addressBar.addEventFilter(KeyEvent.KEY_PRESSED,
+		new EventHandler<KeyEvent>()
+		{
+		    @Override
+		    public void handle(KeyEvent event)
+		    {
+			keyPressed(event);
+		    }
+		});
+	list.setOnMouseClicked(new EventHandler<MouseEvent>()
+	{
+	    @Override
+	    public void handle(MouseEvent event)
+	    {
+		Suggestion picked = list.getSelectionModel().getSelectedItem();
+		if (picked != null)
+		    open(picked);
+	    }
+	});
+    }
+
+    /**
+     * Look up suggestions for what was typed, after the debounce delay, and
+     * forget the lookup for the key before.
+     * 
+     * @param text
+     *            The address bar's text.
+     */
+    private void typed(final String text)
+    {
+	final int current = ++query;
+	if (pending != null)
+	    pending.cancel(false);
+	pending = null;
+	if (text.trim().isEmpty())
+	{
+	    hide();
+	    return;
+	}
+	final Main main = gui.getMain();
+	final ArrayList<Suggestion> tabs = SuggestionEngine.openTabs(main, gui);
+	pending = main.getSuggestionEngine().schedule(new Runnable()
+	{
+	    @Override
+	    public void run()
+	    {
+		if (current != query)
+		    return;
+		final ArrayList<Suggestion> found = main.getSuggestionEngine()
+			.suggest(text, tabs, SuggestionEngine.DEFAULT_SUGGESTIONS);
+		if (current != query)
+		    return;
+		Platform.runLater(new Runnable()
+		{
+		    @Override
+		    public void run()
+		    {
+			if (current == query)
+			    show(found);
+		    }
+		});
+	    }
+	});
+    }
+
+    /**
+     * Show suggestions under the address bar, or hide the popup if there are
+     * none.
+     */
+    private void show(ArrayList<Suggestion> found)
+    {
+	if (found.isEmpty() || gui.isDisposed() || addressBar.getScene() == null
+		|| !addressBar.isFocused())
+	{
+	    hide();
+	    return;
+	}
+	list.getItems().setAll(found);
+	list.getSelectionModel().clearSelection();
+	if (popup.isShowing())
+	    return;
+	Bounds bounds = addressBar.localToScreen(addressBar
+		.getBoundsInLocal());
+	list.setPrefWidth(bounds.getWidth());
+	popup.show(addressBar, bounds.getMinX(), bounds.getMaxY());
+    }
+
+    private void keyPressed(KeyEvent event)
+    {
+	if (!popup.isShowing())
+	    return;
+	int selected = list.getSelectionModel().getSelectedIndex();
+	switch (event.getCode())
+	{
+	case DOWN:
+	    list.getSelectionModel().select(
+		    Math.min(selected + 1, list.getItems().size() - 1));
+	    break;
+	case UP:
+	    if (selected <= 0)
+		list.getSelectionModel().clearSelection();
+	    else
+		list.getSelectionModel().select(selected - 1);
+	    break;
+	case ESCAPE:
+	    hide();
+	    break;
+	case ENTER:
+	    Suggestion picked = list.getSelectionModel().getSelectedItem();
+	    if (picked == null)
+	    {
+		hide();
+		return;
+	    }
+	    open(picked);
+	    break;
+	default:
+	    return;
+	}
+	event.consume();
+    }
+
+    /**
+     * Go to a suggestion, switching to the tab it is open in if there is one.
+     */
+    private void open(Suggestion picked)
+    {
+	hide();
+	if (picked.getTab() != null
+		&& gui.getMain().getTabs().getTabs().contains(picked.getTab()))
+	    gui.getMain().getTabs().getSelectionModel().select(picked.getTab());
+	else
+	    gui.loadURL(picked.getURL());
+    }
+
+    /**
+     * Set the address bar's text without suggesting anything for it.
+     * 
+     * @param text
+     *            The text.
+     */
+    public void setText(String text)
+    {
+	ignoring = true;
+	try
+	{
+	    addressBar.setText(text);
+	}
+	finally
+	{
+	    ignoring = false;
+	}
+    }
+
+    /**
+     * Hide the popup and forget any lookup that hasn't finished.
+     */
+    public void hide()
+    {
+	query++;
+	if (pending != null)
+	    pending.cancel(false);
+	pending = null;
+	popup.hide();
+    }
+}
@@ -0,0 +1,126 @@
+package io.aks.WebBrowser;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * Collects the load times of every tab into one latency histogram per host, so
+ * slow or failing sites can be found. Each histogram has a bucket per power of
+ * 2 milliseconds, so it stays the same size however many pages are loaded.
+ * Main.showLoadTimes() shows them in a tab.
+ * 
+ * @author Akshay
+ *
+ */
+public class PageLoadStats
+{
+    private final HashMap<String, LatencyHistogram> hosts = new HashMap<String, LatencyHistogram>();
+
+    /**
+     * Add a finished navigation to its host's histogram.
+     * 
+     * @param timing
+     *            The navigation.
+     */
+    public synchronized void record(PageLoadTiming timing)
+    {
+	if (!timing.isFinished())
+	    return;
+	String host = hostOf(timing.getURL());
+	LatencyHistogram histogram = hosts.get(host);
+	if (histogram == null)
+	{
+	    histogram = new LatencyHistogram();
+	    hosts.put(host, histogram);
+	}
+	histogram.record(timing.getLoadMillis(), timing.isFailed());
+    }
+
+    /**
+     * @return The hosts that pages were loaded from, sorted.
+     */
+    public synchronized ArrayList<String> getHosts()
+    {
+	ArrayList<String> names = new ArrayList<String>(hosts.keySet());
+	Collections.sort(names);
+	return names;
+    }
+
+    /**
+     * @param host
+     *            A host.
+     * @return A copy of its histogram, or null if nothing was loaded from it.
+     */
+    public synchronized LatencyHistogram getHistogram(String host)
+    {
+	LatencyHistogram histogram = hosts.get(host);
+	return histogram == null ? null : histogram.copy();
+    }
+
+    /**
+     * Make a page with a table of the hosts, sorted, with each one's load
+     * count, failures, median, 95th percentile, mean, and slowest load times,
+     * and how many loads were in each bucket of its histogram.
+     * 
+     * @return The HTML.
+     */
+    public synchronized String toHTML()
+    {
+	StringBuilder html = new StringBuilder(
+		"<html><head><title>Page Load Times</title></head><body>");
+	html.append("<h2>Page Load Times</h2><p>Loads of every tab since the ")
+		.append("browser started, by host. Times are in milliseconds; ")
+		.append("a bucket counts the loads up to its time.</p>")
+		.append("<table border=\"1\" cellpadding=\"3\"><tr><th>Host</th>")
+		.append("<th>Loads</th><th>Failed</th><th>Median</th>")
+		.append("<th>95%</th><th>Mean</th><th>Max</th>")
+		.append("<th>Buckets</th></tr>");
+	for (String host : getHosts())
+	{
+	    LatencyHistogram histogram = hosts.get(host);
+	    html.append("<tr><td>").append(escape(host)).append("</td><td>")
+		    .append(histogram.getCount()).append("</td><td>")
+		    .append(histogram.getFailures()).append("</td><td>")
+		    .append(histogram.percentile(0.5)).append("</td><td>")
+		    .append(histogram.percentile(0.95)).append("</td><td>")
+		    .append(histogram.getMeanMillis()).append("</td><td>")
+		    .append(histogram.getMaxMillis()).append("</td><td>");
+	    for (int i = 0; i < LatencyHistogram.BUCKETS; i++)
+	    {
+		long count = histogram.getCount(i);
+		if (count == 0)
+		    continue;
+		if (i == LatencyHistogram.BUCKETS - 1)
+		    html.append("more: ");
+		else
+		    html.append(LatencyHistogram.upperBound(i)).append(": ");
+		html.append(count).append("<br>");
+	    }
+	    html.append("</td></tr>");
+	}
+	return html.append("</table></body></html>").toString();
+    }
+
+    private static String escape(String text)
+    {
+	return text.replace("&", "&amp;").replace("<", "&lt;")
+		.replace(">", "&gt;");
+    }
+
+    /**
+     * @param url
+     *            A URL.
+     * @return Its host, the way URLNormalizer finds it, or its scheme if it
+     *         doesn't have one.
+     */
+    static String hostOf(String url)
+    {
+	if (url == null)
+	    return "";
+	String host = URLNormalizer.hostOf(url);
+	if (host != null)
+	    return host;
+	int colon = url.indexOf(':');
+	return colon < 0 ? "" : url.substring(0, colon).toLowerCase();
+    }
+}
@@ -0,0 +1,123 @@
+package io.aks.WebBrowser;
+/**
+ * How long one navigation took. The times come from System.nanoTime(), which
+ * only moves forward, so changing the clock can't make a load look faster or
+ * slower.
+ * 
+ * @author Akshay
+ *
+ */
+public class PageLoadTiming
+{
+    private final long scheduled;
+    /**
+     * System.nanoTime() can be negative, so whether the times were set is kept
+     * separately.
+     */
+    private long running;
+    private long finished;
+    private boolean hasRun = false;
+    private boolean hasFinished = false;
+    private String url;
+    private String failure;
+
+    /**
+     * Starts timing a navigation.
+     * 
+     * @param scheduled
+     *            When the load was scheduled, from System.nanoTime().
+     */
+    public PageLoadTiming(long scheduled)
+    {
+	this.scheduled = scheduled;
+    }
+
+    /**
+     * Note that the load started running. Only the first call counts.
+     * 
+     * @param now
+     *            The time, from System.nanoTime().
+     */
+    public void running(long now)
+    {
+	if (hasRun)
+	    return;
+	running = now;
+	hasRun = true;
+    }
+
+    /**
+     * Note that the load finished.
+     * 
+     * @param now
+     *            The time, from System.nanoTime().
+     * @param url
+     *            The page that loaded, or failed to.
+     * @param failure
+     *            Why the load failed, or null if it succeeded.
+     */
+    public void finish(long now, String url, String failure)
+    {
+	finished = now;
+	hasFinished = true;
+	this.url = url;
+	this.failure = failure;
+    }
+
+    /**
+     * @return The milliseconds from scheduling until the first state change,
+     *         or -1 if there wasn't one.
+     */
+    public long getFirstChangeMillis()
+    {
+	return hasRun ? (running - scheduled) / 1000000 : -1;
+    }
+
+    /**
+     * @return The milliseconds from scheduling until the load finished, or -1
+     *         if it hasn't.
+     */
+    public long getLoadMillis()
+    {
+	return hasFinished ? (finished - scheduled) / 1000000 : -1;
+    }
+
+    public boolean isFinished()
+    {
+	return hasFinished;
+    }
+
+    public boolean isFailed()
+    {
+	return failure != null;
+    }
+
+    /**
+     * @return Why the load failed, or null.
+     */
+    public String getFailure()
+    {
+	return failure;
+    }
+
+    public String getURL()
+    {
+	return url;
+    }
+
+    /**
+     * A short description, like "Loaded in 532 ms (first response 120 ms)".
+     * The first response is left out if there wasn't one.
+     */
+    @Override
+    public String toString()
+    {
+	if (!isFinished())
+	    return "Loading";
+	String text = (isFailed() ? "Failed after " : "Loaded in ")
+		+ getLoadMillis() + " ms";
+	if (hasRun)
+	    text += " (first response " + getFirstChangeMillis() + " ms)";
+	return isFailed() ? text + ": " + failure : text;
+    }
+}
@@ -0,0 +1,298 @@
+package io.aks.WebBrowser;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The suffixes under which anyone can register a domain, such as "com" or
+ * "co.uk", from a list in the format of the Public Suffix List. The rules are
+ * kept in a trie by label, from the last label of a host to the first, so a
+ * host is looked up one label at a time without splitting it or making any
+ * Strings.
+ * 
+ * @author Akshay
+ *
+ */
+public class PublicSuffixList
+{
+    /**
+     * The list that comes with the browser, next to this class.
+     */
+    public static final String DEFAULT_LIST = "public_suffix_list.dat";
+    private static final String COMMENT = "//";
+    private static final String WILDCARD = "*";
+    private static final String EXCEPTION = "!";
+    private static PublicSuffixList defaultList;
+
+    private final SuffixNode root = new SuffixNode();
+    private int rules = 0;
+
+    /**
+     * Creates an empty list.
+     */
+    public PublicSuffixList()
+    {
+    }
+
+    /**
+     * Reads a list.
+     * 
+     * @param in
+     *            The list, in UTF-8. It is closed afterwards.
+     * @throws IOException
+     *             If it can't be read.
+     */
+    public PublicSuffixList(InputStream in) throws IOException
+    {
+	BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+		Charset.forName("UTF-8")));
+	try
+	{
+	    String line;
+	    while ((line = reader.readLine()) != null)
+		addRule(line);
+	}
+	finally
+	{
+	    reader.close();
+	}
+    }
+
+    /**
+     * @return The list that comes with the browser. It is read the first
+     *         time, and if it can't be, every last label counts as a suffix.
+     */
+    public static synchronized PublicSuffixList getDefault()
+    {
+	if (defaultList != null)
+	    return defaultList;
+	InputStream in = PublicSuffixList.class
+		.getResourceAsStream(DEFAULT_LIST);
+	try
+	{
+	    if (in == null)
+		throw new IOException(DEFAULT_LIST + " is missing");
+	    defaultList = new PublicSuffixList(in);
+	}
+	catch (IOException e)
+	{
+	    System.err.println("Couldn't read the public suffix list: "
+		    + e.getMessage());
+	    defaultList = new PublicSuffixList();
+	}
+	return defaultList;
+    }
+
+    /**
+     * Add a rule from a line of a list. Comments and blank lines are
+     * skipped, and anything after the rule on its line is ignored.
+     * 
+     * @param line
+     *            The line.
+     */
+    public void addRule(String line)
+    {
+	String rule = line.trim();
+	if (rule.isEmpty() || rule.startsWith(COMMENT))
+	    return;
+	for (int i = 0; i < rule.length(); i++)
+	{
+	    if (Character.isWhitespace(rule.charAt(i)))
+	    {
+		rule = rule.substring(0, i);
+		break;
+	    }
+	}
+	rule = rule.toLowerCase(Locale.ROOT);
+	boolean exception = rule.startsWith(EXCEPTION);
+	if (exception)
+	    rule = rule.substring(EXCEPTION.length());
+	SuffixNode node = root;
+	int end = rule.length();
+	while (end > 0)
+	{
+	    int start = rule.lastIndexOf('.', end - 1) + 1;
+	    String label = rule.substring(start, end);
+	    if (label.equals(WILDCARD))
+	    {
+		// Only a wildcard on the left of a rule is supported.
+		node.wildcard = true;
+		rules++;
+		return;
+	    }
+	    node = node.child(label);
+	    end = start - 1;
+	}
+	if (exception)
+	    node.exception = true;
+	else
+	    node.rule = true;
+	rules++;
+    }
+
+    /**
+     * Count the labels of a host's public suffix, the way the Public Suffix
+     * List says to: an exception rule wins, then the rule with the most
+     * labels.
+     * 
+     * @param host
+     *            The text the host is in.
+     * @param start
+     *            Where the host starts.
+     * @param end
+     *            Where it ends.
+     * @return How many of its last labels are the public suffix, or 0 if the
+     *         host is empty. If no rule matches it, such as for an intranet
+     *         name like "wiki.corp", the last label is, as the list's
+     *         implicit "*" rule says.
+     */
+    public int suffixLabels(CharSequence host, int start, int end)
+    {
+	if (end <= start)
+	    return 0;
+	if (rules == 0)
+	    return 1;
+	SuffixNode node = root;
+	int best = 0;
+	int labels = 0;
+	while (end > start && node != null)
+	{
+	    int dot = end - 1;
+	    while (dot >= start && host.charAt(dot) != '.')
+		dot--;
+	    SuffixNode child = node.find(host, dot + 1, end);
+	    if (child != null && child.exception)
+		return labels;
+	    labels++;
+	    if (node.wildcard || (child != null && child.rule))
+		best = labels;
+	    node = child;
+	    end = dot;
+	}
+	return best > 0 ? best : 1;
+    }
+
+    /**
+     * @param host
+     *            A host name.
+     * @return True if it is a domain that can be registered, or is under
+     *         one: it has a label before its public suffix.
+     */
+    public boolean isUnderPublicSuffix(String host)
+    {
+	int suffix = suffixLabels(host, 0, host.length());
+	if (suffix == 0)
+	    return false;
+	int labels = 1;
+	for (int i = 0; i < host.length(); i++)
+	    if (host.charAt(i) == '.')
+		labels++;
+	return labels > suffix;
+    }
+
+    /**
+     * @return How many rules the list has.
+     */
+    public int size()
+    {
+	return rules;
+    }
+}
+
+/**
+ * One label of the rules of a PublicSuffixList, with the labels that can come
+ * before it sorted so they can be found by binary search.
+ * 
+ * @author Akshay
+ *
+ */
+class SuffixNode
+{
+    private static final String[] NO_LABELS = new String[0];
+    private static final SuffixNode[] NO_CHILDREN = new SuffixNode[0];
+    private String[] labels = NO_LABELS;
+    private SuffixNode[] children = NO_CHILDREN;
+    private int count = 0;
+    /**
+     * True if the labels up to here are a rule.
+     */
+    boolean rule;
+    /**
+     * True if any label before this one makes a rule.
+     */
+    boolean wildcard;
+    /**
+     * True if the labels up to here are an exception to a wildcard.
+     */
+    boolean exception;
+
+    /**
+     * @return The child for a label, which is added if it isn't there.
+     */
+    SuffixNode child(String label)
+    {
+	int at = search(label, 0, label.length());
+	if (at >= 0)
+	    return children[at];
+	at = -at - 1;
+	if (count == labels.length)
+	{
+	    labels = Arrays.copyOf(labels, Math.max(count * 2, 2));
+	    children = Arrays.copyOf(children, labels.length);
+	}
+	System.arraycopy(labels, at, labels, at + 1, count - at);
+	System.arraycopy(children, at, children, at + 1, count - at);
+	labels[at] = label;
+	children[at] = new SuffixNode();
+	count++;
+	return children[at];
+    }
+
+    /**
+     * @return The child for the label between start and end of the text,
+     *         ignoring case, or null.
+     */
+    SuffixNode find(CharSequence text, int start, int end)
+    {
+	int at = search(text, start, end);
+	return at >= 0 ? children[at] : null;
+    }
+
+    /**
+     * @return Where the label is, or -(where it would go) - 1.
+     */
+    private int search(CharSequence text, int start, int end)
+    {
+	int low = 0;
+	int high = count - 1;
+	while (low <= high)
+	{
+	    int middle = (low + high) >>> 1;
+	    int compared = compare(labels[middle], text, start, end);
+	    if (compared < 0)
+		low = middle + 1;
+	    else if (compared > 0)
+		high = middle - 1;
+	    else
+		return middle;
+	}
+	return -(low + 1);
+    }
+
+    private static int compare(String label, CharSequence text, int start,
+	    int end)
+    {
+	int length = Math.min(label.length(), end - start);
+	for (int i = 0; i < length; i++)
+	{
+	    char c = Character.toLowerCase(text.charAt(start + i));
+	    if (label.charAt(i) != c)
+		return label.charAt(i) - c;
+	}
+	return label.length() - (end - start);
+    }
+}
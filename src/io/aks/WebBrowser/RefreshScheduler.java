@@ -0,0 +1,102 @@
+package io.aks.WebBrowser;
+import javafx.animation.AnimationTimer;
+
+/**
+ * Collects requests to refresh parts of a GUI and applies them at most once
+ * per JavaFX pulse. A navigation asks for a refresh several times (title
+ * change, location change, load finished), and pages that keep rewriting
+ * their title ask many more times, so the requests only mark things stale and
+ * the actual work happens on the next pulse.
+ * 
+ * @author Akshay
+ *
+ */
+class RefreshScheduler extends AnimationTimer
+{
+    public static final int HISTORY = 1;
+    public static final int ADDRESS_BAR = 2;
+    public static final int NAVIGATION_BUTTONS = 4;
+    private final GUI gui;
+    private int stale = 0;
+    private long requests = 0;
+    private long coalesced = 0;
+    private long refreshes = 0;
+
+    /**
+     * Creates a scheduler for a GUI.
+     * 
+     * @param gui
+     *            The GUI to refresh.
+     */
+    public RefreshScheduler(GUI gui)
+    {
+	this.gui = gui;
+    }
+
+    /**
+     * Marks parts of the GUI as stale. They will be refreshed on the next
+     * pulse.
+     * 
+     * @param parts
+     *            Any combination of HISTORY, ADDRESS_BAR, and
+     *            NAVIGATION_BUTTONS.
+     */
+    public void request(int parts)
+    {
+	requests++;
+	if (stale != 0)
+	    coalesced++;
+	else
+	    start();
+	stale |= parts;
+    }
+
+    /**
+     * Refreshes everything that is stale right away, instead of waiting for
+     * the next pulse.
+     */
+    public void flush()
+    {
+	if (stale == 0)
+	    return;
+	int parts = stale;
+	stale = 0;
+	stop();
+	refreshes++;
+	gui.refresh(parts);
+    }
+
+    /**
+     * Called once per pulse while something is stale.
+     */
+    @Override
+    public void handle(long now)
+    {
+	flush();
+    }
+
+    /**
+     * @return How many refresh requests were made.
+     */
+    public long getRequestCount()
+    {
+	return requests;
+    }
+
+    /**
+     * @return How many refresh requests were folded into a refresh that was
+     *         already scheduled.
+     */
+    public long getCoalescedCount()
+    {
+	return coalesced;
+    }
+
+    /**
+     * @return How many refreshes were actually applied.
+     */
+    public long getRefreshCount()
+    {
+	return refreshes;
+    }
+}
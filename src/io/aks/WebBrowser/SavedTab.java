@@ -0,0 +1,39 @@
+package io.aks.WebBrowser;
+import java.util.ArrayList;
+
+/**
+ * A tab that was open when the journal was last closed, and the records that
+ * rebuild its History.
+ * 
+ * @author Akshay
+ *
+ */
+class SavedTab
+{
+    private final int id;
+    private final ArrayList<JournalRecord> records;
+
+    public SavedTab(int id, ArrayList<JournalRecord> records)
+    {
+	this.id = id;
+	this.records = records;
+    }
+
+    public int getId()
+    {
+	return id;
+    }
+
+    /**
+     * @return The URL of the tab's root.
+     */
+    public String getRootURL()
+    {
+	return records.get(0).getText();
+    }
+
+    public ArrayList<JournalRecord> getRecords()
+    {
+	return records;
+    }
+}
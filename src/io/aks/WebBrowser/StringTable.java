@@ -0,0 +1,96 @@
+package io.aks.WebBrowser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A shared table of interned strings. Each distinct string is stored once and
+ * referred to by an int, and is dropped once nothing refers to it any more.
+ * Used by CompactHistory so that URLs and titles that show up over and over
+ * (and titles that are just the URL) only cost one String.
+ * 
+ * @author Akshay
+ *
+ */
+class StringTable
+{
+    public static final int NONE = -1;
+    private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+    private final ArrayList<String> strings = new ArrayList<String>();
+    private int[] references = new int[64];
+    private int[] freeIds = new int[16];
+    private int freeCount = 0;
+
+    /**
+     * Adds a reference to a string.
+     * 
+     * @param string
+     *            The string, which may be null.
+     * @return The string's id, or NONE for null.
+     */
+    public synchronized int intern(String string)
+    {
+	if (string == null)
+	    return NONE;
+	Integer id = ids.get(string);
+	if (id != null)
+	{
+	    references[id]++;
+	    return id;
+	}
+	int newId;
+	if (freeCount > 0)
+	{
+	    newId = freeIds[--freeCount];
+	    strings.set(newId, string);
+	}
+	else
+	{
+	    newId = strings.size();
+	    strings.add(string);
+	    if (newId == references.length)
+		references = Arrays.copyOf(references, newId * 2);
+	}
+	references[newId] = 1;
+	ids.put(string, newId);
+	return newId;
+    }
+
+    /**
+     * Removes a reference to a string. The string is dropped when its last
+     * reference is removed.
+     * 
+     * @param id
+     *            The string's id.
+     */
+    public synchronized void release(int id)
+    {
+	if (id == NONE || --references[id] > 0)
+	    return;
+	ids.remove(strings.get(id));
+	strings.set(id, null);
+	if (freeCount == freeIds.length)
+	    freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+	freeIds[freeCount++] = id;
+    }
+
+    /**
+     * @param id
+     *            A string's id.
+     * @return The string, or null for NONE.
+     */
+    public synchronized String get(int id)
+    {
+	if (id == NONE)
+	    return null;
+	return strings.get(id);
+    }
+
+    /**
+     * @return How many distinct strings are in the table.
+     */
+    public synchronized int size()
+    {
+	return ids.size();
+    }
+}
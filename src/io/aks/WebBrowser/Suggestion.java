@@ -0,0 +1,102 @@
+package io.aks.WebBrowser;
+import javafx.scene.control.Tab;
+
+/**
+ * A page suggested for what was typed in an address bar, and where it was
+ * found.
+ * 
+ * @author Akshay
+ *
+ */
+class Suggestion
+{
+    public static final int HISTORY = 1;
+    public static final int BOOKMARK = 2;
+    public static final int OPEN_TAB = 4;
+    private static final String SEPARATOR = " – ";
+    private final String url;
+    private String title;
+    private double score;
+    private int sources;
+    private Tab tab;
+
+    /**
+     * @param url
+     *            The page's URL.
+     * @param title
+     *            Its title.
+     * @param score
+     *            How well it matched.
+     * @param source
+     *            HISTORY, BOOKMARK, or OPEN_TAB.
+     * @param tab
+     *            The tab it is open in, or null.
+     */
+    Suggestion(String url, String title, double score, int source, Tab tab)
+    {
+	this.url = url;
+	this.title = title == null ? url : title;
+	this.score = score;
+	this.sources = source;
+	this.tab = tab;
+    }
+
+    /**
+     * Take on what another suggestion for the same page knows: the better
+     * score, a bookmark's title, and the tab it is open in.
+     * 
+     * @param other
+     *            The other suggestion.
+     */
+    void merge(Suggestion other)
+    {
+	score = Math.max(score, other.score);
+	if ((other.sources & BOOKMARK) != 0)
+	    title = other.title;
+	if (other.tab != null)
+	    tab = other.tab;
+	sources |= other.sources;
+    }
+
+    public String getURL()
+    {
+	return url;
+    }
+
+    public String getTitle()
+    {
+	return title;
+    }
+
+    public double getScore()
+    {
+	return score;
+    }
+
+    /**
+     * @param source
+     *            HISTORY, BOOKMARK, or OPEN_TAB.
+     * @return True if it was found there.
+     */
+    public boolean isFrom(int source)
+    {
+	return (sources & source) != 0;
+    }
+
+    /**
+     * @return The tab it is open in, or null. Only use it on the JavaFX
+     *         thread.
+     */
+    public Tab getTab()
+    {
+	return tab;
+    }
+
+    @Override
+    public String toString()
+    {
+	String marks = (isFrom(BOOKMARK) ? "★ " : "")
+		+ (isFrom(OPEN_TAB) ? "▣ " : "");
+	return marks + HistoryNode.abbreviate(title) + SEPARATOR + url;
+    }
+}
@@ -0,0 +1,196 @@
+package io.aks.WebBrowser;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.scene.control.Tab;
+
+/**
+ * Suggests pages for what is typed in an address bar, from the history index,
+ * the bookmarks, and the open tabs, ranked by frecency so the pages the user
+ * goes to all the time come first. A bookmark ranks higher than the same page
+ * in history.
+ * 
+ * Suggestions are worked out on a background thread, a short time after the
+ * last key, so typing quickly only looks for what was finally typed. The
+ * bookmarks are copied whenever they change, so the background thread never
+ * touches the ObservableList.
+ * 
+ * @author Akshay
+ *
+ */
+public class SuggestionEngine
+{
+    public static final int DEFAULT_SUGGESTIONS = 8;
+    /**
+     * How long to wait after a key before looking, in milliseconds.
+     */
+    public static final long DEBOUNCE_MILLIS = 50;
+    private static final double BOOKMARK_BOOST = 2;
+
+    private final HistoryIndex index;
+    private final ScheduledThreadPoolExecutor executor;
+    private volatile BookmarkItem[] bookmarks;
+
+    /**
+     * Creates the engine and its thread.
+     * 
+     * @param index
+     *            The history index to search.
+     * @param bookmarkList
+     *            The bookmarks, which are only read on the JavaFX thread.
+     */
+    public SuggestionEngine(HistoryIndex index,
+	    final ObservableList<BookmarkItem> bookmarkList)
+    {
+	this.index = index;
+	bookmarks = bookmarkList.toArray(new BookmarkItem[bookmarkList.size()]);
+	bookmarkList.addListener(new ListChangeListener<BookmarkItem>()
+	{
+	    @Override
+	    public void onChanged(Change<? extends BookmarkItem> change)
+	    {
+		bookmarks = bookmarkList.toArray(new BookmarkItem[bookmarkList
+			.size()]);
+	    }
+	});
+	executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+	{
+	    @Override
+	    public Thread newThread(Runnable r)
+	    {
+		Thread thread = new Thread(r, "Suggestions");
+		thread.setDaemon(true);
+		return thread;
+	    }
+	});
+	executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Run a lookup on the engine's thread after the debounce delay.
+     * 
+     * @param lookup
+     *            The lookup, which should call suggest().
+     * @return Its future, to cancel it if another key comes first, or null if
+     *         the engine was shut down.
+     */
+    public ScheduledFuture<?> schedule(Runnable lookup)
+    {
+	if (executor.isShutdown())
+	    return null;
+	return executor.schedule(lookup, DEBOUNCE_MILLIS,
+		TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Find the best pages for what was typed. Safe to call from any thread.
+     * 
+     * @param text
+     *            What was typed.
+     * @param tabs
+     *            The open tabs, as from openTabs().
+     * @param limit
+     *            The most suggestions to return.
+     * @return The suggestions, best first.
+     */
+    public ArrayList<Suggestion> suggest(String text,
+	    ArrayList<Suggestion> tabs, int limit)
+    {
+	ArrayList<Suggestion> results = new ArrayList<Suggestion>();
+	ArrayList<String> terms = new ArrayList<String>();
+	HistoryIndex.tokenize(text, terms);
+	if (terms.isEmpty())
+	    return results;
+	HashMap<String, Suggestion> byURL = new HashMap<String, Suggestion>();
+	for (HistoryMatch match : index.search(text, limit))
+	    add(byURL, new Suggestion(match.getURL(), match.getTitle(),
+		    match.getScore(), Suggestion.HISTORY, null));
+	for (BookmarkItem bookmark : bookmarks)
+	{
+	    double boost = HistoryIndex.matchBoost(bookmark.getURL(),
+		    bookmark.getTitle(), terms);
+	    if (boost >= 0)
+		add(byURL, new Suggestion(bookmark.getURL(), bookmark.getTitle(),
+			index.getFrecency(bookmark.getURL()) * boost
+				* BOOKMARK_BOOST, Suggestion.BOOKMARK, null));
+	}
+	for (Suggestion tab : tabs)
+	{
+	    double boost = HistoryIndex.matchBoost(tab.getURL(),
+		    tab.getTitle(), terms);
+	    if (boost >= 0)
+		add(byURL, new Suggestion(tab.getURL(), tab.getTitle(),
+			index.getFrecency(tab.getURL()) * boost,
+			Suggestion.OPEN_TAB, tab.getTab()));
+	}
+	results.addAll(byURL.values());
+	Collections.sort(results, new Comparator<Suggestion>()
+	{
+	    @Override
+	    public int compare(Suggestion a, Suggestion b)
+	    {
+		return Double.compare(b.getScore(), a.getScore());
+	    }
+	});
+	while (results.size() > limit)
+	    results.remove(results.size() - 1);
+	return results;
+    }
+
+    /**
+     * Add a suggestion, or merge it with the one for the same page, by
+     * canonical URL.
+     */
+    private static void add(HashMap<String, Suggestion> byURL,
+	    Suggestion suggestion)
+    {
+	String key = URLNormalizer.getDefault().canonicalize(
+		suggestion.getURL());
+	Suggestion old = byURL.get(key);
+	if (old == null)
+	    byURL.put(key, suggestion);
+	else
+	    old.merge(suggestion);
+    }
+
+    /**
+     * List the pages the open tabs are on. Must be called on the JavaFX
+     * thread.
+     * 
+     * @param main
+     *            The Main class.
+     * @param except
+     *            A tab to leave out, such as the one being typed in.
+     * @return A suggestion for each tab, to pass to suggest().
+     */
+    public static ArrayList<Suggestion> openTabs(Main main, GUI except)
+    {
+	ArrayList<Suggestion> tabs = new ArrayList<Suggestion>();
+	for (Tab tab : main.getTabs().getTabs())
+	{
+	    GUI gui = (GUI) tab.getContent();
+	    if (gui == null || gui == except || gui.isDisposed())
+		continue;
+	    HistoryNode current = gui.getHistory().getCurrent();
+	    tabs.add(new Suggestion(current.getUrl(), current.getTitle(), 0,
+		    Suggestion.OPEN_TAB, tab));
+	}
+	return tabs;
+    }
+
+    /**
+     * Stop the engine's thread.
+     */
+    public void shutdown()
+    {
+	executor.shutdownNow();
+    }
+}
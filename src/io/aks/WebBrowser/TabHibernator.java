@@ -0,0 +1,270 @@
+package io.aks.WebBrowser;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ListChangeListener;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.util.Duration;
+
+/**
+ * Keeps only the most recently selected tabs loaded. Every other tab is
+ * hibernated: its WebView is dropped, but its History, URL, title, and a small
+ * snapshot of the page are kept, and it is loaded again when it is selected.
+ * 
+ * A tab is also hibernated when it hasn't been selected for a while, and when
+ * the tenured part of the heap is still nearly full after it was garbage
+ * collected, every tab but the selected one is hibernated. Tabs that are still
+ * loading a page are only hibernated when the heap is nearly full. How often
+ * tabs are hibernated and woken is counted in the TABS_ metrics.
+ * 
+ * @author Akshay
+ *
+ */
+public class TabHibernator
+{
+    public static final int DEFAULT_LIVE_TABS = 5;
+    public static final int DEFAULT_IDLE_SECONDS = 30 * 60;
+    public static final int DEFAULT_HEAP_PERCENT = 80;
+    private static final Duration CHECK_INTERVAL = Duration.seconds(15);
+
+    private final TabPane tabs;
+    private final int liveTabs;
+    private final long idleMillis;
+    private final int heapPercent;
+    /**
+     * Every open tab, most recently selected first.
+     */
+    private final ArrayList<GUI> recent = new ArrayList<GUI>();
+    private final HashMap<GUI, Long> lastSelected = new HashMap<GUI, Long>();
+    private final Timeline timer;
+    /**
+     * The heap pool that long-lived objects end up in, or null if the garbage
+     * collector doesn't have one.
+     */
+    private final MemoryPoolMXBean tenured = findTenuredPool();
+    private final MetricCounter hibernations;
+    private final MetricCounter wakes;
+    private final MetricCounter heapTriggers;
+
+    /**
+     * Starts managing the tabs of a TabPane, including tabs added later.
+     * 
+     * @param metrics
+     *            The registry with the TABS_ metrics.
+     * @param tabs
+     *            The TabPane.
+     * @param liveTabs
+     *            How many tabs to keep loaded.
+     * @param idleSeconds
+     *            How long a tab can go without being selected before it is
+     *            hibernated, or 0 to never hibernate idle tabs.
+     * @param heapPercent
+     *            How full the tenured heap can be after a garbage collection,
+     *            in percent, before every tab but the selected one is
+     *            hibernated.
+     */
+    public TabHibernator(MetricsRegistry metrics, TabPane tabs, int liveTabs,
+	    int idleSeconds, int heapPercent)
+    {
+	hibernations = metrics.getCounter(MetricsRegistry.TABS_HIBERNATIONS);
+	wakes = metrics.getCounter(MetricsRegistry.TABS_WAKES);
+	heapTriggers = metrics.getCounter(MetricsRegistry.TABS_HEAP_TRIGGERS);
+	this.tabs = tabs;
+	this.liveTabs = Math.max(1, liveTabs);
+	this.idleMillis = idleSeconds * 1000L;
+	this.heapPercent = heapPercent;
+
+	for (Tab tab : tabs.getTabs())
+	    touch((GUI) tab.getContent());
+	tabs.getTabs().addListener(new ListChangeListener<Tab>()
+	{
+	    @Override
+	    public void onChanged(Change<? extends Tab> change)
+	    {
+		while (change.next())
+		{
+		    for (Tab closed : change.getRemoved())
+		    {
+			recent.remove(closed.getContent());
+			lastSelected.remove(closed.getContent());
+		    }
+		    for (Tab added : change.getAddedSubList())
+			touch((GUI) added.getContent());
+		}
+		enforce();
+	    }
+	});
+	tabs.getSelectionModel().selectedItemProperty()
+		.addListener(new ChangeListener<Tab>()
+		{
+		    @Override
+		    public void changed(ObservableValue<? extends Tab> value,
+			    Tab oldTab, Tab newTab)
+		    {
+			if (oldTab != null && oldTab.getContent() != null)
+			{
+			    GUI old = (GUI) oldTab.getContent();
+			    old.takeSnapshot();
+			    lastSelected.put(old, System.currentTimeMillis());
+			}
+			if (newTab != null && newTab.getContent() != null)
+			{
+			    GUI gui = (GUI) newTab.getContent();
+			    if (gui.isHibernated())
+			    {
+				gui.wake();
+				wakes.increment();
+			    }
+			    touch(gui);
+			}
+			enforce();
+		    }
+		});
+
+	timer = new Timeline(new KeyFrame(CHECK_INTERVAL,
+		new EventHandler<ActionEvent>()
+		{
+		    @Override
+		    public void handle(ActionEvent e)
+		    {
+			check();
+		    }
+		}));
+	timer.setCycleCount(Animation.INDEFINITE);
+	timer.play();
+    }
+
+    /**
+     * Hibernate the tabs that weren't selected recently enough to be among
+     * the live ones.
+     */
+    public void enforce()
+    {
+	for (int i = liveTabs; i < recent.size(); i++)
+	    hibernate(recent.get(i), false);
+    }
+
+    /**
+     * Hibernate idle tabs, and every tab but the selected one if the heap was
+     * nearly full after the last garbage collection. Called every few seconds.
+     */
+    public void check()
+    {
+	if (isHeapNearlyFull())
+	{
+	    boolean hibernated = false;
+	    for (GUI gui : recent)
+		hibernated |= hibernate(gui, true);
+	    if (hibernated)
+		heapTriggers.increment();
+	    return;
+	}
+	if (idleMillis <= 0)
+	    return;
+	long now = System.currentTimeMillis();
+	for (GUI gui : recent)
+	{
+	    Long selected = lastSelected.get(gui);
+	    if (selected != null && now - selected > idleMillis)
+		hibernate(gui, false);
+	}
+	enforce();
+    }
+
+    /**
+     * Measuring the tenured pool after a collection leaves out garbage that
+     * just hasn't been collected yet, which the used heap as a whole includes.
+     * 
+     * @return True if the tenured pool is fuller than the heap percent.
+     */
+    private boolean isHeapNearlyFull()
+    {
+	if (tenured == null)
+	    return false;
+	MemoryUsage usage = tenured.getCollectionUsage();
+	if (usage == null)
+	    return false;
+	long max = usage.getMax();
+	if (max < 0)
+	    max = Runtime.getRuntime().maxMemory();
+	return usage.getUsed() * 100 > max * heapPercent;
+    }
+
+    /**
+     * @return The heap pool that objects are moved to once they have survived
+     *         a few collections, which is the only heap pool that supports a
+     *         usage threshold, or null if there isn't one.
+     */
+    private static MemoryPoolMXBean findTenuredPool()
+    {
+	for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+	    if (pool.getType() == MemoryType.HEAP
+		    && pool.isUsageThresholdSupported()
+		    && pool.isCollectionUsageThresholdSupported())
+		return pool;
+	return null;
+    }
+
+    /**
+     * Stop checking for idle tabs and heap pressure.
+     */
+    public void stop()
+    {
+	timer.stop();
+    }
+
+    /**
+     * Hibernate a tab, unless it is selected or hibernated already. Unless
+     * forced, tabs that are loading are left alone.
+     * 
+     * @return True if the tab was hibernated.
+     */
+    private boolean hibernate(GUI gui, boolean force)
+    {
+	Tab selected = tabs.getSelectionModel().getSelectedItem();
+	if (gui.isHibernated()
+		|| (selected != null && selected.getContent() == gui)
+		|| (!force && gui.getWebViewController().isLoading()))
+	    return false;
+	gui.hibernate();
+	hibernations.increment();
+	return true;
+    }
+
+    /**
+     * Move a tab to the front of the recently selected tabs.
+     */
+    private void touch(GUI gui)
+    {
+	recent.remove(gui);
+	recent.add(0, gui);
+	lastSelected.put(gui, System.currentTimeMillis());
+    }
+
+    public int getLiveTabs()
+    {
+	return liveTabs;
+    }
+
+    public int getIdleSeconds()
+    {
+	return (int) (idleMillis / 1000);
+    }
+
+    public int getHeapPercent()
+    {
+	return heapPercent;
+    }
+}
@@ -0,0 +1,269 @@
+package io.aks.WebBrowser;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.WeakHashMap;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.util.Duration;
+
+/**
+ * Watches every tab through a weak reference, to find tabs that were closed
+ * but are still in memory. A closed tab should be garbage collected soon after
+ * it is disposed; one that is still reachable a while later is reported as a
+ * leak, once, on the error stream. Tabs are checked whenever one is opened or
+ * closed, and, once start() is called, every grace period, so a leak after the
+ * last tab was closed is reported too.
+ * 
+ * @author Akshay
+ *
+ */
+public class TabLeakTracker
+{
+    public static final long DEFAULT_GRACE = 60 * 1000;
+
+    private final ReferenceQueue<GUI> queue = new ReferenceQueue<GUI>();
+    /**
+     * Keeps the references themselves alive until their tabs are collected.
+     */
+    private final HashSet<TrackedTab> tracked = new HashSet<TrackedTab>();
+    private final WeakHashMap<GUI, TrackedTab> byGUI = new WeakHashMap<GUI, TrackedTab>();
+    private final long grace;
+    private Timeline timer;
+    private long created = 0;
+    private long disposed = 0;
+    private long collected = 0;
+    private long leaks = 0;
+
+    /**
+     * Creates a tracker that reports tabs still in memory a minute after they
+     * were disposed.
+     */
+    public TabLeakTracker()
+    {
+	this(DEFAULT_GRACE);
+    }
+
+    /**
+     * Creates a tracker.
+     * 
+     * @param grace
+     *            How long a disposed tab may stay in memory before it is a
+     *            leak, in milliseconds.
+     */
+    public TabLeakTracker(long grace)
+    {
+	this.grace = grace;
+    }
+
+    /**
+     * Start checking for leaks every grace period, on the JavaFX thread.
+     */
+    public void start()
+    {
+	if (timer != null)
+	    return;
+	timer = new Timeline(new KeyFrame(Duration.millis(grace),
+		new EventHandler<ActionEvent>()
+		{
+		    @Override
+		    public void handle(ActionEvent e)
+		    {
+			check();
+		    }
+		}));
+	timer.setCycleCount(Animation.INDEFINITE);
+	timer.play();
+    }
+
+    /**
+     * Stop checking for leaks on a timer.
+     */
+    public void stop()
+    {
+	if (timer != null)
+	    timer.stop();
+    }
+
+    /**
+     * Start watching a new tab, and report tabs disposed earlier that still
+     * weren't collected.
+     * 
+     * @param gui
+     *            The tab's GUI.
+     */
+    public void track(GUI gui)
+    {
+	check();
+	TrackedTab ref = new TrackedTab(gui, queue);
+	tracked.add(ref);
+	byGUI.put(gui, ref);
+	created++;
+    }
+
+    /**
+     * Note that a tab was disposed, so it should be collected soon, and
+     * report tabs disposed earlier that still weren't.
+     * 
+     * @param gui
+     *            The tab's GUI.
+     * @param url
+     *            The page it was on, to name it in the report.
+     */
+    public void disposed(GUI gui, String url)
+    {
+	TrackedTab ref = byGUI.remove(gui);
+	if (ref != null)
+	{
+	    ref.dispose(url);
+	    disposed++;
+	}
+	check();
+    }
+
+    /**
+     * Forget the tabs that were collected.
+     */
+    public void poll()
+    {
+	Reference<? extends GUI> ref;
+	while ((ref = queue.poll()) != null)
+	{
+	    if (tracked.remove(ref))
+		collected++;
+	}
+    }
+
+    /**
+     * Report every tab that was disposed longer ago than the grace period but
+     * is still in memory. Each tab is only reported once.
+     * 
+     * @return How many new leaks were found.
+     */
+    public int check()
+    {
+	poll();
+	long now = System.currentTimeMillis();
+	int found = 0;
+	for (TrackedTab ref : tracked)
+	{
+	    if (ref.isReported() || ref.getDisposedAt() < 0
+		    || now - ref.getDisposedAt() < grace || ref.get() == null)
+		continue;
+	    ref.setReported();
+	    found++;
+	    System.err.println("Closed tab is still in memory: " + ref.getURL());
+	}
+	leaks += found;
+	return found;
+    }
+
+    /**
+     * @return The pages of the disposed tabs that are still in memory.
+     */
+    public ArrayList<String> getUncollected()
+    {
+	poll();
+	ArrayList<String> urls = new ArrayList<String>();
+	for (TrackedTab ref : tracked)
+	    if (ref.getDisposedAt() >= 0 && ref.get() != null)
+		urls.add(ref.getURL());
+	return urls;
+    }
+
+    /**
+     * @return How many tabs were tracked.
+     */
+    public long getCreated()
+    {
+	return created;
+    }
+
+    /**
+     * @return How many tabs were disposed.
+     */
+    public long getDisposed()
+    {
+	return disposed;
+    }
+
+    /**
+     * @return How many tabs were garbage collected.
+     */
+    public long getCollected()
+    {
+	return collected;
+    }
+
+    /**
+     * @return How many leaks were reported.
+     */
+    public long getLeaks()
+    {
+	return leaks;
+    }
+
+    public long getGrace()
+    {
+	return grace;
+    }
+}
+
+/**
+ * A weak reference to a tab, with when it was disposed.
+ * 
+ * @author Akshay
+ *
+ */
+class TrackedTab extends WeakReference<GUI>
+{
+    private String url;
+    private long disposedAt = -1;
+    private boolean reported = false;
+
+    public TrackedTab(GUI gui, ReferenceQueue<GUI> queue)
+    {
+	super(gui, queue);
+    }
+
+    /**
+     * Note that the tab was disposed now.
+     * 
+     * @param url
+     *            The page it was on.
+     */
+    public void dispose(String url)
+    {
+	this.url = url;
+	disposedAt = System.currentTimeMillis();
+    }
+
+    public String getURL()
+    {
+	return url;
+    }
+
+    /**
+     * @return When the tab was disposed, or -1 if it is still open.
+     */
+    public long getDisposedAt()
+    {
+	return disposedAt;
+    }
+
+    public boolean isReported()
+    {
+	return reported;
+    }
+
+    public void setReported()
+    {
+	reported = true;
+    }
+}
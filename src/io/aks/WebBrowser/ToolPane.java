@@ -1,6 +1,8 @@
 package io.aks.WebBrowser;
 import javafx.animation.Interpolator;
 import javafx.animation.Transition;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
@@ -9,21 +11,29 @@ import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
 import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Paint;
 import javafx.scene.shape.StrokeLineCap;
+import javafx.util.Callback;
 import javafx.util.Duration;
 
 /**
  * This class is the toolbar on the right of the browser, which is always
  * visible. Contains features for making a new tab, opening history, setting the
- * home page, using bookmarks, and printing.
+ * home page, using bookmarks, searching the history of every tab, and
+ * printing.
  * 
  * @author Akshay
  *
@@ -53,6 +63,8 @@ public class ToolPane extends VBox
 
 	bookmarkTools(main, bookmarks);
 
+	historySearch(main);
+
 	printButton(main);
 
     }
@@ -84,6 +96,107 @@ public class ToolPane extends VBox
 	this.getChildren().add(printButton);
     }
 
+    /**
+     * Creates a field that searches the history of every tab as it is typed
+     * in, with the best matches listed under it. Pressing enter in the field
+     * opens the best match in a new tab, and double-clicking a match, or
+     * pressing enter on it, opens that one.
+     * 
+     * @param main
+     *            The Main class.
+     */
+    private void historySearch(final Main main)
+    {
+	final TextField search = new TextField();
+	search.setPromptText("Search History");
+	search.setPrefWidth(175);
+	final ListView<HistoryMatch> matches = new ListView<HistoryMatch>();
+	matches.setPrefSize(175, 150);
+	matches.setVisible(false);
+	matches.setManaged(false);
+	matches.setCellFactory(new Callback<ListView<HistoryMatch>, ListCell<HistoryMatch>>()
+	{
+	    @Override
+	    public ListCell<HistoryMatch> call(ListView<HistoryMatch> view)
+	    {
+		return new ListCell<HistoryMatch>()
+		{
+		    @Override
+		    protected void updateItem(HistoryMatch match, boolean empty)
+		    {
+			super.updateItem(match, empty);
+			setText(empty || match == null ? null : match.toString());
+			setTooltip(empty || match == null ? null : new Tooltip(
+				match.getTitle() + "\n" + match.getURL()));
+		    }
+		};
+	    }
+	});
+
+	search.textProperty().addListener(new ChangeListener<String>()
+	{
+	    @Override
+	    public void changed(ObservableValue<? extends String> observable,
+		    String oldValue, String newValue)
+	    {
+		matches.getItems().setAll(
+			main.getHistoryIndex().search(newValue,
+				HistoryIndex.DEFAULT_RESULTS));
+		boolean found = !matches.getItems().isEmpty();
+		matches.setVisible(found);
+		matches.setManaged(found);
+	    }
+	});
+	search.setOnAction(new EventHandler<ActionEvent>()
+	{
+	    @Override
+	    public void handle(ActionEvent arg0)
+	    {
+		if (!matches.getItems().isEmpty())
+		    openMatch(main, matches.getItems().get(0));
+	    }
+	});
+	matches.setOnMouseClicked(new EventHandler<MouseEvent>()
+	{
+	    @Override
+	    public void handle(MouseEvent e)
+	    {
+		if (e.getClickCount() == 2)
+		    openMatch(main, matches.getSelectionModel()
+			    .getSelectedItem());
+	    }
+	});
+	matches.setOnKeyReleased(new EventHandler<KeyEvent>()
+	{
+	    @Override
+	    public void handle(KeyEvent e)
+	    {
+		if (e.getCode() == KeyCode.ENTER)
+		    openMatch(main, matches.getSelectionModel()
+			    .getSelectedItem());
+	    }
+	});
+
+	this.getChildren().add(search);
+	this.getChildren().add(matches);
+    }
+
+    /**
+     * Opens a page that a history search found in a new tab.
+     * 
+     * @param main
+     *            The Main class.
+     * @param match
+     *            The page, or null.
+     */
+    private static void openMatch(Main main, HistoryMatch match)
+    {
+	if (match == null)
+	    return;
+	main.newTab(match.getURL());
+	main.getTabs().getSelectionModel().selectLast();
+    }
+
     /**
      * Creates the bookmark tools (open, add, delete). These buttons rely on
      * each other's existence, which is why the code in this method is long and
@@ -129,9 +242,14 @@ public class ToolPane extends VBox
 		HistoryNode currentHistoryNode = ((GUI) main.getTabs()
 			.getSelectionModel().getSelectedItem().getContent())
 			.getHistory().getCurrent();
-		BookmarkItem newBookmark = new BookmarkItem(currentHistoryNode
-			.getUrl(), currentHistoryNode.getTitle());
-		main.getBookmarks().add(newBookmark);
+		BookmarkItem newBookmark = main.findBookmark(currentHistoryNode
+			.getUrl());
+		if (newBookmark == null)
+		{
+		    newBookmark = new BookmarkItem(currentHistoryNode.getUrl(),
+			    currentHistoryNode.getTitle());
+		    main.getBookmarks().add(newBookmark);
+		}
 		bookmarkBox.getSelectionModel().select(newBookmark);
 	    }
 
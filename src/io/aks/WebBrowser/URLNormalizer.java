@@ -0,0 +1,530 @@
+package io.aks.WebBrowser;
+import java.net.IDN;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Puts URLs in a canonical form, so that two ways of writing the same page
+ * are the same String: the history index, bookmarks, and caches use it as
+ * their key. The scheme and host are lowercased, a host that isn't ASCII is
+ * written in punycode, a default port is left out,
+ * an empty path becomes "/", "." and ".." are taken out of the path, and
+ * percent-encoding is made uppercase, with letters, digits, and "-._~"
+ * decoded. Fragments can be left out, and so can the slash at the end of a
+ * path.
+ * 
+ * A URL is read once, from the start, into a buffer kept by each thread, so
+ * a URL that is already canonical costs no new objects. Canonical URLs are
+ * interned in a small table that any thread can use without locking, so the
+ * same page's URL is kept once however many times it is seen.
+ * 
+ * @author Akshay
+ *
+ */
+public class URLNormalizer
+{
+    /**
+     * Leave out the fragment, which is never sent to the server.
+     */
+    public static final int STRIP_FRAGMENTS = 1;
+    /**
+     * Leave out the slash at the end of a path, other than "/".
+     */
+    public static final int STRIP_TRAILING_SLASHES = 2;
+    public static final int DEFAULT_OPTIONS = STRIP_FRAGMENTS;
+    public static final int DEFAULT_INTERNED = 4096;
+    /**
+     * URLs longer than this, such as data: URLs, aren't interned.
+     */
+    private static final int MAX_INTERNED_LENGTH = 2048;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final URLNormalizer DEFAULT = new URLNormalizer(
+	    DEFAULT_OPTIONS, DEFAULT_INTERNED);
+    private static final URLNormalizer NAVIGATION = new URLNormalizer(0,
+	    DEFAULT_INTERNED);
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>()
+    {
+	@Override
+	protected StringBuilder initialValue()
+	{
+	    return new StringBuilder(256);
+	}
+    };
+
+    private final int options;
+    private final URLInterner interned;
+
+    /**
+     * @param options
+     *            STRIP_FRAGMENTS and STRIP_TRAILING_SLASHES, or'd together.
+     * @param internedURLs
+     *            How many URLs the intern table holds.
+     */
+    public URLNormalizer(int options, int internedURLs)
+    {
+	this.options = options;
+	this.interned = new URLInterner(internedURLs);
+    }
+
+    /**
+     * @return The normalizer the browser shares, which leaves out fragments.
+     */
+    public static URLNormalizer getDefault()
+    {
+	return DEFAULT;
+    }
+
+    /**
+     * @return The normalizer for URLs that are gone to, which keeps
+     *         fragments, so a link to part of a page still scrolls to it.
+     */
+    public static URLNormalizer getNavigation()
+    {
+	return NAVIGATION;
+    }
+
+    /**
+     * @param url
+     *            A URL, which may be null.
+     * @return The URL in canonical form, interned. A URL without a scheme is
+     *         returned as it is.
+     */
+    public String canonicalize(String url)
+    {
+	if (url == null)
+	    return null;
+	int colon = schemeEnd(url);
+	if (colon < 0)
+	    return url;
+	StringBuilder out = BUFFER.get();
+	out.setLength(0);
+	for (int i = 0; i < colon; i++)
+	    out.append(lower(url.charAt(i)));
+	out.append(':');
+	int i = colon + 1;
+	if (!url.startsWith("//", i))
+	{
+	    // mailto:, about:, data: and the like have no host or path.
+	    out.append(url, i, url.length());
+	    return finish(url, out);
+	}
+	out.append("//");
+	i = authority(url, i + 2, out);
+	int pathStart = out.length();
+	if (i == url.length() || url.charAt(i) != '/')
+	    out.append('/');
+	else
+	    i = path(url, i, out);
+	if ((options & STRIP_TRAILING_SLASHES) != 0
+		&& out.length() > pathStart + 1
+		&& out.charAt(out.length() - 1) == '/')
+	    out.setLength(out.length() - 1);
+	if (i < url.length() && url.charAt(i) == '?')
+	{
+	    int hash = url.indexOf('#', i);
+	    i = copy(url, i, hash < 0 ? url.length() : hash, out);
+	}
+	if (i < url.length() && (options & STRIP_FRAGMENTS) == 0)
+	    copy(url, i, url.length(), out);
+	return finish(url, out);
+    }
+
+    /**
+     * Make an absolute URL from a link on a page, the way a browser does.
+     * 
+     * @param base
+     *            The page's absolute URL.
+     * @param relative
+     *            The link, which may be null for the page itself.
+     * @return The link's URL in canonical form, or the link as it is if it
+     *         can't be made absolute.
+     */
+    public String resolve(String base, String relative)
+    {
+	if (relative == null)
+	    return canonicalize(base);
+	String link = relative.trim();
+	if (schemeEnd(link) >= 0)
+	    return canonicalize(link);
+	String page = canonicalize(base);
+	int colon = page == null ? -1 : schemeEnd(page);
+	if (colon < 0 || !page.startsWith("//", colon + 1))
+	    return relative;
+	int pathStart = page.indexOf('/', colon + 3);
+	int query = page.indexOf('?', pathStart);
+	int hash = page.indexOf('#', pathStart);
+	int pathEnd = query >= 0 ? query : hash >= 0 ? hash : page.length();
+	String resolved;
+	if (link.startsWith("//"))
+	    resolved = page.substring(0, colon + 1) + link;
+	else if (link.startsWith("/"))
+	    resolved = page.substring(0, pathStart) + link;
+	else if (link.startsWith("?"))
+	    resolved = page.substring(0, pathEnd) + link;
+	else if (link.startsWith("#"))
+	    resolved = page.substring(0, hash >= 0 ? hash : page.length())
+		    + link;
+	else if (link.isEmpty())
+	    return page;
+	else
+	    resolved = page.substring(0,
+		    page.lastIndexOf('/', pathEnd - 1) + 1)
+		    + link;
+	return canonicalize(resolved);
+    }
+
+    /**
+     * @param url
+     *            A URL, which may be null.
+     * @return Its host, lowercased, or null if it doesn't have one.
+     */
+    public static String hostOf(String url)
+    {
+	int colon = url == null ? -1 : schemeEnd(url);
+	if (colon < 0 || !url.startsWith("//", colon + 1))
+	    return null;
+	int start = colon + 3;
+	int end = start;
+	while (end < url.length() && !endsAuthority(url.charAt(end)))
+	{
+	    if (url.charAt(end) == '@')
+		start = end + 1;
+	    end++;
+	}
+	end = portStart(url, start, end);
+	if (start == end)
+	    return null;
+	StringBuilder host = new StringBuilder(end - start);
+	host(url, start, end, host);
+	return host.toString();
+    }
+
+    /**
+     * @return The URL, or the canonical one in the buffer if it is different,
+     *         interned.
+     */
+    private String finish(String url, StringBuilder out)
+    {
+	String result = out.length() == url.length() && url.contentEquals(out) ? url
+		: out.toString();
+	if (result.length() > MAX_INTERNED_LENGTH)
+	    return result;
+	return interned.intern(result);
+    }
+
+    /**
+     * @return Where the colon after the URL's scheme is, or -1 if it doesn't
+     *         start with one.
+     */
+    private static int schemeEnd(String url)
+    {
+	if (url.isEmpty() || !isLetter(url.charAt(0)))
+	    return -1;
+	for (int i = 1; i < url.length(); i++)
+	{
+	    char c = url.charAt(i);
+	    if (c == ':')
+		return i;
+	    if (!isLetter(c) && !isDigit(c) && c != '+' && c != '-' && c != '.')
+		return -1;
+	}
+	return -1;
+    }
+
+    /**
+     * Copy the user, host and port, lowercasing the host and leaving out a
+     * default port.
+     * 
+     * @return Where the authority ends.
+     */
+    private static int authority(String url, int start, StringBuilder out)
+    {
+	int end = start;
+	int at = -1;
+	while (end < url.length() && !endsAuthority(url.charAt(end)))
+	{
+	    if (url.charAt(end) == '@')
+		at = end;
+	    end++;
+	}
+	int host = start;
+	if (at >= 0)
+	{
+	    copy(url, start, at, out);
+	    out.append('@');
+	    host = at + 1;
+	}
+	int port = portStart(url, host, end);
+	host(url, host, port, out);
+	if (port < end - 1 && !isDefaultPort(out, url, port + 1, end))
+	{
+	    out.append(':');
+	    int digits = port + 1;
+	    while (digits < end - 1 && url.charAt(digits) == '0')
+		digits++;
+	    out.append(url, digits, end);
+	}
+	return end;
+    }
+
+    /**
+     * @return Where the colon before the port is, or the end of the authority
+     *         if it has no port. The colons of an IPv6 address aren't one.
+     */
+    private static int portStart(String url, int host, int end)
+    {
+	int port = url.lastIndexOf(':', end - 1);
+	if (port < host)
+	    return end;
+	if (url.charAt(host) == '[' && url.charAt(port - 1) != ']')
+	    return end;
+	return port;
+    }
+
+    /**
+     * Copy a host, lowercased. A host with letters that aren't ASCII is
+     * written in punycode, the way it is looked up; if it can't be, it is
+     * copied as it is.
+     */
+    private static void host(String url, int start, int end,
+	    StringBuilder out)
+    {
+	String host = url;
+	for (int i = start; i < end; i++)
+	{
+	    if (url.charAt(i) < 0x80)
+		continue;
+	    try
+	    {
+		host = IDN.toASCII(url.substring(start, end),
+			IDN.ALLOW_UNASSIGNED);
+		start = 0;
+		end = host.length();
+	    }
+	    catch (IllegalArgumentException e)
+	    {
+	    }
+	    break;
+	}
+	for (int i = start; i < end; i++)
+	    out.append(lower(host.charAt(i)));
+    }
+
+    /**
+     * @return True if the port is the one the scheme, which starts the
+     *         buffer, uses without one.
+     */
+    private static boolean isDefaultPort(StringBuilder out, String url,
+	    int start, int end)
+    {
+	int port = 0;
+	for (int i = start; i < end; i++)
+	{
+	    char c = url.charAt(i);
+	    if (!isDigit(c) || port > 65535)
+		return false;
+	    port = port * 10 + c - '0';
+	}
+	int colon = out.indexOf(":");
+	switch (port)
+	{
+	case 80:
+	    return isScheme(out, colon, "http") || isScheme(out, colon, "ws");
+	case 443:
+	    return isScheme(out, colon, "https")
+		    || isScheme(out, colon, "wss");
+	case 21:
+	    return isScheme(out, colon, "ftp");
+	default:
+	    return false;
+	}
+    }
+
+    private static boolean isScheme(StringBuilder out, int colon,
+	    String scheme)
+    {
+	if (colon != scheme.length())
+	    return false;
+	for (int i = 0; i < colon; i++)
+	    if (out.charAt(i) != scheme.charAt(i))
+		return false;
+	return true;
+    }
+
+    /**
+     * Copy the path, taking out "." and ".." segments as they end.
+     * 
+     * @return Where the path ends.
+     */
+    private static int path(String url, int start, StringBuilder out)
+    {
+	int root = out.length();
+	int segment = root;
+	int run = start;
+	int i = start;
+	while (true)
+	{
+	    char c = i < url.length() ? url.charAt(i) : '#';
+	    if (c == '%')
+	    {
+		out.append(url, run, i);
+		i = copyChar(url, i, out);
+		run = i;
+	    }
+	    else if (c == '/' || c == '?' || c == '#')
+	    {
+		out.append(url, run, i);
+		boolean end = c != '/';
+		int length = out.length() - segment;
+		boolean dot = length == 1 && out.charAt(segment) == '.';
+		boolean dots = length == 2 && out.charAt(segment) == '.'
+			&& out.charAt(segment + 1) == '.';
+		if (dot || dots)
+		{
+		    out.setLength(segment);
+		    if (dots && segment > root + 1)
+			out.setLength(out.lastIndexOf("/", segment - 2) + 1);
+		}
+		else if (end)
+		    return i;
+		else
+		    out.append('/');
+		if (end)
+		    return i;
+		segment = out.length();
+		run = ++i;
+	    }
+	    else
+		i++;
+	}
+    }
+
+    /**
+     * Copy part of a URL, normalizing its percent-encoding. What is between
+     * percent signs is copied all at once.
+     * 
+     * @return The end.
+     */
+    private static int copy(String url, int start, int end, StringBuilder out)
+    {
+	int run = start;
+	int i = start;
+	while (i < end)
+	{
+	    if (url.charAt(i) == '%')
+	    {
+		out.append(url, run, i);
+		i = copyChar(url, i, out);
+		run = i;
+	    }
+	    else
+		i++;
+	}
+	out.append(url, run, end);
+	return end;
+    }
+
+    /**
+     * Copy a character, or a percent-encoded byte: decoded if it is
+     * unreserved, in uppercase hex if it isn't.
+     * 
+     * @return Where the next one starts.
+     */
+    private static int copyChar(String url, int i, StringBuilder out)
+    {
+	char c = url.charAt(i);
+	if (c != '%' || i + 2 >= url.length())
+	{
+	    out.append(c);
+	    return i + 1;
+	}
+	int high = Character.digit(url.charAt(i + 1), 16);
+	int low = Character.digit(url.charAt(i + 2), 16);
+	if (high < 0 || low < 0)
+	{
+	    out.append(c);
+	    return i + 1;
+	}
+	char decoded = (char) (high << 4 | low);
+	if (isLetter(decoded) || isDigit(decoded) || decoded == '-'
+		|| decoded == '.' || decoded == '_' || decoded == '~')
+	    out.append(decoded);
+	else
+	    out.append('%').append(HEX[high]).append(HEX[low]);
+	return i + 3;
+    }
+
+    private static boolean endsAuthority(char c)
+    {
+	return c == '/' || c == '?' || c == '#';
+    }
+
+    private static char lower(char c)
+    {
+	return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static boolean isLetter(char c)
+    {
+	return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c)
+    {
+	return c >= '0' && c <= '9';
+    }
+}
+
+/**
+ * A fixed-size table of interned Strings that any thread can use without
+ * locking. Each String can go in one of two slots picked by its hash; when
+ * both are taken, the first is replaced, so the table never grows and the
+ * URLs seen most often stay in it.
+ * 
+ * @author Akshay
+ *
+ */
+class URLInterner
+{
+    private final AtomicReferenceArray<String> slots;
+    private final int mask;
+
+    /**
+     * @param capacity
+     *            How many Strings it holds, rounded up to a power of two.
+     */
+    URLInterner(int capacity)
+    {
+	int size = 2;
+	while (size < capacity)
+	    size <<= 1;
+	slots = new AtomicReferenceArray<String>(size);
+	mask = size - 1;
+    }
+
+    /**
+     * @return The String equal to it in the table, or the String itself,
+     *         which is put in the table.
+     */
+    String intern(String string)
+    {
+	int hash = string.hashCode();
+	int first = (hash ^ hash >>> 16) & mask;
+	int second = first ^ 1;
+	String old = slots.get(first);
+	if (string.equals(old))
+	    return old;
+	String other = slots.get(second);
+	if (string.equals(other))
+	    return other;
+	slots.set(old != null && other == null ? second : first, string);
+	return string;
+    }
+
+    /**
+     * @return How many Strings it holds.
+     */
+    int capacity()
+    {
+	return slots.length();
+    }
+}
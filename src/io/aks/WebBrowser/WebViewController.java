@@ -1,6 +1,5 @@
 package io.aks.WebBrowser;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.Arrays;
 
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
@@ -16,7 +15,7 @@ import javafx.util.Callback;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.w3c.dom.Node;
 import org.w3c.dom.events.Event;
 import org.w3c.dom.events.EventListener;
 import org.w3c.dom.events.EventTarget;
@@ -40,14 +39,58 @@ public class WebViewController
 	    + Main.javaVersion;
     private WebView webView;
     private WebEngine webEngine;
+    private ChangeListener<String> titleListener;
+    private ChangeListener<String> locationListener;
+    private ChangeListener<State> stateListener;
+    private ChangeListener<Throwable> exceptionListener;
     private String title;
     private String url;
     private Boolean silent = true;
     private String defaultUA;
     private final GUI gui;
-    private final String HOME_PAGE;
+    private final Main main;
+    private final BorderPane bp;
+    private final Tab tab;
     private String originalUA;
     private String customUA;
+    private final BackForwardCache backForwardCache;
+    private HistoryNode shownNode;
+    private boolean cacheable = true;
+    private CachedPage restoring;
+    private final EventListener clickListener = new LinkClickListener();
+    private final EventListener hoverListener = new LinkHoverListener();
+    /**
+     * Calls between Java and the page's JavaScript, in total and since the
+     * page that is showing started loading.
+     */
+    private long bridgeCrossings = 0;
+    private long pageBridgeCrossings = 0;
+    private final MetricCounter bridgeCounter;
+    /**
+     * The navigation being timed, and whether the next load is HTML loaded
+     * from memory, which isn't timed.
+     */
+    private PageLoadTiming loadTiming;
+    private boolean untimed = false;
+    /**
+     * Pages with more elements than this, or more characters once
+     * serialized, aren't saved in the back/forward cache.
+     */
+    private static final int MAX_SAVED_ELEMENTS = 20000;
+    private static final int MAX_SAVED_CHARS = 1 << 20;
+    /**
+     * Serializes a copy of the page without its scripts and on* handlers, so
+     * showing it again doesn't run them, and with what was typed into its
+     * forms, except passwords. Returns null if the page is too big.
+     */
+    private static final String SERIALIZE_SCRIPT = "(function(maxElements,maxChars){var all=document.getElementsByTagName('*');if(all.length>maxElements)return null;var root=document.documentElement.cloneNode(true);var from=[document.documentElement].concat(Array.prototype.slice.call(document.documentElement.getElementsByTagName('*')));var to=[root].concat(Array.prototype.slice.call(root.getElementsByTagName('*')));for(var i=0;i<from.length&&i<to.length;i++){var s=from[i],c=to[i],t=s.tagName;if(t=='INPUT'){if(s.type=='checkbox'||s.type=='radio'){if(s.checked)c.setAttribute('checked','');else c.removeAttribute('checked');}else if(s.type!='password'&&s.type!='file')c.setAttribute('value',s.value);}else if(t=='TEXTAREA')c.textContent=s.value;else if(t=='OPTION'){if(s.selected)c.setAttribute('selected','');else c.removeAttribute('selected');}for(var j=c.attributes.length-1;j>=0;j--)if(c.attributes[j].name.toLowerCase().indexOf('on')==0)c.removeAttribute(c.attributes[j].name);}var scripts=root.getElementsByTagName('script');while(scripts.length>0)scripts[0].parentNode.removeChild(scripts[0]);var html=(document.doctype?'<!DOCTYPE '+document.doctype.name+'>':'')+root.outerHTML;return html.length>maxChars?null:html;})("
+	    + MAX_SAVED_ELEMENTS + "," + MAX_SAVED_CHARS + ")";
+    private static final String SCROLL_SCRIPT = "window.pageXOffset + ' ' + window.pageYOffset";
+    /**
+     * Lists the links that are visible, one per line, in page order. The
+     * number to list is appended as the argument.
+     */
+    private static final String VISIBLE_LINKS_SCRIPT = "(function(n){var r=[];var a=document.links;for(var i=0;i<a.length&&r.length<n;i++){var b=a[i].getBoundingClientRect();if(b.bottom>0&&b.right>0&&b.top<window.innerHeight&&b.left<window.innerWidth&&a[i].href.indexOf('http')==0)r.push(a[i].href);}return r.join('\\n');})";
     private static final String GMAIL_COMPATIBILITY_UA = "Mozilla/5.0 JavaFX/"
 	    + System.getProperty("java.version");
 
@@ -63,7 +106,7 @@ public class WebViewController
      * @param gui
      *            The GUI that contains this instance.
      * @param start
-     *            The URL to start from.
+     *            The URL to start from, or null to not load anything yet.
      * @param tab
      *            The containing Tab.
      */
@@ -71,9 +114,26 @@ public class WebViewController
 	    String start, final Tab tab)
     {
 	this.gui = gui;
-	HOME_PAGE = start;
+	this.main = main;
+	this.bp = bp;
+	this.tab = tab;
+	bridgeCounter = main.getMetrics().getCounter(
+		MetricsRegistry.BRIDGE_CROSSINGS);
+	backForwardCache = new BackForwardCache(main.getMetrics(),
+		gui.getHistory());
+	createWebView(start);
+    }
 
+    /**
+     * Makes the WebView and adds the state change handlers.
+     * 
+     * @param start
+     *            The URL to start from, or null to not load anything yet.
+     */
+    private void createWebView(String start)
+    {
 	webView = new WebView();
+	main.getMetrics().getGauge(MetricsRegistry.WEBVIEWS_LIVE).add(1);
 	bp.setCenter(webView);
 	webEngine = webView.getEngine();
 
@@ -84,7 +144,8 @@ public class WebViewController
 	    defaultUA = customUA;
 	    webEngine.setUserAgent(defaultUA);
 	}
-	webEngine.load(HOME_PAGE);
+	if (start != null)
+	    webEngine.load(start);
 
 	addTitleListener(gui, tab);
 	addLocationListener();
@@ -95,7 +156,78 @@ public class WebViewController
 	addAlertHandler();
 	webView.setContextMenuEnabled(false);
 	addPopupListener(main);
+    }
+
+    /**
+     * Drops the WebView and its WebEngine to save memory, after removing every
+     * listener so nothing keeps them, or is called by them, afterwards. The
+     * next navigation makes a new WebView.
+     */
+    public void unload()
+    {
+	if (webView == null)
+	    return;
+	webEngine.titleProperty().removeListener(titleListener);
+	webEngine.locationProperty().removeListener(locationListener);
+	webEngine.getLoadWorker().stateProperty().removeListener(stateListener);
+	webEngine.getLoadWorker().exceptionProperty()
+		.removeListener(exceptionListener);
+	webEngine.setOnAlert(null);
+	webEngine.setCreatePopupHandler(null);
+	webEngine.getLoadWorker().cancel();
+	webEngine.load("about:blank");
+	if (bp.getCenter() == webView)
+	    bp.setCenter(null);
+	webView = null;
+	webEngine = null;
+	main.getMetrics().getGauge(MetricsRegistry.WEBVIEWS_LIVE).add(-1);
+	titleListener = null;
+	locationListener = null;
+	stateListener = null;
+	exceptionListener = null;
+	shownNode = null;
+	restoring = null;
+	backForwardCache.clear();
+    }
+
+    /**
+     * Makes a new WebView after unload() and loads a page in it without adding
+     * it to the history.
+     * 
+     * @param url
+     *            The page to load.
+     */
+    public void reload(String url)
+    {
+	if (webView != null)
+	    return;
+	silent = true;
+	createWebView(url);
+    }
+
+    /**
+     * @return True if the WebView was dropped by unload().
+     */
+    public boolean isUnloaded()
+    {
+	return webView == null;
+    }
 
+    /**
+     * @return True if a page is being loaded.
+     */
+    public boolean isLoading()
+    {
+	return webEngine != null && webEngine.getLoadWorker().isRunning();
+    }
+
+    /**
+     * Makes a new WebView, without loading anything, if it was unloaded.
+     */
+    private void ensureWebView()
+    {
+	if (webView == null)
+	    createWebView(null);
     }
 
     /**
@@ -149,108 +281,104 @@ public class WebViewController
      */
     private void addStateListener(final Main main, final GUI gui, final Tab tab)
     {
-	webEngine.getLoadWorker().stateProperty()
-		.addListener(new ChangeListener<State>()
-		{
+	stateListener = new ChangeListener<State>()
+	{
 
-		    @Override
-		    public void changed(ObservableValue<? extends State> state,
-			    State old, State value)
-		    {
+	    @Override
+	    public void changed(ObservableValue<? extends State> state,
+		    State old, State value)
+	    {
+		long now = System.nanoTime();
+		BrowserEvents.loadState(gui, webEngine.getLocation(), value);
+		PageLoadTiming timing = null;
+		if (value == State.SUCCEEDED)
+		    timing = finishLoadTiming(now, null);
+		else if (value == State.FAILED)
+		    timing = finishLoadTiming(now, failureOf(webEngine
+			    .getLoadWorker().getException()));
+		else if (value == State.CANCELLED)
+		    loadTiming = null;
 
-			if (value == State.SUCCEEDED)
-			{
-			    /*
-			     * If the tab has been closed, redirect to a blank
-			     * page to save memory. The silent check is to
-			     * prevent infinite recursion.
-			     */
-			    if (!main.getTabs().getTabs().contains(tab)
-				    && !silent)
-			    {
-				webEngine.load("about://nothing");
-				silent = true;
-			    }
-
-			    webView.setVisible(true);
-			    gui.setURL(webEngine.getLocation());
-			    if (!silent)
-			    {
-				gui.getHistory()
-					.addURL(webEngine.getLocation());
-				gui.getHistory().getCurrent().setTitle(title);
-				gui.updateHistoryPane();
-			    }
-			    else
-			    {
-				gui.getHistory().getCurrent().setTitle(title);
-				silent = false;
-			    }
-
-			    addMouseClickListeners(main, gui);
-			}
-			else if (value == State.FAILED && !silent)
-			{
-			    silent = true;
-			    webView.setVisible(true);
-			    System.err.println("Failure");
-			    webEngine
-				    .load("<strong>Website Load Failure</strong><p>Sorry, something's wrong.</p>");
-			}
-			else if (value == State.SCHEDULED)
-			{
-			    webView.setVisible(false);
-			}
+		if (value == State.SUCCEEDED)
+		{
+		    /*
+		     * If the tab has been closed, redirect to a blank
+		     * page to save memory. The silent check is to
+		     * prevent infinite recursion.
+		     */
+		    if (!main.getTabs().getTabs().contains(tab)
+			    && !silent)
+		    {
+			webEngine.load("about://nothing");
+			silent = true;
 		    }
 
-		    /**
-		     * Adds click listeners to each hyperlink.
-		     * 
-		     * @param main
-		     *            The containing Main instance.
-		     * @param gui
-		     *            The containing GUI.
-		     */
-		    private void addMouseClickListeners(final Main main,
-			    final GUI gui)
+		    webView.setVisible(true);
+		    if (restoring != null)
+		    {
+			gui.setURL(restoring.getURL());
+			executeScript("window.scrollTo("
+				+ restoring.getScrollX() + ", "
+				+ restoring.getScrollY() + ")");
+			restoring = null;
+		    }
+		    else
+		    {
+			gui.setURL(webEngine.getLocation());
+			main.getPrefetcher().navigated(webEngine.getLocation());
+		    }
+		    if (!silent)
 		    {
-			EventListener el = new EventListener()
-			{
-
-			    @Override
-			    public void handleEvent(Event evt)
-			    {
-				if (evt.getType().equals("click"))
-				{
-				    MouseEvent mouseEvt = ((MouseEvent) evt);
-				    if (mouseEvt.getMetaKey()
-					    || mouseEvt.getButton() == 1)
-				    {
-					String href = ((Element) mouseEvt
-						.getCurrentTarget())
-						.getAttribute("href");
-					if (href != null)
-					{
-					    evt.preventDefault();
-					}
-				    }
-				}
-
-			    }
-
-			};
-			Document doc = webEngine.getDocument();
-			if (doc == null)
-			    return;
-			NodeList nl = doc.getElementsByTagName("a");
-			for (int i = 0; i < nl.getLength(); i++)
-			{
-			    ((EventTarget) nl.item(i)).addEventListener(
-				    "click", el, false);
-			}
+			gui.getHistory()
+				.addURL(webEngine.getLocation());
+			gui.getHistory().getCurrent().setTitle(title);
+			gui.updateHistoryPane();
 		    }
+		    else
+		    {
+			gui.getHistory().getCurrent().setTitle(title);
+			silent = false;
+		    }
+		    shownNode = cacheable ? gui.getHistory()
+			    .getCurrent() : null;
+		    cacheable = true;
 
-		});
+		    addLinkListeners();
+		    prefetchVisibleLinks();
+		}
+		else if (value == State.FAILED && !silent)
+		{
+		    silent = true;
+		    cacheable = false;
+		    restoring = null;
+		    webView.setVisible(true);
+		    System.err.println("Failure");
+		    webEngine
+			    .load("<strong>Website Load Failure</strong><p>Sorry, something's wrong.</p>");
+		}
+		else if (value == State.SCHEDULED)
+		{
+		    // A link was followed, so keep the page it was on.
+		    saveShownPage();
+		    pageBridgeCrossings = 0;
+		    webView.setVisible(false);
+		    loadTiming = untimed ? null : new PageLoadTiming(now);
+		    untimed = false;
+		}
+		else if (value == State.RUNNING && loadTiming != null)
+		    loadTiming.running(now);
+
+		if (timing != null
+			&& timing.getURL().equals(
+				gui.getHistory().getCurrent().getUrl()))
+		{
+		    gui.getHistory().getCurrent().setLoadTiming(timing);
+		    gui.updateHistoryPane();
+		}
+	    }
+
+	};
+	webEngine.getLoadWorker().stateProperty().addListener(stateListener);
     }
 
     /**
@@ -258,32 +386,34 @@ public class WebViewController
      */
     private void addExceptionListener()
     {
-	webEngine.getLoadWorker().exceptionProperty()
-		.addListener(new ChangeListener<Throwable>()
-		{
+	exceptionListener = new ChangeListener<Throwable>()
+	{
 
-		    @Override
-		    public void changed(
-			    ObservableValue<? extends Throwable> ex,
-			    Throwable oldValue, Throwable newValue)
-		    {
-			if (newValue == null)
-			{
-			    webEngine
-				    .loadContent("<strong>Unknown Error</strong>");
-			    System.err.println("Unknown Error");
-			}
-			else
-			{
-			    webEngine.loadContent("<strong>Error: "
-				    + newValue.getMessage()
-				    + "</strong><br><p>Make sure you typed the URL correctly.</p>");
-			    System.err.println("Error: "
-				    + newValue.getMessage());
-			}
-		    }
+	    @Override
+	    public void changed(
+		    ObservableValue<? extends Throwable> ex,
+		    Throwable oldValue, Throwable newValue)
+	    {
+		cacheable = false;
+		restoring = null;
+		if (newValue == null)
+		{
+		    loadContent("<strong>Unknown Error</strong>");
+		    System.err.println("Unknown Error");
+		}
+		else
+		{
+		    loadContent("<strong>Error: "
+			    + newValue.getMessage()
+			    + "</strong><br><p>Make sure you typed the URL correctly.</p>");
+		    System.err.println("Error: "
+			    + newValue.getMessage());
+		}
+	    }
 
-		});
+	};
+	webEngine.getLoadWorker().exceptionProperty()
+		.addListener(exceptionListener);
     }
 
     /**
@@ -292,7 +422,7 @@ public class WebViewController
      */
     private void addLocationListener()
     {
-	webEngine.locationProperty().addListener(new ChangeListener<String>()
+	locationListener = new ChangeListener<String>()
 	{
 
 	    @Override
@@ -302,7 +432,7 @@ public class WebViewController
 		url = newValue;
 		if (newValue == null)
 		    url = "about://null";
-		if (url.contains("mail.google.com"))
+		if ("mail.google.com".equals(URLNormalizer.hostOf(url)))
 		{
 		    if (Main.javaVersion >= 8)
 			webEngine.setUserAgent(GMAIL_COMPATIBILITY_UA);
@@ -315,7 +445,8 @@ public class WebViewController
 		}
 	    }
 
-	});
+	};
+	webEngine.locationProperty().addListener(locationListener);
     }
 
     /**
@@ -328,7 +459,7 @@ public class WebViewController
      */
     private void addTitleListener(final GUI gui, final Tab tab)
     {
-	webEngine.titleProperty().addListener(new ChangeListener<String>()
+	titleListener = new ChangeListener<String>()
 	{
 
 	    @Override
@@ -349,29 +480,257 @@ public class WebViewController
 
 	    }
 
-	});
+	};
+	webEngine.titleProperty().addListener(titleListener);
     }
 
     /**
-     * Go back in the history.
+     * Go back in the history. The page comes from the back/forward cache if
+     * it is there.
      */
     public void back()
     {
-	if (!gui.getHistory().canGoBack())
+	History history = gui.getHistory();
+	if (!history.canGoBack())
 	    return;
+	saveShownPage();
 	silent = true;
-	gui.getHistory().back();
+	HistoryNode node = history.getCurrent().timeTravelBackward();
+	if (!restore(node))
+	    history.back();
     }
 
     /**
-     * Go forward to the primary child of the current node.
+     * Go forward to the primary child of the current node. The page comes
+     * from the back/forward cache if it is there.
      */
     public void forward()
     {
-	if (!gui.getHistory().canGoForward())
+	History history = gui.getHistory();
+	if (!history.canGoForward())
 	    return;
+	saveShownPage();
 	silent = true;
-	gui.getHistory().forward();
+	HistoryNode node = history.getCurrent().timeTravelForward();
+	if (!restore(node))
+	    history.forward();
+    }
+
+    /**
+     * Make a node current and primary, then show it without adding it to the
+     * history. The page comes from the back/forward cache if it is there.
+     * 
+     * @param node
+     *            The node to jump to.
+     */
+    public void jump(HistoryNode node)
+    {
+	saveShownPage();
+	gui.getHistory().setCurrent(node);
+	if (node.getBackward() != null)
+	    node.getBackward().setPrimary(node);
+	silent = true;
+	if (!restore(node))
+	    loadURL(node.getUrl(), true);
+    }
+
+    /**
+     * Save the page that is showing in the back/forward cache, if it finished
+     * loading, hasn't been saved since, is still in the history, and isn't
+     * too big. What is saved has no scripts, so they don't run again when it
+     * is shown.
+     */
+    private void saveShownPage()
+    {
+	HistoryNode node = shownNode;
+	shownNode = null;
+	if (node == null || node.getHistory() != gui.getHistory()
+		|| webEngine == null || webEngine.getDocument() == null)
+	    return;
+	Object html = executeScript(SERIALIZE_SCRIPT);
+	Object scroll = executeScript(SCROLL_SCRIPT);
+	if (!(html instanceof String) || !(scroll instanceof String))
+	    return;
+	String[] xy = ((String) scroll).split(" ");
+	try
+	{
+	    backForwardCache.put(node, new CachedPage(node.getUrl(), addBase(
+		    (String) html, node.getUrl()), Double.parseDouble(xy[0]),
+		    Double.parseDouble(xy[1])));
+	}
+	catch (NumberFormatException e)
+	{
+	    // Don't cache a page whose scroll position can't be read.
+	}
+    }
+
+    /**
+     * Show a node's page from the back/forward cache, and make it current.
+     * 
+     * @param node
+     *            The node.
+     * @return False if the page isn't cached and has to be loaded.
+     */
+    private boolean restore(HistoryNode node)
+    {
+	CachedPage page = backForwardCache.get(node);
+	if (page == null)
+	    return false;
+	ensureWebView();
+	gui.getHistory().setCurrent(node);
+	restoring = page;
+	gui.setURL(page.getURL());
+	loadContent(page.getHTML());
+	return true;
+    }
+
+    /**
+     * Listen for clicks on the links in the page, and for the pointer moving
+     * onto and off links if prefetching is on. One listener on the document
+     * sees the events of every link, including links a script adds later, so
+     * only a few calls into the page are made however many links it has.
+     */
+    private void addLinkListeners()
+    {
+	Document doc = webEngine.getDocument();
+	if (doc == null)
+	    return;
+	((EventTarget) doc).addEventListener("click", clickListener, true);
+	countBridgeCrossings(2);
+	if (main.getPrefetcher().isEnabled())
+	{
+	    ((EventTarget) doc).addEventListener("mouseover", hoverListener,
+		    true);
+	    ((EventTarget) doc).addEventListener("mouseout", hoverListener,
+		    true);
+	    countBridgeCrossings(2);
+	}
+    }
+
+    /**
+     * Prefetch the first few links that are visible in the page, found with
+     * one script.
+     */
+    private void prefetchVisibleLinks()
+    {
+	LinkPrefetcher prefetcher = main.getPrefetcher();
+	if (!prefetcher.isEnabled() || prefetcher.getViewportLinks() <= 0)
+	    return;
+	Object links = executeScript(VISIBLE_LINKS_SCRIPT + "("
+		+ prefetcher.getViewportLinks() + ")");
+	if (!(links instanceof String) || ((String) links).isEmpty())
+	    return;
+	prefetcher.prefetchVisible(getPageURL(),
+		Arrays.asList(((String) links).split("\n")),
+		webEngine.getUserAgent());
+    }
+
+    /**
+     * @return The URL of the page that is showing. A page restored from the
+     *         back/forward cache was loaded from a string, so the WebEngine
+     *         has no location for it, and the current node's URL is used.
+     */
+    private String getPageURL()
+    {
+	if (!isRestoredPage())
+	    return webEngine.getLocation();
+	return gui.getHistory().getCurrent().getUrl();
+    }
+
+    /**
+     * @return True if the page that is showing was restored from the
+     *         back/forward cache, or otherwise loaded from a string.
+     */
+    private boolean isRestoredPage()
+    {
+	String location = webEngine.getLocation();
+	return location == null || location.isEmpty();
+    }
+
+    /**
+     * Find the link an element is in.
+     * 
+     * @param node
+     *            The element, or null.
+     * @return The nearest anchor that is the element or contains it, if it has
+     *         an href, or null.
+     */
+    private Element findLink(Node node)
+    {
+	countBridgeCrossings(1);
+	while (node != null
+		&& !(node instanceof Element && "a".equalsIgnoreCase(node
+			.getNodeName())))
+	{
+	    node = node.getParentNode();
+	    countBridgeCrossings(2);
+	}
+	if (node == null)
+	    return null;
+	countBridgeCrossings(1);
+	return ((Element) node).hasAttribute("href") ? (Element) node : null;
+    }
+
+    /**
+     * Run a script in the page, counting it as a bridge crossing.
+     * 
+     * @param script
+     *            The JavaScript to run.
+     * @return What the script returned.
+     */
+    private Object executeScript(String script)
+    {
+	countBridgeCrossings(1);
+	return webEngine.executeScript(script);
+    }
+
+    /**
+     * Count calls between Java and the page's JavaScript, for this tab, its
+     * page, and the BRIDGE_CROSSINGS metric.
+     * 
+     * @param count
+     *            How many calls were made.
+     */
+    void countBridgeCrossings(int count)
+    {
+	bridgeCrossings += count;
+	pageBridgeCrossings += count;
+	bridgeCounter.add(count);
+    }
+
+    /**
+     * @return How many calls between Java and the page's JavaScript this tab
+     *         has made.
+     */
+    public long getBridgeCrossings()
+    {
+	return bridgeCrossings;
+    }
+
+    /**
+     * @return How many calls between Java and JavaScript were made for the
+     *         page that is showing, since it started loading.
+     */
+    public long getPageBridgeCrossings()
+    {
+	return pageBridgeCrossings;
+    }
+
+    /**
+     * Add a base tag to serialized HTML, so its relative links still work when
+     * it is loaded as content.
+     */
+    private static String addBase(String html, String url)
+    {
+	String lower = html.toLowerCase();
+	if (lower.contains("<base"))
+	    return html;
+	int head = lower.indexOf("<head");
+	int end = head < 0 ? -1 : html.indexOf('>', head);
+	String base = "<base href=\"" + url.replace("\"", "&quot;") + "\">";
+	if (end < 0)
+	    return base + html;
+	return html.substring(0, end + 1) + base + html.substring(end + 1);
     }
 
     /**
@@ -379,18 +738,26 @@ public class WebViewController
      */
     public void refresh()
     {
+	if (webView == null)
+	{
+	    reload(gui.getHistory().getCurrent().getUrl());
+	    return;
+	}
 	webEngine.reload();
     }
 
     /**
-     * Navigate to a new location.
+     * Navigate to a new location. It is added to the history once it loads,
+     * like a link that was clicked.
      * 
      * @param url
      *            The URL to go to.
      */
     public void goToURL(final String url)
     {
-	gui.getHistory().addURL(url);
+	ensureWebView();
+	BrowserEvents.navigation(gui, url, "goToURL");
+	silent = false;
 	gui.setURL(url);
 	webEngine.load(url);
     }
@@ -403,6 +770,8 @@ public class WebViewController
      */
     public void loadURL(final String url)
     {
+	ensureWebView();
+	BrowserEvents.navigation(gui, url, "loadURL");
 	gui.setURL(url);
 	webEngine.load(url);
     }
@@ -418,6 +787,9 @@ public class WebViewController
      */
     public void loadURL(final String url, final boolean runSilent)
     {
+	ensureWebView();
+	BrowserEvents.navigation(gui, url, runSilent ? "loadURL silent"
+		: "loadURL");
 	silent = runSilent;
 	gui.setURL(url);
 	webEngine.load(url);
@@ -431,9 +803,68 @@ public class WebViewController
      */
     public void loadHTML(final String html)
     {
+	ensureWebView();
+	loadContent(html);
+    }
+
+    /**
+     * Load HTML from memory. It isn't a navigation, so it isn't timed.
+     * 
+     * @param html
+     *            The HTML to load.
+     */
+    private void loadContent(String html)
+    {
+	untimed = true;
 	webEngine.loadContent(html);
     }
 
+    /**
+     * Finish timing the load that just ended, and add it to the per-host
+     * statistics if it was a web or file page.
+     * 
+     * @param now
+     *            The time, from System.nanoTime().
+     * @param failure
+     *            Why the load failed, or null if it succeeded.
+     * @return The finished timing, or null if the load wasn't timed.
+     */
+    private PageLoadTiming finishLoadTiming(long now, String failure)
+    {
+	PageLoadTiming timing = loadTiming;
+	loadTiming = null;
+	String location = webEngine.getLocation();
+	if (timing == null
+		|| location == null
+		|| !(location.startsWith("http:")
+			|| location.startsWith("https:") || location
+			    .startsWith("file:")))
+	    return null;
+	timing.finish(now, location, failure);
+	main.getLoadStats().record(timing);
+	BrowserEvents.pageLoad(gui, timing);
+	main.getMetrics().getHistogram(MetricsRegistry.PAGE_LOAD)
+		.record(timing.getLoadMillis());
+	if (failure != null)
+	    main.getMetrics().getCounter(MetricsRegistry.PAGE_LOAD_FAILURES)
+		    .increment();
+	return timing;
+    }
+
+    /**
+     * @param exception
+     *            Why a load failed, or null if that isn't known.
+     * @return A short description of the failure.
+     */
+    private static String failureOf(Throwable exception)
+    {
+	if (exception == null)
+	    return "Unknown error";
+	if (exception.getMessage() == null)
+	    return exception.getClass().getSimpleName();
+	return exception.getMessage();
+    }
+
     /**
      * Makes a URL based on an absolute URL and a relative URL.
      * 
@@ -441,26 +872,12 @@ public class WebViewController
      *            The absolute URL.
      * @param relative
      *            The relative URL.
-     * @return The URL as a String.
+     * @return The URL as a String, in canonical form with its fragment, so
+     *         going to it scrolls to the part of the page it links to.
      */
     public static String toURL(String current, String relative)
     {
-	try
-	{
-	    URL url;
-	    if (relative == null)
-		url = new URL(current);
-	    else if (!relative.matches("$.*://\\..*^"))
-		url = new URL(new URL(current), relative);
-	    else
-		url = new URL(relative);
-	    return url.toExternalForm();
-	}
-	catch (MalformedURLException e)
-	{
-	    e.printStackTrace();
-	    return relative;
-	}
+	return URLNormalizer.getNavigation().resolve(current, relative);
     }
 
     /**
@@ -468,8 +885,7 @@ public class WebViewController
      */
     public void startFireBug()
     {
-	webView.getEngine()
-		.executeScript(
+	executeScript(
 			"if (typeof Firebug == 'undefined' || Firebug.context == null) {var firebug=document.createElement('script');firebug.setAttribute('src','http://getfirebug.com/releases/lite/1.4/firebug-lite.js#startOpened=true');document.body.appendChild(firebug);} else {Firebug.chrome.toggle();}");
     }
 
@@ -481,7 +897,7 @@ public class WebViewController
      */
     public void log(String val)
     {
-	webView.getEngine().executeScript("console.log('" + val + "');");
+	executeScript("console.log(" + ConsoleBridge.quote(val) + ");");
     }
 
     /**
@@ -492,7 +908,7 @@ public class WebViewController
      */
     public void error(String val)
     {
-	webView.getEngine().executeScript("console.error('" + val + "');");
+	executeScript("console.error(" + ConsoleBridge.quote(val) + ");");
     }
 
     /**
@@ -503,7 +919,7 @@ public class WebViewController
      */
     public void warn(String val)
     {
-	webView.getEngine().executeScript("console.warn('" + val + "');");
+	executeScript("console.warn(" + ConsoleBridge.quote(val) + ");");
     }
 
     /**
@@ -514,7 +930,20 @@ public class WebViewController
      */
     public void info(String val)
     {
-	webView.getEngine().executeScript("console.info('" + val + "');");
+	executeScript("console.info(" + ConsoleBridge.quote(val) + ");");
+    }
+
+    /**
+     * Runs a script from the ConsoleBridge that logs a batch of messages, if
+     * a page is loaded.
+     * 
+     * @param script
+     *            The script.
+     */
+    void runConsoleScript(String script)
+    {
+	if (webEngine != null)
+	    executeScript(script);
     }
 
     /**
@@ -527,6 +956,14 @@ public class WebViewController
 	return webView;
     }
 
+    /**
+     * @return This tab's back/forward cache.
+     */
+    public BackForwardCache getBackForwardCache()
+    {
+	return backForwardCache;
+    }
+
     /**
      * Get the current WebView's WebEngine
      * 
@@ -536,4 +973,88 @@ public class WebViewController
     {
 	return webEngine;
     }
+
+    /**
+     * Handles every click in the page. The link that was clicked is found by
+     * walking up from the clicked element to the nearest anchor, and is
+     * stopped from being followed if it was clicked with the meta key or the
+     * middle button. In a page restored from the back/forward cache a link is
+     * followed from the page's own URL, since the copy has none.
+     * 
+     * @author Akshay
+     *
+     */
+    private class LinkClickListener implements EventListener
+    {
+	@Override
+	public void handleEvent(Event evt)
+	{
+	    countBridgeCrossings(3);
+	    MouseEvent mouseEvt = (MouseEvent) evt;
+	    boolean blocked = mouseEvt.getMetaKey()
+		    || mouseEvt.getButton() == 1;
+	    if (!blocked && (mouseEvt.getButton() != 0 || !isRestoredPage()))
+		return;
+	    Element link = findLink((Node) mouseEvt.getTarget());
+	    if (link == null)
+		return;
+	    countBridgeCrossings(1);
+	    if (blocked)
+	    {
+		evt.preventDefault();
+		return;
+	    }
+	    String href = link.getAttribute("href");
+	    if (href.toLowerCase().startsWith("javascript:"))
+		return;
+	    countBridgeCrossings(1);
+	    evt.preventDefault();
+	    if (href.startsWith("#"))
+		executeScript("location.hash = " + ConsoleBridge.quote(href));
+	    else
+	    {
+		String url = toURL(getPageURL(), href);
+		if (url != null)
+		    goToURL(url);
+	    }
+	}
+    }
+
+    /**
+     * Handles the pointer moving onto and off links, to prefetch the link it
+     * is on. Moving between the parts of one link is ignored.
+     * 
+     * @author Akshay
+     *
+     */
+    private class LinkHoverListener implements EventListener
+    {
+	@Override
+	public void handleEvent(Event evt)
+	{
+	    countBridgeCrossings(2);
+	    MouseEvent mouseEvt = (MouseEvent) evt;
+	    Element link = findLink((Node) mouseEvt.getTarget());
+	    if (link == null)
+		return;
+	    Element other = findLink((Node) mouseEvt.getRelatedTarget());
+	    countBridgeCrossings(2);
+	    if (other != null && link.isSameNode(other))
+		return;
+	    String location = getPageURL();
+	    // Prefetches are kept by URL without its fragment.
+	    String url = URLNormalizer.getDefault().resolve(location,
+		    link.getAttribute("href"));
+	    countBridgeCrossings(1);
+	    if (url == null
+		    || url.equals(URLNormalizer.getDefault().canonicalize(
+			    location)))
+		return;
+	    if ("mouseover".equals(evt.getType()))
+		main.getPrefetcher().hover(location, url,
+			webEngine.getUserAgent());
+	    else
+		main.getPrefetcher().leave(url);
+	}
+    }
 }
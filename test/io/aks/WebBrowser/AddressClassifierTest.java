@@ -0,0 +1,114 @@
+package io.aks.WebBrowser;
+import static org.junit.Assert.assertEquals;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks what the address bar does with what is typed, and that searches are
+ * encoded the way URLEncoder would.
+ * 
+ * @author Akshay
+ *
+ */
+public class AddressClassifierTest
+{
+    private static final String SEARCH = "http://google.com/search?q=";
+
+    private final AddressClassifier classifier = new AddressClassifier(
+	    PublicSuffixList.getDefault(), AddressClassifier.DEFAULT_SEARCH_URL);
+
+    private void assertNavigates(String input, String url)
+    {
+	AddressAction action = classifier.classify(input);
+	assertEquals(input, AddressAction.NAVIGATE, action.getKind());
+	assertEquals(input, url, action.getTarget());
+    }
+
+    private void assertSearches(String input, String query)
+    {
+	AddressAction action = classifier.classify(input);
+	assertEquals(input, AddressAction.SEARCH, action.getKind());
+	assertEquals(input, SEARCH + query, action.getTarget());
+    }
+
+    @Test
+    public void addressesAreGoneTo()
+    {
+	assertNavigates("example.com", "http://example.com");
+	assertNavigates("www.example.co.uk", "http://www.example.co.uk");
+	assertNavigates("localhost:8080/app", "http://localhost:8080/app");
+	assertNavigates("192.168.1.1", "http://192.168.1.1");
+	assertNavigates("[::1]:8080/", "http://[::1]:8080/");
+	assertNavigates("printer.local", "http://printer.local");
+	assertNavigates("https://x.org/a?b", "https://x.org/a?b");
+	assertNavigates("about:blank", "about:blank");
+    }
+
+    /**
+     * Names under suffixes that aren't on the list are intranet hosts, and
+     * mustn't be sent to the search engine.
+     */
+    @Test
+    public void intranetHostsAreGoneTo()
+    {
+	assertNavigates("jira.corp", "http://jira.corp");
+	assertNavigates("wiki.internal", "http://wiki.internal");
+	assertNavigates("build.lan", "http://build.lan");
+	assertNavigates("printer.home", "http://printer.home");
+	assertNavigates("app.test", "http://app.test");
+	assertNavigates("jira.corp/browse/X-1", "http://jira.corp/browse/X-1");
+    }
+
+    @Test
+    public void otherTextIsSearchedFor()
+    {
+	assertSearches("co.uk", "co.uk");
+	assertSearches("3.14", "3.14");
+	assertSearches("foo", "foo");
+	assertSearches("what is foo.bar", "what+is+foo.bar");
+	assertSearches("c++ tutorial", "c%2B%2B+tutorial");
+    }
+
+    @Test
+    public void scriptsAreRun()
+    {
+	AddressAction action = classifier.classify("javascript://alert(1)");
+	assertEquals(AddressAction.SCRIPT, action.getKind());
+	assertEquals("alert(1)", action.getTarget());
+    }
+
+    @Test
+    public void searchesAreEncodedLikeURLEncoder()
+	    throws UnsupportedEncodingException
+    {
+	Random random = new Random(3);
+	for (int i = 0; i < 20000; i++)
+	{
+	    StringBuilder query = new StringBuilder();
+	    int length = random.nextInt(12);
+	    for (int j = 0; j < length; j++)
+	    {
+		int kind = random.nextInt(5);
+		if (kind == 0)
+		    query.append((char) random.nextInt(0x80));
+		else if (kind == 1)
+		    query.append((char) (0x80 + random.nextInt(0x780)));
+		else if (kind == 2)
+		    query.append((char) (0x800 + random.nextInt(0xD000)));
+		else if (kind == 3)
+		    query.append((char) (0xD800 + random.nextInt(0x800)));
+		else
+		    query.append(' ');
+	    }
+	    if (random.nextInt(4) == 0)
+		query.appendCodePoint(0x1F600 + random.nextInt(50));
+	    String text = query.toString();
+	    assertEquals(SEARCH + URLEncoder.encode(text, "UTF-8"),
+		    classifier.search(text));
+	}
+    }
+}
@@ -0,0 +1,89 @@
+package io.aks.WebBrowser;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that a CompactHistory keeps everything a History has, and that it
+ * is estimated to be much smaller.
+ * 
+ * @author Akshay
+ *
+ */
+public class CompactHistoryTest
+{
+    private static final int PAGES = 100000;
+    private static final int DISTINCT_URLS = 300;
+
+    /**
+     * Copying a History into a CompactHistory and back keeps its shape,
+     * titles, primary forwards, and current node.
+     */
+    @Test
+    public void roundTripKeepsTree()
+    {
+	History history = buildHistory(2000);
+	CompactHistory compact = CompactHistory.from(history);
+	assertEquals(2001, compact.size());
+	assertEquals(history.toString(), compact.toString());
+
+	History copy = compact.toHistory(null);
+	assertEquals(history.toString(), copy.toString());
+	assertEquals(history.getCurrent().getUrl(), copy.getCurrent().getUrl());
+	compact.clear();
+    }
+
+    /**
+     * Compares the estimates both keep for the same tree. The URLs and
+     * titles a CompactHistory points at are shared by every snapshot, so
+     * they are counted once, at the size History estimates for a string.
+     */
+    @Test
+    public void footprintIsSmallerThanHistory()
+    {
+	History history = buildHistory(PAGES);
+	CompactHistory compact = CompactHistory.from(history);
+	HashSet<String> distinct = new HashSet<String>();
+	for (int i = 0; i < compact.size(); i++)
+	{
+	    distinct.add(compact.getUrl(i));
+	    distinct.add(compact.getTitle(i));
+	}
+	long strings = 0;
+	for (String string : distinct)
+	    strings += HistoryNode.STRING_BYTES + 2L * string.length();
+	assertTrue((compact.estimateBytes() + strings) * 3 < history
+		.getEstimatedBytes());
+	compact.clear();
+    }
+
+    /**
+     * Builds a tree where every page has its own node, wandering back to an
+     * earlier page now and then so it branches.
+     */
+    private static History buildHistory(int pages)
+    {
+	Random random = new Random(2);
+	History history = new History(null, "http://intranet.example.com/",
+		"New Tab");
+	ArrayList<HistoryNode> nodes = new ArrayList<HistoryNode>();
+	nodes.add(history.getRoot());
+	HistoryNode current = history.getRoot();
+	for (int i = 0; i < pages; i++)
+	{
+	    if (random.nextInt(8) == 0)
+		current = nodes.get(random.nextInt(nodes.size()));
+	    current = history.addRestored(current, new String(
+		    "http://intranet.example.com/dash/" + i % DISTINCT_URLS));
+	    current.setTitle(new String("Dashboard " + i % DISTINCT_URLS));
+	    nodes.add(current);
+	}
+	history.setCurrent(current);
+	return history;
+    }
+}
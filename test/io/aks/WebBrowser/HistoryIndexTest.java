@@ -0,0 +1,199 @@
+package io.aks.WebBrowser;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Checks how the history index finds and ranks pages, and that it stays
+ * consistent as pages are forgotten to make room for new ones.
+ * 
+ * @author Akshay
+ *
+ */
+public class HistoryIndexTest
+{
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private final long now = System.currentTimeMillis();
+
+    private static ArrayList<String> urls(ArrayList<HistoryMatch> matches)
+    {
+	ArrayList<String> urls = new ArrayList<String>();
+	for (HistoryMatch match : matches)
+	    urls.add(match.getURL());
+	return urls;
+    }
+
+    private static ArrayList<String> list(String... urls)
+    {
+	ArrayList<String> list = new ArrayList<String>();
+	for (String url : urls)
+	    list.add(url);
+	return list;
+    }
+
+    /**
+     * @return True if the page of a site is in the index.
+     */
+    private static boolean has(HistoryIndex index, String site)
+    {
+	return urls(index.search(site, 1000)).contains(
+		"http://" + site + ".test/");
+    }
+
+    @Test
+    public void wordsAreFoundByTheirStart()
+    {
+	HistoryIndex index = new HistoryIndex(100);
+	index.record("http://example.com/", "Example Domain", now, true);
+	index.record("http://expert.org/tips", "Tips", now, true);
+	index.record("about:blank", "Blank", now, true);
+
+	assertEquals(list("http://example.com/"), urls(index.search("exa", 10)));
+	assertEquals(list("http://example.com/"), urls(index.search("DOM", 10)));
+	assertEquals(2, index.search("ex", 10).size());
+	assertEquals(list("http://expert.org/tips"),
+		urls(index.search("ex ti", 10)));
+	assertEquals(0, index.search("exa tips", 10).size());
+	assertEquals(0, index.search("xample", 10).size());
+	assertEquals(0, index.search("blank", 10).size());
+	assertEquals(0, index.search("  ", 10).size());
+	assertEquals(1, index.search("ex", 1).size());
+    }
+
+    @Test
+    public void sameURLWrittenTwoWaysIsOnePage()
+    {
+	HistoryIndex index = new HistoryIndex(100);
+	index.record("http://Example.com:80/a", "A", now, true);
+	index.record("http://example.com/a", "A", now, true);
+	assertEquals(1, index.size());
+	assertEquals(2, index.search("example", 10).get(0).getVisits());
+    }
+
+    @Test
+    public void longWordsAreCut()
+    {
+	HistoryIndex index = new HistoryIndex(100);
+	StringBuilder word = new StringBuilder();
+	while (word.length() < HistoryIndex.MAX_WORD_LENGTH * 2)
+	    word.append("abcdefgh");
+	index.record("http://example.com/", word.toString(), now, true);
+	assertEquals(1, index.search(word.toString(), 10).size());
+	assertNull(index.getPageIds(word.toString()));
+	assertNotNull(index.getPageIds(word.substring(0,
+		HistoryIndex.MAX_WORD_LENGTH)));
+    }
+
+    @Test
+    public void pagesAreRankedByFrecency()
+    {
+	HistoryIndex index = new HistoryIndex(100);
+	index.record("http://a.test/news", "News", now, 5);
+	index.record("http://b.test/news", "News", now, 1);
+	index.record("http://c.test/news", "News", now - 100 * DAY, 5);
+	index.record("http://d.test/news", "News", now - 10 * DAY, 1);
+
+	assertEquals(
+		list("http://a.test/news", "http://b.test/news",
+			"http://d.test/news", "http://c.test/news"),
+		urls(index.search("news", 10)));
+	ArrayList<HistoryMatch> matches = index.search("news", 10);
+	for (int i = 1; i < matches.size(); i++)
+	    assertTrue(matches.get(i - 1).getScore() >= matches.get(i)
+		    .getScore());
+    }
+
+    @Test
+    public void hostsAndWholeWordsRankHigher()
+    {
+	HistoryIndex index = new HistoryIndex(100);
+	index.record("http://other.test/news", "News", now, 0);
+	index.record("http://newsroom.test/", "Room", now, 0);
+	index.record("http://more.test/newsletter", "Letters", now, 0);
+
+	assertEquals(
+		list("http://newsroom.test/", "http://other.test/news",
+			"http://more.test/newsletter"),
+		urls(index.search("news", 10)));
+	assertEquals(list("http://newsroom.test/", "http://other.test/news",
+		"http://more.test/newsletter"), urls(index.search("news t",
+		10)));
+    }
+
+    /**
+     * Fills the index and keeps adding pages, so pages are forgotten to make
+     * room, and checks that the lowest ranked went first and every word's
+     * page ids are still sorted.
+     */
+    @Test
+    public void evictionKeepsTheBestAndIdsSorted()
+    {
+	HistoryIndex index = new HistoryIndex(100);
+	for (int i = 0; i < 100; i++)
+	    index.record("http://site" + i + ".test/", "Page", now, i % 7);
+	for (int i = 100; i < 250; i++)
+	{
+	    index.record("http://site" + i + ".test/", "Page", now, 10);
+	    assertEquals(100, index.size());
+	    assertSorted(index.getPageIds("page"), index.size());
+	    assertSorted(index.getPageIds("test"), index.size());
+	}
+	for (int i = 0; i < 100; i++)
+	{
+	    assertFalse(has(index, "site" + i));
+	    assertNull(index.getPageIds("site" + i));
+	}
+	assertTrue(has(index, "site249"));
+	assertEquals(10, index.search("page", 10).size());
+    }
+
+    private static void assertSorted(int[] ids, int size)
+    {
+	assertEquals(size, ids.length);
+	for (int i = 1; i < ids.length; i++)
+	    assertTrue(ids[i - 1] < ids[i]);
+    }
+
+    /**
+     * A page picked to be forgotten is kept if it is visited before its turn.
+     */
+    @Test
+    public void visitedPagesAreNotForgotten()
+    {
+	HistoryIndex index = new HistoryIndex(100);
+	for (int i = 0; i < 100; i++)
+	    index.record("http://site" + i + ".test/", "Page", now - 100 + i,
+		    0);
+	// The first ten are picked, and the first is forgotten.
+	index.record("http://new0.test/", "Page", now, 0);
+	assertFalse(has(index, "site0"));
+	index.record("http://site1.test/", "Page", now, true);
+	for (int i = 1; i < 10; i++)
+	    index.record("http://new" + i + ".test/", "Page", now, 0);
+	assertTrue(has(index, "site1"));
+	assertFalse(has(index, "site9"));
+	assertFalse(has(index, "site10"));
+	assertTrue(has(index, "site11"));
+    }
+
+    @Test
+    public void retitledPagesLeaveTheirOldWords()
+    {
+	HistoryIndex index = new HistoryIndex(100);
+	index.record("http://example.com/", "Loading", now, true);
+	index.setTitle("http://example.com/", "Welcome");
+	assertEquals(0, index.search("loading", 10).size());
+	assertEquals(1, index.search("welcome", 10).size());
+	assertEquals(1, index.search("example", 10).size());
+	// A title that is just the URL doesn't replace a real one.
+	index.setTitle("http://example.com/", "http://example.com/");
+	assertEquals("Welcome", index.search("welcome", 10).get(0).getTitle());
+    }
+}
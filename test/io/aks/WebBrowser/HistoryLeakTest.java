@@ -0,0 +1,115 @@
+package io.aks.WebBrowser;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a closed tab's History can be collected even while something
+ * still holds one of its pages, which is what Main.disposeTab relies on. The
+ * Histories have no GUI; TabLeakTest opens and closes whole tabs.
+ * 
+ * @author Akshay
+ *
+ */
+public class HistoryLeakTest
+{
+    private static final int TABS = 500;
+    private static final int PAGES = 20;
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final HistoryBudget budget = new HistoryBudget(metrics,
+	    HistoryBudget.DEFAULT_MAX_TAB_NODES,
+	    HistoryBudget.DEFAULT_MAX_TAB_BYTES,
+	    HistoryBudget.DEFAULT_MAX_NODES, HistoryBudget.DEFAULT_MAX_BYTES,
+	    HistoryEvictionPolicy.LRU);
+
+    @Before
+    public void setUp()
+    {
+	metrics.counter(MetricsRegistry.BFCACHE_HITS, "");
+	metrics.counter(MetricsRegistry.BFCACHE_MISSES, "");
+	metrics.counter(MetricsRegistry.BFCACHE_STALE, "");
+	metrics.counter(MetricsRegistry.BFCACHE_EVICTIONS, "");
+    }
+
+    @After
+    public void tearDown()
+    {
+	metrics.close();
+    }
+
+    /**
+     * Opens a tab's History with a back/forward cache and the budget, visits
+     * some pages, and returns the page it ended on.
+     */
+    private HistoryNode openTab(int tab)
+    {
+	History history = new History(null, "http://tab" + tab + ".example/",
+		"New Tab");
+	new BackForwardCache(metrics, history);
+	budget.register(history);
+	for (int i = 0; i < PAGES; i++)
+	    history.addURL("http://tab" + tab + ".example/" + i);
+	return history.getCurrent();
+    }
+
+    @Test
+    public void clearedHistoriesAreCollected() throws InterruptedException
+    {
+	ArrayList<HistoryNode> held = new ArrayList<HistoryNode>();
+	ArrayList<WeakReference<History>> histories = new ArrayList<WeakReference<History>>();
+	for (int tab = 0; tab < TABS; tab++)
+	{
+	    HistoryNode current = openTab(tab);
+	    History history = current.getHistory();
+	    histories.add(new WeakReference<History>(history));
+	    budget.unregister(history);
+	    history.clear();
+	    held.add(current);
+	}
+	assertEquals(TABS, collect(histories));
+	for (HistoryNode node : held)
+	    assertNull(node.getHistory());
+	assertEquals(0, budget.getNodeCount());
+    }
+
+    /**
+     * Without clear(), one page is enough to keep the whole tab.
+     */
+    @Test
+    public void heldPageKeepsAnUnclearedHistory() throws InterruptedException
+    {
+	HistoryNode held = openTab(0);
+	ArrayList<WeakReference<History>> histories = new ArrayList<WeakReference<History>>();
+	histories.add(new WeakReference<History>(held.getHistory()));
+	budget.unregister(held.getHistory());
+	assertEquals(0, collect(histories));
+	assertNotNull(held.getHistory());
+    }
+
+    /**
+     * @return How many of the Histories were garbage collected.
+     */
+    private static int collect(ArrayList<WeakReference<History>> histories)
+	    throws InterruptedException
+    {
+	int collected = 0;
+	for (int i = 0; i < 20 && collected < histories.size(); i++)
+	{
+	    System.gc();
+	    Thread.sleep(50);
+	    collected = 0;
+	    for (WeakReference<History> history : histories)
+		if (history.get() == null)
+		    collected++;
+	}
+	return collected;
+    }
+}
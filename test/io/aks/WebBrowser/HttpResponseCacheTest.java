@@ -0,0 +1,233 @@
+package io.aks.WebBrowser;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ResponseCache;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs HttpResponseCache against a server on the loopback address, installed
+ * as the default ResponseCache the way Main installs it.
+ * 
+ * @author Akshay
+ *
+ */
+public class HttpResponseCacheTest
+{
+    private HttpServer server;
+    private String base;
+    private File directory;
+    private ResponseCache oldDefault;
+    private volatile String version = "v1";
+    private final ConcurrentHashMap<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+    private final AtomicInteger conditional = new AtomicInteger();
+
+    /**
+     * Starts the server. /fresh can be used for a minute, /etag has to be
+     * revalidated every time, /nostore can't be stored, and /size/N is N
+     * bytes that can be used for a minute.
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+	server = HttpServer.create(new InetSocketAddress(
+		InetAddress.getLoopbackAddress(), 0), 0);
+	server.createContext("/", new HttpHandler()
+	{
+	    @Override
+	    public void handle(HttpExchange exchange) throws IOException
+	    {
+		respond(exchange);
+	    }
+	});
+	server.start();
+	base = "http://127.0.0.1:" + server.getAddress().getPort();
+	directory = Files.createTempDirectory("cache").toFile();
+	oldDefault = ResponseCache.getDefault();
+    }
+
+    @After
+    public void tearDown()
+    {
+	ResponseCache.setDefault(oldDefault);
+	server.stop(0);
+	File[] files = directory.listFiles();
+	if (files != null)
+	    for (File f : files)
+		f.delete();
+	directory.delete();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException
+    {
+	String path = exchange.getRequestURI().getPath();
+	requests.putIfAbsent(path, new AtomicInteger());
+	requests.get(path).incrementAndGet();
+	byte[] body;
+	if (path.equals("/etag"))
+	{
+	    String etag = "\"" + version + "\"";
+	    exchange.getResponseHeaders().add("Cache-Control", "max-age=0");
+	    exchange.getResponseHeaders().add("ETag", etag);
+	    String match = exchange.getRequestHeaders().getFirst(
+		    "If-None-Match");
+	    if (match != null)
+		conditional.incrementAndGet();
+	    if (etag.equals(match))
+	    {
+		exchange.sendResponseHeaders(
+			HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+		exchange.close();
+		return;
+	    }
+	    body = ("body " + version).getBytes(StandardCharsets.UTF_8);
+	}
+	else if (path.equals("/nostore"))
+	{
+	    exchange.getResponseHeaders().add("Cache-Control", "no-store");
+	    body = "secret".getBytes(StandardCharsets.UTF_8);
+	}
+	else if (path.startsWith("/size/"))
+	{
+	    exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+	    body = new byte[Integer.parseInt(path.substring(6))];
+	    Arrays.fill(body, (byte) 'x');
+	}
+	else
+	{
+	    exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+	    body = ("fresh " + path).getBytes(StandardCharsets.UTF_8);
+	}
+	exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+	OutputStream out = exchange.getResponseBody();
+	out.write(body);
+	out.close();
+    }
+
+    private HttpResponseCache install(long memoryBytes, long diskBytes)
+    {
+	HttpResponseCache cache = new HttpResponseCache(directory,
+		memoryBytes, diskBytes);
+	ResponseCache.setDefault(cache);
+	return cache;
+    }
+
+    /**
+     * Fetches a URL through the default ResponseCache, reading the whole body
+     * so the cache gets to store it.
+     */
+    private String fetch(String path) throws IOException
+    {
+	HttpURLConnection connection = (HttpURLConnection) new URL(base + path)
+		.openConnection();
+	InputStream in = connection.getInputStream();
+	try
+	{
+	    return new String(HttpResponseCache.readAll(in),
+		    StandardCharsets.UTF_8);
+	}
+	finally
+	{
+	    in.close();
+	}
+    }
+
+    private int requestsFor(String path)
+    {
+	AtomicInteger count = requests.get(path);
+	return count == null ? 0 : count.get();
+    }
+
+    @Test
+    public void freshResponseIsServedWithoutARequest() throws IOException
+    {
+	HttpResponseCache cache = install(1 << 20, 1 << 22);
+	assertEquals("fresh /fresh", fetch("/fresh"));
+	assertEquals("fresh /fresh", fetch("/fresh"));
+	assertEquals(1, requestsFor("/fresh"));
+	assertEquals(1, cache.getHits());
+	assertTrue(cache.contains(base + "/fresh"));
+    }
+
+    @Test
+    public void staleResponseIsRevalidated() throws IOException
+    {
+	HttpResponseCache cache = install(1 << 20, 1 << 22);
+	assertEquals("body v1", fetch("/etag"));
+	assertEquals("body v1", fetch("/etag"));
+	assertEquals(2, requestsFor("/etag"));
+	assertEquals(1, conditional.get());
+	assertEquals(1, cache.getRevalidations());
+	assertEquals(1, cache.getNotModified());
+	assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void changedResponseReplacesTheStoredOne() throws IOException
+    {
+	HttpResponseCache cache = install(1 << 20, 1 << 22);
+	assertEquals("body v1", fetch("/etag"));
+	version = "v2";
+	assertEquals("body v2", fetch("/etag"));
+	assertEquals(0, cache.getNotModified());
+	// The new version is what is revalidated next.
+	assertEquals("body v2", fetch("/etag"));
+	assertEquals(1, cache.getNotModified());
+    }
+
+    @Test
+    public void noStoreIsNotCached() throws IOException
+    {
+	HttpResponseCache cache = install(1 << 20, 1 << 22);
+	fetch("/nostore");
+	fetch("/nostore");
+	assertEquals(2, requestsFor("/nostore"));
+	assertFalse(cache.contains(base + "/nostore"));
+	assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void diskTierOutlivesTheCache() throws IOException
+    {
+	install(1 << 20, 1 << 22);
+	fetch("/fresh");
+	HttpResponseCache reopened = install(1 << 20, 1 << 22);
+	assertEquals("fresh /fresh", fetch("/fresh"));
+	assertEquals(1, requestsFor("/fresh"));
+	assertEquals(1, reopened.getDiskHits());
+    }
+
+    @Test
+    public void leastRecentlyUsedResponsesAreEvicted() throws IOException
+    {
+	HttpResponseCache cache = install(16 << 10, 32 << 10);
+	for (int i = 0; i < 12; i++)
+	    fetch("/size/" + (3000 + i));
+	assertTrue(cache.getEvictions() > 0);
+	assertTrue(cache.getDiskBytes() <= 32 << 10);
+	assertTrue(cache.getMemoryBytes() <= 16 << 10);
+	assertFalse(cache.contains(base + "/size/3000"));
+	assertTrue(cache.contains(base + "/size/3011"));
+    }
+}
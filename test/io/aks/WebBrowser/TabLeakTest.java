@@ -0,0 +1,318 @@
+package io.aks.WebBrowser;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.AbstractPreferences;
+
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+import javafx.scene.control.Tab;
+import javafx.stage.Stage;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Opens and closes tabs in a real browser window on the JavaFX toolkit, the
+ * way the user does, and checks that every closed tab's GUI is garbage
+ * collected. The browser keeps its files in a temporary home directory and
+ * its settings in memory, so the user's are left alone.
+ * 
+ * @author Akshay
+ *
+ */
+public class TabLeakTest
+{
+    private static final int CYCLES = 500;
+    private static final int OPEN_AT_ONCE = 10;
+    private static final long TIMEOUT = 30;
+    /**
+     * A page with links, so the tab's link listeners are added.
+     */
+    private static final String PAGE = "data:text/html,<p><a%20href=%22%23top%22>Top</a>"
+	    + "<a%20href=%22http://example.invalid/%22>Away</a></p>";
+
+    private static String oldHome;
+    private static PrintStream oldOut;
+    private static PrintStream oldErr;
+    private static File home;
+    private static Main main;
+
+    @BeforeClass
+    public static void startBrowser() throws Exception
+    {
+	oldHome = System.getProperty("user.home");
+	oldOut = System.out;
+	oldErr = System.err;
+	home = Files.createTempDirectory("browser").toFile();
+	System.setProperty("user.home", home.getPath());
+	Main.setPreferences(new MemoryPreferences(null, ""));
+	// Creating a JFXPanel starts the JavaFX toolkit.
+	new JFXPanel();
+	Platform.setImplicitExit(false);
+	onFx(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		main = new Main();
+		Main.homePage = "about:blank";
+		Main.launchArgs = new String[0];
+		main.start(new Stage());
+		return null;
+	    }
+	});
+    }
+
+    @AfterClass
+    public static void stopBrowser() throws Exception
+    {
+	onFx(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		main.stop();
+		main.getStage().close();
+		return null;
+	    }
+	});
+	System.setOut(oldOut);
+	System.setErr(oldErr);
+	System.setProperty("user.home", oldHome);
+	delete(home);
+    }
+
+    /**
+     * Opens tabs ten at a time, waits for their pages to load, and closes
+     * them, until 500 were closed. Then every one of them has to be
+     * collected.
+     */
+    @Test
+    public void closedTabsAreCollected() throws Exception
+    {
+	final TabLeakTracker tracker = main.getLeakTracker();
+	long disposed = tracker.getDisposed();
+	for (int cycle = 0; cycle < CYCLES; cycle += OPEN_AT_ONCE)
+	{
+	    final ArrayList<GUI> opened = onFx(new Callable<ArrayList<GUI>>()
+	    {
+		@Override
+		public ArrayList<GUI> call()
+		{
+		    ArrayList<GUI> guis = new ArrayList<GUI>();
+		    for (int i = 0; i < OPEN_AT_ONCE; i++)
+			guis.add(main.newTab(PAGE));
+		    return guis;
+		}
+	    });
+	    waitForLoads(opened);
+	    onFx(new Callable<Void>()
+	    {
+		@Override
+		public Void call()
+		{
+		    close(opened);
+		    return null;
+		}
+	    });
+	}
+	assertEquals(disposed + CYCLES, tracker.getDisposed());
+
+	ArrayList<String> uncollected = null;
+	for (int i = 0; i < 50; i++)
+	{
+	    System.gc();
+	    Thread.sleep(100);
+	    uncollected = onFx(new Callable<ArrayList<String>>()
+	    {
+		@Override
+		public ArrayList<String> call()
+		{
+		    return tracker.getUncollected();
+		}
+	    });
+	    if (uncollected.isEmpty())
+		break;
+	}
+	assertEquals(new ArrayList<String>(), uncollected);
+	assertEquals(0, tracker.getLeaks());
+    }
+
+    /**
+     * A tab that is still in memory after the grace period is reported by
+     * the tracker's timer, without another tab being opened or closed.
+     */
+    @Test
+    public void leakIsReportedByTheTimer() throws Exception
+    {
+	final TabLeakTracker tracker = new TabLeakTracker(50);
+	final ArrayList<GUI> held = onFx(new Callable<ArrayList<GUI>>()
+	{
+	    @Override
+	    public ArrayList<GUI> call()
+	    {
+		ArrayList<GUI> guis = new ArrayList<GUI>();
+		guis.add(main.newTab(PAGE));
+		tracker.start();
+		tracker.track(guis.get(0));
+		tracker.disposed(guis.get(0), PAGE);
+		return guis;
+	    }
+	});
+	long leaks = 0;
+	for (int i = 0; i < 100 && leaks == 0; i++)
+	{
+	    Thread.sleep(50);
+	    leaks = onFx(new Callable<Long>()
+	    {
+		@Override
+		public Long call()
+		{
+		    return tracker.getLeaks();
+		}
+	    });
+	}
+	onFx(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		tracker.stop();
+		close(held);
+		return null;
+	    }
+	});
+	assertEquals(1, leaks);
+    }
+
+    /**
+     * Close the tabs of some GUIs the way the user does, by removing them
+     * from the TabPane.
+     */
+    private static void close(ArrayList<GUI> guis)
+    {
+	ArrayList<Tab> tabs = new ArrayList<Tab>();
+	for (Tab tab : main.getTabs().getTabs())
+	    if (guis.contains(tab.getContent()))
+		tabs.add(tab);
+	main.getTabs().getTabs().removeAll(tabs);
+	guis.clear();
+    }
+
+    private static void waitForLoads(final ArrayList<GUI> guis)
+	    throws Exception
+    {
+	boolean loading = true;
+	for (int i = 0; i < 200 && loading; i++)
+	{
+	    loading = onFx(new Callable<Boolean>()
+	    {
+		@Override
+		public Boolean call()
+		{
+		    for (GUI gui : guis)
+			if (gui.getWebViewController().isLoading())
+			    return true;
+		    return false;
+		}
+	    });
+	    if (loading)
+		Thread.sleep(10);
+	}
+    }
+
+    /**
+     * Run a task on the JavaFX thread and wait for it.
+     */
+    private static <T> T onFx(Callable<T> task) throws Exception
+    {
+	FutureTask<T> future = new FutureTask<T>(task);
+	Platform.runLater(future);
+	return future.get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    private static void delete(File file)
+    {
+	File[] children = file.listFiles();
+	if (children != null)
+	    for (File child : children)
+		delete(child);
+	file.delete();
+    }
+
+    /**
+     * Preferences that are only kept in memory.
+     * 
+     * @author Akshay
+     *
+     */
+    private static class MemoryPreferences extends AbstractPreferences
+    {
+	private final HashMap<String, String> values = new HashMap<String, String>();
+
+	MemoryPreferences(MemoryPreferences parent, String name)
+	{
+	    super(parent, name);
+	}
+
+	@Override
+	protected void putSpi(String key, String value)
+	{
+	    values.put(key, value);
+	}
+
+	@Override
+	protected String getSpi(String key)
+	{
+	    return values.get(key);
+	}
+
+	@Override
+	protected void removeSpi(String key)
+	{
+	    values.remove(key);
+	}
+
+	@Override
+	protected void removeNodeSpi()
+	{
+	}
+
+	@Override
+	protected String[] keysSpi()
+	{
+	    return values.keySet().toArray(new String[values.size()]);
+	}
+
+	@Override
+	protected String[] childrenNamesSpi()
+	{
+	    return new String[0];
+	}
+
+	@Override
+	protected AbstractPreferences childSpi(String name)
+	{
+	    return new MemoryPreferences(this, name);
+	}
+
+	@Override
+	protected void syncSpi()
+	{
+	}
+
+	@Override
+	protected void flushSpi()
+	{
+	}
+    }
+}